@@ -4,12 +4,16 @@
  */
 package org.monte.media.amigabitmap;
 
+import org.monte.media.io.ByteArray;
+
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * A BitmapImage is comprised of a ColorModel and an accessible byte array of
@@ -74,6 +78,10 @@ import java.awt.image.Raster;
  * Knows how to convert the bitmap into chunky image data according
  * to the current color model.
  * Supports indexed color model, direct color model, 6 and 8 bit HAM color model.
+ * <p>
+ * In parallel mode, large images are converted in bands of scanlines on the
+ * common {@link ForkJoinPool}. Since HAM pixels only depend on the pixels to
+ * their left, HAM images can be split into bands just like other images.
  *
  * @author Werner Randelshofer, Hausmatt 10, CH-6405 Goldau, Switzerland
  */
@@ -163,6 +171,43 @@ public class AmigaBitmapImage
      * chunky pixels using a DirectColorModel.
      */
     private boolean enforceDirectColors_ = false;
+    /**
+     * If this boolean is set to true, then large images are converted
+     * in parallel.
+     */
+    private boolean parallel = false;
+    /**
+     * If this boolean is set to true, then images with a depth of up to 8
+     * bits are converted with the lookup table kernel instead of the
+     * per-pixel routines. Package private for testing.
+     */
+    boolean lookupTableKernel = true;
+    /**
+     * The minimal number of pixels that are converted in parallel.
+     */
+    private final static int MIN_PARALLEL_PIXELS = 256 * 128;
+    /**
+     * The minimal number of scanlines in a band.
+     */
+    private final static int MIN_BAND_HEIGHT = 16;
+    /**
+     * Lookup table for the planar to chunky kernel. Spreads the 8 bits of
+     * a bit-plane byte into the lowest bit of 8 pixel bytes. The most
+     * significant bit goes into the most significant pixel byte.
+     */
+    private final static long[] SPREAD_BITS = new long[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            long spread = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((i & (128 >>> bit)) != 0) {
+                    spread |= 1L << (56 - bit * 8);
+                }
+            }
+            SPREAD_BITS[i] = spread;
+        }
+    }
 
     /**
      * If you set this to true, then convertToChunky always generates
@@ -180,6 +225,24 @@ public class AmigaBitmapImage
         return enforceDirectColors_;
     }
 
+    /**
+     * If you set this to true, then convertToChunky and convertFromChunky
+     * convert large images in bands of scanlines in parallel.
+     * <p>
+     * The default value is false.
+     */
+    public void setParallel(boolean b) {
+        parallel = b;
+    }
+
+    /**
+     * If this returns true, then convertToChunky and convertFromChunky
+     * convert large images in bands of scanlines in parallel.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
     /**
      * Construct an interleaved bitmap with the specified size,
      * depth and color model.
@@ -236,8 +299,8 @@ public class AmigaBitmapImage
             bitmap = new byte[scanlineStride * height];
         } else {
             scanlineStride = (width + 15) / 16 * 2;
-            bitplaneStride = scanlineStride * depth;
-            bitmap = new byte[bitplaneStride * height];
+            bitplaneStride = scanlineStride * height;
+            bitmap = new byte[bitplaneStride * depth];
         }
         pixelType = NO_PIXEL;
     }
@@ -484,7 +547,7 @@ public class AmigaBitmapImage
      * generated by #convertToChunky.
      */
     public short[] getShortPixels() {
-        if (pixelType == BYTE_PIXEL) {
+        if (pixelType == SHORT_PIXEL) {
             return shortPixels;
         } else {
             return null;
@@ -619,6 +682,9 @@ public class AmigaBitmapImage
             right = getWidth() - 1;
         }
 
+        /* The lookup table driven kernel supports up to 8 bit-planes. */
+        final boolean kernel = lookupTableKernel && getDepth() <= 8;
+
         /* */
         if (planarColorModel instanceof AmigaHAMColorModel) {
             if (intPixels == null || intPixels.length != getWidth() * getHeight()) {
@@ -628,9 +694,9 @@ public class AmigaBitmapImage
             }
             currentChunkyColorModel_ = planarColorModel;
             if (((AmigaHAMColorModel) planarColorModel).getHAMType() == AmigaHAMColorModel.HAM6) {
-                ham6PlanesToDirectPixels(top, left, bottom, right);
+                convert(kernel ? this::ham6PlanesToDirectPixelsKernel : this::ham6PlanesToDirectPixels, top, left, bottom, right);
             } else if (((AmigaHAMColorModel) planarColorModel).getHAMType() == AmigaHAMColorModel.HAM8) {
-                ham8PlanesToDirectPixels(top, left, bottom, right);
+                convert(kernel ? this::ham8PlanesToDirectPixelsKernel : this::ham8PlanesToDirectPixels, top, left, bottom, right);
             } else {
                 throw new InternalError("unsupported ham model:" + planarColorModel);
             }
@@ -651,7 +717,7 @@ public class AmigaBitmapImage
                                         ? preferredChunkyColorModel_
                                         : new DirectColorModel(16, 0x7c00, 0x3e0, 0x1f);
 
-                        indexPlanesTo555(top, left, bottom, right);
+                        convert(kernel ? this::indexPlanesTo555Kernel : this::indexPlanesTo555, top, left, bottom, right);
                         pixelType = SHORT_PIXEL;
                     } else {
                         if (intPixels == null || intPixels.length != getWidth() * getHeight()) {
@@ -666,7 +732,7 @@ public class AmigaBitmapImage
                                         : ColorModel.getRGBdefault();
 
                         currentChunkyColorModel_ = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
-                        indexPlanesToDirectPixels(top, left, bottom, right);
+                        convert(kernel ? this::indexPlanesToDirectPixelsKernel : this::indexPlanesToDirectPixels, top, left, bottom, right);
                         pixelType = INT_PIXEL;
                     }
                 } else {
@@ -676,7 +742,7 @@ public class AmigaBitmapImage
                         bytePixels = new byte[getWidth() * getHeight()];
                     }
                     currentChunkyColorModel_ = planarColorModel;
-                    indexPlanesToIndexPixels(top, left, bottom, right);
+                    convert(kernel ? this::indexPlanesToIndexPixelsKernel : this::indexPlanesToIndexPixels, top, left, bottom, right);
                     pixelType = BYTE_PIXEL;
                 }
             } else if (planarColorModel instanceof DirectColorModel) {
@@ -688,7 +754,7 @@ public class AmigaBitmapImage
                         shortPixels = new short[getWidth() * getHeight()];
                     }
                     currentChunkyColorModel_ = planarColorModel;
-                    directPlanesTo555(top, left, bottom, right);
+                    convert(this::directPlanesTo555, top, left, bottom, right);
                     pixelType = SHORT_PIXEL;
                 } else {
                     if (intPixels == null || intPixels.length != getWidth() * getHeight()) {
@@ -698,7 +764,7 @@ public class AmigaBitmapImage
                         intPixels = new int[getWidth() * getHeight()];
                     }
                     currentChunkyColorModel_ = planarColorModel;
-                    directPlanesToDirectPixels(top, left, bottom, right);
+                    convert(this::directPlanesToDirectPixels, top, left, bottom, right);
                     pixelType = INT_PIXEL;
                 }
             } else {
@@ -757,7 +823,7 @@ public class AmigaBitmapImage
                     for (int y = 0; y < height; y++) {
                         System.arraycopy(inb, dx + (y + dy) * inScanlineStride, bytePixels, y * width, width);
                     }
-                    indexPixelsToIndexPlanes(0, 0, getHeight() - 1, getWidth() - 1);
+                    convert(this::indexPixelsToIndexPlanes, 0, 0, getHeight() - 1, getWidth() - 1);
                 } else {
 
                     throw new UnsupportedOperationException("index color model not implemented:" + planarColorModel);
@@ -1428,7 +1494,19 @@ public class AmigaBitmapImage
                             bitmap[iBitmap + bitplaneStride7] = (byte) b7;
                         }
                     }
-                    // FIXME - Add special treatment here when width is not a multiple of 8
+                    if ((right & 7) != 0) {
+                        // The last byte is incomplete, fill it up with 0 bits.
+                        int shift = 8 - (right & 7);
+                        iBitmap = iScanline + ((right - 1) >>> 3);
+                        bitmap[iBitmap] = (byte) (b0 << shift);
+                        bitmap[iBitmap + bitplaneStride] = (byte) (b1 << shift);
+                        bitmap[iBitmap + bitplaneStride2] = (byte) (b2 << shift);
+                        bitmap[iBitmap + bitplaneStride3] = (byte) (b3 << shift);
+                        bitmap[iBitmap + bitplaneStride4] = (byte) (b4 << shift);
+                        bitmap[iBitmap + bitplaneStride5] = (byte) (b5 << shift);
+                        bitmap[iBitmap + bitplaneStride6] = (byte) (b6 << shift);
+                        bitmap[iBitmap + bitplaneStride7] = (byte) (b7 << shift);
+                    }
 
                     iPixel += pixelLineStride;
                 }
@@ -1470,22 +1548,7 @@ public class AmigaBitmapImage
      * -
      */
     private void indexPlanesToDirectPixels(int top, int left, int bottom, int right) {
-        IndexColorModel colorModel = (IndexColorModel) planarColorModel;
-        final int[] clut = new int[colorModel.getMapSize()];
-        //colorModel.getRGBs(clut);
-        IndexColorModel icm = (IndexColorModel) planarColorModel;
-        byte[] reds = new byte[clut.length];
-        byte[] greens = new byte[clut.length];
-        byte[] blues = new byte[clut.length];
-        icm.getReds(reds);
-        icm.getGreens(greens);
-        icm.getBlues(blues);
-        for (int i = 0; i < clut.length; i++) {
-            clut[i] = 0xff000000 | (reds[i] & 0xff) << 16 | (greens[i] & 0xff) << 8 | (blues[i] & 0xff);
-        }
-        if (clut.length < (1 << getDepth())) {
-            throw new IndexOutOfBoundsException("Clut must not be smaller than depth");
-        }
+        final int[] clut = createDirectClut();
 
 
         /*
@@ -1875,22 +1938,7 @@ public class AmigaBitmapImage
      * -
      */
     private void indexPlanesTo555(int top, int left, int bottom, int right) {
-        IndexColorModel colorModel = (IndexColorModel) planarColorModel;
-        final short[] clut = new short[colorModel.getMapSize()];
-        //colorModel.getRGBs(clut);
-        IndexColorModel icm = (IndexColorModel) planarColorModel;
-        byte[] reds = new byte[clut.length];
-        byte[] greens = new byte[clut.length];
-        byte[] blues = new byte[clut.length];
-        icm.getReds(reds);
-        icm.getGreens(greens);
-        icm.getBlues(blues);
-        for (int i = 0; i < clut.length; i++) {
-            clut[i] = (short) ((reds[i] & 0xf8) << 7 | (greens[i] & 0xf8) << 2 | (blues[i] & 0xf8) >> 3);
-        }
-        if (clut.length < (1 << getDepth())) {
-            throw new IndexOutOfBoundsException("Clut must not be smaller than depth");
-        }
+        final short[] clut = create555Clut();
 
 
         /*
@@ -2874,6 +2922,260 @@ public class AmigaBitmapImage
         }
     }
 
+    /**
+     * Converts a rectangle of the image. The conversion methods of this
+     * class implement this interface.
+     */
+    private interface Conversion {
+        void convert(int top, int left, int bottom, int right);
+    }
+
+    /**
+     * Performs a conversion. In parallel mode, large rectangles are split
+     * into bands of whole scanlines, which are converted in parallel.
+     * This works for all conversions, because each scanline is converted
+     * independently.
+     *
+     * @param conversion the conversion
+     * @param top        the top scanline
+     * @param left       the left x-coordinate
+     * @param bottom     the bottom scanline (inclusive)
+     * @param right      the right x-coordinate (inclusive)
+     */
+    private void convert(Conversion conversion, int top, int left, int bottom, int right) {
+        final int rows = bottom - top + 1;
+        final int bandCount = parallel && rows * (right - left + 1) >= MIN_PARALLEL_PIXELS
+                ? Math.min(rows / MIN_BAND_HEIGHT, ForkJoinPool.getCommonPoolParallelism() * 4)
+                : 1;
+        if (bandCount <= 1) {
+            conversion.convert(top, left, bottom, right);
+            return;
+        }
+        IntStream.range(0, bandCount).parallel().forEach(band ->
+                conversion.convert(top + rows * band / bandCount, left,
+                        top + rows * (band + 1) / bandCount - 1, right));
+    }
+
+    /**
+     * Combines the bits of 8 pixels of a scanline into chunky pixels with
+     * the help of a lookup table.
+     *
+     * @param bitmap         the bitmap data array
+     * @param iBitmap        index of the byte in the first bit-plane
+     * @param bitplaneStride the bitplane stride
+     * @param depth          the number of bit-planes, must be at most 8
+     * @return 8 pixel values, the leftmost pixel is in the most significant
+     * byte
+     */
+    private static long planesToChunky8(byte[] bitmap, int iBitmap, int bitplaneStride, int depth) {
+        long pixels = 0;
+        for (int plane = 0; plane < depth; plane++, iBitmap += bitplaneStride) {
+            pixels |= SPREAD_BITS[bitmap[iBitmap] & 0xff] << plane;
+        }
+        return pixels;
+    }
+
+    /**
+     * Converts the bit-planes of a span of a scanline into pixel values,
+     * 8 pixels at a time.
+     *
+     * @param iScanline index of the scanline in the bitmap data array
+     * @param left      the left x-coordinate
+     * @param right     the right x-coordinate (exclusive)
+     * @param pixels    the output array for the pixel values
+     * @param iPixel    index of the first pixel value in the output array
+     */
+    private void planesToChunkyScanline(int iScanline, int left, int right, byte[] pixels, int iPixel) {
+        final byte[] bitmap = this.bitmap;
+        final int bitplaneStride = getBitplaneStride();
+        final int depth = getDepth();
+        int iBitmap = iScanline + (left >>> 3);
+        int x = left;
+        if ((x & 7) != 0) {
+            // leading pixels up to the next byte boundary
+            long chunky = planesToChunky8(bitmap, iBitmap++, bitplaneStride, depth) << ((x & 7) * 8);
+            for (int end = Math.min(right, (x + 8) & ~7); x < end; x++) {
+                pixels[iPixel++] = (byte) (chunky >>> 56);
+                chunky <<= 8;
+            }
+        }
+        for (; x + 8 <= right; x += 8) {
+            ByteArray.setLongBE(pixels, iPixel, planesToChunky8(bitmap, iBitmap++, bitplaneStride, depth));
+            iPixel += 8;
+        }
+        if (x < right) {
+            long chunky = planesToChunky8(bitmap, iBitmap, bitplaneStride, depth);
+            for (; x < right; x++) {
+                pixels[iPixel++] = (byte) (chunky >>> 56);
+                chunky <<= 8;
+            }
+        }
+    }
+
+    /**
+     * Creates a color lookup table with 24-bit RGB colors from the
+     * IndexColorModel.
+     */
+    private int[] createDirectClut() {
+        IndexColorModel icm = (IndexColorModel) planarColorModel;
+        final int[] clut = new int[icm.getMapSize()];
+        byte[] reds = new byte[clut.length];
+        byte[] greens = new byte[clut.length];
+        byte[] blues = new byte[clut.length];
+        icm.getReds(reds);
+        icm.getGreens(greens);
+        icm.getBlues(blues);
+        for (int i = 0; i < clut.length; i++) {
+            clut[i] = 0xff000000 | (reds[i] & 0xff) << 16 | (greens[i] & 0xff) << 8 | (blues[i] & 0xff);
+        }
+        if (clut.length < (1 << getDepth())) {
+            throw new IndexOutOfBoundsException("Clut must not be smaller than depth");
+        }
+        return clut;
+    }
+
+    /**
+     * Creates a color lookup table with 15-bit RGB colors from the
+     * IndexColorModel.
+     */
+    private short[] create555Clut() {
+        IndexColorModel icm = (IndexColorModel) planarColorModel;
+        final short[] clut = new short[icm.getMapSize()];
+        byte[] reds = new byte[clut.length];
+        byte[] greens = new byte[clut.length];
+        byte[] blues = new byte[clut.length];
+        icm.getReds(reds);
+        icm.getGreens(greens);
+        icm.getBlues(blues);
+        for (int i = 0; i < clut.length; i++) {
+            clut[i] = (short) ((reds[i] & 0xf8) << 7 | (greens[i] & 0xf8) << 2 | (blues[i] & 0xf8) >> 3);
+        }
+        if (clut.length < (1 << getDepth())) {
+            throw new IndexOutOfBoundsException("Clut must not be smaller than depth");
+        }
+        return clut;
+    }
+
+    /**
+     * Converts the planar image data into chunky pixels, 8 pixels at a time.
+     * Same as {@link #indexPlanesToIndexPixels}, but depth must be at most 8.
+     */
+    private void indexPlanesToIndexPixelsKernel(int top, int left, int bottom, int right) {
+        final int scanlineStride = getScanlineStride();
+        final int width = getWidth();
+        for (int y = top; y <= bottom; y++) {
+            planesToChunkyScanline(y * scanlineStride, left, right + 1, bytePixels, y * width + left);
+        }
+    }
+
+    /**
+     * Converts the planar image data into chunky pixels, 8 pixels at a time.
+     * Same as {@link #indexPlanesToDirectPixels}, but depth must be at most 8.
+     */
+    private void indexPlanesToDirectPixelsKernel(int top, int left, int bottom, int right) {
+        final int[] clut = createDirectClut();
+        final int scanlineStride = getScanlineStride();
+        final int width = getWidth();
+        final int count = right - left + 1;
+        final byte[] line = new byte[count];
+        for (int y = top; y <= bottom; y++) {
+            planesToChunkyScanline(y * scanlineStride, left, right + 1, line, 0);
+            for (int i = 0, iPixel = y * width + left; i < count; i++) {
+                intPixels[iPixel++] = clut[line[i] & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Converts the planar image data into chunky pixels, 8 pixels at a time.
+     * Same as {@link #indexPlanesTo555}, but depth must be at most 8.
+     */
+    private void indexPlanesTo555Kernel(int top, int left, int bottom, int right) {
+        final short[] clut = create555Clut();
+        final int scanlineStride = getScanlineStride();
+        final int width = getWidth();
+        final int count = right - left + 1;
+        final byte[] line = new byte[count];
+        for (int y = top; y <= bottom; y++) {
+            planesToChunkyScanline(y * scanlineStride, left, right + 1, line, 0);
+            for (int i = 0, iPixel = y * width + left; i < count; i++) {
+                shortPixels[iPixel++] = clut[line[i] & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Converts the planar image data into chunky pixels, 8 pixels at a time.
+     * Same as {@link #ham6PlanesToDirectPixels}.
+     */
+    private void ham6PlanesToDirectPixelsKernel(int top, int left, int bottom, int right) {
+        final int[] HAMColors = new int[((AmigaHAMColorModel) planarColorModel).getMapSize()];
+        ((AmigaHAMColorModel) planarColorModel).getRGBs(HAMColors);
+        final int scanlineStride = getScanlineStride();
+        final int width = getWidth();
+        final int count = right - left + 1;
+        final byte[] line = new byte[count];
+        for (int y = top; y <= bottom; y++) {
+            planesToChunkyScanline(y * scanlineStride, left, right + 1, line, 0);
+            int iPixel = y * width + left;
+            int lastPixel = left == 0 ? 0xff000000 : intPixels[iPixel - 1];
+            for (int i = 0; i < count; i++) {
+                int pixel = line[i] & 0x0f;
+                switch ((line[i] >>> 4) & 3) {
+                    case 0: // use indexed color
+                        lastPixel = HAMColors[pixel];
+                        break;
+                    case 1: // modify blue
+                        lastPixel = lastPixel & 0xffffff00 | pixel | pixel << 4;
+                        break;
+                    case 2: // modify red
+                        lastPixel = lastPixel & 0xff00ffff | pixel << 16 | pixel << 20;
+                        break;
+                    default: // modify green
+                        lastPixel = lastPixel & 0xffff00ff | pixel << 8 | pixel << 12;
+                        break;
+                }
+                intPixels[iPixel++] = lastPixel;
+            }
+        }
+    }
+
+    /**
+     * Converts the planar image data into chunky pixels, 8 pixels at a time.
+     * Same as {@link #ham8PlanesToDirectPixels}.
+     */
+    private void ham8PlanesToDirectPixelsKernel(int top, int left, int bottom, int right) {
+        final int[] HAMColors = new int[((AmigaHAMColorModel) planarColorModel).getMapSize()];
+        ((AmigaHAMColorModel) planarColorModel).getRGBs(HAMColors);
+        final int scanlineStride = getScanlineStride();
+        final int width = getWidth();
+        final int count = right - left + 1;
+        final byte[] line = new byte[count];
+        for (int y = top; y <= bottom; y++) {
+            planesToChunkyScanline(y * scanlineStride, left, right + 1, line, 0);
+            int iPixel = y * width + left;
+            int lastPixel = left == 0 ? 0xff000000 : intPixels[iPixel - 1];
+            for (int i = 0; i < count; i++) {
+                int pixel = line[i] & 0x3f;
+                switch ((line[i] >>> 6) & 3) {
+                    case 0: // use indexed color
+                        lastPixel = HAMColors[pixel];
+                        break;
+                    case 1: // modify blue
+                        lastPixel = lastPixel & 0xffffff00 | pixel << 2 | pixel >>> 4;
+                        break;
+                    case 2: // modify red
+                        lastPixel = lastPixel & 0xff00ffff | pixel << 18 | (pixel & 0x03) << 16;
+                        break;
+                    default: // modify green
+                        lastPixel = lastPixel & 0xffff00ff | pixel << 10 | (pixel & 0x03) << 8;
+                        break;
+                }
+                intPixels[iPixel++] = lastPixel;
+            }
+        }
+    }
+
     public void setIntPixels(int[] buf) {
         if (buf.length != getWidth() * getHeight()) {
             throw new IllegalArgumentException("Illegal size");
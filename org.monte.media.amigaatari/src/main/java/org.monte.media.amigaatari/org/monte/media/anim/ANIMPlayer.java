@@ -84,6 +84,10 @@ public class ANIMPlayer
      * decoded in its even or odd bitmap buffer.
      */
     private int fetchedEven, fetchedOdd;
+    /**
+     * Snapshots of decoded frames for random access.
+     */
+    private ANIMSnapshotCache snapshots;
     /**
      * Index of the frame currently being displayed.
      */
@@ -369,6 +373,14 @@ public class ANIMPlayer
         return track;
     }
 
+    /**
+     * Returns the snapshot cache, which is used for random access to the
+     * frames. Returns null if the player has not been realized yet.
+     */
+    public ANIMSnapshotCache getSnapshotCache() {
+        return snapshots;
+    }
+
     /**
      * Obtain the display Component for this Player.
      * The display Component is where visual media is rendered.
@@ -511,6 +523,7 @@ public class ANIMPlayer
                 nbPlanes + (masking == ANIMMovieResources.MSK_HAS_MASK ? 1 : 0),
                 cm);
 //bitmapOdd=bitmapEven;
+        snapshots = new ANIMSnapshotCache(track);
         jiffieMillis = 1000f / (float) track.getJiffies();
 
         if (track.getColorCycles().isEmpty()) {
@@ -873,10 +886,12 @@ public class ANIMPlayer
                 frame.decode(bitmap, track);
                 return;
             } else {
+                fetched = snapshots.restore(index, fetched, bitmap);
                 if (fetched > index) {
                     frame = track.getFrame(0);
                     frame.decode(bitmap, track);
                     fetched = 0;
+                    snapshots.store(fetched, bitmap);
                 }
             }
         } else {
@@ -892,18 +907,21 @@ public class ANIMPlayer
                 frame.decode(bitmap, track);
                 return;
             } else {
+                fetched = snapshots.restore(index, fetched, bitmap);
                 if (fetched > index) {
                     frame = track.getFrame(0);
                     frame.decode(bitmap, track);
                     frame = track.getFrame(1);
                     frame.decode(bitmap, track);
                     fetched = 1;
+                    snapshots.store(fetched, bitmap);
                 }
             }
         }
         for (int i = fetched + interleave; i <= index; i += interleave) {
             frame = track.getFrame(i);
             frame.decode(bitmap, track);
+            snapshots.store(i, bitmap);
         }
     }
 
@@ -911,6 +929,17 @@ public class ANIMPlayer
      * Prepare video data for the specified frame index.
      */
     private void prepareVideo(int index) {
+        // The bounds of a delta frame are only valid, while no other
+        // decoder uses the frame.
+        synchronized (snapshots) {
+            decodeVideo(index);
+        }
+    }
+
+    /**
+     * Decodes and converts video data for the specified frame index.
+     */
+    private void decodeVideo(int index) {
         AmigaBitmapImage bitmap;
         int prepared;
         int interleave = track.getInterleave();
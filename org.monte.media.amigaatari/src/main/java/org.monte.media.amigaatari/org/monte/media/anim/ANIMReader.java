@@ -31,6 +31,10 @@ public class ANIMReader {
      * Two bitmaps are needed for double buffering.
      */
     private AmigaBitmapImage bitmapEven, bitmapOdd;
+    /**
+     * Snapshots of decoded frames for random access.
+     */
+    private ANIMSnapshotCache snapshots;
     // ---- END Decoder variables ----
 
     public ANIMReader(File file) throws IOException {
@@ -39,12 +43,14 @@ public class ANIMReader {
             resources = new ANIMMovieResources();
             decoder.produce(resources, 0, true);
         }
+        snapshots = new ANIMSnapshotCache(resources);
     }
 
     public ANIMReader(InputStream in) throws IOException {
         ANIMDecoder decoder = new ANIMDecoder(in);
         resources = new ANIMMovieResources();
         decoder.produce(resources, 0, true);
+        snapshots = new ANIMSnapshotCache(resources);
     }
 
     public void close() throws IOException {
@@ -59,6 +65,26 @@ public class ANIMReader {
         return resources;
     }
 
+    /**
+     * Returns the snapshot cache, which is used for random access to the
+     * frames.
+     */
+    public ANIMSnapshotCache getSnapshotCache() {
+        return snapshots;
+    }
+
+    /**
+     * Sets the snapshot cache, which is used for random access to the
+     * frames. The cache must have been created for the resources of this
+     * reader.
+     */
+    public void setSnapshotCache(ANIMSnapshotCache newValue) {
+        if (newValue == null) {
+            throw new IllegalArgumentException("snapshot cache must not be null");
+        }
+        snapshots = newValue;
+    }
+
     public int getTimeBase() {
         return getResources().getJiffies();
     }
@@ -101,6 +127,12 @@ public class ANIMReader {
             bitmapOdd = createCompatibleBitmap();
             bitmapEven = createCompatibleBitmap();
         }
+        synchronized (snapshots) {
+            return decodeFrame(index);
+        }
+    }
+
+    private AmigaBitmapImage decodeFrame(int index) {
 
         ANIMFrame frame = null;
         int fetched;
@@ -119,10 +151,12 @@ public class ANIMReader {
                 frame.decode(bitmap, resources);
                 return bitmap;
             } else {
+                fetched = snapshots.restore(index, fetched, bitmap);
                 if (fetched > index) {
                     frame = resources.getFrame(0);
                     frame.decode(bitmap, resources);
                     fetched = 0;
+                    snapshots.store(fetched, bitmap);
                 }
             }
         } else {
@@ -138,18 +172,21 @@ public class ANIMReader {
                 frame.decode(bitmap, resources);
                 return bitmap;
             } else {
+                fetched = snapshots.restore(index, fetched, bitmap);
                 if (fetched > index) {
                     frame = resources.getFrame(0);
                     frame.decode(bitmap, resources);
                     frame = resources.getFrame(1);
                     frame.decode(bitmap, resources);
                     fetched = 1;
+                    snapshots.store(fetched, bitmap);
                 }
             }
         }
         for (int i = fetched + interleave; i <= index; i += interleave) {
             frame = resources.getFrame(i);
             frame.decode(bitmap, resources);
+            snapshots.store(i, bitmap);
         }
         return bitmap;
     }
@@ -0,0 +1,245 @@
+/*
+ * @(#)ANIMSnapshotCache.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.anim;
+
+import org.monte.media.amigabitmap.AmigaBitmapImage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Caches snapshots of decoded bitmaps of an ANIM movie, so that any frame can
+ * be reached without decoding all delta frames from the start of the movie.
+ * <p>
+ * A snapshot is taken every {@link #getInterval()} frames. To reach a frame,
+ * a decoder restores the nearest snapshot before the frame, and then applies
+ * at most {@code interval} delta frames. The interval is chosen so that the
+ * snapshots of the entire movie fit into the memory budget. If the movie
+ * grows while it is being loaded, the interval grows as well, and the least
+ * recently used snapshots are evicted.
+ * <p>
+ * If the movie uses an interleave of 2, then each delta frame is decoded over
+ * the frame two frames before it. In this case the snapshots are taken in
+ * pairs, one for the chain of even frames and one for the chain of odd
+ * frames.
+ * <p>
+ * Delta frames update their bounds when they are decoded. Therefore, all
+ * decoders that share the frames of a movie with {@link #prebuild} must
+ * synchronize on this cache while they decode a frame and use its bounds.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class ANIMSnapshotCache {
+    /**
+     * The default memory budget in bytes.
+     */
+    public final static long DEFAULT_MEMORY_BUDGET = 32L << 20;
+    /**
+     * The minimal number of delta frames between two snapshots of the same
+     * chain of frames. Applying a few delta frames is cheaper than copying
+     * a snapshot for every frame.
+     */
+    private final static int MIN_INTERVAL = 8;
+
+    private final ANIMMovieResources resources;
+    private final long memoryBudget;
+    /**
+     * The number of bytes of a snapshot.
+     */
+    private final int snapshotSize;
+    /**
+     * The maximal number of snapshots.
+     */
+    private final int capacity;
+    /**
+     * The snapshots in least recently used order.
+     */
+    private final LinkedHashMap<Integer, byte[]> lru = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            if (size() > capacity) {
+                snapshots.remove(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+    /**
+     * The snapshots ordered by frame index.
+     */
+    private final TreeMap<Integer, byte[]> snapshots = new TreeMap<>();
+
+    /**
+     * Creates a new cache with the default memory budget.
+     *
+     * @param resources the movie
+     */
+    public ANIMSnapshotCache(ANIMMovieResources resources) {
+        this(resources, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param resources    the movie
+     * @param memoryBudget the maximal number of bytes used by the snapshots
+     */
+    public ANIMSnapshotCache(ANIMMovieResources resources, long memoryBudget) {
+        this.resources = resources;
+        this.memoryBudget = memoryBudget;
+        this.snapshotSize = Math.max(1, createCompatibleBitmap().getBitmap().length);
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(0, memoryBudget / snapshotSize));
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the maximal number of snapshots.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the current number of snapshots.
+     */
+    public synchronized int getSnapshotCount() {
+        return snapshots.size();
+    }
+
+    /**
+     * Returns the number of frames between two snapshots of the same chain
+     * of frames. The interval is a multiple of the interleave of the movie.
+     */
+    public int getInterval() {
+        int interleave = resources.getInterleave();
+        int positions = capacity / interleave;
+        if (positions == 0) {
+            return Integer.MAX_VALUE;
+        }
+        int chainLength = (resources.getFrameCount() + interleave - 1) / interleave;
+        int interval = Math.max(MIN_INTERVAL, (chainLength + positions - 1) / positions);
+        return interval * interleave;
+    }
+
+    /**
+     * Returns true if a snapshot is taken at the specified frame.
+     *
+     * @param index the frame index
+     * @return true if a snapshot is taken
+     */
+    public boolean isSnapshotFrame(int index) {
+        int interval = getInterval();
+        return interval != Integer.MAX_VALUE && (index - index % resources.getInterleave()) % interval == 0;
+    }
+
+    /**
+     * Stores a snapshot of the bitmap, if a snapshot is taken at the
+     * specified frame, and if the cache does not already contain it.
+     *
+     * @param index  the index of the frame that has been decoded into the
+     *               bitmap
+     * @param bitmap the bitmap
+     */
+    public synchronized void store(int index, AmigaBitmapImage bitmap) {
+        if (isSnapshotFrame(index) && !snapshots.containsKey(index)) {
+            byte[] snapshot = bitmap.getBitmap().clone();
+            snapshots.put(index, snapshot);
+            lru.put(index, snapshot);
+        }
+    }
+
+    /**
+     * Restores the nearest snapshot at or before the specified frame into the
+     * bitmap, if the snapshot is closer to the frame than the frame that has
+     * already been decoded into the bitmap.
+     *
+     * @param index   the index of the frame that shall be decoded
+     * @param fetched the index of the frame that has already been decoded
+     *                into the bitmap, or {@code Integer.MAX_VALUE} if the
+     *                bitmap is empty
+     * @param bitmap  the bitmap
+     * @return the index of the frame that is now in the bitmap
+     */
+    public synchronized int restore(int index, int fetched, AmigaBitmapImage bitmap) {
+        int interleave = resources.getInterleave();
+        for (Integer key = snapshots.floorKey(index); key != null; key = snapshots.lowerKey(key)) {
+            if ((index - key) % interleave == 0) {
+                if (fetched > index || key > fetched) {
+                    byte[] snapshot = lru.get(key);
+                    System.arraycopy(snapshot, 0, bitmap.getBitmap(), 0, snapshot.length);
+                    return key;
+                }
+                break;
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * Removes all snapshots.
+     */
+    public synchronized void clear() {
+        snapshots.clear();
+        lru.clear();
+    }
+
+    /**
+     * Decodes the movie in the background and takes all snapshots.
+     * <p>
+     * The decoder synchronizes on this cache for each frame that it decodes.
+     * Cancelling the returned future stops the decoder.
+     *
+     * @param executor the executor that runs the decoder
+     * @return a future that completes when all snapshots have been taken
+     */
+    public CompletableFuture<Void> prebuild(Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                int interleave = resources.getInterleave();
+                for (int chain = 0; chain < interleave; chain++) {
+                    AmigaBitmapImage bitmap = createCompatibleBitmap();
+                    for (int i = 0; i <= chain && i < resources.getFrameCount(); i++) {
+                        synchronized (this) {
+                            resources.getFrame(i).decode(bitmap, resources);
+                        }
+                    }
+                    store(chain, bitmap);
+                    for (int i = chain + interleave; i < resources.getFrameCount(); i += interleave) {
+                        if (future.isDone()) {
+                            return;
+                        }
+                        synchronized (this) {
+                            resources.getFrame(i).decode(bitmap, resources);
+                            store(i, bitmap);
+                        }
+                    }
+                }
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private AmigaBitmapImage createCompatibleBitmap() {
+        return new AmigaBitmapImage(
+                resources.getWidth(),
+                resources.getHeight(),
+                resources.getNbPlanes() + (resources.getMasking() == ANIMMovieResources.MSK_HAS_MASK ? 1 : 0),
+                resources.getFrameCount() > 0 ? resources.getFrame(0).getColorModel() : null);
+    }
+}
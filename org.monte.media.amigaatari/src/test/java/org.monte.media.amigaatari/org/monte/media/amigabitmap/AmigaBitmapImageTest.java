@@ -0,0 +1,276 @@
+/*
+ * @(#)AmigaBitmapImageTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.amigabitmap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AmigaBitmapImageTest {
+    /**
+     * Widths and heights of the test images. The widths include widths that
+     * are not a multiple of 8. The last size is large enough for a parallel
+     * conversion.
+     */
+    private static final int[][] SIZES = {{16, 4}, {13, 5}, {1, 3}, {70, 9}, {333, 130}};
+
+    /**
+     * Computes the expected chunky pixels of a bitmap.
+     */
+    private interface Oracle {
+        int[] expectedPixels(AmigaBitmapImage img);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 8})
+    public void shouldConvertIndexPlanesToIndexPixels(int depth) {
+        checkConversions(depth, createIndexColorModel(depth), img -> {
+        }, AmigaBitmapImageTest::indexPixels);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 8})
+    public void shouldConvertIndexPlanesToDirectPixels(int depth) {
+        IndexColorModel icm = createIndexColorModel(depth);
+        checkConversions(depth, icm, img -> img.setEnforceDirectColors(true), img -> {
+            int[] pixels = indexPixels(img);
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = 0xff000000 | icm.getRGB(pixels[i]);
+            }
+            return pixels;
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 8})
+    public void shouldConvertIndexPlanesTo555Pixels(int depth) {
+        IndexColorModel icm = createIndexColorModel(depth);
+        DirectColorModel dcm = new DirectColorModel(16, 0x7c00, 0x3e0, 0x1f);
+        checkConversions(depth, icm, img -> img.setPreferredChunkyColorModel(dcm), img -> {
+            int[] pixels = indexPixels(img);
+            for (int i = 0; i < pixels.length; i++) {
+                int v = pixels[i];
+                pixels[i] = (icm.getRed(v) & 0xf8) << 7 | (icm.getGreen(v) & 0xf8) << 2 | (icm.getBlue(v) & 0xf8) >> 3;
+            }
+            return pixels;
+        });
+    }
+
+    @Test
+    public void shouldConvertHam6PlanesToDirectPixels() {
+        checkConversions(6, createHAMColorModel(AmigaHAMColorModel.HAM6, 16), img -> {
+        }, img -> hamPixels(img, 4));
+    }
+
+    @Test
+    public void shouldConvertHam8PlanesToDirectPixels() {
+        checkConversions(8, createHAMColorModel(AmigaHAMColorModel.HAM8, 64), img -> {
+        }, img -> hamPixels(img, 6));
+    }
+
+    @Test
+    public void shouldConvertChunkyPixelsToPlanesAndBack() {
+        IndexColorModel icm = createIndexColorModel(8);
+        for (int[] size : SIZES) {
+            for (boolean parallel : new boolean[]{false, true}) {
+                int width = size[0], height = size[1];
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, icm);
+                byte[] chunky = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                new Random(width * 31L + height).nextBytes(chunky);
+
+                AmigaBitmapImage img = new AmigaBitmapImage(width, height, 8, icm);
+                img.setParallel(parallel);
+                img.convertFromChunky(image);
+                assertArrayEquals(toInts(chunky), indexPixels(img), "planes " + width + "x" + height + " parallel=" + parallel);
+
+                img.flushPixels();
+                img.convertToChunky();
+                assertArrayEquals(chunky, img.getBytePixels(), "pixels " + width + "x" + height + " parallel=" + parallel);
+            }
+        }
+    }
+
+    /**
+     * Converts random bit-planes with all sizes, with interleaved and
+     * contiguous bit-planes, and with parallel conversion on and off.
+     * <p>
+     * The bitmap is converted with the lookup table kernel, completely and
+     * from x-coordinates inside the image, and then with the per-pixel
+     * routines. All results must match the expected pixels.
+     */
+    private static void checkConversions(int depth, ColorModel cm, Consumer<AmigaBitmapImage> setup, Oracle oracle) {
+        for (int[] size : SIZES) {
+            for (boolean interleaved : new boolean[]{true, false}) {
+                for (boolean parallel : new boolean[]{false, true}) {
+                    int width = size[0], height = size[1];
+                    String message = "depth=" + depth + " " + width + "x" + height
+                            + " interleaved=" + interleaved + " parallel=" + parallel;
+                    AmigaBitmapImage img = new AmigaBitmapImage(width, height, depth, cm, interleaved);
+                    img.setParallel(parallel);
+                    setup.accept(img);
+                    new Random(depth * 1009L + width * 31L + height).nextBytes(img.getBitmap());
+                    int[] expected = oracle.expectedPixels(img);
+
+                    img.convertToChunky();
+                    assertArrayEquals(expected, pixels(img), message + " kernel");
+
+                    for (int left : new int[]{3, 8, 11}) {
+                        if (left < width) {
+                            scramble(img, left);
+                            img.convertToChunky(0, left, height - 1, width - 1);
+                            assertArrayEquals(expected, pixels(img), message + " kernel left=" + left);
+                        }
+                    }
+
+                    // The per-pixel routines only support rectangles, which
+                    // start at a byte boundary.
+                    img.lookupTableKernel = false;
+                    for (int left : new int[]{0, 8}) {
+                        if (left < width) {
+                            scramble(img, left);
+                            img.convertToChunky(0, left, height - 1, width - 1);
+                            assertArrayEquals(expected, pixels(img), message + " per-pixel left=" + left);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the pixel values directly from the bits of the bit-planes.
+     */
+    private static int[] indexPixels(AmigaBitmapImage img) {
+        byte[] bitmap = img.getBitmap();
+        int width = img.getWidth();
+        int[] pixels = new int[width * img.getHeight()];
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int v = 0;
+                for (int plane = 0; plane < img.getDepth(); plane++) {
+                    int b = bitmap[y * img.getScanlineStride() + plane * img.getBitplaneStride() + x / 8];
+                    v |= ((b >>> (7 - x % 8)) & 1) << plane;
+                }
+                pixels[y * width + x] = v;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Computes the colors of a HAM image. The upper two bits of a pixel
+     * value select whether the lower bits are a color index, or modify the
+     * blue, red or green component of the previous pixel.
+     * <p>
+     * HAM8 fills the lower 2 bits of a blue component with its upper bits,
+     * and of a red or green component with its lower bits.
+     */
+    private static int[] hamPixels(AmigaBitmapImage img, int dataBits) {
+        int[] colors = new int[((AmigaHAMColorModel) img.getPlanarColorModel()).getMapSize()];
+        ((AmigaHAMColorModel) img.getPlanarColorModel()).getRGBs(colors);
+        int[] pixels = indexPixels(img);
+        int width = img.getWidth();
+        for (int y = 0; y < img.getHeight(); y++) {
+            int last = 0xff000000;
+            for (int x = 0; x < width; x++) {
+                int v = pixels[y * width + x];
+                int data = v & ((1 << dataBits) - 1);
+                int blue = dataBits == 4 ? data << 4 | data : data << 2 | data >>> 4;
+                int redGreen = dataBits == 4 ? data << 4 | data : data << 2 | data & 3;
+                switch (v >>> dataBits) {
+                    case 0:
+                        last = colors[data];
+                        break;
+                    case 1:
+                        last = last & 0xffffff00 | blue;
+                        break;
+                    case 2:
+                        last = last & 0xff00ffff | redGreen << 16;
+                        break;
+                    default:
+                        last = last & 0xffff00ff | redGreen << 8;
+                        break;
+                }
+                pixels[y * width + x] = last;
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] pixels(AmigaBitmapImage img) {
+        if (img.getBytePixels() != null) {
+            return toInts(img.getBytePixels());
+        }
+        if (img.getShortPixels() != null) {
+            short[] s = img.getShortPixels();
+            int[] pixels = new int[s.length];
+            for (int i = 0; i < s.length; i++) {
+                pixels[i] = s[i] & 0xffff;
+            }
+            return pixels;
+        }
+        return img.getIntPixels().clone();
+    }
+
+    /**
+     * Overwrites the chunky pixels from the specified x-coordinate to the
+     * right edge.
+     */
+    private static void scramble(AmigaBitmapImage img, int left) {
+        int width = img.getWidth();
+        for (int y = 0; y < img.getHeight(); y++) {
+            int from = y * width + left, to = (y + 1) * width;
+            if (img.getBytePixels() != null) {
+                Arrays.fill(img.getBytePixels(), from, to, (byte) 0x55);
+            } else if (img.getShortPixels() != null) {
+                Arrays.fill(img.getShortPixels(), from, to, (short) 0x5555);
+            } else {
+                Arrays.fill(img.getIntPixels(), from, to, 0x55555555);
+            }
+        }
+    }
+
+    private static int[] toInts(byte[] b) {
+        int[] a = new int[b.length];
+        for (int i = 0; i < b.length; i++) {
+            a[i] = b[i] & 0xff;
+        }
+        return a;
+    }
+
+    private static IndexColorModel createIndexColorModel(int depth) {
+        int size = 1 << depth;
+        byte[] r = new byte[size], g = new byte[size], b = new byte[size];
+        Random random = new Random(depth);
+        random.nextBytes(r);
+        random.nextBytes(g);
+        random.nextBytes(b);
+        return new IndexColorModel(8, size, r, g, b);
+    }
+
+    private static AmigaHAMColorModel createHAMColorModel(int hamType, int size) {
+        int[] rgb = new int[size];
+        Random random = new Random(hamType);
+        for (int i = 0; i < size; i++) {
+            rgb[i] = random.nextInt() & 0xffffff;
+        }
+        AmigaHAMColorModel cm = new AmigaHAMColorModel(hamType, size, rgb, false);
+        assertEquals(hamType, cm.getHAMType());
+        return cm;
+    }
+}
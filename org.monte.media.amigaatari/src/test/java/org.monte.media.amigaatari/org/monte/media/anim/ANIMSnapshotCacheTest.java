@@ -0,0 +1,233 @@
+/*
+ * @(#)ANIMSnapshotCacheTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.anim;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.monte.media.amigabitmap.AmigaBitmapImage;
+
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ANIMSnapshotCacheTest {
+    private static final int WIDTH = 32, HEIGHT = 16, DEPTH = 4, IMAGES = 40;
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    public void shouldSeekLikeSequentialDecoding(int interleave) throws IOException {
+        File file = tempDir.resolve("movie.anim").toFile();
+        List<byte[]> expected = writeMovie(file);
+        List<byte[]> sequential = readSequentially(file, interleave);
+        // with an interleave of 1, the first wrapup frame is a frame of the movie
+        assertEquals(expected.size() + 2 - interleave, sequential.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), sequential.get(i), "sequential frame " + i);
+        }
+
+        ANIMReader reader = openReader(file, interleave);
+        ANIMSnapshotCache cache = reader.getSnapshotCache();
+        assertEquals(interleave, reader.getResources().getInterleave());
+        assertEquals(8 * interleave, cache.getInterval());
+
+        AmigaBitmapImage image = reader.createCompatibleBitmap();
+        for (int i = reader.getFrameCount() - interleave; i < reader.getFrameCount(); i++) {
+            // decodes all frames of each chain
+            reader.readFrame(i, image);
+        }
+        int snapshotFrames = 0;
+        for (int i = 0; i < reader.getFrameCount(); i++) {
+            snapshotFrames += cache.isSnapshotFrame(i) ? 1 : 0;
+        }
+        assertEquals(snapshotFrames, cache.getSnapshotCount());
+        checkRandomAccess(reader, sequential, interleave);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    public void shouldSeekWithSmallMemoryBudget(int interleave) throws IOException {
+        File file = tempDir.resolve("movie.anim").toFile();
+        writeMovie(file);
+        List<byte[]> sequential = readSequentially(file, interleave);
+
+        ANIMReader reader = openReader(file, interleave);
+        int snapshotSize = reader.createCompatibleBitmap().getBitmap().length;
+        ANIMSnapshotCache cache = new ANIMSnapshotCache(reader.getResources(), 2L * interleave * snapshotSize);
+        reader.setSnapshotCache(cache);
+        assertEquals(2 * interleave, cache.getCapacity());
+        assertTrue(cache.getInterval() > 8 * interleave);
+
+        checkRandomAccess(reader, sequential, interleave);
+        assertEquals(cache.getCapacity(), cache.getSnapshotCount());
+    }
+
+    /**
+     * Adds the frames of a movie one by one, as a player does while it
+     * loads a movie. The interval grows with the movie, and the cache
+     * must evict snapshots to stay within its memory budget.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    public void shouldEvictSnapshotsWhenMovieGrows(int interleave) throws IOException {
+        File file = tempDir.resolve("movie.anim").toFile();
+        writeMovie(file);
+        List<byte[]> sequential = readSequentially(file, interleave);
+        ANIMMovieResources movie = openReader(file, interleave).getResources();
+
+        ANIMMovieResources loading = new ANIMMovieResources();
+        loading.setWidth(movie.getWidth());
+        loading.setHeight(movie.getHeight());
+        loading.setNbPlanes(movie.getNbPlanes());
+        loading.setMasking(movie.getMasking());
+        loading.setPlayWrapupFrames(true);
+        loading.addFrame(movie.getFrame(0));
+        int snapshotSize = new AmigaBitmapImage(WIDTH, HEIGHT, DEPTH, createColorModel()).getBitmap().length;
+        ANIMSnapshotCache cache = new ANIMSnapshotCache(loading, 3L * interleave * snapshotSize);
+        assertEquals(8 * interleave, cache.getInterval());
+
+        AmigaBitmapImage[] chains = new AmigaBitmapImage[interleave];
+        for (int i = 0; i < sequential.size(); i++) {
+            if (i > 0) {
+                loading.addFrame(movie.getFrame(i));
+            }
+            AmigaBitmapImage bitmap = chains[i % interleave];
+            if (bitmap == null) {
+                bitmap = chains[i % interleave] = new AmigaBitmapImage(WIDTH, HEIGHT, DEPTH, createColorModel());
+                for (int j = 0; j < i; j++) {
+                    movie.getFrame(j).decode(bitmap, loading);
+                }
+            }
+            movie.getFrame(i).decode(bitmap, loading);
+            cache.store(i, bitmap);
+            assertTrue(cache.getSnapshotCount() <= cache.getCapacity(), "frame " + i);
+        }
+        assertTrue(cache.getInterval() > 8 * interleave);
+        assertEquals(cache.getCapacity(), cache.getSnapshotCount());
+
+        for (int index = sequential.size() - 1; index >= 0; index--) {
+            AmigaBitmapImage bitmap = new AmigaBitmapImage(WIDTH, HEIGHT, DEPTH, createColorModel());
+            int fetched = cache.restore(index, Integer.MAX_VALUE, bitmap);
+            if (fetched > index) {
+                fetched = index % interleave;
+                for (int j = 0; j <= fetched; j++) {
+                    movie.getFrame(j).decode(bitmap, loading);
+                }
+            }
+            for (int i = fetched + interleave; i <= index; i += interleave) {
+                movie.getFrame(i).decode(bitmap, loading);
+            }
+            assertArrayEquals(sequential.get(index), bitmap.getBitmap(), "frame " + index);
+        }
+    }
+
+    /**
+     * Reads the frames of the reader in random order, and backwards, and
+     * compares them with the sequentially decoded frames.
+     */
+    private static void checkRandomAccess(ANIMReader reader, List<byte[]> sequential, int interleave) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < sequential.size(); i++) {
+            indices.add(i);
+        }
+        Collections.shuffle(indices, new Random(interleave));
+        for (int i = sequential.size() - 1; i >= 0; i--) {
+            indices.add(i);
+        }
+
+        AmigaBitmapImage image = reader.createCompatibleBitmap();
+        for (int index : indices) {
+            reader.readFrame(index, image);
+            assertArrayEquals(sequential.get(index), image.getBitmap(), "frame " + index + " interleave=" + interleave);
+            assertTrue(reader.getSnapshotCache().getSnapshotCount() <= reader.getSnapshotCache().getCapacity());
+        }
+    }
+
+    /**
+     * Reads all frames from the first to the last frame, with a cache that
+     * does not take snapshots.
+     */
+    private static List<byte[]> readSequentially(File file, int interleave) throws IOException {
+        ANIMReader reader = openReader(file, interleave);
+        reader.setSnapshotCache(new ANIMSnapshotCache(reader.getResources(), 0));
+        List<byte[]> frames = new ArrayList<>();
+        AmigaBitmapImage image = reader.createCompatibleBitmap();
+        for (int i = 0; i < reader.getFrameCount(); i++) {
+            reader.readFrame(i, image);
+            frames.add(image.getBitmap().clone());
+        }
+        assertEquals(0, reader.getSnapshotCache().getSnapshotCount());
+        return frames;
+    }
+
+    /**
+     * Opens the movie. {@link ANIMOutputStream} always writes deltas with an
+     * interleave of 2. Each image of the movie is written twice, therefore
+     * the deltas can be decoded with an interleave of 1 as well.
+     */
+    private static ANIMReader openReader(File file, int interleave) throws IOException {
+        ANIMReader reader = new ANIMReader(file);
+        ANIMMovieResources resources = reader.getResources();
+        if (interleave == 1) {
+            for (int i = 0, n = reader.getFrameCount() + 2; i < n; i++) {
+                resources.getFrame(i).setInterleave(1);
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Writes a movie with random changes from image to image. Each image is
+     * written twice.
+     *
+     * @return the bitmaps of the frames
+     */
+    private static List<byte[]> writeMovie(File file) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        AmigaBitmapImage img = new AmigaBitmapImage(WIDTH, HEIGHT, DEPTH, createColorModel());
+        Random random = new Random(WIDTH * 31L + HEIGHT);
+        random.nextBytes(img.getBitmap());
+        ANIMOutputStream out = new ANIMOutputStream(file);
+        try {
+            for (int i = 0; i < IMAGES; i++) {
+                for (int j = 0; j < 2; j++) {
+                    out.writeFrame(img, 1);
+                    frames.add(img.getBitmap().clone());
+                }
+                byte[] bitmap = img.getBitmap();
+                for (int j = random.nextInt(16); j >= 0; j--) {
+                    bitmap[random.nextInt(bitmap.length)] = (byte) random.nextInt();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return frames;
+    }
+
+    private static IndexColorModel createColorModel() {
+        int size = 1 << DEPTH;
+        byte[] r = new byte[size], g = new byte[size], b = new byte[size];
+        for (int i = 0; i < size; i++) {
+            r[i] = (byte) (i * 17);
+            g[i] = (byte) (255 - i * 17);
+            b[i] = (byte) (i * 5);
+        }
+        return new IndexColorModel(8, size, r, g, b);
+    }
+}
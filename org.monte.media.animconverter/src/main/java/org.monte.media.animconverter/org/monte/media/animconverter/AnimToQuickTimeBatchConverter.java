@@ -0,0 +1,428 @@
+/*
+ * @(#)AnimToQuickTimeBatchConverter.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.animconverter;
+
+import org.monte.media.anim.ANIMDemultiplexer;
+import org.monte.media.anim.ANIMMovieResources;
+import org.monte.media.quicktime.QuickTimeMultiplexer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many Amiga IFF Cell Animation files into QuickTime movie files
+ * concurrently.
+ * <p>
+ * The converter accepts a list of ANIM files and directories. Directories are
+ * searched recursively for ANIM files. The files are converted by a bounded
+ * pool of worker threads. Each file is converted in a pipeline: the worker
+ * thread decodes the delta frames and converts the planar bitmaps into
+ * images, while a pool of encoder threads compresses the images into PNG
+ * samples, which are written in order into the QuickTime file.
+ * <p>
+ * A movie is first written into a file with the suffix ".part", and then
+ * renamed. Files that already have a complete output file are skipped.
+ * Therefore, an interrupted batch can be resumed by running it again.
+ * <p>
+ * Input files in the same directory, which only differ in their extension,
+ * have the same output file. Only the first of them is converted, the
+ * others fail.
+ * <p>
+ * Zip archives are not supported in batch mode, use
+ * {@link AnimToQuickTimeConverter} for them.
+ *
+ * @author Werner Randelshofer
+ */
+public class AnimToQuickTimeBatchConverter {
+    /**
+     * The status of a conversion.
+     */
+    public enum Status {
+        /**
+         * The file has been converted.
+         */
+        CONVERTED,
+        /**
+         * The file has been skipped, because its output file exists, or
+         * because it can not be converted into a QuickTime movie.
+         */
+        SKIPPED,
+        /**
+         * The conversion failed.
+         */
+        FAILED
+    }
+
+    /**
+     * The result of the conversion of a single file.
+     */
+    public static class Result {
+        private final Path input;
+        private final Path output;
+        private final Status status;
+        private final String message;
+        private final int frameCount;
+        private final long inputBytes;
+        private final long outputBytes;
+        private final long elapsedNanos;
+        private final Throwable exception;
+
+        public Result(Path input, Path output, Status status, String message, int frameCount,
+                      long inputBytes, long outputBytes, long elapsedNanos, Throwable exception) {
+            this.input = input;
+            this.output = output;
+            this.status = status;
+            this.message = message;
+            this.frameCount = frameCount;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+            this.elapsedNanos = elapsedNanos;
+            this.exception = exception;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns a human readable description of the reason why a file has
+         * been skipped or why the conversion failed.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the number of video frames that have been written.
+         */
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        public long getInputBytes() {
+            return inputBytes;
+        }
+
+        public long getOutputBytes() {
+            return outputBytes;
+        }
+
+        /**
+         * Returns the time in nanoseconds that was needed for the conversion.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the number of converted frames per second.
+         */
+        public double getFramesPerSecond() {
+            return elapsedNanos == 0 ? 0 : frameCount * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the number of bytes read from the input file per second.
+         */
+        public double getInputBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : inputBytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns the exception that caused the conversion to fail, or null.
+         */
+        public Throwable getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            switch (status) {
+                case CONVERTED:
+                    return String.format("%s: %s -> %s, %d frames in %.2f s, %.1f frames/s, %.1f KiB/s",
+                            status, input, output, frameCount, elapsedNanos / 1e9,
+                            getFramesPerSecond(), getInputBytesPerSecond() / 1024);
+                default:
+                    return status + ": " + input + ", " + message;
+            }
+        }
+    }
+
+    /**
+     * A file that shall be converted.
+     */
+    private static class Job {
+        final Path input;
+        final Path output;
+        /**
+         * The input file of an earlier job with the same output file, or
+         * null.
+         */
+        final Path collision;
+
+        Job(Path input, Path output, Path collision) {
+            this.input = input;
+            this.output = output;
+            this.collision = collision;
+        }
+    }
+
+    private final static String PART_SUFFIX = ".part";
+    private final static AtomicInteger threadNumber = new AtomicInteger();
+
+    private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private Path outputDirectory;
+    private Integer frameDuration;
+    private boolean swapLeftRightChannels;
+    private Consumer<Result> listener;
+
+    /**
+     * Returns the number of files that are converted concurrently.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of files that are converted concurrently.
+     * <p>
+     * The default value is half the number of available processors.
+     *
+     * @param newValue the number of worker threads, must be greater 0
+     */
+    public void setThreads(int newValue) {
+        if (newValue < 1) {
+            throw new IllegalArgumentException("threads must be greater 0:" + newValue);
+        }
+        this.threads = newValue;
+    }
+
+    public Path getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * Sets the directory into which the QuickTime files are written. The
+     * directory structure of the input directories is reproduced in the
+     * output directory.
+     * <p>
+     * If this value is null, then the QuickTime file is written next to its
+     * ANIM file. This is the default.
+     *
+     * @param newValue the output directory or null
+     */
+    public void setOutputDirectory(Path newValue) {
+        this.outputDirectory = newValue;
+    }
+
+    /**
+     * Sets the duration of a frame in jiffies. Overrides the frame duration
+     * of the ANIM files if the value is non-null.
+     */
+    public void setFrameDuration(Integer frameDuration) {
+        this.frameDuration = frameDuration;
+    }
+
+    public void setSwapLeftRightChannels(boolean value) {
+        this.swapLeftRightChannels = value;
+    }
+
+    /**
+     * Sets a listener, which is notified when the conversion of a file has
+     * finished. The listener is called on the thread that invoked
+     * {@link #convert}.
+     *
+     * @param listener the listener or null
+     */
+    public void setListener(Consumer<Result> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Converts the specified ANIM files and all ANIM files in the specified
+     * directories.
+     *
+     * @param inputs ANIM files and directories
+     * @return the results in the order of the input files
+     * @throws IOException if a directory can not be searched, or if the
+     *                     current thread is interrupted
+     */
+    public List<Result> convert(List<Path> inputs) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        Map<Path, Path> outputs = new HashMap<>();
+        for (Path input : inputs) {
+            if (!Files.exists(input)) {
+                throw new IOException("Input file does not exist: " + input);
+            }
+            if (Files.isDirectory(input)) {
+                List<Path> files;
+                try (Stream<Path> stream = Files.walk(input)) {
+                    files = stream.filter(Files::isRegularFile)
+                            .filter(f -> !f.getFileName().toString().endsWith(PART_SUFFIX))
+                            .sorted()
+                            .filter(AnimToQuickTimeConverter::isANIM)
+                            .collect(Collectors.toList());
+                }
+                for (Path f : files) {
+                    jobs.add(createJob(f, getOutputPath(input, f), outputs));
+                }
+            } else {
+                jobs.add(createJob(input, getOutputPath(input.getParent(), input), outputs));
+            }
+        }
+
+        // The files are converted concurrently, the PNG samples of each
+        // file are encoded concurrently.
+        int workers = Math.min(threads, Math.max(1, jobs.size()));
+        int encodingThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "AnimToQuickTimeBatchConverter-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            List<Future<Result>> futures = new ArrayList<>();
+            int submitted = 0;
+            for (Job job : jobs) {
+                if (job.collision != null) {
+                    Result result = new Result(job.input, job.output, Status.FAILED,
+                            "output file is also the output file of " + job.collision, 0, 0, 0, 0, null);
+                    if (listener != null) {
+                        listener.accept(result);
+                    }
+                    futures.add(CompletableFuture.completedFuture(result));
+                } else {
+                    futures.add(completion.submit(() -> convertFile(job.input, job.output, encodingThreads)));
+                    submitted++;
+                }
+            }
+            for (int i = 0; i < submitted; i++) {
+                Result result = completion.take().get();
+                if (listener != null) {
+                    listener.accept(result);
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> f : futures) {
+                results.add(f.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch conversion interrupted.");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch conversion failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a job. Inputs in the same directory that only differ in their
+     * extension, for example "a.anim" and "a.iff", have the same output
+     * file. Only the first of them is converted, because concurrent
+     * conversions would overwrite each other's output file.
+     *
+     * @param outputs maps the output files of the jobs to their input files
+     */
+    private static Job createJob(Path input, Path output, Map<Path, Path> outputs) {
+        Path collision = outputs.putIfAbsent(output.toAbsolutePath().normalize(), input);
+        return new Job(input, output, collision);
+    }
+
+    private Path getOutputPath(Path root, Path file) {
+        String name = AnimToQuickTimeConverter.getFilenameWithoutExtension(file.getFileName().toString()) + ".mov";
+        Path parent = file.toAbsolutePath().getParent();
+        if (outputDirectory == null) {
+            return parent.resolve(name);
+        }
+        Path relative = root == null ? null : root.toAbsolutePath().relativize(parent);
+        return (relative == null ? outputDirectory : outputDirectory.resolve(relative)).resolve(name);
+    }
+
+    /**
+     * Converts a single file. Never throws an exception, failures are
+     * reported in the result.
+     */
+    private Result convertFile(Path input, Path output, int encodingThreads) {
+        long start = System.nanoTime();
+        if (Files.exists(output)) {
+            return new Result(input, output, Status.SKIPPED, "output file exists", 0, 0, 0, 0, null);
+        }
+        Path part = output.resolveSibling(output.getFileName() + PART_SUFFIX);
+        try {
+            long inputBytes = Files.size(input);
+            ANIMDemultiplexer demux = new ANIMDemultiplexer(input.toFile());
+            ANIMMovieResources res = demux.getResources();
+            if (!res.getColorCycles().isEmpty()) {
+                return new Result(input, output, Status.SKIPPED, "has color cycles", 0, inputBytes, 0,
+                        System.nanoTime() - start, null);
+            }
+            if (frameDuration != null && frameDuration > 0) {
+                for (int i = 0, n = res.getFrameCount(); i < n; i++) {
+                    res.getFrame(i).setRelTime(frameDuration);
+                }
+            }
+            demux.setSwapLeftRightChannels(swapLeftRightChannels);
+
+            Files.createDirectories(part.getParent());
+            Files.deleteIfExists(part);
+            int frameCount;
+            QuickTimeMultiplexer mux = new QuickTimeMultiplexer(part.toFile());
+            try {
+                mux.setMovieTimeScale(demux.getTimeBase());
+                mux.setEncodingThreads(encodingThreads);
+                frameCount = AnimToQuickTimeConverter.writeMovie(demux, mux, false);
+                mux.close();
+            } catch (IOException | RuntimeException e) {
+                try {
+                    mux.close();
+                } catch (IOException | RuntimeException e2) {
+                    e.addSuppressed(e2);
+                }
+                Files.deleteIfExists(part);
+                throw e;
+            }
+            try {
+                Files.move(part, output, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part, output);
+            }
+            return new Result(input, output, Status.CONVERTED, null, frameCount, inputBytes, Files.size(output),
+                    System.nanoTime() - start, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(input, output, Status.FAILED, e.toString(), 0, 0, 0,
+                    System.nanoTime() - start, e);
+        }
+    }
+}
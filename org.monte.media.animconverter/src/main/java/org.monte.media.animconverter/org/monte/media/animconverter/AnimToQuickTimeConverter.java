@@ -217,35 +217,56 @@ public class AnimToQuickTimeConverter {
             return;
         }
 
+        writeMovie(demux, mux, true);
+    }
 
+    /**
+     * Writes the video and audio tracks of the demultiplexer into the
+     * multiplexer, and finishes the multiplexer. The audio track is kept one
+     * buffer ahead of the video track.
+     * <p>
+     * The planar bitmaps of the video track are converted into images on the
+     * current thread. The images are encoded into PNG samples on the current
+     * thread if {@code encodeVideo} is true, otherwise the multiplexer
+     * encodes them on its encoder threads.
+     *
+     * @param demux       the input
+     * @param mux         the output
+     * @param encodeVideo whether the PNG samples are encoded on the current
+     *                    thread
+     * @return the number of video frames
+     * @throws IOException on io exception
+     */
+    static int writeMovie(ANIMDemultiplexer demux, QuickTimeMultiplexer mux, boolean encodeVideo) throws IOException {
         // Create the tracks
         Track videoTrack = null, audioTrack = null;
-        Codec videoCodecChain = null;
+        Codec videoCodec = null;
         int videoTrackId = -1;
         int audioTrackId = -1;
         for (Track track : demux.getTracks()) {
             switch (track.getFormat().get(FormatKeys.MediaTypeKey)) {
-                case VIDEO: {
-                    videoTrack = track;
-                    Format inputVideoFormat = track.getFormat();
-                    AmigaBitmapCodec amigaBitmapCodec = new AmigaBitmapCodec();
-                    PNGCodec pngCodec = new PNGCodec();
-                    pngCodec.setOutputFormat(
-                            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_QUICKTIME,
-                                    EncodingKey, ENCODING_QUICKTIME_PNG, DataClassKey, byte[].class
-                            )
-                                    .append(inputVideoFormat));
-                    amigaBitmapCodec.setOutputFormat(new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
-                            EncodingKey, ENCODING_BUFFERED_IMAGE)
-                            .append(inputVideoFormat));
-
-
-                    videoCodecChain = CodecChain.createCodecChain(
-                            amigaBitmapCodec,
-                            pngCodec);
-                    videoTrackId = mux.addTrack(videoCodecChain.getOutputFormat());
-                }
-                break;
+                case VIDEO:
+                    if (videoTrackId == -1) {
+                        videoTrack = track;
+                        Format inputVideoFormat = track.getFormat();
+                        Format pngFormat = new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_QUICKTIME,
+                                EncodingKey, ENCODING_QUICKTIME_PNG, DataClassKey, byte[].class)
+                                .append(inputVideoFormat);
+                        AmigaBitmapCodec amigaBitmapCodec = new AmigaBitmapCodec();
+                        amigaBitmapCodec.setOutputFormat(new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+                                EncodingKey, ENCODING_BUFFERED_IMAGE)
+                                .append(inputVideoFormat));
+                        if (encodeVideo) {
+                            PNGCodec pngCodec = new PNGCodec();
+                            pngCodec.setOutputFormat(pngFormat);
+                            videoCodec = CodecChain.createCodecChain(amigaBitmapCodec, pngCodec);
+                            videoTrackId = mux.addTrack(videoCodec.getOutputFormat());
+                        } else {
+                            videoCodec = amigaBitmapCodec;
+                            videoTrackId = mux.addTrack(pngFormat);
+                        }
+                    }
+                    break;
                 case AUDIO:
                     if (audioTrackId == -1) {
                         audioTrack = track;
@@ -259,44 +280,39 @@ public class AnimToQuickTimeConverter {
         Buffer videoOutBuf = new Buffer();
         Buffer audioBuf = new Buffer();
 
-
         // Start with first buffer of audio track
-        Rational nextAudioBufferTime;
+        Rational nextAudioBufferTime = Rational.ZERO;
         if (audioTrack != null) {
             audioTrack.read(audioBuf);
             mux.write(audioTrackId, audioBuf);
             if (!audioBuf.isFlag(BufferFlag.DISCARD)) {
                 nextAudioBufferTime = audioBuf.timeStamp.add(audioBuf.sampleDuration.multiply(audioBuf.sampleCount));
-            } else {
-                nextAudioBufferTime = Rational.ZERO;
             }
-        } else {
-            nextAudioBufferTime = Rational.ZERO;
         }
 
         // Write video track buffers,
         // while keeping audio track one buffer ahead of video tracks
-
+        int frameCount = 0;
         if (videoTrack != null) {
             do {
                 videoTrack.read(videoInBuf);
                 int process;
                 do {
-                    process = videoCodecChain.process(videoInBuf, videoOutBuf);
-
-                    if (audioTrack != null && !videoOutBuf.isFlag(BufferFlag.DISCARD)
-                            && nextAudioBufferTime.compareTo(videoOutBuf.timeStamp) <= 0) {
+                    process = videoCodec.process(videoInBuf, videoOutBuf);
+                    if (videoOutBuf.isFlag(BufferFlag.DISCARD)) {
+                        continue;
+                    }
+                    if (audioTrack != null && nextAudioBufferTime.compareTo(videoOutBuf.timeStamp) <= 0) {
                         audioTrack.read(audioBuf);
                         if (!audioBuf.isFlag(BufferFlag.DISCARD)) {
                             mux.write(audioTrackId, audioBuf);
                             nextAudioBufferTime = audioBuf.timeStamp.add(audioBuf.sampleDuration.multiply(audioBuf.sampleCount));
                         }
                     }
-
                     mux.write(videoTrackId, videoOutBuf);
+                    frameCount++;
                 } while ((process & Codec.CODEC_INPUT_NOT_CONSUMED) == Codec.CODEC_INPUT_NOT_CONSUMED);
-
-            } while (!videoOutBuf.isFlag(BufferFlag.END_OF_MEDIA));
+            } while (!videoInBuf.isFlag(BufferFlag.END_OF_MEDIA));
         }
 
         // Write remaining audio buffers
@@ -307,6 +323,7 @@ public class AnimToQuickTimeConverter {
             }
         }
         mux.finish();
+        return frameCount;
     }
 
     private void convertToMP4(ANIMDemultiplexer demux, Path quickTimeFile, Path mp4File) throws IOException {
@@ -383,7 +400,14 @@ public class AnimToQuickTimeConverter {
         this.setSwapLeftRightChannels = value;
     }
 
-    private boolean isANIM(Path file) {
+    static boolean isANIM(Path file) {
+        try {
+            if (Files.size(file) < 12) {
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
         try (InputStream in = Files.newInputStream(file)) {
             return isANIM(in);
         } catch (IOException e) {
@@ -400,7 +424,7 @@ public class AnimToQuickTimeConverter {
      * @return true if anim
      * @throws IOException
      */
-    private boolean isANIM(InputStream in) throws IOException {
+    static boolean isANIM(InputStream in) throws IOException {
         MC68000InputStream mc = new MC68000InputStream(in);
         int form = (int) mc.readULONG();
         long size = mc.readULONG();
@@ -411,7 +435,7 @@ public class AnimToQuickTimeConverter {
         return form == 0x464f524d && type == 0x414e494d;
     }
 
-    private String getFilenameWithoutExtension(String filename) {
+    static String getFilenameWithoutExtension(String filename) {
         String fName = filename;
         int endIndex = fName.lastIndexOf('.');
         String fNameWithoutExtension = endIndex == -1 ? fName : fName.substring(0, endIndex);
@@ -5,7 +5,11 @@
 package org.monte.media.animconverter;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,9 +35,10 @@ import java.util.Map;
  */
 public class Main {
     public static void main(String... args) throws IOException {
-        Map<String, String> options = parseArgs(args);
+        List<String> inputFiles = new ArrayList<>();
+        Map<String, String> options = parseArgs(args, inputFiles);
         if (options.containsKey(HELP_KEY)
-                || !options.containsKey(INPUTFILE_KEY)) {
+                || inputFiles.isEmpty()) {
             String version = Main.class.getPackage().getImplementationVersion();
             System.out.println("ANIMConverter" + (version == null ? "" : " " + version));
             System.out.println("Converts an Amiga IFF Cell Animation into a QuickTime movie.");
@@ -42,6 +47,7 @@ public class Main {
             System.out.println("");
             System.out.println("Usage:");
             System.out.println("ANIMConverter [options] inputfile [outputfile]");
+            System.out.println("ANIMConverter --batch [options] inputfile... ");
             System.out.println("  -h          show help");
             System.out.println("  -?          show help");
             System.out.println("  -help       show help");
@@ -50,6 +56,14 @@ public class Main {
             System.out.println("  -xaspect    int   pixel x-aspect ratio, >= 1");
             System.out.println("  -yaspect    int   pixel y-aspect ratio, >= 1");
             System.out.println("  -frameduration    int   duration of a frame in jiffies, >= 1");
+            System.out.println("  --batch     converts multiple files concurrently");
+            System.out.println("              Files with an existing output file are skipped.");
+            System.out.println("  -threads    int   number of files that are converted concurrently");
+            System.out.println("              in batch mode, >= 1");
+            System.out.println("  -outputdir  dir   output directory in batch mode");
+            System.out.println("              -xaspect and -yaspect are not supported in batch mode.");
+            System.out.println("              If this option is omitted, then the output files ");
+            System.out.println("              are written next to the input files. ");
             System.out.println("  inputfile   Amiga IFF Cell Animation file, zip file or directory");
             System.out.println("  outputfile  QuickTime movie file");
             System.out.println("              If this argument is omitted, then the output filename ");
@@ -57,6 +71,18 @@ public class Main {
             System.exit(0);
         }
 
+        if (options.containsKey(BATCH)) {
+            convertBatch(options, inputFiles);
+            return;
+        }
+        if (inputFiles.size() > 2) {
+            System.err.println("Unrecognized argument \"" + inputFiles.get(2) + "\".");
+            System.exit(10);
+        }
+        options.put(INPUTFILE_KEY, inputFiles.get(0));
+        if (inputFiles.size() > 1) {
+            options.put(OUTPUTFILE_KEY, inputFiles.get(1));
+        }
         if (!options.containsKey(OUTPUTFILE_KEY)) {
             options.put(OUTPUTFILE_KEY, options.get(INPUTFILE_KEY) + ".mov");
         }
@@ -76,6 +102,50 @@ public class Main {
 
     }
 
+    private static void convertBatch(Map<String, String> options, List<String> inputFiles) throws IOException {
+        for (String option : new String[]{X_ASPECT, Y_ASPECT}) {
+            if (options.containsKey(option)) {
+                System.err.println("Option \"" + option + "\" is not supported with \"" + BATCH + "\".");
+                System.exit(10);
+            }
+        }
+        AnimToQuickTimeBatchConverter converter = new AnimToQuickTimeBatchConverter();
+        Integer threads = parseInteger(options.get(THREADS));
+        if (threads != null && threads > 0) {
+            converter.setThreads(threads);
+        }
+        if (options.containsKey(OUTPUT_DIR)) {
+            converter.setOutputDirectory(Paths.get(options.get(OUTPUT_DIR)));
+        }
+        converter.setFrameDuration(parseInteger(options.get(FRAME_DURATION)));
+        converter.setSwapLeftRightChannels(options.containsKey(SWAP_LEFT_RIGHT_CHANNELS));
+        converter.setListener(System.out::println);
+
+        List<Path> inputs = new ArrayList<>();
+        for (String f : inputFiles) {
+            inputs.add(Paths.get(f));
+        }
+        List<AnimToQuickTimeBatchConverter.Result> results = converter.convert(inputs);
+        int converted = 0, skipped = 0, failed = 0;
+        for (AnimToQuickTimeBatchConverter.Result r : results) {
+            switch (r.getStatus()) {
+                case CONVERTED:
+                    converted++;
+                    break;
+                case SKIPPED:
+                    skipped++;
+                    break;
+                case FAILED:
+                    failed++;
+                    break;
+            }
+        }
+        System.out.println(converted + " converted, " + skipped + " skipped, " + failed + " failed.");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
     private static Integer parseInteger(String s) {
         try {
             return Integer.parseInt(s);
@@ -89,10 +159,13 @@ public class Main {
     private final static String Y_ASPECT = "-yaspect";
     private final static String FRAME_DURATION = "-frameduration";
     private final static String SWAP_LEFT_RIGHT_CHANNELS = "--swap-left-right-channels";
+    private final static String BATCH = "--batch";
+    private final static String THREADS = "-threads";
+    private final static String OUTPUT_DIR = "-outputdir";
     private final static String INPUTFILE_KEY = "-i";
     private final static String OUTPUTFILE_KEY = "-o";
 
-    private static Map<String, String> parseArgs(String[] args) {
+    private static Map<String, String> parseArgs(String[] args, List<String> inputFiles) {
         Map<String, String> options = new LinkedHashMap<>();
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
@@ -103,11 +176,14 @@ public class Main {
                     options.put(HELP_KEY, args[i]);
                     break;
                 case SWAP_LEFT_RIGHT_CHANNELS:
-                    options.put(SWAP_LEFT_RIGHT_CHANNELS, args[i]);
+                case BATCH:
+                    options.put(args[i], args[i]);
                     break;
                 case X_ASPECT:
                 case Y_ASPECT:
                 case FRAME_DURATION:
+                case THREADS:
+                case OUTPUT_DIR:
                     if (i < args.length - 1) {
                         options.put(args[i], args[++i]);
                     } else {
@@ -119,14 +195,7 @@ public class Main {
                         System.err.println("Unrecognized option \"" + args[i] + "\".");
                         System.exit(10);
                     }
-                    if (!options.containsKey(INPUTFILE_KEY)) {
-                        options.put(INPUTFILE_KEY, args[i]);
-                    } else if (!options.containsKey(OUTPUTFILE_KEY)) {
-                        options.put(OUTPUTFILE_KEY, args[i]);
-                    } else {
-                        System.err.println("Unrecognized argument \"" + args[i] + "\".");
-                        System.exit(10);
-                    }
+                    inputFiles.add(args[i]);
                     break;
             }
         }
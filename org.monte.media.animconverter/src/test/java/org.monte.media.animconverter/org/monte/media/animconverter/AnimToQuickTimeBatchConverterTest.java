@@ -0,0 +1,249 @@
+/*
+ * @(#)AnimToQuickTimeBatchConverterTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.animconverter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monte.media.amigabitmap.AmigaBitmapImage;
+import org.monte.media.anim.ANIMDemultiplexer;
+import org.monte.media.anim.ANIMOutputStream;
+import org.monte.media.animconverter.AnimToQuickTimeBatchConverter.Result;
+import org.monte.media.animconverter.AnimToQuickTimeBatchConverter.Status;
+import org.monte.media.av.Buffer;
+import org.monte.media.av.BufferFlag;
+import org.monte.media.quicktime.QuickTimeMultiplexer;
+import org.monte.media.quicktime.QuickTimeReader;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnimToQuickTimeBatchConverterTest {
+    private static final int WIDTH = 32, HEIGHT = 16, FRAMES = 6;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldConvertAnimFilesInDirectoryTree() throws IOException {
+        Path in = tempDir.resolve("in");
+        writeAnim(in.resolve("b.anim"));
+        writeAnim(in.resolve("sub/a.iff"));
+        writeAnim(in.resolve("sub/c"));
+        Files.write(in.resolve("notes.txt"), "not an ANIM file".getBytes());
+        writeAnim(in.resolve("sub/d.mov.part"));
+
+        AnimToQuickTimeBatchConverter converter = new AnimToQuickTimeBatchConverter();
+        converter.setThreads(2);
+        List<Result> results = converter.convert(Collections.singletonList(in));
+
+        assertEquals(Arrays.asList(in.resolve("b.anim"), in.resolve("sub/a.iff"), in.resolve("sub/c")),
+                inputs(results));
+        assertEquals(Arrays.asList(in.resolve("b.mov"), in.resolve("sub/a.mov"), in.resolve("sub/c.mov")),
+                outputs(results));
+        for (Result result : results) {
+            assertEquals(Status.CONVERTED, result.getStatus(), result.toString());
+            assertEquals(FRAMES, result.getFrameCount());
+            assertEquals(Files.size(result.getOutput()), result.getOutputBytes());
+            assertFirstFrame(result.getOutput());
+        }
+        assertFalse(Files.exists(in.resolve("notes.mov")));
+        assertFalse(Files.exists(in.resolve("sub/d.mov")));
+        assertFalse(Files.exists(in.resolve("b.mov.part")));
+    }
+
+    @Test
+    public void shouldReproduceDirectoryTreeInOutputDirectory() throws IOException {
+        Path in = tempDir.resolve("in");
+        Path out = tempDir.resolve("out");
+        writeAnim(in.resolve("a.anim"));
+        writeAnim(in.resolve("sub/b.anim"));
+        writeAnim(tempDir.resolve("c.anim"));
+
+        AnimToQuickTimeBatchConverter converter = new AnimToQuickTimeBatchConverter();
+        converter.setOutputDirectory(out);
+        List<Result> results = converter.convert(Arrays.asList(in, tempDir.resolve("c.anim")));
+
+        assertEquals(Arrays.asList(out.resolve("a.mov"), out.resolve("sub/b.mov"), out.resolve("c.mov")),
+                outputs(results));
+        for (Result result : results) {
+            assertEquals(Status.CONVERTED, result.getStatus(), result.toString());
+            assertTrue(Files.exists(result.getOutput()));
+        }
+        assertFalse(Files.exists(in.resolve("a.mov")));
+    }
+
+    @Test
+    public void shouldSkipExistingOutputFiles() throws IOException {
+        Path in = tempDir.resolve("in");
+        writeAnim(in.resolve("a.anim"));
+        writeAnim(in.resolve("b.anim"));
+        Files.write(in.resolve("b.mov"), new byte[0]);
+
+        AnimToQuickTimeBatchConverter converter = new AnimToQuickTimeBatchConverter();
+        List<Result> listened = Collections.synchronizedList(new ArrayList<>());
+        converter.setListener(listened::add);
+        List<Result> results = converter.convert(Collections.singletonList(in));
+        assertEquals(Status.CONVERTED, results.get(0).getStatus());
+        assertEquals(Status.SKIPPED, results.get(1).getStatus());
+        assertEquals("output file exists", results.get(1).getMessage());
+        assertEquals(0, Files.size(in.resolve("b.mov")));
+        assertEquals(2, listened.size());
+
+        // a second run resumes the batch
+        results = converter.convert(Collections.singletonList(in));
+        assertEquals(Status.SKIPPED, results.get(0).getStatus());
+        assertEquals(Status.SKIPPED, results.get(1).getStatus());
+    }
+
+    @Test
+    public void shouldConvertOnlyFirstInputWithSameOutputFile() throws IOException {
+        Path in = tempDir.resolve("in");
+        writeAnim(in.resolve("a.anim"));
+        writeAnim(in.resolve("a.iff"));
+        writeAnim(in.resolve("b.anim"));
+
+        AnimToQuickTimeBatchConverter converter = new AnimToQuickTimeBatchConverter();
+        converter.setThreads(3);
+        List<Result> listened = Collections.synchronizedList(new ArrayList<>());
+        converter.setListener(listened::add);
+        List<Result> results = converter.convert(Arrays.asList(in, in.resolve("b.anim")));
+
+        assertEquals(Arrays.asList(in.resolve("a.anim"), in.resolve("a.iff"), in.resolve("b.anim"), in.resolve("b.anim")),
+                inputs(results));
+        assertEquals(Status.CONVERTED, results.get(0).getStatus());
+        assertEquals(Status.FAILED, results.get(1).getStatus());
+        assertEquals("output file is also the output file of " + in.resolve("a.anim"), results.get(1).getMessage());
+        assertNull(results.get(1).getException());
+        assertEquals(Status.CONVERTED, results.get(2).getStatus());
+        assertEquals(Status.FAILED, results.get(3).getStatus());
+        assertEquals(4, listened.size());
+        assertFirstFrame(in.resolve("a.mov"));
+    }
+
+    @Test
+    public void shouldWriteSameFramesAsSingleFileConverter() throws IOException {
+        Path anim = tempDir.resolve("a.anim");
+        writeAnim(anim);
+        Path single = tempDir.resolve("single.mov");
+        QuickTimeMultiplexer mux = new QuickTimeMultiplexer(single.toFile());
+        ANIMDemultiplexer demux = new ANIMDemultiplexer(anim.toFile());
+        mux.setMovieTimeScale(demux.getTimeBase());
+        new AnimToQuickTimeConverter().convertToQuickTime(demux, mux, anim.toString());
+        mux.close();
+
+        Result result = new AnimToQuickTimeBatchConverter().convert(Collections.singletonList(anim)).get(0);
+        assertEquals(Status.CONVERTED, result.getStatus());
+        assertEquals(readFrames(single), readFrames(result.getOutput()));
+    }
+
+    private static List<Path> inputs(List<Result> results) {
+        List<Path> paths = new ArrayList<>();
+        for (Result r : results) {
+            paths.add(r.getInput());
+        }
+        return paths;
+    }
+
+    private static List<Path> outputs(List<Result> results) {
+        List<Path> paths = new ArrayList<>();
+        for (Result r : results) {
+            paths.add(r.getOutput());
+        }
+        return paths;
+    }
+
+    /**
+     * Checks that the first frame of the movie is an image of the first
+     * frame of the ANIM file.
+     */
+    private static void assertFirstFrame(Path movie) throws IOException {
+        List<List<Integer>> frames = readFrames(movie);
+        assertEquals(FRAMES, frames.size());
+        IndexColorModel icm = createColorModel();
+        AmigaBitmapImage bitmap = createFrame(0);
+        bitmap.convertToChunky();
+        byte[] pixels = bitmap.getBytePixels();
+        List<Integer> expected = new ArrayList<>();
+        for (byte b : pixels) {
+            expected.add(icm.getRGB(b & 0xff) & 0xffffff);
+        }
+        assertEquals(expected, frames.get(0));
+    }
+
+    /**
+     * Reads the RGB values of all PNG samples of the video track of a
+     * QuickTime movie.
+     */
+    private static List<List<Integer>> readFrames(Path movie) throws IOException {
+        List<List<Integer>> frames = new ArrayList<>();
+        QuickTimeReader in = new QuickTimeReader(movie.toFile());
+        try {
+            Buffer buf = new Buffer();
+            for (in.read(0, buf); !buf.isFlag(BufferFlag.END_OF_MEDIA); in.read(0, buf)) {
+                BufferedImage img = ImageIO.read(new ByteArrayInputStream((byte[]) buf.data, buf.offset, buf.length));
+                assertEquals(WIDTH, img.getWidth());
+                assertEquals(HEIGHT, img.getHeight());
+                List<Integer> rgbs = new ArrayList<>();
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        rgbs.add(img.getRGB(x, y) & 0xffffff);
+                    }
+                }
+                frames.add(rgbs);
+            }
+        } finally {
+            in.close();
+        }
+        return frames;
+    }
+
+    private static void writeAnim(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        ANIMOutputStream out = new ANIMOutputStream(file.toFile());
+        try {
+            for (int i = 0; i < FRAMES; i++) {
+                out.writeFrame(createFrame(i), 1);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static AmigaBitmapImage createFrame(int index) {
+        AmigaBitmapImage img = new AmigaBitmapImage(WIDTH, HEIGHT, 4, createColorModel());
+        new Random(index).nextBytes(img.getBitmap());
+        return img;
+    }
+
+    /**
+     * Creates a color model with colors that survive the 12-bit palette of
+     * the ANIM file.
+     */
+    private static IndexColorModel createColorModel() {
+        byte[] r = new byte[16], g = new byte[16], b = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            r[i] = (byte) (i * 0x11);
+            g[i] = (byte) ((15 - i) * 0x11);
+            b[i] = (byte) ((i * 7 % 16) * 0x11);
+        }
+        return new IndexColorModel(8, 16, r, g, b);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * @(#)FrameRateGovernor.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.screenrecorder;
+
+import org.monte.media.math.Rational;
+
+import javax.swing.event.EventListenerList;
+import java.util.EventListener;
+import java.util.EventObject;
+
+/**
+ * Adapts the screen capture rate of a {@link ScreenRecorder} to the load of
+ * the machine.
+ * <p>
+ * The governor is fed with the fill level of the queues between screen
+ * capture and file writing, with the time needed to encode a frame, and with
+ * the time needed to capture the screen. If the recorder does not keep up,
+ * the governor lowers the capture rate by doubling a divisor of the
+ * nominal frame rate. If the load drops again, the governor halves the
+ * divisor, until the nominal frame rate is restored.
+ * <p>
+ * To avoid oscillation, the capture rate is only lowered after
+ * {@value #PRESSURE_SAMPLES} consecutive samples under pressure, and it is
+ * only raised after {@value #RELAXED_SAMPLES} consecutive relaxed samples.
+ * <p>
+ * Each decision is reported to the registered {@link Listener}s. The
+ * listeners are notified on the screen capture thread.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class FrameRateGovernor {
+    /**
+     * Listener for the decisions of the governor.
+     */
+    public interface Listener extends EventListener {
+        /**
+         * Is called when the governor has changed the capture rate.
+         *
+         * @param event the decision
+         */
+        void frameRateChanged(Event event);
+    }
+
+    /**
+     * Describes a decision of the governor.
+     */
+    public static class Event extends EventObject {
+        private static final long serialVersionUID = 1L;
+        private final int oldDivisor;
+        private final int newDivisor;
+        private final Rational frameRate;
+        private final String reason;
+
+        public Event(FrameRateGovernor source, int oldDivisor, int newDivisor, Rational frameRate, String reason) {
+            super(source);
+            this.oldDivisor = oldDivisor;
+            this.newDivisor = newDivisor;
+            this.frameRate = frameRate;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns the divisor of the nominal frame rate before the decision.
+         */
+        public int getOldDivisor() {
+            return oldDivisor;
+        }
+
+        /**
+         * Returns the divisor of the nominal frame rate after the decision.
+         */
+        public int getNewDivisor() {
+            return newDivisor;
+        }
+
+        /**
+         * Returns the capture rate after the decision in frames per second.
+         */
+        public Rational getFrameRate() {
+            return frameRate;
+        }
+
+        /**
+         * Returns a human readable description of the reason for the
+         * decision.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "FrameRateGovernor.Event{divisor " + oldDivisor + "->" + newDivisor
+                    + ", frameRate=" + frameRate + ", reason=" + reason + "}";
+        }
+    }
+
+    /**
+     * The number of consecutive samples under pressure, after which the
+     * capture rate is lowered.
+     */
+    public final static int PRESSURE_SAMPLES = 3;
+    /**
+     * The number of consecutive relaxed samples, after which the capture rate
+     * is raised.
+     */
+    public final static int RELAXED_SAMPLES = 20;
+    /**
+     * Queue fill level at or above which the recorder is under pressure.
+     */
+    private final static double HIGH_FILL = 0.75;
+    /**
+     * Queue fill level at or below which the recorder is relaxed.
+     */
+    private final static double LOW_FILL = 0.25;
+
+    private final EventListenerList listenerList = new EventListenerList();
+    private int maxDivisor = 8;
+    private Rational nominalFrameRate = new Rational(1);
+    private long nominalIntervalMillis = 1000;
+    private int divisor = 1;
+    private long tick;
+    private int pressureCount;
+    private int relaxedCount;
+    /**
+     * Exponentially weighted moving averages of the latencies in
+     * milliseconds.
+     */
+    private double encodeLatency, captureLatency;
+
+    /**
+     * Resets the governor for a new recording.
+     *
+     * @param nominalFrameRate the nominal capture rate in frames per second
+     */
+    public synchronized void reset(Rational nominalFrameRate) {
+        this.nominalFrameRate = nominalFrameRate;
+        this.nominalIntervalMillis = Math.max(1, (long) (1000 / nominalFrameRate.doubleValue()));
+        divisor = 1;
+        tick = 0;
+        pressureCount = 0;
+        relaxedCount = 0;
+        encodeLatency = 0;
+        captureLatency = 0;
+    }
+
+    /**
+     * Returns the maximal divisor of the nominal frame rate.
+     */
+    public synchronized int getMaxDivisor() {
+        return maxDivisor;
+    }
+
+    /**
+     * Sets the maximal divisor of the nominal frame rate. For example, if the
+     * nominal frame rate is 30 frames per second, and the maximal divisor is
+     * 8, then the capture rate is never lowered below 3.75 frames per second.
+     * <p>
+     * The default value is 8. If the current divisor is greater than the new
+     * value, then the capture rate is raised immediately.
+     *
+     * @param newValue the maximal divisor, must be at least 1
+     */
+    public void setMaxDivisor(int newValue) {
+        if (newValue < 1) {
+            throw new IllegalArgumentException("maxDivisor must be at least 1:" + newValue);
+        }
+        Event event = null;
+        synchronized (this) {
+            this.maxDivisor = newValue;
+            if (divisor > newValue) {
+                event = changeDivisor(newValue, "maximal divisor has been lowered to " + newValue);
+            }
+        }
+        if (event != null) {
+            fireFrameRateChanged(event);
+        }
+    }
+
+    /**
+     * Returns the current divisor of the nominal frame rate.
+     */
+    public synchronized int getDivisor() {
+        return divisor;
+    }
+
+    /**
+     * Returns the current capture rate in frames per second.
+     */
+    public synchronized Rational getFrameRate() {
+        return nominalFrameRate.divide(new Rational(divisor));
+    }
+
+    /**
+     * Returns the average time in milliseconds that is needed for encoding a
+     * frame.
+     */
+    public synchronized double getEncodeLatency() {
+        return encodeLatency;
+    }
+
+    /**
+     * Returns the average time in milliseconds that is needed for capturing
+     * the screen.
+     */
+    public synchronized double getCaptureLatency() {
+        return captureLatency;
+    }
+
+    /**
+     * Records the time that was needed for encoding a frame. Is called by
+     * the encoder thread.
+     *
+     * @param millis the time in milliseconds
+     */
+    public synchronized void recordEncodeLatency(long millis) {
+        encodeLatency = average(encodeLatency, millis);
+    }
+
+    /**
+     * Records the time that was needed for capturing the screen. Is called
+     * by the screen capture thread.
+     *
+     * @param millis the time in milliseconds
+     */
+    public synchronized void recordCaptureLatency(long millis) {
+        captureLatency = average(captureLatency, millis);
+    }
+
+    private static double average(double average, long sample) {
+        return average == 0 ? sample : average * 0.75 + sample * 0.25;
+    }
+
+    /**
+     * Returns true if the screen shall be captured at the current tick of
+     * the capture timer. The timer ticks at the nominal frame rate. Is called
+     * by the screen capture thread.
+     *
+     * @return true if the screen shall be captured
+     */
+    public synchronized boolean shouldCapture() {
+        return tick++ % divisor == 0;
+    }
+
+    /**
+     * Evaluates the load after a screen capture, and adapts the capture rate.
+     * Is called by the screen capture thread.
+     *
+     * @param queueFill the fill level of the queues between screen capture
+     *                  and file writing in the range [0, 1]
+     */
+    public void update(double queueFill) {
+        Event event = null;
+        synchronized (this) {
+            long interval = nominalIntervalMillis * divisor;
+            String pressure = null;
+            if (queueFill >= HIGH_FILL) {
+                pressure = "queue fill " + Math.round(queueFill * 100) + "%";
+            } else if (encodeLatency > interval) {
+                pressure = "encode latency " + Math.round(encodeLatency) + " ms";
+            } else if (captureLatency > interval) {
+                pressure = "capture latency " + Math.round(captureLatency) + " ms";
+            }
+            if (pressure != null) {
+                relaxedCount = 0;
+                if (++pressureCount >= PRESSURE_SAMPLES && divisor < maxDivisor) {
+                    event = changeDivisor(Math.min(maxDivisor, divisor * 2), pressure + " exceeds the budget of a " + interval + " ms frame interval");
+                }
+            } else {
+                pressureCount = 0;
+                // The latencies must fit into the shorter interval with
+                // some headroom, otherwise we would raise and lower the
+                // capture rate alternately.
+                long shorterInterval = nominalIntervalMillis * Math.max(1, divisor / 2);
+                if (divisor > 1 && queueFill <= LOW_FILL
+                        && encodeLatency < shorterInterval * 0.75 && captureLatency < shorterInterval * 0.75) {
+                    if (++relaxedCount >= RELAXED_SAMPLES) {
+                        event = changeDivisor(divisor / 2, "load fits into a " + shorterInterval + " ms frame interval");
+                    }
+                } else {
+                    relaxedCount = 0;
+                }
+            }
+        }
+        if (event != null) {
+            fireFrameRateChanged(event);
+        }
+    }
+
+    private Event changeDivisor(int newDivisor, String reason) {
+        int oldDivisor = divisor;
+        divisor = newDivisor;
+        tick = 0;
+        pressureCount = 0;
+        relaxedCount = 0;
+        return new Event(this, oldDivisor, newDivisor, nominalFrameRate.divide(new Rational(newDivisor)), reason);
+    }
+
+    public void addListener(Listener l) {
+        listenerList.add(Listener.class, l);
+    }
+
+    public void removeListener(Listener l) {
+        listenerList.remove(Listener.class, l);
+    }
+
+    /**
+     * Notify all listeners that have registered interest for notification on
+     * this event type.
+     */
+    protected void fireFrameRateChanged(Event event) {
+        Object[] listeners = listenerList.getListenerList();
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == Listener.class) {
+                ((Listener) listeners[i + 1]).frameRateChanged(event);
+            }
+        }
+    }
+}
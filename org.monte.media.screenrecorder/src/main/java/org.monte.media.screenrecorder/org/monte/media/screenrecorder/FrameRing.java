@@ -0,0 +1,397 @@
+/*
+ * @(#)FrameRing.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.screenrecorder;
+
+import org.monte.media.av.Buffer;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A ring of preallocated frame slots, which is shared between the thread that
+ * captures the screen and the thread that encodes the frames.
+ * <p>
+ * Each slot holds an image with the size of the capture area, a graphics
+ * object for drawing into it, and a buffer for the metadata of the frame. The
+ * slots are allocated once, and then cycle between the producer and the
+ * consumer:
+ * <pre>
+ * producer: claim() → draw into slot.image → publish(slot)
+ * consumer: poll() → encode slot.image → release(slot)
+ * </pre>
+ * Claiming and publishing never take a lock, and do not allocate objects: the
+ * free and the published slots are kept in fixed arrays of slot indices. If
+ * all slots are in use when the producer claims a slot, then the overflow
+ * policy decides what happens: with {@link OverflowPolicy#DROP_OLDEST} the
+ * oldest published frame is discarded and its slot is reused, with
+ * {@link OverflowPolicy#BLOCK} the producer waits until the consumer releases
+ * a slot.
+ * <p>
+ * A ring can be closed with {@link #close()}. This wakes up a waiting producer
+ * or consumer, so that neither of them can wait forever for the other one.
+ * <p>
+ * This class is thread-safe for one producer and one consumer thread.
+ *
+ * @author Werner Randelshofer
+ */
+public class FrameRing {
+    /**
+     * Specifies what happens if the producer claims a slot, while all slots
+     * are in use.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest published frame is dropped and its slot is reused.
+         */
+        DROP_OLDEST,
+        /**
+         * The producer waits until the consumer releases a slot.
+         */
+        BLOCK
+    }
+
+    /**
+     * A frame slot.
+     */
+    public static class Slot {
+        /**
+         * The image of the frame.
+         */
+        public final BufferedImage image;
+        /**
+         * Graphics object for drawing into {@code image}.
+         */
+        public final Graphics2D graphics;
+        /**
+         * The metadata of the frame. {@code buffer.data} is {@code image}.
+         */
+        public final Buffer buffer = new Buffer();
+        /**
+         * The capture time of the frame in milliseconds since the start of the
+         * recording.
+         */
+        public long timeMillis;
+        /**
+         * The duration of the frame in milliseconds.
+         */
+        public long durationMillis;
+        /**
+         * The mouse location of the frame. Is referenced by
+         * {@code buffer.header}, if the mouse location is known.
+         */
+        public final Point mouseLocation = new Point();
+        private int index;
+
+        private Slot(BufferedImage image) {
+            this.image = image;
+            this.graphics = image.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+            graphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            buffer.data = image;
+        }
+    }
+
+    /**
+     * The interval in nanoseconds in which a waiting thread checks whether
+     * it can proceed.
+     */
+    private final static long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Slot[] slots;
+    /**
+     * Indices of the free slots. Written by the consumer at {@code freeTail},
+     * read by the producer at {@code freeHead}.
+     */
+    private final int[] free;
+    private volatile long freeHead;
+    private volatile long freeTail;
+    /**
+     * Indices of the published slots. Written by the producer at
+     * {@code publishedTail}. Read by the consumer, and with
+     * {@link OverflowPolicy#DROP_OLDEST} also by the producer, at
+     * {@code publishedHead}.
+     */
+    private final int[] published;
+    private final AtomicLong publishedHead = new AtomicLong();
+    private volatile long publishedTail;
+    /**
+     * Index of a slot that the producer has cancelled. Only accessed by the
+     * producer.
+     */
+    private int cancelled = -1;
+    private volatile boolean closed;
+    private final OverflowPolicy policy;
+    private final AtomicLong publishedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong lateFrames = new AtomicLong();
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    /**
+     * Creates a new ring.
+     *
+     * @param capacity     the number of slots
+     * @param policy       the overflow policy
+     * @param imageFactory creates the image of a slot
+     */
+    public FrameRing(int capacity, OverflowPolicy policy, Supplier<BufferedImage> imageFactory) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2:" + capacity);
+        }
+        this.policy = policy;
+        this.slots = new Slot[capacity];
+        this.free = new int[capacity];
+        this.published = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(imageFactory.get());
+            slots[i].index = i;
+            free[i] = i;
+        }
+        freeTail = capacity;
+    }
+
+    /**
+     * Claims a slot for a new frame. Called by the producer.
+     *
+     * @return a slot, or null if the ring has been closed
+     * @throws InterruptedException if the producer is interrupted while it
+     *                              waits for a slot
+     */
+    public Slot claim() throws InterruptedException {
+        if (cancelled != -1) {
+            Slot slot = slots[cancelled];
+            cancelled = -1;
+            return slot;
+        }
+        while (!closed) {
+            long head = freeHead;
+            if (head != freeTail) {
+                Slot slot = slots[free[(int) (head % free.length)]];
+                freeHead = head + 1;
+                return slot;
+            }
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                Slot slot = takePublished();
+                if (slot != null) {
+                    droppedFrames.incrementAndGet();
+                    return slot;
+                }
+            }
+            waitingProducer = Thread.currentThread();
+            if (!closed && freeHead == freeTail) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waitingProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Publishes a frame. Called by the producer.
+     *
+     * @param slot a slot that has been obtained from {@link #claim()}
+     */
+    public void publish(Slot slot) {
+        long tail = publishedTail;
+        published[(int) (tail % published.length)] = slot.index;
+        publishedTail = tail + 1;
+        publishedFrames.incrementAndGet();
+        Thread t = waitingConsumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Returns a claimed slot without publishing it. Called by the producer.
+     *
+     * @param slot a slot that has been obtained from {@link #claim()}
+     */
+    public void cancel(Slot slot) {
+        cancelled = slot.index;
+    }
+
+    /**
+     * Takes the oldest published frame. Called by the consumer.
+     *
+     * @param timeout the maximal time to wait
+     * @param unit    the time unit of the timeout
+     * @return a slot, or null if no frame has been published within the
+     * timeout, or if the ring has been closed
+     * @throws InterruptedException if the consumer is interrupted while it
+     *                              waits for a frame
+     */
+    public Slot poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!closed) {
+            Slot slot = takePublished();
+            if (slot != null) {
+                return slot;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (!closed && publishedHead.get() == publishedTail) {
+                LockSupport.parkNanos(this, Math.min(remaining, PARK_NANOS));
+            }
+            waitingConsumer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes the oldest published slot. The consumer and, with
+     * {@link OverflowPolicy#DROP_OLDEST}, the producer compete for it.
+     * <p>
+     * The producer can only overwrite the index at {@code head} after the
+     * head has moved on, so a stale read is caught by the compare-and-set.
+     *
+     * @return a slot or null if no slot has been published
+     */
+    private Slot takePublished() {
+        while (true) {
+            long head = publishedHead.get();
+            if (head == publishedTail) {
+                return null;
+            }
+            int index = published[(int) (head % published.length)];
+            if (publishedHead.compareAndSet(head, head + 1)) {
+                return slots[index];
+            }
+        }
+    }
+
+    /**
+     * Releases a slot after its frame has been consumed. Called by the
+     * consumer.
+     *
+     * @param slot a slot that has been obtained from {@link #poll}
+     */
+    public void release(Slot slot) {
+        long tail = freeTail;
+        free[(int) (tail % free.length)] = slot.index;
+        freeTail = tail + 1;
+        Thread t = waitingProducer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Returns true if no frame is waiting to be consumed.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return publishedHead.get() == publishedTail;
+    }
+
+    /**
+     * Returns the number of frames that are waiting to be consumed.
+     *
+     * @return number of pending frames
+     */
+    public int getPendingFrameCount() {
+        long tail = publishedTail;
+        return (int) Math.max(0, tail - publishedHead.get());
+    }
+
+    /**
+     * Counts a frame that has been captured later than scheduled.
+     */
+    public void countLateFrame() {
+        lateFrames.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of frames that have been published.
+     *
+     * @return number of published frames
+     */
+    public long getPublishedFrameCount() {
+        return publishedFrames.get();
+    }
+
+    /**
+     * Returns the number of published frames that have been dropped, because
+     * the consumer did not keep up.
+     *
+     * @return number of dropped frames
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that have been captured later than
+     * scheduled.
+     *
+     * @return number of late frames
+     */
+    public long getLateFrameCount() {
+        return lateFrames.get();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Closes the ring. A producer that waits in {@link #claim()} and a
+     * consumer that waits in {@link #poll} return null, and so do all
+     * subsequent calls of these methods.
+     * <p>
+     * This method can be called from any thread.
+     */
+    public void close() {
+        closed = true;
+        Thread t = waitingProducer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        t = waitingConsumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Returns true if the ring has been closed.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Disposes the graphics objects and images of all slots.
+     */
+    public void dispose() {
+        for (Slot slot : slots) {
+            slot.graphics.dispose();
+            slot.image.flush();
+        }
+    }
+}
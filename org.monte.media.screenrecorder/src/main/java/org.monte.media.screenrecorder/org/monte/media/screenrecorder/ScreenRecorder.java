@@ -8,18 +8,22 @@ import org.monte.media.av.Buffer;
 import org.monte.media.av.BufferFlag;
 import org.monte.media.av.Codec;
 import org.monte.media.av.CodecChain;
+import org.monte.media.av.DefaultBufferPool;
 import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.av.MovieWriter;
 import org.monte.media.av.Registry;
 import org.monte.media.av.codec.audio.AudioFormatKeys;
+import org.monte.media.av.codec.video.DirtyRegionCodec;
 import org.monte.media.av.codec.video.ScaleImageCodec;
+import org.monte.media.av.codec.video.TechSmithCodec;
 import org.monte.media.avi.AVIWriter;
 import org.monte.media.beans.AbstractStateModel;
 import org.monte.media.color.Colors;
 import org.monte.media.image.Images;
 import org.monte.media.math.Rational;
 import org.monte.media.quicktime.QuickTimeWriter;
+import org.monte.media.quicktime.codec.video.AnimationCodec;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -34,6 +38,7 @@ import java.awt.*;
 import java.awt.event.AWTEventListener;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
@@ -49,6 +54,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static java.lang.Math.max;
 import static org.monte.media.av.BufferFlag.SAME_DATA;
@@ -182,6 +188,16 @@ public class ScreenRecorder extends AbstractStateModel {
      */
     private final Object sync = new Object();
     private ArrayBlockingQueue<Buffer> writerQueue;
+    /**
+     * Recycles the data of the buffers in the writer queue. Buffers are
+     * released by the writer thread after they have been written.
+     */
+    private final DefaultBufferPool writerBufferPool = new DefaultBufferPool();
+    /**
+     * The length of the last encoded video frame. This is used for
+     * estimating the size of the next encoded video frame.
+     */
+    private int lastEncodedLength;
     /**
      * This codec encodes a video frame.
      */
@@ -208,6 +224,20 @@ public class ScreenRecorder extends AbstractStateModel {
     private GraphicsDevice captureDevice;
     private AudioGrabber audioGrabber;
     private ScreenGrabber screenGrabber;
+    /**
+     * Holds the video frames between the screen grabber and the frame
+     * encoder thread.
+     */
+    private FrameRing frameRing;
+    private volatile Thread frameEncoderThread;
+    private int frameRingCapacity = 4;
+    private FrameRing.OverflowPolicy frameOverflowPolicy = FrameRing.OverflowPolicy.BLOCK;
+    /**
+     * Adapts the capture rate to the load, if {@code adaptiveFrameRate} is
+     * true.
+     */
+    private final FrameRateGovernor frameRateGovernor = new FrameRateGovernor();
+    private boolean adaptiveFrameRate;
     protected MouseGrabber mouseGrabber;
     private ScheduledFuture<?> audioFuture;
     private ScheduledFuture<?> screenFuture;
@@ -401,6 +431,15 @@ public class ScreenRecorder extends AbstractStateModel {
             throw new IOException("Unable to encode video frames in this output format:\n" + videoOutputFormat);
         }
 
+        // If the encoder can make use of dirty regions, create a codec chain
+        // which detects the changed regions of a frame before encoding it.
+        if (frameEncoder instanceof TechSmithCodec || frameEncoder instanceof AnimationCodec) {
+            DirtyRegionCodec drc = new DirtyRegionCodec();
+            drc.setInputFormat(frameEncoder.getInputFormat());
+            drc.setOutputFormat(frameEncoder.getInputFormat());
+            frameEncoder = new CodecChain(drc, frameEncoder);
+        }
+
         // If the capture area does not have the same dimensions as the
         // video format, create a codec chain which scales the image before
         // performing the frame encoding.
@@ -544,11 +583,84 @@ public class ScreenRecorder extends AbstractStateModel {
     private void startScreenCapture() throws AWTException, IOException {
         screenCaptureTimer = new ScheduledThreadPoolExecutor(1);
         int delay = max(1, (int) (1000 / screenFormat.get(FrameRateKey).doubleValue()));
-        screenGrabber = new ScreenGrabber(this, recordingStartTime);
+        frameRateGovernor.reset(screenFormat.get(FrameRateKey));
+        screenGrabber = new ScreenGrabber(this, recordingStartTime, delay);
+        frameRing = screenGrabber.getFrameRing();
+        startFrameEncoder();
         screenFuture = screenCaptureTimer.scheduleAtFixedRate(screenGrabber, delay, delay, TimeUnit.MILLISECONDS);
         screenGrabber.setFuture(screenFuture);
     }
 
+    /**
+     * Starts the frame encoder thread. The thread takes the video frames from
+     * the frame ring, and passes them to {@link #write}.
+     */
+    private void startFrameEncoder() {
+        final FrameRing ring = frameRing;
+        frameEncoderThread = new Thread("ScreenRecorder-FrameEncoder") {
+            @Override
+            public void run() {
+                // Time stamps are immutable, we reuse them while they are unchanged
+                long timeMillis = -1, durationMillis = -1;
+                Rational timeStamp = null, duration = null;
+                try {
+                    while (!ring.isClosed() && (frameEncoderThread == this || !ring.isEmpty())) {
+                        FrameRing.Slot slot = ring.poll(100, TimeUnit.MILLISECONDS);
+                        if (slot != null) {
+                            try {
+                                Buffer buf = slot.buffer;
+                                if (slot.timeMillis != timeMillis) {
+                                    timeMillis = slot.timeMillis;
+                                    timeStamp = new Rational(timeMillis, 1000);
+                                }
+                                if (slot.durationMillis != durationMillis) {
+                                    durationMillis = slot.durationMillis;
+                                    duration = new Rational(durationMillis, 1000);
+                                }
+                                buf.timeStamp = timeStamp;
+                                buf.sampleDuration = duration;
+                                long start = System.nanoTime();
+                                write(buf);
+                                frameRateGovernor.recordEncodeLatency((System.nanoTime() - start) / 1_000_000);
+                            } finally {
+                                ring.release(slot);
+                            }
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // We have been interrupted, terminate
+                } catch (Throwable e) {
+                    // Wake up the screen grabber, if it waits for a free slot
+                    ring.close();
+                    recordingFailed(e);
+                }
+            }
+        };
+        frameEncoderThread.start();
+    }
+
+    /**
+     * Stops the frame encoder thread after it has written all frames in the
+     * frame ring. If {@code abort} is true, the remaining frames are
+     * discarded.
+     */
+    private void stopFrameEncoder(boolean abort) {
+        Thread pendingThread = frameEncoderThread;
+        frameEncoderThread = null;
+        if (pendingThread != null) {
+            if (abort) {
+                frameRing.close();
+                pendingThread.interrupt();
+            }
+            try {
+                pendingThread.join();
+            } catch (InterruptedException ex) {
+                // nothing to do
+            }
+            frameRing.dispose();
+        }
+    }
+
     /**
      * Stops screen capture.
      */
@@ -570,6 +682,10 @@ public class ScreenRecorder extends AbstractStateModel {
 
     private static class ScreenGrabber implements Runnable {
 
+        /**
+         * The format of the video frames.
+         */
+        private final static Format VIDEO_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, ENCODING_BUFFERED_IMAGE);
         /**
          * Previously draw mouse location. This is used to have the last mouse
          * location at hand, when a new screen capture has been created, but the
@@ -589,25 +705,33 @@ public class ScreenRecorder extends AbstractStateModel {
         private Robot robot;
         private Rectangle captureArea;
         /**
-         * Holds the composed image (screen capture and super-imposed mouse
-         * cursor). This is the image that is written into the video track of
-         * the file.
+         * Holds the video frames (screen capture and super-imposed mouse
+         * cursor) until they are written into the video track of the file.
          */
-        private BufferedImage videoImg;
-        /**
-         * Graphics object for drawing into {@code videoImg}.
-         */
-        private Graphics2D videoGraphics;
+        private final FrameRing frameRing;
         private final Format mouseFormat;
         /**
          * Holds the mouse captures made with {@code MouseInfo}.
          */
         private ArrayBlockingQueue<Buffer> mouseCaptures;
         /**
-         * The time the previous screen frame was captured.
+         * The time the previous screen frame was captured in milliseconds.
+         */
+        private long prevScreenCaptureTime;
+        /**
+         * The time in milliseconds at which the next screen capture is
+         * scheduled.
          */
-        private Rational prevScreenCaptureTime;
+        private long scheduledCaptureTime;
+        /**
+         * The interval between two screen captures in milliseconds.
+         */
+        private final long captureInterval;
         private final Object sync;
+        /**
+         * Adapts the capture rate to the load, or null.
+         */
+        private final FrameRateGovernor governor;
         private BufferedImage cursorImg, cursorImgPressed;
         private Point cursorOffset;
         private int videoTrack;
@@ -628,7 +752,7 @@ public class ScreenRecorder extends AbstractStateModel {
             return this.stopTime;
         }
 
-        public ScreenGrabber(ScreenRecorder recorder, long startTime) throws AWTException, IOException {
+        public ScreenGrabber(ScreenRecorder recorder, long startTime, long captureInterval) throws AWTException, IOException {
             this.recorder = recorder;
             this.captureArea = recorder.captureArea;
             this.robot = new Robot(recorder.captureDevice);
@@ -639,23 +763,30 @@ public class ScreenRecorder extends AbstractStateModel {
             this.cursorImgPressed = recorder.cursorImgPressed;
             this.cursorOffset = recorder.cursorOffset;
             this.videoTrack = recorder.videoTrack;
-            this.prevScreenCaptureTime = new Rational(startTime, 1000);
+            this.prevScreenCaptureTime = startTime;
             this.startTime = startTime;
+            this.captureInterval = captureInterval;
+            this.scheduledCaptureTime = startTime + captureInterval;
+            this.governor = recorder.adaptiveFrameRate ? recorder.frameRateGovernor : null;
 
             Format screenFormat = recorder.screenFormat;
+            final int width = this.captureArea.width, height = this.captureArea.height;
+            Supplier<BufferedImage> imageFactory;
             if (screenFormat.get(DepthKey, 24) == 24) {
-                videoImg = new BufferedImage(this.captureArea.width, this.captureArea.height, BufferedImage.TYPE_INT_RGB);
+                imageFactory = () -> new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
             } else if (screenFormat.get(DepthKey) == 16) {
-                videoImg = new BufferedImage(this.captureArea.width, this.captureArea.height, BufferedImage.TYPE_USHORT_555_RGB);
+                imageFactory = () -> new BufferedImage(width, height, BufferedImage.TYPE_USHORT_555_RGB);
             } else if (screenFormat.get(DepthKey) == 8) {
-                videoImg = new BufferedImage(this.captureArea.width, this.captureArea.height, BufferedImage.TYPE_BYTE_INDEXED, Colors.createMacColors());
+                IndexColorModel macColors = Colors.createMacColors();
+                imageFactory = () -> new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, macColors);
             } else {
                 throw new IOException("Unsupported color depth " + screenFormat.get(DepthKey));
             }
-            videoGraphics = videoImg.createGraphics();
-            videoGraphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-            videoGraphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
-            videoGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+            frameRing = new FrameRing(recorder.frameRingCapacity, recorder.frameOverflowPolicy, imageFactory);
+        }
+
+        public FrameRing getFrameRing() {
+            return frameRing;
         }
 
         @Override
@@ -671,12 +802,23 @@ public class ScreenRecorder extends AbstractStateModel {
 
         /**
          * Grabs a screen, generates video images with pending mouse captures
-         * and writes them into the movie file.
+         * and publishes them in the frame ring.
+         * <p>
+         * Apart from the screen capture, which is allocated by AWT Robot, this
+         * method does not allocate objects.
          */
         private void grabScreen() throws IOException, InterruptedException {
             // Capture the screen
             BufferedImage previousScreenCapture = screenCapture;
             long timeBeforeCapture = System.currentTimeMillis();
+            if (timeBeforeCapture > scheduledCaptureTime + captureInterval) {
+                frameRing.countLateFrame();
+            }
+            scheduledCaptureTime += captureInterval;
+            if (governor != null && timeBeforeCapture <= getStopTime() && !governor.shouldCapture()) {
+                // The governor has lowered the capture rate
+                return;
+            }
             try {
                 screenCapture = robot.createScreenCapture(captureArea);
             } catch (IllegalMonitorStateException e) {
@@ -687,102 +829,47 @@ public class ScreenRecorder extends AbstractStateModel {
                 return;
             }
             long timeAfterCapture = System.currentTimeMillis();
+            if (governor != null) {
+                governor.recordCaptureLatency(timeAfterCapture - timeBeforeCapture);
+            }
             if (previousScreenCapture == null) {
                 previousScreenCapture = screenCapture;
             }
-            videoGraphics.drawImage(previousScreenCapture, 0, 0, null);
 
-            Buffer buf = new Buffer();
-            buf.format = new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, ENCODING_BUFFERED_IMAGE);
             // Generate video frames with mouse cursor painted on them
             boolean hasMouseCapture = false;
             if (mouseFormat != null && mouseFormat.get(FrameRateKey).intValue() > 0) {
-                while (!mouseCaptures.isEmpty() && mouseCaptures.peek().timeStamp.compareTo(new Rational(timeAfterCapture, 1000)) < 0) {
+                while (!mouseCaptures.isEmpty() && toMillis(mouseCaptures.peek().timeStamp) < timeAfterCapture) {
                     Buffer mouseCapture = mouseCaptures.poll();
-                    if (mouseCapture.timeStamp.compareTo(prevScreenCaptureTime) > 0) {
-                        if (mouseCapture.timeStamp.compareTo(new Rational(timeBeforeCapture, 1000)) < 0) {
+                    long mouseCaptureTime = toMillis(mouseCapture.timeStamp);
+                    if (mouseCaptureTime > prevScreenCaptureTime) {
+                        if (mouseCaptureTime < timeBeforeCapture) {
                             previousScreenCapture = screenCapture;
-                            videoGraphics.drawImage(previousScreenCapture, 0, 0, null);
                         }
 
                         Point mcp = (Point) mouseCapture.data;
                         prevMousePressed = (Boolean) mouseCapture.header;
                         prevDrawnMouseLocation.setLocation(mcp.x - captureArea.x, mcp.y - captureArea.y);
-                        Point p = prevDrawnMouseLocation;
 
                         long localStopTime = getStopTime();
-                        if (mouseCapture.timeStamp.compareTo(new Rational(localStopTime, 1000)) > 0) {
+                        if (mouseCaptureTime > localStopTime) {
                             break;
                         }
-                        {
-                            hasMouseCapture = true;
-
-                            // draw cursor
-                            if (prevMousePressed) {
-                                videoGraphics.drawImage(cursorImgPressed, p.x + cursorOffset.x, p.y + cursorOffset.y, null);
-                            } else {
-                                videoGraphics.drawImage(cursorImg, p.x + cursorOffset.x, p.y + cursorOffset.y, null);
-                            }
-                            buf.clearFlags();
-                            buf.data = videoImg;
-                            buf.sampleDuration = mouseCapture.timeStamp.subtract(prevScreenCaptureTime);
-                            buf.timeStamp = prevScreenCaptureTime.subtract(new Rational(startTime, 1000));
-                            buf.track = videoTrack;
-                            buf.sequenceNumber = sequenceNumber++;
-
-                            // Fudge mouse position into the header
-                            buf.header = p.x == Integer.MAX_VALUE ? null : p;
-                            recorder.write(buf);
-                            prevScreenCaptureTime = mouseCapture.timeStamp;
-
-                            // erase cursor
-                            videoGraphics.drawImage(previousScreenCapture, //
-                                    p.x + cursorOffset.x, p.y + cursorOffset.y,//
-                                    p.x + cursorOffset.x + cursorImg.getWidth() - 1, p.y + cursorOffset.y + cursorImg.getHeight() - 1,//
-                                    p.x + cursorOffset.x, p.y + cursorOffset.y,//
-                                    p.x + cursorOffset.x + cursorImg.getWidth() - 1, p.y + cursorOffset.y + cursorImg.getHeight() - 1,//
-                                    null);
-                        }
-
+                        hasMouseCapture = true;
+                        publishFrame(previousScreenCapture, prevDrawnMouseLocation, mouseCaptureTime);
                     }
                 }
 
-                if (!hasMouseCapture && prevScreenCaptureTime.compareTo(new Rational(getStopTime(), 1000)) < 0) {
-                    Point p = prevDrawnMouseLocation;
-                    if (p != null) {
-                        if (prevMousePressed) {
-                            videoGraphics.drawImage(cursorImgPressed, p.x + cursorOffset.x, p.y + cursorOffset.y, null);
-                        } else {
-                            videoGraphics.drawImage(cursorImg, p.x + cursorOffset.x, p.y + cursorOffset.y, null);
-                        }
-                    }
-
-                    buf.data = videoImg;
-                    buf.sampleDuration = new Rational(timeAfterCapture, 1000).subtract(prevScreenCaptureTime);
-                    buf.timeStamp = prevScreenCaptureTime.subtract(new Rational(startTime, 1000));
-                    buf.track = videoTrack;
-                    buf.sequenceNumber = sequenceNumber++;
-                    buf.header = p.x == Integer.MAX_VALUE ? null : p;
-                    recorder.write(buf);
-                    prevScreenCaptureTime = new Rational(timeAfterCapture, 1000);
-                    if (p != null) {//erase cursor
-                        videoGraphics.drawImage(previousScreenCapture, //
-                                p.x + cursorOffset.x, p.y + cursorOffset.y,//
-                                p.x + cursorOffset.x + cursorImg.getWidth() - 1, p.y + cursorOffset.y + cursorImg.getHeight() - 1,//
-                                p.x + cursorOffset.x, p.y + cursorOffset.y,//
-                                p.x + cursorOffset.x + cursorImg.getWidth() - 1, p.y + cursorOffset.y + cursorImg.getHeight() - 1,//
-                                null);
-                    }
+                if (!hasMouseCapture && prevScreenCaptureTime < getStopTime()) {
+                    publishFrame(previousScreenCapture, prevDrawnMouseLocation, timeAfterCapture);
                 }
-            } else if (prevScreenCaptureTime.compareTo(new Rational(getStopTime(), 1000)) < 0) {
-                buf.data = videoImg;
-                buf.sampleDuration = new Rational(timeAfterCapture, 1000).subtract(prevScreenCaptureTime);
-                buf.timeStamp = prevScreenCaptureTime.subtract(new Rational(startTime, 1000));
-                buf.track = videoTrack;
-                buf.sequenceNumber = sequenceNumber++;
-                buf.header = null; // no mouse position has been recorded for this frame
-                recorder.write(buf);
-                prevScreenCaptureTime = new Rational(timeAfterCapture, 1000);
+            } else if (prevScreenCaptureTime < getStopTime()) {
+                // no mouse position has been recorded for this frame
+                publishFrame(previousScreenCapture, null, timeAfterCapture);
+            }
+
+            if (governor != null) {
+                governor.update(recorder.getQueueFill());
             }
 
             if (timeBeforeCapture > getStopTime()) {
@@ -790,9 +877,55 @@ public class ScreenRecorder extends AbstractStateModel {
             }
         }
 
+        /**
+         * Draws a video frame into a slot of the frame ring and publishes it.
+         * The frame starts at {@code prevScreenCaptureTime} and ends at the
+         * specified time.
+         *
+         * @param screen  the screen capture
+         * @param p       the mouse location or null
+         * @param endTime the end time of the frame in milliseconds
+         */
+        private void publishFrame(BufferedImage screen, Point p, long endTime) throws InterruptedException {
+            FrameRing.Slot slot = frameRing.claim();
+            if (slot == null) {
+                // the frame ring has been closed, because recording is aborted
+                // or has failed
+                return;
+            }
+            Graphics2D g = slot.graphics;
+            g.drawImage(screen, 0, 0, null);
+            Buffer buf = slot.buffer;
+            buf.clearFlags();
+            buf.format = VIDEO_FORMAT;
+            buf.data = slot.image;
+            buf.track = videoTrack;
+            buf.sequenceNumber = sequenceNumber++;
+            slot.timeMillis = prevScreenCaptureTime - startTime;
+            slot.durationMillis = endTime - prevScreenCaptureTime;
+            if (p != null && p.x != Integer.MAX_VALUE) {
+                // draw cursor
+                g.drawImage(prevMousePressed ? cursorImgPressed : cursorImg, p.x + cursorOffset.x, p.y + cursorOffset.y, null);
+                // Fudge mouse position into the header
+                slot.mouseLocation.setLocation(p);
+                buf.header = slot.mouseLocation;
+            } else {
+                buf.header = null;
+            }
+            frameRing.publish(slot);
+            prevScreenCaptureTime = endTime;
+        }
+
+        /**
+         * Converts a time stamp, which has been created from a millisecond
+         * value, back to milliseconds.
+         */
+        private static long toMillis(Rational timeStamp) {
+            return timeStamp.getNumerator() * 1000 / timeStamp.getDenominator();
+        }
+
         public void close() {
-            videoGraphics.dispose();
-            videoImg.flush();
+            screenCapture = null;
         }
     }
 
@@ -1246,6 +1379,7 @@ public class ScreenRecorder extends AbstractStateModel {
                         try {
                             Buffer buf = writerQueue.take();
                             doWrite(buf);
+                            buf.release();
                         } catch (InterruptedException ex) {
                             // We have been interrupted, terminate
                             break;
@@ -1303,6 +1437,7 @@ public class ScreenRecorder extends AbstractStateModel {
                     screenGrabber.close();
                     screenGrabber = null;
                 }
+                stopFrameEncoder(false);
                 if (audioCaptureTimer != null) {
                     try {
                         audioFuture.get();
@@ -1356,6 +1491,7 @@ public class ScreenRecorder extends AbstractStateModel {
             recordingStopTime = recordingStartTime;
             abortMouseCapture();
             abortScreenCapture();
+            stopFrameEncoder(true);
             abortAudioCapture();
             stopWriter();
             setState(state == State.FAILING ? State.FAILED : State.DONE, getStateMessage());
@@ -1368,8 +1504,9 @@ public class ScreenRecorder extends AbstractStateModel {
      * Writes a buffer into the movie. Since the file system may not be
      * immediately available at all times, we do this asynchronously.
      * <p>
-     * The buffer is copied and passed to the writer queue, which is consumed by
-     * the writer thread. See method startWriter().
+     * The buffer is encoded or copied into data from a buffer pool, and is
+     * passed to the writer queue, which is consumed by the writer thread.
+     * See method startWriter().
      * <p>
      * AVI does not support a variable frame rate for the video track. Since we
      * can not capture frames at a fixed frame rate we have to resend the same
@@ -1396,7 +1533,7 @@ public class ScreenRecorder extends AbstractStateModel {
             if (writer.getFormat(videoTrack).get(FixedFrameRateKey, false) == false) {
                 // variable frame rate is supported => easy
                 Buffer wbuf = new Buffer();
-                frameEncoder.process(buf, wbuf);
+                encode(buf, wbuf);
                 writerQueue.put(wbuf);
             } else {// variable frame rate not supported => convert to fixed frame rate
 
@@ -1412,7 +1549,7 @@ public class ScreenRecorder extends AbstractStateModel {
                         buf.setFlag(SAME_DATA);
                     }
                     Buffer wbuf = new Buffer();
-                    if (frameEncoder.process(buf, wbuf) != Codec.CODEC_OK) {
+                    if (encode(buf, wbuf) != Codec.CODEC_OK) {
                         throw new IOException("Codec failed or could not process frame in a single step.");
                     }
                     writerQueue.put(wbuf);
@@ -1422,13 +1559,41 @@ public class ScreenRecorder extends AbstractStateModel {
         } else {
             Buffer wbuf = new Buffer();
             wbuf.setMetaTo(buf);
-            wbuf.data = ((byte[]) buf.data).clone();
+            byte[] data = (byte[]) buf.data;
+            byte[] copy = writerBufferPool.acquireBytes(data.length);
+            System.arraycopy(data, 0, copy, 0, data.length);
+            wbuf.setPooledData(copy, writerBufferPool);
             wbuf.length = buf.length;
             wbuf.offset = buf.offset;
             writerQueue.put(wbuf);
         }
     }
 
+    /**
+     * Encodes a video frame into a byte array from the writer buffer pool.
+     * <p>
+     * This method is called exclusively from the thread which calls
+     * {@link #write}.
+     *
+     * @param buf  the un-encoded frame
+     * @param wbuf the encoded frame
+     * @return the status of the frame encoder
+     */
+    private int encode(Buffer buf, Buffer wbuf) {
+        byte[] data = writerBufferPool.acquireBytes(max(lastEncodedLength, 1024));
+        wbuf.data = data;
+        int status = frameEncoder.process(buf, wbuf);
+        if (wbuf.data != data) {
+            // The encoder needed a bigger array
+            writerBufferPool.release(data);
+        }
+        if (wbuf.data instanceof byte[]) {
+            wbuf.setPooledData(wbuf.data, writerBufferPool);
+            lastEncodedLength = max(lastEncodedLength, wbuf.length);
+        }
+        return status;
+    }
+
     /**
      * The actual writing of the buffer happens here.
      * <p>
@@ -1497,6 +1662,112 @@ public class ScreenRecorder extends AbstractStateModel {
         this.maxFileSize = maxFileSize;
     }
 
+    /**
+     * Returns the fill level of the frame ring and the writer queue in the
+     * range [0, 1], whichever is fuller.
+     */
+    private double getQueueFill() {
+        double fill = 0;
+        FrameRing ring = frameRing;
+        if (ring != null) {
+            fill = ring.getPendingFrameCount() / (double) ring.getCapacity();
+        }
+        ArrayBlockingQueue<Buffer> queue = writerQueue;
+        if (queue != null) {
+            int size = queue.size();
+            fill = max(fill, size / (double) (size + queue.remainingCapacity()));
+        }
+        return fill;
+    }
+
+    /**
+     * Returns true if the capture rate is adapted to the load.
+     */
+    public boolean isAdaptiveFrameRate() {
+        return adaptiveFrameRate;
+    }
+
+    /**
+     * Sets whether the capture rate is adapted to the load. If this is
+     * true, the {@linkplain #getFrameRateGovernor() frame rate governor}
+     * lowers the capture rate when the recorder does not keep up, and restores
+     * it when the load drops. Takes effect when the next recording is
+     * started.
+     * <p>
+     * The default value is false.
+     */
+    public void setAdaptiveFrameRate(boolean newValue) {
+        this.adaptiveFrameRate = newValue;
+    }
+
+    /**
+     * Returns the frame rate governor. Register a
+     * {@link FrameRateGovernor.Listener} with it, to observe its decisions.
+     */
+    public FrameRateGovernor getFrameRateGovernor() {
+        return frameRateGovernor;
+    }
+
+    /**
+     * Returns the number of video frames that can be held between screen
+     * capture and encoding.
+     */
+    public int getFrameRingCapacity() {
+        return frameRingCapacity;
+    }
+
+    /**
+     * Sets the number of video frames that can be held between screen
+     * capture and encoding. Each frame holds an image of the size of the
+     * capture area. Takes effect when the next recording is started.
+     * <p>
+     * The default value is 4.
+     */
+    public void setFrameRingCapacity(int newValue) {
+        if (newValue < 2) {
+            throw new IllegalArgumentException("frameRingCapacity must be at least 2:" + newValue);
+        }
+        this.frameRingCapacity = newValue;
+    }
+
+    /**
+     * Returns what happens if the encoder can not keep up with screen
+     * capture.
+     */
+    public FrameRing.OverflowPolicy getFrameOverflowPolicy() {
+        return frameOverflowPolicy;
+    }
+
+    /**
+     * Sets what happens if the encoder can not keep up with screen capture.
+     * {@code BLOCK} delays screen capture until a frame has been encoded,
+     * {@code DROP_OLDEST} drops the oldest frame that has not been encoded
+     * yet. Takes effect when the next recording is started.
+     * <p>
+     * The default value is {@code BLOCK}.
+     */
+    public void setFrameOverflowPolicy(FrameRing.OverflowPolicy newValue) {
+        this.frameOverflowPolicy = newValue;
+    }
+
+    /**
+     * Returns the number of video frames of the current or last recording,
+     * which have been dropped because the encoder did not keep up.
+     */
+    public long getDroppedFrameCount() {
+        FrameRing ring = frameRing;
+        return ring == null ? 0 : ring.getDroppedFrameCount();
+    }
+
+    /**
+     * Returns the number of screen captures of the current or last
+     * recording, which have been made later than scheduled.
+     */
+    public long getLateFrameCount() {
+        FrameRing ring = frameRing;
+        return ring == null ? 0 : ring.getLateFrameCount();
+    }
+
     /**
      * Gets the audio mixer used for sound input. Returns null, if the default
      * mixer is used.
@@ -0,0 +1,161 @@
+/*
+ * @(#)FrameRateGovernorTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.screenrecorder;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.math.Rational;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.monte.media.screenrecorder.FrameRateGovernor.PRESSURE_SAMPLES;
+import static org.monte.media.screenrecorder.FrameRateGovernor.RELAXED_SAMPLES;
+
+public class FrameRateGovernorTest {
+    private static final double HIGH = 0.9, MEDIUM = 0.5, LOW = 0.1;
+
+    private final List<FrameRateGovernor.Event> events = new ArrayList<>();
+
+    private FrameRateGovernor createGovernor() {
+        FrameRateGovernor governor = new FrameRateGovernor();
+        governor.reset(new Rational(10));
+        governor.addListener(events::add);
+        return governor;
+    }
+
+    private static void update(FrameRateGovernor governor, double queueFill, int count) {
+        for (int i = 0; i < count; i++) {
+            governor.update(queueFill);
+            assertTrue(governor.getDivisor() <= governor.getMaxDivisor());
+        }
+    }
+
+    @Test
+    public void shouldLowerFrameRateUnderPressure() {
+        FrameRateGovernor governor = createGovernor();
+        update(governor, HIGH, PRESSURE_SAMPLES - 1);
+        assertEquals(1, governor.getDivisor());
+        assertTrue(events.isEmpty());
+
+        governor.update(HIGH);
+        assertEquals(2, governor.getDivisor());
+        assertEquals(new Rational(5), governor.getFrameRate());
+        assertEquals(1, events.size());
+        FrameRateGovernor.Event event = events.get(0);
+        assertEquals(1, event.getOldDivisor());
+        assertEquals(2, event.getNewDivisor());
+        assertEquals(new Rational(5), event.getFrameRate());
+        assertTrue(event.getReason().contains("queue fill 90%"), event.getReason());
+
+        update(governor, HIGH, 10 * PRESSURE_SAMPLES);
+        assertEquals(8, governor.getDivisor());
+        assertEquals(3, events.size());
+        assertEquals(4, events.get(1).getNewDivisor());
+        assertEquals(8, events.get(2).getNewDivisor());
+    }
+
+    @Test
+    public void shouldRequireConsecutiveSamples() {
+        FrameRateGovernor governor = createGovernor();
+        for (int i = 0; i < 10; i++) {
+            update(governor, HIGH, PRESSURE_SAMPLES - 1);
+            governor.update(MEDIUM);
+        }
+        assertEquals(1, governor.getDivisor());
+
+        update(governor, HIGH, PRESSURE_SAMPLES);
+        assertEquals(2, governor.getDivisor());
+        for (int i = 0; i < 10; i++) {
+            update(governor, LOW, RELAXED_SAMPLES - 1);
+            governor.update(MEDIUM);
+        }
+        assertEquals(2, governor.getDivisor());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void shouldRaiseFrameRateWhenRelaxed() {
+        FrameRateGovernor governor = createGovernor();
+        update(governor, HIGH, 2 * PRESSURE_SAMPLES);
+        assertEquals(4, governor.getDivisor());
+
+        update(governor, LOW, RELAXED_SAMPLES - 1);
+        assertEquals(4, governor.getDivisor());
+        governor.update(LOW);
+        assertEquals(2, governor.getDivisor());
+        update(governor, LOW, RELAXED_SAMPLES);
+        assertEquals(1, governor.getDivisor());
+        update(governor, LOW, RELAXED_SAMPLES);
+        assertEquals(1, governor.getDivisor());
+
+        assertEquals(4, events.size());
+        assertEquals(4, events.get(2).getOldDivisor());
+        assertEquals(2, events.get(2).getNewDivisor());
+        assertEquals(1, events.get(3).getNewDivisor());
+        assertEquals(new Rational(10), events.get(3).getFrameRate());
+    }
+
+    @Test
+    public void shouldReactToLatency() {
+        FrameRateGovernor governor = createGovernor();
+        governor.recordEncodeLatency(150);
+        update(governor, LOW, PRESSURE_SAMPLES);
+        assertEquals(2, governor.getDivisor());
+        assertTrue(events.get(0).getReason().contains("encode latency 150 ms"), events.get(0).getReason());
+
+        // 150 ms fit into the 200 ms interval, but not into 100 ms
+        update(governor, LOW, 5 * RELAXED_SAMPLES);
+        assertEquals(2, governor.getDivisor());
+
+        for (int i = 0; i < 20; i++) {
+            governor.recordEncodeLatency(10);
+        }
+        update(governor, LOW, RELAXED_SAMPLES);
+        assertEquals(1, governor.getDivisor());
+
+        governor.recordCaptureLatency(300);
+        update(governor, LOW, PRESSURE_SAMPLES);
+        assertEquals(2, governor.getDivisor());
+        assertTrue(events.get(2).getReason().contains("capture latency 300 ms"), events.get(2).getReason());
+    }
+
+    @Test
+    public void shouldNotExceedMaxDivisor() {
+        FrameRateGovernor governor = createGovernor();
+        governor.setMaxDivisor(3);
+        update(governor, HIGH, 10 * PRESSURE_SAMPLES);
+        assertEquals(3, governor.getDivisor());
+        assertEquals(2, events.size());
+        assertEquals(3, events.get(1).getNewDivisor());
+
+        governor.setMaxDivisor(1);
+        assertEquals(1, governor.getDivisor());
+        assertEquals(3, events.size());
+        update(governor, HIGH, 10 * PRESSURE_SAMPLES);
+        assertEquals(1, governor.getDivisor());
+        assertEquals(3, events.size());
+    }
+
+    @Test
+    public void shouldSkipTicks() {
+        FrameRateGovernor governor = createGovernor();
+        assertTrue(governor.shouldCapture());
+        assertTrue(governor.shouldCapture());
+        update(governor, HIGH, PRESSURE_SAMPLES);
+        assertTrue(governor.shouldCapture());
+        assertFalse(governor.shouldCapture());
+        assertTrue(governor.shouldCapture());
+        assertFalse(governor.shouldCapture());
+
+        governor.reset(new Rational(10));
+        assertEquals(1, governor.getDivisor());
+        assertTrue(governor.shouldCapture());
+        assertTrue(governor.shouldCapture());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * @(#)FrameRingTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.screenrecorder;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.screenrecorder.FrameRing.OverflowPolicy;
+import org.monte.media.screenrecorder.FrameRing.Slot;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameRingTest {
+    private static FrameRing createRing(int capacity, OverflowPolicy policy) {
+        return new FrameRing(capacity, policy, () -> new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+    }
+
+    private static void publish(FrameRing ring, Slot slot, long timeMillis) {
+        slot.timeMillis = timeMillis;
+        ring.publish(slot);
+    }
+
+    @Test
+    public void shouldKeepFrameOrder() throws Exception {
+        FrameRing ring = createRing(3, OverflowPolicy.BLOCK);
+        long next = 0;
+        for (long i = 0; i < 20; i++) {
+            publish(ring, ring.claim(), i);
+            if (i % 3 == 2) {
+                // consume in bursts, so that the indices wrap around
+                while (!ring.isEmpty()) {
+                    Slot slot = ring.poll(0, TimeUnit.MILLISECONDS);
+                    assertEquals(next++, slot.timeMillis);
+                    ring.release(slot);
+                }
+            }
+        }
+        assertEquals(2, ring.getPendingFrameCount());
+        assertEquals(20, ring.getPublishedFrameCount());
+        assertEquals(0, ring.getDroppedFrameCount());
+    }
+
+    @Test
+    public void shouldKeepFrameOrderWithConcurrentConsumer() throws Exception {
+        FrameRing ring = createRing(4, OverflowPolicy.BLOCK);
+        int count = 10_000;
+        CompletableFuture<Long> consumer = CompletableFuture.supplyAsync(() -> {
+            long expected = 0;
+            try {
+                while (expected < count) {
+                    Slot slot = ring.poll(1, TimeUnit.SECONDS);
+                    assertNotNull(slot);
+                    assertEquals(expected++, slot.timeMillis);
+                    ring.release(slot);
+                }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return expected;
+        });
+        for (int i = 0; i < count; i++) {
+            publish(ring, ring.claim(), i);
+        }
+        assertEquals(count, consumer.get(10, TimeUnit.SECONDS));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void shouldBlockUntilRelease() throws Exception {
+        FrameRing ring = createRing(2, OverflowPolicy.BLOCK);
+        Slot first = ring.claim();
+        publish(ring, first, 0);
+        publish(ring, ring.claim(), 1);
+
+        CompletableFuture<Slot> producer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ring.claim();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(producer.isDone(), "claim must wait while all slots are in use");
+
+        Slot slot = ring.poll(0, TimeUnit.MILLISECONDS);
+        assertSame(first, slot);
+        ring.release(slot);
+        assertSame(first, producer.get(5, TimeUnit.SECONDS));
+        assertEquals(0, ring.getDroppedFrameCount());
+        assertEquals(1, ring.getPendingFrameCount());
+    }
+
+    @Test
+    public void shouldDropOldestFrame() throws Exception {
+        FrameRing ring = createRing(3, OverflowPolicy.DROP_OLDEST);
+        Slot oldest = ring.claim();
+        publish(ring, oldest, 0);
+        publish(ring, ring.claim(), 1);
+        publish(ring, ring.claim(), 2);
+
+        Slot slot = ring.claim();
+        assertSame(oldest, slot);
+        assertEquals(1, ring.getDroppedFrameCount());
+        publish(ring, slot, 3);
+
+        assertEquals(3, ring.getPendingFrameCount());
+        for (long expected = 1; expected <= 3; expected++) {
+            slot = ring.poll(0, TimeUnit.MILLISECONDS);
+            assertEquals(expected, slot.timeMillis);
+            ring.release(slot);
+        }
+        assertTrue(ring.isEmpty());
+        assertEquals(4, ring.getPublishedFrameCount());
+    }
+
+    @Test
+    public void shouldReturnCancelledSlot() throws Exception {
+        FrameRing ring = createRing(2, OverflowPolicy.BLOCK);
+        Slot slot = ring.claim();
+        ring.cancel(slot);
+        assertSame(slot, ring.claim());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void shouldUnblockOnClose() throws Exception {
+        FrameRing ring = createRing(2, OverflowPolicy.BLOCK);
+        publish(ring, ring.claim(), 0);
+        publish(ring, ring.claim(), 1);
+
+        CompletableFuture<Slot> producer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ring.claim();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(producer.isDone());
+        ring.close();
+        assertNull(producer.get(5, TimeUnit.SECONDS));
+
+        assertTrue(ring.isClosed());
+        assertNull(ring.poll(1, TimeUnit.MINUTES));
+        assertNull(ring.claim());
+    }
+
+    @Test
+    public void shouldUnblockConsumerOnClose() throws Exception {
+        FrameRing ring = createRing(2, OverflowPolicy.BLOCK);
+        CompletableFuture<Slot> consumer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ring.poll(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        ring.close();
+        assertNull(consumer.get(5, TimeUnit.SECONDS));
+    }
+}
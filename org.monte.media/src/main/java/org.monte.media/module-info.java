@@ -61,6 +61,7 @@
  */
 module org.monte.media {
     requires java.desktop;
+    requires java.management;
     requires java.prefs;
 
     exports org.monte.media.beans;
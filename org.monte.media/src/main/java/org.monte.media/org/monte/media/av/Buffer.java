@@ -7,15 +7,24 @@ package org.monte.media.av;
 import org.monte.media.math.Rational;
 import org.monte.media.util.Methods;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A {@code Buffer} carries media data from one media processing unit to
  * another.
+ * <p>
+ * The data of a buffer is either <em>borrowed</em> or <em>owned</em>.
+ * Borrowed data belongs to someone else, and is only valid until the
+ * buffer is passed on. This is the default. Owned data has been acquired
+ * from a {@link BufferPool}, and is reference counted. Buffers can share
+ * owned data without copying it, see {@link #setDataRefTo(Buffer)}. The data
+ * is returned to the pool when all buffers have released it.
  *
  * @author Werner Randelshofer
  */
@@ -82,6 +91,32 @@ public class Buffer {
      */
     public long sequenceNumber;
 
+    /**
+     * The regions of a video frame that differ from the previous frame, in
+     * image coordinates. An empty array means that the frame is identical to
+     * the previous frame. Null means that the regions are unknown.
+     * <p>
+     * This field is set by {@link org.monte.media.av.codec.video.DirtyRegionCodec}.
+     * It is not copied by {@link #setMetaTo}, because a codec that changes the
+     * pixels of a frame invalidates the regions.
+     */
+    public Rectangle[] dirtyRegions;
+
+    /**
+     * The pool from which {@code data} has been acquired. This is null if
+     * the data is borrowed.
+     */
+    private BufferPool dataPool;
+    /**
+     * The reference count of {@code data}. This object is shared by all
+     * buffers which share the same pooled data.
+     */
+    private AtomicInteger dataRefCount;
+    /**
+     * The number of references to the pooled data that this buffer holds.
+     */
+    private int dataRefs;
+
     /**
      * Sets all variables of this buffer to that buffer except for {@code data},
      * {@code offset}, {@code length} and {@code header}.
@@ -107,16 +142,142 @@ public class Buffer {
      * {@code data} and {@code header}, so that these fields in that buffer can
      * be discarded without affecting the contents of this buffer.
      * <p>
+     * The copy is borrowed, even if the data of that buffer is pooled. Use
+     * {@link #setDataRefTo(Buffer)} for sharing pooled data without copying
+     * it.
+     * <p>
      * FIXME - This method does not always create a copy!!
      */
     public void setDataTo(Buffer that) {
+        Object into = this.dataPool == null ? this.data : null;
+        releaseData();
         this.offset = that.offset;
         this.length = that.length;
-        this.data = copy(that.data, this.data);
+        this.data = copy(that.data, into);
         this.header = copy(that.header, this.header);
 
     }
 
+    /**
+     * Sets {@code data}, {@code offset}, {@code length} and {@code header} of
+     * this buffer to that buffer without copying the data.
+     * <p>
+     * If the data of that buffer is pooled, then the reference count of the
+     * data is incremented, and this buffer shares ownership of the data with
+     * that buffer. The data is returned to the pool, when all buffers have
+     * released it.
+     * <p>
+     * If the data of that buffer is borrowed, then this buffer borrows the
+     * data too. The data is only valid for as long as that buffer is valid.
+     *
+     * @param that that buffer
+     */
+    public void setDataRefTo(Buffer that) {
+        if (that == this) {
+            return;
+        }
+        if (that.dataPool != null) {
+            that.dataRefCount.incrementAndGet();
+        }
+        releaseData();
+        this.offset = that.offset;
+        this.length = that.length;
+        this.data = that.data;
+        this.header = that.header;
+        this.dataPool = that.dataPool;
+        this.dataRefCount = that.dataRefCount;
+        this.dataRefs = that.dataPool == null ? 0 : 1;
+    }
+
+    /**
+     * Sets the data of this buffer to data that has been acquired from the
+     * specified pool. This buffer becomes the sole owner of the data with a
+     * reference count of 1.
+     * <p>
+     * The previous data of this buffer is released.
+     *
+     * @param data the data
+     * @param pool the pool from which the data has been acquired
+     */
+    public void setPooledData(Object data, BufferPool pool) {
+        releaseData();
+        this.data = data;
+        this.dataPool = pool;
+        this.dataRefCount = new AtomicInteger(1);
+        this.dataRefs = 1;
+    }
+
+    /**
+     * Returns true if this buffer owns a reference to pooled data. Returns
+     * false if the data is borrowed.
+     * <p>
+     * Borrowed data must be copied if it is needed after the buffer has been
+     * passed on.
+     *
+     * @return true if the data is owned
+     */
+    public boolean isDataOwned() {
+        return dataPool != null;
+    }
+
+    /**
+     * Returns the pool from which the data has been acquired.
+     *
+     * @return the pool, or null if the data is borrowed
+     */
+    public BufferPool getDataPool() {
+        return dataPool;
+    }
+
+    /**
+     * Increments the reference count of the pooled data of this buffer.
+     * Each call to this method must be balanced by a call to
+     * {@link #release()} on this buffer.
+     * <p>
+     * Does nothing if the data is borrowed.
+     */
+    public void retain() {
+        if (dataPool != null) {
+            dataRefCount.incrementAndGet();
+            dataRefs++;
+        }
+    }
+
+    /**
+     * Releases a reference to the data of this buffer. If the data is
+     * pooled, the reference count is decremented. When the reference count
+     * drops to 0, the data is returned to the pool.
+     * <p>
+     * Sets {@code data} to null, when this buffer has released all its
+     * references to pooled data.
+     */
+    public void release() {
+        if (dataPool != null) {
+            if (dataRefs > 1) {
+                // this buffer still holds a reference, so the count stays > 0
+                dataRefs--;
+                dataRefCount.decrementAndGet();
+                return;
+            }
+            releaseData();
+            data = null;
+        }
+    }
+
+    /**
+     * Releases all references to pooled data that this buffer holds.
+     */
+    private void releaseData() {
+        if (dataPool != null) {
+            if (dataRefCount.addAndGet(-dataRefs) == 0) {
+                dataPool.release(data);
+            }
+            dataPool = null;
+            dataRefCount = null;
+            dataRefs = 0;
+        }
+    }
+
     private Object copy(Object from, Object into) {
         if (from instanceof byte[]) {
             byte[] b = (byte[]) from;
@@ -125,9 +286,18 @@ public class Buffer {
             }
             System.arraycopy(b, 0, (byte[]) into, 0, b.length);
         } else if (from instanceof BufferedImage) {
-            // FIXME - Try to reuse BufferedImage in output!
             BufferedImage img = (BufferedImage) from;
             ColorModel cm = img.getColorModel();
+            if (into instanceof BufferedImage && into != from) {
+                // Reuse the output image if it is compatible with the input image
+                BufferedImage intoImg = (BufferedImage) into;
+                if (intoImg.getWidth() == img.getWidth() && intoImg.getHeight() == img.getHeight()
+                        && intoImg.getColorModel().equals(cm)
+                        && intoImg.getSampleModel().equals(img.getSampleModel())) {
+                    img.copyData(intoImg.getRaster());
+                    return intoImg;
+                }
+            }
             boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
             WritableRaster raster = img.copyData(null);
             into = new BufferedImage(cm, raster, isAlphaPremultiplied, null);
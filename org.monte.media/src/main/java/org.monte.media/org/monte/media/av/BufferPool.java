@@ -0,0 +1,64 @@
+/*
+ * @(#)BufferPool.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A {@code BufferPool} recycles the media data of {@link Buffer}s.
+ * <p>
+ * Data is acquired from a pool with one of the {@code acquire} methods, and
+ * is returned to the pool with {@link #release(Object)}. Reference counting
+ * of data that is shared by multiple buffers is done by {@link Buffer}, see
+ * {@link Buffer#setPooledData(Object, BufferPool)}.
+ * <p>
+ * Data that is never released is left to the garbage collector.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public interface BufferPool {
+    /**
+     * Acquires a byte array with at least the specified length.
+     * The contents of the array are undefined.
+     *
+     * @param minLength the minimal length of the array
+     * @return a byte array
+     */
+    byte[] acquireBytes(int minLength);
+
+    /**
+     * Acquires an int array with at least the specified length.
+     * The contents of the array are undefined.
+     *
+     * @param minLength the minimal length of the array
+     * @return an int array
+     */
+    int[] acquireInts(int minLength);
+
+    /**
+     * Acquires an image with the specified size and type.
+     * The contents of the image are undefined.
+     *
+     * @param width     the width of the image
+     * @param height    the height of the image
+     * @param imageType the image type, for example
+     *                  {@link BufferedImage#TYPE_INT_RGB}
+     * @return an image
+     */
+    BufferedImage acquireImage(int width, int height, int imageType);
+
+    /**
+     * Returns the specified data to the pool. The data must not be used
+     * anymore after it has been released.
+     * <p>
+     * Data that has not been acquired from this pool is adopted by the pool,
+     * if it is of a supported type.
+     *
+     * @param data the data, null is ignored
+     */
+    void release(Object data);
+}
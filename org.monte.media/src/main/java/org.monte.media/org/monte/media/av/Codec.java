@@ -85,4 +85,18 @@ public interface Codec {
      * Resets the state of the codec.
      */
     public void reset();
+
+    /**
+     * Returns a hint for the cost of this codec, for example the expected
+     * processing time in nanoseconds per pixel or per audio sample.
+     * {@link CodecPlanner} prefers the chain of codecs with the lowest total
+     * cost.
+     * <p>
+     * This implementation returns 1.
+     *
+     * @return the cost, a positive value
+     */
+    public default double getCostHint() {
+        return 1;
+    }
 }
@@ -10,6 +10,9 @@ import java.util.List;
 
 /**
  * {@code CodecChain}.
+ * <p>
+ * The chain records the performance of each codec in {@link StageMetrics},
+ * see {@link #getStageMetrics()}.
  *
  * @author Werner Randelshofer
  */
@@ -20,13 +23,15 @@ public class CodecChain implements Codec {
     private Buffer tmpBuf;
     private int firstState;
     private int secondState;
-    private long firstElapsed;
-    private long secondElapsed;
+    private final StageMetrics firstMetrics;
+    private final StageMetrics secondMetrics;
 
     public CodecChain(Codec first, Codec second) {
         if (first == null || second == null) throw new IllegalArgumentException("first and second must not be null");
         this.first = first;
         this.second = second;
+        this.firstMetrics = new StageMetrics(first.getName());
+        this.secondMetrics = second instanceof CodecChain ? null : new StageMetrics(second.getName());
     }
 
     public static Codec createCodecChain(List<Codec> codecs) {
@@ -99,16 +104,14 @@ public class CodecChain implements Codec {
 
         if (CODEC_INPUT_NOT_CONSUMED == (secondState & CODEC_INPUT_NOT_CONSUMED)) {
             // => second codec needs to process tmpBuffer again
-            long start = System.currentTimeMillis();
-            secondState = second.process(tmpBuf, out);
-            secondElapsed += System.currentTimeMillis() - start;
+            secondState = processSecond(out);
             return secondState;
         }
 
 
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         firstState = first.process(in, tmpBuf);
-        firstElapsed += System.currentTimeMillis() - start;
+        firstMetrics.recordProcess(System.nanoTime() - start, in, tmpBuf, firstState);
         if (firstState == CODEC_FAILED) {
             return firstState;
         }
@@ -117,9 +120,7 @@ public class CodecChain implements Codec {
             return firstState;
         }
 
-        start = System.currentTimeMillis();
-        secondState = second.process(tmpBuf, out);
-        secondElapsed += System.currentTimeMillis() - start;
+        secondState = processSecond(out);
         if (secondState == CODEC_FAILED) {
             return secondState;
         }
@@ -127,6 +128,17 @@ public class CodecChain implements Codec {
         return (secondState & (-1 ^ CODEC_INPUT_NOT_CONSUMED)) | (firstState & (-1 ^ CODEC_OUTPUT_NOT_FILLED));
     }
 
+    private int processSecond(Buffer out) {
+        if (secondMetrics == null) {
+            // a nested chain records its own metrics
+            return second.process(tmpBuf, out);
+        }
+        long start = System.nanoTime();
+        int state = second.process(tmpBuf, out);
+        secondMetrics.recordProcess(System.nanoTime() - start, tmpBuf, out, state);
+        return state;
+    }
+
     @Override
     public String getName() {
         return first.getName() + ", " + second.getName();
@@ -139,28 +151,77 @@ public class CodecChain implements Codec {
         tmpBuf = null;
     }
 
+    /**
+     * Returns the sum of the costs of the codecs in the chain.
+     */
     @Override
-    public String toString() {
-        return "CodecChain{" + first + "," + second + "}";
+    public double getCostHint() {
+        return first.getCostHint() + second.getCostHint();
     }
 
-    public long getElapsedTime() {
-        return firstElapsed + secondElapsed;
+    @Override
+    public String toString() {
+        return "CodecChain{" + first + "," + second + "}";
     }
 
-    public String reportElapsedTime() {
+    /**
+     * Returns the metrics of all codecs in this chain, including the codecs
+     * of nested chains.
+     *
+     * @return the metrics in processing order
+     */
+    public List<StageMetrics> getStageMetrics() {
+        ArrayList<StageMetrics> list = new ArrayList<>();
+        list.add(firstMetrics);
         if (second instanceof CodecChain) {
-            return "{" + first.getName() + " " + firstElapsed + ((CodecChain) second).reportElapsedTime0() + "}";
+            list.addAll(((CodecChain) second).getStageMetrics());
         } else {
-            return "{" + first.getName() + " " + firstElapsed + ", " + second.getName() + " " + secondElapsed + "}";
+            list.add(secondMetrics);
         }
+        return list;
+    }
+
+    /**
+     * Returns snapshots of the metrics of all codecs in this chain.
+     *
+     * @return the snapshots in processing order
+     */
+    public List<StageMetrics.Snapshot> getMetricsSnapshot() {
+        ArrayList<StageMetrics.Snapshot> list = new ArrayList<>();
+        for (StageMetrics m : getStageMetrics()) {
+            list.add(m.getSnapshot());
+        }
+        return list;
     }
 
-    private String reportElapsedTime0() {
-        if (second instanceof CodecChain) {
-            return ", " + first.getName() + " " + firstElapsed + ((CodecChain) second).reportElapsedTime0();
-        } else {
-            return ", " + first.getName() + " " + firstElapsed + ", " + second.getName() + " " + secondElapsed;
+    /**
+     * Returns the total time in milliseconds that the codecs of this chain
+     * have spent processing.
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedTime() {
+        long nanos = 0;
+        for (StageMetrics m : getStageMetrics()) {
+            nanos += m.getTotalNanos();
+        }
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Returns the time in milliseconds that each codec of this chain has
+     * spent processing.
+     *
+     * @return a string of the form {@code {name1 ms1, name2 ms2, ...}}
+     */
+    public String reportElapsedTime() {
+        StringBuilder b = new StringBuilder("{");
+        for (StageMetrics m : getStageMetrics()) {
+            if (b.length() > 1) {
+                b.append(", ");
+            }
+            b.append(m.getName()).append(' ').append(m.getTotalNanos() / 1_000_000);
         }
+        return b.append('}').toString();
     }
 }
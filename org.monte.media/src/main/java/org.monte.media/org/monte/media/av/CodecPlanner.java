@@ -0,0 +1,223 @@
+/*
+ * @(#)CodecPlanner.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Plans chains of codecs, which convert from an input format to an output
+ * format, when there is no single codec that can do the conversion.
+ * <p>
+ * The planner searches the graph of formats, in which each codec of the
+ * {@link Registry} is an edge from a format that the codec accepts to a
+ * format that it produces. It returns the chain with the lowest total cost,
+ * see {@link Codec#getCostHint()}.
+ * <p>
+ * Plans are cached per pair of input and output formats. A cached plan only
+ * holds the formats of the steps; each call creates new codecs, because
+ * codecs have state.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class CodecPlanner {
+    /**
+     * The default maximal number of codecs in a chain.
+     */
+    public final static int DEFAULT_MAX_STEPS = 3;
+    /**
+     * The maximal number of cached plans.
+     */
+    private final static int MAX_CACHED_PLANS = 256;
+    /**
+     * Marks a pair of formats for which no chain exists.
+     */
+    private final static List<Step> NO_PLAN = new ArrayList<>();
+
+    /**
+     * A step of a plan.
+     */
+    private static class Step {
+        final Class<?> codecClass;
+        final Format inputFormat;
+        final Format outputFormat;
+
+        Step(Class<?> codecClass, Format inputFormat, Format outputFormat) {
+            this.codecClass = codecClass;
+            this.inputFormat = inputFormat;
+            this.outputFormat = outputFormat;
+        }
+    }
+
+    /**
+     * A path through the graph of formats.
+     */
+    private static class Path implements Comparable<Path> {
+        final Path previous;
+        final Step step;
+        final Format format;
+        final double cost;
+        final int length;
+        final long sequence;
+        final boolean isComplete;
+
+        Path(Path previous, Step step, Format format, double cost, long sequence, boolean isComplete) {
+            this.previous = previous;
+            this.step = step;
+            this.format = format;
+            this.cost = cost;
+            this.length = previous == null ? 0 : previous.length + 1;
+            this.sequence = sequence;
+            this.isComplete = isComplete;
+        }
+
+        List<Step> toSteps() {
+            Step[] steps = new Step[length];
+            for (Path p = this; p.step != null; p = p.previous) {
+                steps[p.length - 1] = p.step;
+            }
+            return Arrays.asList(steps);
+        }
+
+        @Override
+        public int compareTo(Path that) {
+            int c = Double.compare(this.cost, that.cost);
+            // prefer the order of the registry if the costs are equal
+            return c != 0 ? c : Long.compare(this.sequence, that.sequence);
+        }
+    }
+
+    private final Registry registry;
+    private final int maxSteps;
+    /**
+     * Guarded by this.
+     */
+    private final LinkedHashMap<List<Format>, List<Step>> plans =
+            new LinkedHashMap<List<Format>, List<Step>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Format>, List<Step>> eldest) {
+                    return size() > MAX_CACHED_PLANS;
+                }
+            };
+
+    /**
+     * Creates a new planner, which builds chains with up to
+     * {@value #DEFAULT_MAX_STEPS} codecs.
+     *
+     * @param registry the registry that provides the codecs
+     */
+    public CodecPlanner(Registry registry) {
+        this(registry, DEFAULT_MAX_STEPS);
+    }
+
+    /**
+     * Creates a new planner.
+     *
+     * @param registry the registry that provides the codecs
+     * @param maxSteps the maximal number of codecs in a chain
+     */
+    public CodecPlanner(Registry registry, int maxSteps) {
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be greater 0, maxSteps=" + maxSteps);
+        }
+        this.registry = registry;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Creates a codec, or a chain of codecs, which converts from the
+     * specified input format to the specified output format.
+     *
+     * @param inputFormat  the input format
+     * @param outputFormat the output format
+     * @return a codec, a {@link CodecChain} if more than one codec is needed,
+     * or null if no chain of codecs can do the conversion
+     */
+    public Codec createCodec(Format inputFormat, Format outputFormat) {
+        List<Format> key = Arrays.asList(inputFormat, outputFormat);
+        List<Step> plan;
+        synchronized (this) {
+            plan = plans.get(key);
+        }
+        if (plan == null) {
+            List<Step> steps = search(inputFormat, outputFormat);
+            plan = steps == null ? NO_PLAN : steps;
+            synchronized (this) {
+                plans.put(key, plan);
+            }
+        }
+        if (plan == NO_PLAN) {
+            return null;
+        }
+        Codec[] codecs = new Codec[plan.size()];
+        for (int i = 0; i < codecs.length; i++) {
+            codecs[i] = createCodec(plan.get(i));
+            if (codecs[i] == null) {
+                // => the registry has changed, forget the plan
+                synchronized (this) {
+                    plans.remove(key);
+                }
+                return null;
+            }
+        }
+        return CodecChain.createCodecChain(codecs);
+    }
+
+    private Codec createCodec(Step step) {
+        for (Codec c : registry.getCodecs(step.inputFormat, step.outputFormat)) {
+            if (c.getClass() == step.codecClass) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches the chain with the lowest cost with Dijkstra's algorithm.
+     *
+     * @return the steps of the chain, or null if there is none
+     */
+    private List<Step> search(Format inputFormat, Format outputFormat) {
+        PriorityQueue<Path> queue = new PriorityQueue<>();
+        Set<Format> visited = new HashSet<>();
+        long sequence = 0;
+        queue.add(new Path(null, null, inputFormat, 0, sequence++, false));
+        while (!queue.isEmpty()) {
+            Path path = queue.poll();
+            if (path.isComplete) {
+                return path.toSteps();
+            }
+            if (!visited.add(path.format) || path.length == maxSteps) {
+                continue;
+            }
+            for (Codec codec : registry.getCodecs(path.format, null)) {
+                double cost = path.cost + codec.getCostHint();
+                if (codec.setOutputFormat(outputFormat) != null) {
+                    Step step = new Step(codec.getClass(), path.format, outputFormat);
+                    queue.add(new Path(path, step, outputFormat, cost, sequence++, true));
+                }
+                if (path.length + 1 == maxSteps) {
+                    continue;
+                }
+                for (Format candidate : codec.getOutputFormats(path.format)) {
+                    Format actual = codec.setOutputFormat(candidate);
+                    if (actual != null && !visited.contains(actual)) {
+                        Step step = new Step(codec.getClass(), path.format, candidate);
+                        queue.add(new Path(path, step, actual, cost, sequence++, false));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
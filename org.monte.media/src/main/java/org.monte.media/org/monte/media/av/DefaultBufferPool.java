@@ -0,0 +1,194 @@
+/*
+ * @(#)DefaultBufferPool.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Default implementation of {@link BufferPool}.
+ * <p>
+ * Arrays are pooled by their length. An idle array is handed out for a
+ * request if its length is at least the requested length, but not more than
+ * twice the requested length. Images are pooled by width, height and type.
+ * Indexed images are not pooled.
+ * <p>
+ * The pool keeps at most {@code maxIdle} idle objects per length or image
+ * size. Surplus objects are left to the garbage collector.
+ *
+ * @author Werner Randelshofer
+ */
+public class DefaultBufferPool implements BufferPool {
+    private final int maxIdle;
+    private final TreeMap<Integer, ArrayDeque<byte[]>> idleBytes = new TreeMap<>();
+    private final TreeMap<Integer, ArrayDeque<int[]>> idleInts = new TreeMap<>();
+    private final HashMap<ImageKey, ArrayDeque<BufferedImage>> idleImages = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a new pool which keeps at most 4 idle objects per size.
+     */
+    public DefaultBufferPool() {
+        this(4);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxIdle the maximal number of idle objects per size
+     */
+    public DefaultBufferPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public synchronized byte[] acquireBytes(int minLength) {
+        byte[] b = poll(idleBytes, minLength);
+        if (b == null) {
+            b = new byte[minLength];
+        }
+        return b;
+    }
+
+    @Override
+    public synchronized int[] acquireInts(int minLength) {
+        int[] a = poll(idleInts, minLength);
+        if (a == null) {
+            a = new int[minLength];
+        }
+        return a;
+    }
+
+    @Override
+    public synchronized BufferedImage acquireImage(int width, int height, int imageType) {
+        ImageKey key = new ImageKey(width, height, imageType);
+        ArrayDeque<BufferedImage> q = idleImages.get(key);
+        BufferedImage img = q == null ? null : q.poll();
+        if (q != null && q.isEmpty()) {
+            idleImages.remove(key);
+        }
+        if (img == null) {
+            misses++;
+            img = new BufferedImage(width, height, imageType);
+        } else {
+            hits++;
+        }
+        return img;
+    }
+
+    @Override
+    public synchronized void release(Object data) {
+        if (data instanceof byte[]) {
+            offer(idleBytes, ((byte[]) data).length, (byte[]) data);
+        } else if (data instanceof int[]) {
+            offer(idleInts, ((int[]) data).length, (int[]) data);
+        } else if (data instanceof BufferedImage) {
+            BufferedImage img = (BufferedImage) data;
+            // Indexed images and sub-classes may have a color model which
+            // is not implied by the image type.
+            int type = img.getType();
+            if (img.getClass() == BufferedImage.class && type != BufferedImage.TYPE_CUSTOM
+                    && type != BufferedImage.TYPE_BYTE_INDEXED && type != BufferedImage.TYPE_BYTE_BINARY) {
+                offer(idleImages, new ImageKey(img.getWidth(), img.getHeight(), type), img);
+            }
+        }
+    }
+
+    private <T> T poll(TreeMap<Integer, ArrayDeque<T>> idle, int minLength) {
+        Map.Entry<Integer, ArrayDeque<T>> e = idle.ceilingEntry(minLength);
+        if (e != null && e.getKey() <= Math.max(minLength * 2L, 64L)) {
+            T a = e.getValue().poll();
+            if (e.getValue().isEmpty()) {
+                idle.remove(e.getKey());
+            }
+            if (a != null) {
+                hits++;
+                return a;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Adds an idle object to the pool, unless the pool already holds
+     * {@code maxIdle} idle objects of the same size. Does not create an
+     * empty queue, because {@link #poll} takes the first queue that fits.
+     */
+    private <K, T> void offer(Map<K, ArrayDeque<T>> idle, K key, T a) {
+        ArrayDeque<T> q = idle.get(key);
+        if (q == null) {
+            if (maxIdle <= 0) {
+                return;
+            }
+            q = new ArrayDeque<>();
+            idle.put(key, q);
+        }
+        if (q.size() < maxIdle) {
+            q.add(a);
+        }
+    }
+
+    /**
+     * Removes all idle objects from the pool.
+     */
+    public synchronized void clear() {
+        idleBytes.clear();
+        idleInts.clear();
+        idleImages.clear();
+    }
+
+    /**
+     * Returns the number of times that an acquire method could reuse an idle
+     * object.
+     *
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of times that an acquire method had to create a new
+     * object.
+     *
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static class ImageKey {
+        private final int width, height, type;
+
+        ImageKey(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ImageKey that = (ImageKey) o;
+            return width == that.width && height == that.height && type == that.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, type);
+        }
+    }
+}
@@ -6,25 +6,180 @@ package org.monte.media.av;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.WeakHashMap;
+
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
 
 /**
  * {@code DefaultRegistry}.
  * <p>
+ * The registry keeps an index of the input and output formats of all
+ * codecs, which is built once, when a codec is requested for the first time.
+ * Only codecs whose {@link MimeTypeKey}, {@link EncodingKey} and
+ * {@link MediaTypeKey} match the requested formats are created and probed.
+ * This requires that a codec only accepts formats that match one of the
+ * formats returned by {@link Codec#getInputFormats()} and
+ * {@link Codec#getOutputFormats(Format)} in these keys.
+ * <p>
+ * Optionally, the registry pools codecs. Codecs that are returned with
+ * {@link #releaseCodec(Codec)} are reset, and are handed out again instead
+ * of creating new codecs. See {@link #setCodecPoolCapacity(int)}.
+ * <p>
  * FIXME - The registry should be read from a file.
  *
  * @author Werner Randelshofer
  */
 public class DefaultRegistry extends Registry {
 
+    /**
+     * The formats that a codec supports, reduced to the keys of the index.
+     */
+    private static class CodecCapabilities {
+        /**
+         * The position of the codec in the list of codecs.
+         */
+        final int ordinal;
+        final CodecSpi spi;
+        final Format[] inputFormats;
+        final Format[] outputFormats;
+        /**
+         * Codecs that have been released. Guarded by the registry.
+         */
+        final ArrayDeque<Codec> idle = new ArrayDeque<>();
+
+        CodecCapabilities(int ordinal, CodecSpi spi, Format[] inputFormats, Format[] outputFormats) {
+            this.ordinal = ordinal;
+            this.spi = spi;
+            this.inputFormats = inputFormats;
+            this.outputFormats = outputFormats;
+        }
+    }
+
+    /**
+     * Index of the codec capabilities by input and output encoding.
+     */
+    private static class CodecIndex {
+        final List<CodecCapabilities> capabilities = new ArrayList<>();
+        /**
+         * Maps an encoding to the ordinals of the codecs that support it.
+         */
+        final Map<String, BitSet> byInputEncoding = new HashMap<>();
+        final Map<String, BitSet> byOutputEncoding = new HashMap<>();
+        /**
+         * The ordinals of the codecs that have a format without an encoding,
+         * and thus support any encoding.
+         */
+        final BitSet anyInputEncoding = new BitSet();
+        final BitSet anyOutputEncoding = new BitSet();
+
+        void add(CodecSpi spi) {
+            Codec probe = spi.create();
+            int ordinal = capabilities.size();
+            Format[] in = toSignatures(probe.getInputFormats());
+            Format[] out = toSignatures(probe.getOutputFormats(null));
+            capabilities.add(new CodecCapabilities(ordinal, spi, in, out));
+            addEncodings(ordinal, in, byInputEncoding, anyInputEncoding);
+            addEncodings(ordinal, out, byOutputEncoding, anyOutputEncoding);
+        }
+
+        private static Format[] toSignatures(Format[] formats) {
+            Format[] signatures = new Format[formats == null ? 0 : formats.length];
+            for (int i = 0; i < signatures.length; i++) {
+                signatures[i] = formats[i].intersectKeys(MimeTypeKey, EncodingKey, MediaTypeKey).intern();
+            }
+            return signatures;
+        }
+
+        private static void addEncodings(int ordinal, Format[] signatures, Map<String, BitSet> byEncoding, BitSet anyEncoding) {
+            if (signatures.length == 0) {
+                anyEncoding.set(ordinal);
+            }
+            for (Format f : signatures) {
+                String enc = f.get(EncodingKey);
+                if (enc == null) {
+                    anyEncoding.set(ordinal);
+                } else {
+                    byEncoding.computeIfAbsent(enc, k -> new BitSet()).set(ordinal);
+                }
+            }
+        }
+
+        /**
+         * Gets the codecs which may support the specified formats, in the
+         * order of the list of codecs.
+         */
+        List<CodecCapabilities> getCandidates(Format inputFormat, Format outputFormat) {
+            BitSet candidates = new BitSet();
+            candidates.set(0, capabilities.size());
+            if (inputFormat != null) {
+                candidates.and(lookup(inputFormat, byInputEncoding, anyInputEncoding));
+            }
+            if (outputFormat != null) {
+                candidates.and(lookup(outputFormat, byOutputEncoding, anyOutputEncoding));
+            }
+            List<CodecCapabilities> result = new ArrayList<>(candidates.cardinality());
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                CodecCapabilities c = capabilities.get(i);
+                if ((inputFormat == null || matches(c.inputFormats, inputFormat))
+                        && (outputFormat == null || matches(c.outputFormats, outputFormat))) {
+                    result.add(c);
+                }
+            }
+            return result;
+        }
+
+        private BitSet lookup(Format f, Map<String, BitSet> byEncoding, BitSet anyEncoding) {
+            String enc = f.get(EncodingKey);
+            if (enc == null) {
+                BitSet all = new BitSet();
+                all.set(0, capabilities.size());
+                return all;
+            }
+            BitSet result = (BitSet) anyEncoding.clone();
+            BitSet bits = byEncoding.get(enc);
+            if (bits != null) {
+                result.or(bits);
+            }
+            return result;
+        }
+
+        private static boolean matches(Format[] signatures, Format f) {
+            if (signatures.length == 0) {
+                return true;
+            }
+            for (Format s : signatures) {
+                if (s.matches(f)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     private List<CodecSpi> codecSpis;
+    private CodecIndex codecIndex;
+    /**
+     * The codecs that have been handed out while pooling is enabled. Guarded
+     * by this.
+     */
+    private final Map<Codec, CodecCapabilities> leasedCodecs = new WeakHashMap<>();
+    /**
+     * The maximal number of idle codecs per codec type. Guarded by this.
+     */
+    private int codecPoolCapacity;
     private List<MovieReaderSpi> readerSpis;
     private List<MovieWriterSpi> writerSpis;
     private Map<String, String> mimeTypeToExtensionMap;
@@ -40,6 +195,47 @@ public class DefaultRegistry extends Registry {
         return codecSpis;
     }
 
+    private synchronized CodecIndex getCodecIndex() {
+        if (codecIndex == null) {
+            codecIndex = new CodecIndex();
+            for (CodecSpi spi : getCodecSpis()) {
+                codecIndex.add(spi);
+            }
+        }
+        return codecIndex;
+    }
+
+    /**
+     * Sets the maximal number of released codecs that are kept per codec
+     * type for reuse. The default value is 0, which disables pooling.
+     *
+     * @param capacity the capacity, 0 disables pooling
+     */
+    public synchronized void setCodecPoolCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative, capacity=" + capacity);
+        }
+        this.codecPoolCapacity = capacity;
+        for (CodecCapabilities c : getCodecIndex().capabilities) {
+            while (c.idle.size() > capacity) {
+                c.idle.removeLast();
+            }
+        }
+        if (capacity == 0) {
+            leasedCodecs.clear();
+        }
+    }
+
+    /**
+     * Gets the maximal number of released codecs that are kept per codec
+     * type for reuse.
+     *
+     * @return the capacity, 0 if pooling is disabled
+     */
+    public synchronized int getCodecPoolCapacity() {
+        return codecPoolCapacity;
+    }
+
     private synchronized Map<String, String> getMimeTypeToExtensionMap() {
         if (mimeTypeToExtensionMap == null) {
             mimeTypeToExtensionMap = new LinkedHashMap<>();
@@ -90,28 +286,93 @@ public class DefaultRegistry extends Registry {
         return writerSpis;
     }
 
+    @Override
+    public Codec getCodec(Format inputFormat, Format outputFormat) {
+        for (CodecCapabilities c : getCodecIndex().getCandidates(inputFormat, outputFormat)) {
+            Codec codec = createCodec(c, inputFormat, outputFormat);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
     @Override
     public List<Codec> getCodecs(Format inputFormat, Format outputFormat) {
         List<Codec> codecs = new ArrayList<>();
-        for (CodecSpi spi : getCodecSpis()) {
-            Codec codec = spi.create();
-            if (inputFormat != null) {
-                Format actual = codec.setInputFormat(inputFormat);
-                if (actual == null) {
-                    continue;
-                }
-            }
-            if (outputFormat != null) {
-                Format actual = codec.setOutputFormat(outputFormat);
-                if (actual == null) {
-                    continue;
-                }
+        for (CodecCapabilities c : getCodecIndex().getCandidates(inputFormat, outputFormat)) {
+            Codec codec = createCodec(c, inputFormat, outputFormat);
+            if (codec != null) {
+                codecs.add(codec);
             }
-            codecs.add(codec);
         }
         return Collections.unmodifiableList(codecs);
     }
 
+    /**
+     * Takes an idle codec from the pool or creates a new one, and sets the
+     * specified formats.
+     *
+     * @return the codec, or null if the codec does not support the formats
+     */
+    private Codec createCodec(CodecCapabilities c, Format inputFormat, Format outputFormat) {
+        Codec codec;
+        boolean isPooling;
+        synchronized (this) {
+            isPooling = codecPoolCapacity > 0;
+            codec = c.idle.pollFirst();
+        }
+        boolean isReused = codec != null;
+        if (!isReused) {
+            codec = c.spi.create();
+        }
+        boolean isSupported = true;
+        if (inputFormat != null) {
+            isSupported = codec.setInputFormat(inputFormat) != null;
+        } else if (isReused) {
+            // clear the input format of the previous user
+            codec.setInputFormat(null);
+        }
+        if (isSupported && outputFormat != null) {
+            isSupported = codec.setOutputFormat(outputFormat) != null;
+        }
+        if (!isSupported) {
+            if (isReused) {
+                offerIdle(c, codec);
+            }
+            return null;
+        }
+        if (isPooling) {
+            synchronized (this) {
+                leasedCodecs.put(codec, c);
+            }
+        }
+        return codec;
+    }
+
+    private synchronized void offerIdle(CodecCapabilities c, Codec codec) {
+        if (c.idle.size() < codecPoolCapacity) {
+            c.idle.addFirst(codec);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If pooling is enabled, the codec is reset and kept for reuse.
+     */
+    @Override
+    public void releaseCodec(Codec codec) {
+        CodecCapabilities c;
+        synchronized (this) {
+            c = leasedCodecs.remove(codec);
+        }
+        if (c != null) {
+            codec.reset();
+            offerIdle(c, codec);
+        }
+    }
+
     @Override
     public String getExtension(Format ff) {
         return getMimeTypeToExtensionMap().get(ff.get(FormatKeys.MimeTypeKey));
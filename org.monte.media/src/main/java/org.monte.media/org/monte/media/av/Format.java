@@ -4,44 +4,68 @@
  */
 package org.monte.media.av;
 
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Specifies the format of a media, for example of audio and video.
+ * <p>
+ * A format is immutable. The properties are stored in arrays, which are
+ * ordered by {@link FormatKey#getOrdinal()}, so that two formats can be
+ * matched in a single pass. The hash code is computed once.
+ * <p>
+ * Formats which are equal can be shared with {@link #intern()}. Methods which
+ * derive a format return this format, if the derived format would be equal.
  *
  * @author Werner Randelshofer
  */
-public class Format {
+public final class Format {
+    private final static FormatKey<?>[] NO_KEYS = new FormatKey<?>[0];
+    private final static Object[] NO_VALUES = new Object[0];
 
     /**
-     * Holds the properties of the format.
+     * Holds the interned formats.
      */
-    private HashMap<FormatKey<?>, Object> properties;
+    private final static WeakHashMap<Format, WeakReference<Format>> internedFormats = new WeakHashMap<>();
 
     /**
-     * Creates a new format onlyWith the specified properties.
+     * Holds the keys of the properties, ordered by ordinal.
      */
-    public Format(Map<FormatKey<?>, Object> properties) {
-        this(properties, true);
-    }
+    private final FormatKey<?>[] keys;
+    /**
+     * Holds the values of the properties.
+     */
+    private final Object[] values;
+    private final int hash;
+    /**
+     * Holds the properties as an unmodifiable map. Created lazily.
+     */
+    private volatile Map<FormatKey<?>, Object> properties;
 
     /**
-     * Creates a new format with the specified properties.
+     * Creates a new format onlyWith the specified properties.
      */
-    private Format(Map<FormatKey<?>, Object> properties, boolean copy) {
-        if (copy || !(properties instanceof HashMap)) {
-            for (Map.Entry<FormatKey<?>, Object> e : properties.entrySet()) {
-                if (!e.getKey().isAssignable(e.getValue())) {
-                    throw new ClassCastException(e.getValue() + " must be of type " + e.getKey().getValueClass());
-                }
+    public Format(Map<FormatKey<?>, Object> properties) {
+        FormatKey<?>[] k = new FormatKey<?>[properties.size()];
+        Object[] v = new Object[k.length];
+        int i = 0;
+        for (Map.Entry<FormatKey<?>, Object> e : properties.entrySet()) {
+            if (!e.getKey().isAssignable(e.getValue())) {
+                throw new ClassCastException(e.getValue() + " must be of type " + e.getKey().getValueClass());
             }
-            this.properties = new HashMap<FormatKey<?>, Object>(properties);
-        } else {
-            this.properties = (HashMap<FormatKey<?>, Object>) properties;
+            k[i] = e.getKey();
+            v[i] = e.getValue();
+            i++;
         }
+        sort(k, v, k.length);
+        this.keys = k;
+        this.values = v;
+        this.hash = computeHash(k, v);
     }
 
     /**
@@ -49,42 +73,149 @@ public class Format {
      * must be given as key value pairs.
      */
     public Format(Object... p) {
-        this.properties = new HashMap<FormatKey<?>, Object>();
+        this(p, true);
+    }
+
+    /**
+     * Creates a new format with the specified properties, which must be
+     * given as key value pairs.
+     *
+     * @param p        the key value pairs
+     * @param lastWins whether the last value wins if a key is given more
+     *                 than once, otherwise the first value wins
+     */
+    private Format(Object[] p, boolean lastWins) {
+        int n = p.length / 2;
+        FormatKey<?>[] k = new FormatKey<?>[n];
+        Object[] v = new Object[n];
+        int size = 0;
         for (int i = 0; i < p.length; i += 2) {
             FormatKey<?> key = (FormatKey<?>) p[i];
             if (!key.isAssignable(p[i + 1])) {
                 throw new ClassCastException(key + ": " + p[i + 1] + " must be of type " + key.getValueClass());
             }
-            this.properties.put(key, p[i + 1]);
+            int index = indexOf(k, size, key);
+            if (index < 0) {
+                k[size] = key;
+                v[size] = p[i + 1];
+                size++;
+            } else if (lastWins) {
+                v[index] = p[i + 1];
+            }
+        }
+        sort(k, v, size);
+        this.keys = size == n ? k : Arrays.copyOf(k, size);
+        this.values = size == n ? v : Arrays.copyOf(v, size);
+        this.hash = computeHash(keys, values);
+    }
+
+    /**
+     * Creates a new format with the specified keys and values, which must
+     * be ordered by ordinal.
+     */
+    private Format(FormatKey<?>[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.hash = computeHash(keys, values);
+    }
+
+    /**
+     * Sorts the first n keys and values by ordinal. Uses insertion sort,
+     * because formats have only a few properties.
+     */
+    private static void sort(FormatKey<?>[] k, Object[] v, int n) {
+        for (int i = 1; i < n; i++) {
+            FormatKey<?> key = k[i];
+            Object value = v[i];
+            int j = i - 1;
+            while (j >= 0 && k[j].getOrdinal() > key.getOrdinal()) {
+                k[j + 1] = k[j];
+                v[j + 1] = v[j];
+                j--;
+            }
+            k[j + 1] = key;
+            v[j + 1] = value;
         }
     }
 
+    private static int computeHash(FormatKey<?>[] k, Object[] v) {
+        int h = 0;
+        for (int i = 0; i < k.length; i++) {
+            h = 31 * h + k[i].getOrdinal();
+            h = 31 * h + (v[i] == null ? 0 : v[i].hashCode());
+        }
+        return h;
+    }
+
+    private static int indexOf(FormatKey<?>[] k, int n, FormatKey<?> key) {
+        for (int i = 0; i < n; i++) {
+            if (k[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the specified key, or -1.
+     */
+    private int indexOf(FormatKey<?> key) {
+        int ordinal = key.getOrdinal();
+        int low = 0, high = keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midOrdinal = keys[mid].getOrdinal();
+            if (midOrdinal < ordinal) {
+                low = mid + 1;
+            } else if (midOrdinal > ordinal) {
+                high = mid - 1;
+            } else {
+                return keys[mid] == key ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        return a == b || a != null && a.equals(b);
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T get(FormatKey<T> key) {
-        return (T) properties.get(key);
+        int i = indexOf(key);
+        return i < 0 ? null : (T) values[i];
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(FormatKey<T> key, T defaultValue) {
-        return (properties.containsKey(key)) ? (T) properties.get(key) : defaultValue;
+        int i = indexOf(key);
+        return i < 0 ? defaultValue : (T) values[i];
     }
 
     public boolean containsKey(FormatKey<?> key) {
-        return properties.containsKey(key);
+        return indexOf(key) >= 0;
     }
 
     /**
      * Gets the properties of the format as an unmodifiable map.
      */
     public Map<FormatKey<?>, Object> getProperties() {
-        return Collections.unmodifiableMap(properties);
+        Map<FormatKey<?>, Object> m = properties;
+        if (m == null) {
+            LinkedHashMap<FormatKey<?>, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], values[i]);
+            }
+            properties = m = Collections.unmodifiableMap(map);
+        }
+        return m;
     }
 
     /**
      * Gets the keys of the format as an unmodifiable set.
      */
     public Set<FormatKey<?>> getKeys() {
-        return Collections.unmodifiableSet(properties.keySet());
+        return getProperties().keySet();
     }
 
     /**
@@ -96,42 +227,81 @@ public class Format {
      * @return True if the other format matches this format.
      */
     public boolean matches(Format that) {
-        for (Map.Entry<FormatKey<?>, Object> e : properties.entrySet()) {
-            if (!e.getKey().isComment()) {
-                if (that.properties.containsKey(e.getKey())) {
-                    Object a = e.getValue();
-                    Object b = that.properties.get(e.getKey());
-                    if (a != b && a == null || !a.equals(b)) {
-                        return false;
-                    }
+        return matchesWithout(that);
+    }
 
+    public boolean matchesWithout(Format that, FormatKey<?>... without) {
+        if (this == that) {
+            return true;
+        }
+        FormatKey<?>[] thoseKeys = that.keys;
+        int i = 0, j = 0;
+        while (i < keys.length && j < thoseKeys.length) {
+            int a = keys[i].getOrdinal();
+            int b = thoseKeys[j].getOrdinal();
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                FormatKey<?> k = keys[i];
+                if (!k.isComment() && !isEqual(values[i], that.values[j]) && !contains(without, k)) {
+                    return false;
                 }
+                i++;
+                j++;
             }
         }
         return true;
     }
 
-    public boolean matchesWithout(Format that, FormatKey<?>... without) {
-        OuterLoop:
-        for (Map.Entry<FormatKey<?>, Object> e : properties.entrySet()) {
-            FormatKey<?> k = e.getKey();
-            if (!e.getKey().isComment()) {
-                if (that.properties.containsKey(k)) {
-                    for (int i = 0; i < without.length; i++) {
-                        if (without[i] == k) {
-                            continue OuterLoop;
-                        }
-                    }
-                    Object a = e.getValue();
-                    Object b = that.properties.get(k);
-                    if (a != b && a == null || !a.equals(b)) {
-                        return false;
-                    }
+    private static boolean contains(FormatKey<?>[] keys, FormatKey<?> key) {
+        for (FormatKey<?> k : keys) {
+            if (k == key) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    /**
+     * Creates a format with the properties of the primary format, and the
+     * properties of the secondary format which are not in the primary
+     * format. Returns one of the two formats, if the result would be equal.
+     */
+    private static Format merge(Format primary, Format secondary) {
+        FormatKey<?>[] pk = primary.keys, sk = secondary.keys;
+        FormatKey<?>[] k = new FormatKey<?>[pk.length + sk.length];
+        Object[] v = new Object[k.length];
+        int i = 0, j = 0, n = 0;
+        boolean isPrimary = true, isSecondary = true;
+        while (i < pk.length || j < sk.length) {
+            int a = i < pk.length ? pk[i].getOrdinal() : Integer.MAX_VALUE;
+            int b = j < sk.length ? sk[j].getOrdinal() : Integer.MAX_VALUE;
+            if (a < b) {
+                isSecondary = false;
+                k[n] = pk[i];
+                v[n++] = primary.values[i++];
+            } else if (a > b) {
+                isPrimary = false;
+                k[n] = sk[j];
+                v[n++] = secondary.values[j++];
+            } else {
+                if (isSecondary && !isEqual(primary.values[i], secondary.values[j])) {
+                    isSecondary = false;
                 }
+                k[n] = pk[i];
+                v[n++] = primary.values[i++];
+                j++;
             }
         }
-        return true;
+        if (isPrimary) {
+            return primary;
+        }
+        if (isSecondary) {
+            return secondary;
+        }
+        return new Format(n == k.length ? k : Arrays.copyOf(k, n), n == v.length ? v : Arrays.copyOf(v, n));
     }
 
     /**
@@ -145,11 +315,7 @@ public class Format {
      * @return That format with properties overwritten by this format.
      */
     public Format append(Format that) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(this.properties);
-        for (Map.Entry<FormatKey<?>, Object> e : that.properties.entrySet()) {
-            m.putIfAbsent(e.getKey(), e.getValue());
-        }
-        return new Format(m, false);
+        return merge(this, that);
     }
 
     /**
@@ -163,15 +329,17 @@ public class Format {
      * @return That format with properties overwritten by this format.
      */
     public Format append(Object... p) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(this.properties);
+        boolean isContained = true;
         for (int i = 0; i < p.length; i += 2) {
             FormatKey<?> key = (FormatKey<?>) p[i];
             if (!key.isAssignable(p[i + 1])) {
                 throw new ClassCastException(key + ": " + p[i + 1] + " must be of type " + key.getValueClass());
             }
-            m.putIfAbsent(key, p[i + 1]);
+            if (isContained && indexOf(key) < 0) {
+                isContained = false;
+            }
         }
-        return new Format(m, false);
+        return isContained ? this : merge(this, new Format(p, false));
     }
 
     /**
@@ -186,11 +354,7 @@ public class Format {
      * @return That format with properties overwritten by this format.
      */
     public Format prepend(Format that) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(that.properties);
-        for (Map.Entry<FormatKey<?>, Object> e : this.properties.entrySet()) {
-            m.putIfAbsent(e.getKey(), e.getValue());
-        }
-        return new Format(m, false);
+        return merge(that, this);
     }
 
     /**
@@ -205,15 +369,18 @@ public class Format {
      * @return That format with properties overwritten by this format.
      */
     public Format prepend(Object... p) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(this.properties);
+        boolean isContained = true;
         for (int i = 0; i < p.length; i += 2) {
             FormatKey<?> key = (FormatKey<?>) p[i];
             if (!key.isAssignable(p[i + 1])) {
                 throw new ClassCastException(key + ": " + p[i + 1] + " must be of type " + key.getValueClass());
             }
-            m.put(key, p[i + 1]);
+            if (isContained) {
+                int index = indexOf(key);
+                isContained = index >= 0 && isEqual(values[index], p[i + 1]);
+            }
         }
-        return new Format(m, false);
+        return isContained ? this : merge(new Format(p, true), this);
     }
 
     /**
@@ -222,13 +389,16 @@ public class Format {
      * format.
      */
     public Format intersectKeys(FormatKey<?>... keys) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>();
+        boolean[] retain = new boolean[this.keys.length];
+        int n = 0;
         for (FormatKey<?> k : keys) {
-            if (properties.containsKey(k)) {
-                m.put(k, properties.get(k));
+            int i = indexOf(k);
+            if (i >= 0 && !retain[i]) {
+                retain[i] = true;
+                n++;
             }
         }
-        return new Format(m, false);
+        return n == this.keys.length ? this : filter(retain, n);
     }
 
     /**
@@ -236,48 +406,100 @@ public class Format {
      * reduced, then the new format is less specific than this format.
      */
     public Format removeKeys(FormatKey<?>... keys) {
-        boolean needsRemoval = false;
+        boolean[] retain = new boolean[this.keys.length];
+        Arrays.fill(retain, true);
+        int n = this.keys.length;
         for (FormatKey<?> k : keys) {
-            if (properties.containsKey(k)) {
-                needsRemoval = true;
-                break;
+            int i = indexOf(k);
+            if (i >= 0 && retain[i]) {
+                retain[i] = false;
+                n--;
             }
         }
-        if (!needsRemoval) {
-            return this;
+        return n == this.keys.length ? this : filter(retain, n);
+    }
+
+    /**
+     * Returns true if the format has the specified keys.
+     */
+    public Format containsKeys(FormatKey<?>... keys) {
+        return removeKeys(keys);
+    }
+
+    private Format filter(boolean[] retain, int n) {
+        if (n == 0) {
+            return new Format(NO_KEYS, NO_VALUES);
+        }
+        FormatKey<?>[] k = new FormatKey<?>[n];
+        Object[] v = new Object[n];
+        for (int i = 0, j = 0; i < retain.length; i++) {
+            if (retain[i]) {
+                k[j] = keys[i];
+                v[j++] = values[i];
+            }
         }
+        return new Format(k, v);
+    }
 
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(properties);
-        for (FormatKey<?> k : keys) {
-            m.remove(k);
+    /**
+     * Returns a canonical representation of this format. If an equal format
+     * has been interned before, returns that format, otherwise interns this
+     * format and returns it.
+     * <p>
+     * Interned formats are held with weak references.
+     *
+     * @return the interned format
+     */
+    public Format intern() {
+        synchronized (internedFormats) {
+            WeakReference<Format> ref = internedFormats.get(this);
+            Format f = ref == null ? null : ref.get();
+            if (f == null) {
+                internedFormats.put(this, new WeakReference<>(this));
+                f = this;
+            }
+            return f;
         }
-        return new Format(m, false);
     }
 
     /**
-     * Returns true if the format has the specified keys.
+     * Returns true if that format has the same properties as this format.
      */
-    public Format containsKeys(FormatKey<?>... keys) {
-        HashMap<FormatKey<?>, Object> m = new HashMap<FormatKey<?>, Object>(properties);
-        for (FormatKey<?> k : keys) {
-            m.remove(k);
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Format)) {
+            return false;
+        }
+        Format that = (Format) obj;
+        if (this.hash != that.hash || this.keys.length != that.keys.length) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != that.keys[i] || !isEqual(values[i], that.values[i])) {
+                return false;
+            }
         }
-        return new Format(m, false);
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder("Format{");
-        boolean isFirst = true;
-        for (Map.Entry<FormatKey<?>, Object> e : properties.entrySet()) {
-            if (isFirst) {
-                isFirst = false;
-            } else {
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
                 buf.append(',');
             }
-            buf.append(e.getKey().toString());
+            buf.append(keys[i].toString());
             buf.append(':');
-            appendStuffedString(e.getValue(), buf);
+            appendStuffedString(values[i], buf);
         }
         buf.append('}');
         return buf.toString();
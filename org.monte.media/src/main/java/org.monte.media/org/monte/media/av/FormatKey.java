@@ -4,7 +4,10 @@
  */
 package org.monte.media.av;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A <em>FormatKey</em> provides type-safe access to an attribute of
@@ -17,6 +20,10 @@ import java.io.Serializable;
 public class FormatKey<T> implements Serializable, Comparable<FormatKey<T>> {
 
     public static final long serialVersionUID = 1L;
+    /**
+     * Holds the ordinal of the next key.
+     */
+    private static final AtomicInteger nextOrdinal = new AtomicInteger();
     /**
      * Holds a String representation of the attribute key.
      */
@@ -35,6 +42,12 @@ public class FormatKey<T> implements Serializable, Comparable<FormatKey<T>> {
      * Comment keys are ignored when matching two media formats with each other.
      */
     private boolean comment;
+    /**
+     * The ordinal of the key. Ordinals are assigned in the order in which
+     * keys are created, and are unique within the JVM. {@link Format} orders
+     * its properties by ordinal.
+     */
+    private transient int ordinal;
 
     /**
      * Creates a new instance with the specified attribute key, type token class,
@@ -61,6 +74,12 @@ public class FormatKey<T> implements Serializable, Comparable<FormatKey<T>> {
         this.name = name;
         this.clazz = clazz;
         this.comment = comment;
+        this.ordinal = nextOrdinal.getAndIncrement();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.ordinal = nextOrdinal.getAndIncrement();
     }
 
     /**
@@ -108,6 +127,15 @@ public class FormatKey<T> implements Serializable, Comparable<FormatKey<T>> {
         return clazz;
     }
 
+    /**
+     * Returns the ordinal of the key.
+     *
+     * @return the ordinal
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     @Override
     public int compareTo(FormatKey<T> that) {
         return this.key.compareTo(that.key);
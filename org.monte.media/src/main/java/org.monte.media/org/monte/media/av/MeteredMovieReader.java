@@ -0,0 +1,151 @@
+/*
+ * @(#)MeteredMovieReader.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import org.monte.media.math.Rational;
+
+import java.io.IOException;
+
+/**
+ * A {@link MovieReader} which records the performance of
+ * {@link #read(int, Buffer)} and {@link #readSlice(int, Buffer)} of another
+ * movie reader in {@link StageMetrics}.
+ *
+ * @author Werner Randelshofer
+ */
+public class MeteredMovieReader implements MovieReader {
+    private final MovieReader reader;
+    private final StageMetrics metrics;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param reader the movie reader
+     */
+    public MeteredMovieReader(MovieReader reader) {
+        this(reader, new StageMetrics(reader.getClass().getSimpleName() + ".read"));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param reader  the movie reader
+     * @param metrics the metrics
+     */
+    public MeteredMovieReader(MovieReader reader, StageMetrics metrics) {
+        this.reader = reader;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics of {@link #read(int, Buffer)} and
+     * {@link #readSlice(int, Buffer)}.
+     *
+     * @return the metrics
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the movie reader.
+     *
+     * @return the movie reader
+     */
+    public MovieReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public int getTrackCount() throws IOException {
+        return reader.getTrackCount();
+    }
+
+    @Override
+    public int findTrack(int fromTrack, Format format) throws IOException {
+        return reader.findTrack(fromTrack, format);
+    }
+
+    @Override
+    public Rational getDuration() throws IOException {
+        return reader.getDuration();
+    }
+
+    @Override
+    public Rational getDuration(int track) throws IOException {
+        return reader.getDuration(track);
+    }
+
+    @Override
+    public long timeToSample(int track, Rational seconds) throws IOException {
+        return reader.timeToSample(track, seconds);
+    }
+
+    @Override
+    public Rational sampleToTime(int track, long sample) throws IOException {
+        return reader.sampleToTime(track, sample);
+    }
+
+    @Override
+    public Format getFileFormat() throws IOException {
+        return reader.getFileFormat();
+    }
+
+    @Override
+    public Format getFormat(int track) throws IOException {
+        return reader.getFormat(track);
+    }
+
+    @Override
+    public long getChunkCount(int track) throws IOException {
+        return reader.getChunkCount(track);
+    }
+
+    @Override
+    public void read(int track, Buffer buffer) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            reader.read(track, buffer);
+            failed = false;
+        } finally {
+            metrics.record(System.nanoTime() - start, 0, StageMetrics.sizeOf(buffer),
+                    failed, buffer.isFlag(BufferFlag.DISCARD));
+        }
+    }
+
+    @Override
+    public void readSlice(int track, Buffer buffer) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            reader.readSlice(track, buffer);
+            failed = false;
+        } finally {
+            metrics.record(System.nanoTime() - start, 0, StageMetrics.sizeOf(buffer),
+                    failed, buffer.isFlag(BufferFlag.DISCARD));
+        }
+    }
+
+    @Override
+    public int nextTrack() throws IOException {
+        return reader.nextTrack();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    @Override
+    public void setMovieReadTime(Rational newValue) throws IOException {
+        reader.setMovieReadTime(newValue);
+    }
+
+    @Override
+    public Rational getReadTime(int track) throws IOException {
+        return reader.getReadTime(track);
+    }
+}
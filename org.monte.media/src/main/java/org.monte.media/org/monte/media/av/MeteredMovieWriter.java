@@ -0,0 +1,112 @@
+/*
+ * @(#)MeteredMovieWriter.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import org.monte.media.math.Rational;
+
+import java.io.IOException;
+
+/**
+ * A {@link MovieWriter} which records the performance of
+ * {@link #write(int, Buffer)} of another movie writer in
+ * {@link StageMetrics}.
+ *
+ * @author Werner Randelshofer
+ */
+public class MeteredMovieWriter implements MovieWriter {
+    private final MovieWriter writer;
+    private final StageMetrics metrics;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param writer the movie writer
+     */
+    public MeteredMovieWriter(MovieWriter writer) {
+        this(writer, new StageMetrics(writer.getClass().getSimpleName() + ".write"));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param writer  the movie writer
+     * @param metrics the metrics
+     */
+    public MeteredMovieWriter(MovieWriter writer, StageMetrics metrics) {
+        this.writer = writer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics of {@link #write(int, Buffer)}.
+     *
+     * @return the metrics
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the movie writer.
+     *
+     * @return the movie writer
+     */
+    public MovieWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public Format getFileFormat() throws IOException {
+        return writer.getFileFormat();
+    }
+
+    @Override
+    public int addTrack(Format format) throws IOException {
+        return writer.addTrack(format);
+    }
+
+    @Override
+    public Format getFormat(int track) {
+        return writer.getFormat(track);
+    }
+
+    @Override
+    public int getTrackCount() {
+        return writer.getTrackCount();
+    }
+
+    @Override
+    public void write(int track, Buffer buf) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            writer.write(track, buf);
+            failed = false;
+        } finally {
+            metrics.record(System.nanoTime() - start, StageMetrics.sizeOf(buf), 0,
+                    failed, buf.isFlag(BufferFlag.DISCARD));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public boolean isDataLimitReached() {
+        return writer.isDataLimitReached();
+    }
+
+    @Override
+    public Rational getDuration(int track) {
+        return writer.getDuration(track);
+    }
+
+    @Override
+    public boolean isEmpty(int track) {
+        return writer.isEmpty(track);
+    }
+}
@@ -7,6 +7,7 @@ package org.monte.media.av;
 import org.monte.media.math.Rational;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * A simple API for reading movie data (audio and video) from a file.
@@ -77,6 +78,36 @@ public interface MovieReader extends AutoCloseable {
      * @param buffer The buffer into which to store the sample data.
      */
     public void read(int track, Buffer buffer) throws IOException;
+
+    /**
+     * Reads the next sample chunk from the specified track without copying
+     * the sample data.
+     * <p>
+     * Behaves like {@link #read(int, Buffer)}, but {@code buffer.data} is set
+     * to a read-only {@link ByteBuffer} with position 0 and limit
+     * {@code buffer.length}, and {@code buffer.offset} is set to 0. If the
+     * reader has mapped the file into memory, then the byte buffer is a view
+     * of the sample in the mapped file.
+     * <p>
+     * Use this method for passing samples through to a {@link MovieWriter}
+     * without decoding them.
+     * <p>
+     * The default implementation reads the sample with
+     * {@link #read(int, Buffer)} and wraps the bytes.
+     *
+     * @param track  Track number.
+     * @param buffer The buffer into which to store the sample data.
+     */
+    public default void readSlice(int track, Buffer buffer) throws IOException {
+        if (buffer.data instanceof ByteBuffer) {
+            buffer.data = null;
+        }
+        read(track, buffer);
+        if (buffer.data instanceof byte[] && !buffer.isFlag(BufferFlag.DISCARD)) {
+            buffer.data = ByteBuffer.wrap((byte[]) buffer.data, buffer.offset, buffer.length).slice().asReadOnlyBuffer();
+            buffer.offset = 0;
+        }
+    }
     /** Reads the next sample chunk from the next track in playback sequence.
      * The variable buffer.track contains the track number.
      *
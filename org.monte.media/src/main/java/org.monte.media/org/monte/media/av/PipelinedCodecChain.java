@@ -0,0 +1,510 @@
+/*
+ * @(#)PipelinedCodecChain.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PipelinedCodecChain} is a chain of codecs, in which each codec runs
+ * on its own worker thread.
+ * <p>
+ * The stages of the chain are connected by bounded hand-off queues. While the
+ * last stage encodes frame <i>n</i>, the first stage can already work on
+ * frame <i>n+2</i>. If a stage is slower than its predecessor, the queue in
+ * front of it fills up, and the predecessor blocks until space becomes
+ * available (back-pressure).
+ * <p>
+ * Buffers are handed on in first-in first-out order, so the output buffers
+ * are in the same order as the input buffers, and have increasing
+ * {@code sequenceNumber}s if the input buffers have.
+ * <p>
+ * The buffers of a stage are recycled after the next stage has consumed them,
+ * so that the codecs can reuse their output arrays and images.
+ * <p>
+ * Semantics of the status flags returned by {@link #process}:
+ * <ul>
+ *     <li>{@link #CODEC_OUTPUT_NOT_FILLED} - The input buffer has been
+ *     consumed, but no output is ready yet. The output buffer is marked with
+ *     {@link BufferFlag#DISCARD}. This happens at least once for each stage
+ *     at the start of the stream.</li>
+ *     <li>{@link #CODEC_INPUT_NOT_CONSUMED} - The output buffer has been
+ *     filled, but the input buffer has not been consumed yet. The chain
+ *     must be called again with the same input buffer.</li>
+ *     <li>{@link #CODEC_FAILED} - A stage failed for the input buffer that
+ *     belongs to the output buffer.</li>
+ * </ul>
+ * An input buffer with {@link BufferFlag#END_OF_MEDIA} flushes the pipeline:
+ * the chain returns the remaining output buffers with
+ * {@code CODEC_INPUT_NOT_CONSUMED} until the buffer with
+ * {@code END_OF_MEDIA} comes out of the last stage.
+ * <p>
+ * {@link #reset} stops the worker threads, discards all buffers in the
+ * pipeline and resets the codecs. The worker threads are restarted on the
+ * next call to {@code process}.
+ * <p>
+ * The input buffer is copied into the pipeline, unless its data is
+ * {@linkplain Buffer#isDataOwned() owned}, in which case the data is shared.
+ * <p>
+ * This class is not thread-safe: {@code process} and {@code reset} must be
+ * called from the same thread, or with external synchronization. The codecs
+ * must not be used by anyone else while the pipeline is running.
+ *
+ * @author Werner Randelshofer
+ */
+public class PipelinedCodecChain implements Codec, AutoCloseable {
+    /**
+     * The default capacity of the queues between the stages.
+     */
+    public final static int DEFAULT_QUEUE_CAPACITY = 2;
+    /**
+     * The interval in milliseconds in which a blocked caller checks whether
+     * a worker has failed.
+     */
+    private final static long POLL_MILLIS = 100;
+
+    private final Codec[] codecs;
+    private final StageMetrics[] metrics;
+    private final int queueCapacity;
+    /**
+     * queues[i] is the input queue of stage i. queues[codecs.length] is the
+     * output queue of the chain. The output queue is unbounded, so that the
+     * last stage never blocks. Its size is bounded by the number of buffers
+     * in the pipeline, because the caller takes out all output buffers before
+     * it puts in the next input buffer.
+     */
+    private BlockingQueue<Slot>[] queues;
+    /**
+     * recycled[i] holds the slots that have been consumed from queues[i].
+     */
+    private ConcurrentLinkedQueue<Slot>[] recycled;
+    private Thread[] workers;
+    private volatile Throwable failure;
+    /**
+     * Set to true if the last call has returned an output buffer with
+     * CODEC_INPUT_NOT_CONSUMED without putting the input buffer into the
+     * pipeline.
+     */
+    private boolean inputPending;
+    /**
+     * Set to true while the pipeline is being flushed.
+     */
+    private boolean flushing;
+
+    /**
+     * Creates a new instance with the default queue capacity.
+     *
+     * @param codecs the codecs of the chain, null values are ignored
+     */
+    public PipelinedCodecChain(Codec... codecs) {
+        this(DEFAULT_QUEUE_CAPACITY, codecs);
+    }
+
+    /**
+     * Creates a new instance with the default queue capacity.
+     *
+     * @param codecs the codecs of the chain, null values are ignored
+     */
+    public PipelinedCodecChain(List<Codec> codecs) {
+        this(DEFAULT_QUEUE_CAPACITY, codecs.toArray(new Codec[0]));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param queueCapacity the capacity of the queues between the stages
+     * @param codecs        the codecs of the chain, null values are ignored
+     */
+    public PipelinedCodecChain(int queueCapacity, Codec... codecs) {
+        ArrayList<Codec> clist = new ArrayList<>();
+        for (Codec c : codecs) {
+            if (c != null) {
+                clist.add(c);
+            }
+        }
+        if (clist.isEmpty()) {
+            throw new IllegalArgumentException("codecs must not be empty");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be >= 1, queueCapacity=" + queueCapacity);
+        }
+        this.codecs = clist.toArray(new Codec[0]);
+        this.queueCapacity = queueCapacity;
+        this.metrics = new StageMetrics[this.codecs.length];
+        for (int i = 0; i < this.codecs.length; i++) {
+            metrics[i] = new StageMetrics(this.codecs[i].getName());
+        }
+    }
+
+    /**
+     * Returns the codecs of the chain.
+     *
+     * @return the codecs
+     */
+    public List<Codec> getCodecs() {
+        return List.of(codecs);
+    }
+
+    /**
+     * Returns the metrics of the stages. The latencies do not include the
+     * time that a stage waits for its queues.
+     *
+     * @return the metrics in processing order
+     */
+    public List<StageMetrics> getStageMetrics() {
+        return List.of(metrics);
+    }
+
+    @Override
+    public Format[] getInputFormats() {
+        return codecs[0].getInputFormats();
+    }
+
+    @Override
+    public Format[] getOutputFormats(Format input) {
+        List<Format> outs = Arrays.asList(codecs[0].getOutputFormats(input));
+        for (int i = 1; i < codecs.length; i++) {
+            ArrayList<Format> nextOuts = new ArrayList<>();
+            for (Format out : outs) {
+                nextOuts.addAll(Arrays.asList(codecs[i].getOutputFormats(out)));
+            }
+            outs = nextOuts;
+        }
+        return outs.toArray(new Format[0]);
+    }
+
+    @Override
+    public Format setInputFormat(Format input) {
+        Format f = input;
+        for (Codec c : codecs) {
+            f = c.setInputFormat(f);
+        }
+        return f;
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return codecs[0].getInputFormat();
+    }
+
+    @Override
+    public Format setOutputFormat(Format output) {
+        return codecs[codecs.length - 1].setOutputFormat(output);
+    }
+
+    @Override
+    public Format getOutputFormat() {
+        return codecs[codecs.length - 1].getOutputFormat();
+    }
+
+    @Override
+    public int process(Buffer in, Buffer out) {
+        if (workers == null) {
+            start();
+        }
+        checkFailure();
+        BlockingQueue<Slot> outQueue = queues[codecs.length];
+        try {
+            if (flushing) {
+                return takeOutput(outQueue.poll(), out);
+            }
+
+            // Take out all output buffers before we put in the next input buffer.
+            if (!inputPending) {
+                Slot ready = outQueue.poll();
+                if (ready != null) {
+                    inputPending = true;
+                    return takeOutput(ready, out) | CODEC_INPUT_NOT_CONSUMED;
+                }
+            }
+
+            inputPending = false;
+            Slot slot = obtainSlot(0);
+            slot.buffer.setMetaTo(in);
+            if (in.isDataOwned()) {
+                slot.buffer.setDataRefTo(in);
+            } else {
+                slot.buffer.setDataTo(in);
+            }
+            slot.status = CODEC_OK;
+            slot.endOfMedia = in.isFlag(BufferFlag.END_OF_MEDIA);
+            while (!queues[0].offer(slot, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+
+            flushing = slot.endOfMedia;
+            return takeOutput(outQueue.poll(), out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CODEC_FAILED;
+        }
+    }
+
+    /**
+     * Takes an output slot and transfers it into the output buffer.
+     * If the pipeline is being flushed, waits for the slot.
+     *
+     * @param slot the slot or null
+     * @param out  the output buffer
+     * @return the status
+     */
+    private int takeOutput(Slot slot, Buffer out) throws InterruptedException {
+        if (slot == null) {
+            if (!flushing) {
+                out.setFlag(BufferFlag.DISCARD);
+                return CODEC_OUTPUT_NOT_FILLED;
+            }
+            BlockingQueue<Slot> outQueue = queues[codecs.length];
+            while (slot == null) {
+                checkFailure();
+                slot = outQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        Buffer b = slot.buffer;
+        out.setMetaTo(b);
+        if (b.isDataOwned()) {
+            out.setDataRefTo(b);
+            b.release();
+        } else {
+            // Swap the data, so that the last codec can reuse the data of the output buffer
+            out.release();
+            Object data = out.data;
+            Object header = out.header;
+            out.data = b.data;
+            out.offset = b.offset;
+            out.length = b.length;
+            out.header = b.header;
+            b.data = data;
+            b.header = header;
+        }
+        int status = slot.status;
+        boolean endOfMedia = slot.endOfMedia;
+        recycled[codecs.length].add(slot);
+
+        if (flushing) {
+            if (endOfMedia) {
+                flushing = false;
+            } else {
+                status |= CODEC_INPUT_NOT_CONSUMED;
+            }
+        }
+        return status;
+    }
+
+    private Slot obtainSlot(int queueIndex) {
+        Slot slot = recycled[queueIndex].poll();
+        if (slot == null) {
+            return new Slot();
+        }
+        slot.buffer.clearFlags();
+        return slot;
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IllegalStateException("Codec failed in pipeline.", t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void start() {
+        int n = codecs.length;
+        queues = new BlockingQueue[n + 1];
+        recycled = new ConcurrentLinkedQueue[n + 1];
+        for (int i = 0; i < n; i++) {
+            queues[i] = new ArrayBlockingQueue<>(queueCapacity);
+        }
+        queues[n] = new LinkedBlockingQueue<>();
+        for (int i = 0; i <= n; i++) {
+            recycled[i] = new ConcurrentLinkedQueue<>();
+        }
+        failure = null;
+        inputPending = false;
+        flushing = false;
+        workers = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            final int stage = i;
+            Thread t = new Thread(() -> runStage(stage), "PipelinedCodecChain-" + i + "-" + codecs[i].getName());
+            t.setDaemon(true);
+            workers[i] = t;
+            t.start();
+        }
+    }
+
+    /**
+     * The worker loop of a stage.
+     *
+     * @param stage the index of the stage
+     */
+    private void runStage(int stage) {
+        Codec codec = codecs[stage];
+        StageMetrics stageMetrics = metrics[stage];
+        BlockingQueue<Slot> inQueue = queues[stage];
+        BlockingQueue<Slot> outQueue = queues[stage + 1];
+        Slot pending = null;
+        try {
+            while (true) {
+                Slot inSlot = inQueue.take();
+                Buffer in = inSlot.buffer;
+                if (inSlot.status == CODEC_FAILED) {
+                    // Pass the failure on to the next stage
+                    Slot outSlot = obtainSlot(stage + 1);
+                    outSlot.buffer.setMetaTo(in);
+                    outSlot.buffer.setFlag(BufferFlag.DISCARD);
+                    outSlot.status = CODEC_FAILED;
+                    outSlot.endOfMedia = inSlot.endOfMedia;
+                    recycled[stage].add(inSlot);
+                    outQueue.put(outSlot);
+                    continue;
+                }
+
+                boolean aliased = false;
+                int status;
+                do {
+                    Slot outSlot = pending != null ? pending : obtainSlot(stage + 1);
+                    pending = null;
+                    long start = System.nanoTime();
+                    status = codec.process(in, outSlot.buffer);
+                    stageMetrics.recordProcess(System.nanoTime() - start, in, outSlot.buffer, status);
+                    if (!outSlot.buffer.isDataOwned() && outSlot.buffer.data != null
+                            && outSlot.buffer.data == in.data) {
+                        aliased = true;
+                    }
+                    if (status == CODEC_FAILED) {
+                        outSlot.buffer.setFlag(BufferFlag.DISCARD);
+                        outSlot.status = CODEC_FAILED;
+                        outSlot.endOfMedia = inSlot.endOfMedia;
+                        outQueue.put(outSlot);
+                        break;
+                    }
+                    boolean inputConsumed = (status & CODEC_INPUT_NOT_CONSUMED) == 0;
+                    if ((status & CODEC_OUTPUT_NOT_FILLED) != 0 && !(inSlot.endOfMedia && inputConsumed)) {
+                        // The codec needs more input to fill this output buffer
+                        pending = outSlot;
+                    } else {
+                        if ((status & CODEC_OUTPUT_NOT_FILLED) != 0) {
+                            outSlot.buffer.setFlag(BufferFlag.DISCARD);
+                        }
+                        outSlot.status = CODEC_OK;
+                        outSlot.endOfMedia = inSlot.endOfMedia && inputConsumed;
+                        outQueue.put(outSlot);
+                    }
+                } while ((status & CODEC_INPUT_NOT_CONSUMED) != 0);
+
+                if (aliased) {
+                    // The data is still referenced by the output, so it must not be reused
+                    in.data = null;
+                }
+                in.release();
+                recycled[stage].add(inSlot);
+            }
+        } catch (InterruptedException e) {
+            // We have been interrupted, terminate
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        StringBuilder b = new StringBuilder();
+        for (Codec c : codecs) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append(c.getName());
+        }
+        return b.toString();
+    }
+
+    /**
+     * Stops the worker threads, discards all buffers in the pipeline, and
+     * resets all codecs.
+     */
+    @Override
+    public void reset() {
+        stop();
+        for (Codec c : codecs) {
+            c.reset();
+        }
+    }
+
+    /**
+     * Returns the sum of the costs of the codecs in the chain.
+     */
+    @Override
+    public double getCostHint() {
+        double cost = 0;
+        for (Codec c : codecs) {
+            cost += c.getCostHint();
+        }
+        return cost;
+    }
+
+    /**
+     * Stops the worker threads and discards all buffers in the pipeline.
+     * The worker threads are restarted on the next call to {@code process}.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private void stop() {
+        if (workers == null) {
+            return;
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread t : workers) {
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (BlockingQueue<Slot> q : queues) {
+            for (Slot slot = q.poll(); slot != null; slot = q.poll()) {
+                slot.buffer.release();
+            }
+        }
+        workers = null;
+        queues = null;
+        recycled = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PipelinedCodecChain{" + Arrays.toString(codecs) + "}";
+    }
+
+    /**
+     * A buffer in a hand-off queue.
+     */
+    private static class Slot {
+        final Buffer buffer = new Buffer();
+        int status;
+        /**
+         * Set to true if this is the last buffer which has been produced
+         * from an input buffer with the END_OF_MEDIA flag.
+         */
+        boolean endOfMedia;
+    }
+}
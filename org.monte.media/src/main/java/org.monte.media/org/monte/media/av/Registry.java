@@ -24,6 +24,7 @@ import static org.monte.media.av.FormatKeys.MimeTypeKey;
 public abstract class Registry {
 
     private static Registry instance;
+    private CodecPlanner planner;
 
     /**
      * Gets a codec which can transcode from the specified input format to the
@@ -33,7 +34,7 @@ public abstract class Registry {
      * @param outputFormat The output format.
      * @return A codec or null.
      */
-    public final Codec getCodec(Format inputFormat, Format outputFormat) {
+    public Codec getCodec(Format inputFormat, Format outputFormat) {
         List<Codec> codecs = getCodecs(inputFormat, outputFormat);
         return codecs.isEmpty() ? null : codecs.get(0);
     }
@@ -49,6 +50,29 @@ public abstract class Registry {
      */
     public abstract List<Codec> getCodecs(Format inputFormat, Format outputFormat);
 
+    /**
+     * Gets a codec, or a chain of codecs, which can transcode from the
+     * specified input format to the specified output format.
+     * <p>
+     * The chain with the lowest cost is planned with a {@link CodecPlanner}.
+     * The plans are cached, so that repeated calls with the same formats do
+     * not search again.
+     *
+     * @param inputFormat  The input format.
+     * @param outputFormat The output format.
+     * @return A codec, a {@link CodecChain}, or null.
+     */
+    public Codec getCodecChain(Format inputFormat, Format outputFormat) {
+        CodecPlanner p;
+        synchronized (this) {
+            if (planner == null) {
+                planner = new CodecPlanner(this);
+            }
+            p = planner;
+        }
+        return p.createCodec(inputFormat, outputFormat);
+    }
+
     /**
      * Gets the first codec which can decode the specified format.
      *
@@ -89,6 +113,19 @@ public abstract class Registry {
         return getCodecs(null, outputFormat);
     }
 
+    /**
+     * Returns a codec, which has been obtained from this registry, and which
+     * is not used anymore. The registry may reset the codec and hand it out
+     * again. The codec must not be used after it has been released.
+     * <p>
+     * Codecs which have not been obtained from this registry are ignored.
+     * This implementation does nothing.
+     *
+     * @param codec The codec.
+     */
+    public void releaseCodec(Codec codec) {
+    }
+
     public abstract String getExtension(Format ff);
 
     public abstract Format getFileFormat(File file);
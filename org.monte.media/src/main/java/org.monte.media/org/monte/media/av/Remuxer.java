@@ -0,0 +1,456 @@
+/*
+ * @(#)Remuxer.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.math.Rational;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.FrameRateKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_QUICKTIME;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.FormatKeys.SampleFormatKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ByteOrderKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ChannelsKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ENCODING_AVI_PCM;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ENCODING_QUICKTIME_RAW_PCM;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ENCODING_QUICKTIME_SOWT_PCM;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.ENCODING_QUICKTIME_TWOS_PCM;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.FrameSizeKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.SampleRateKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.SampleSizeInBitsKey;
+import static org.monte.media.av.codec.audio.AudioFormatKeys.SignedKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.COMPRESSOR_NAME_QUICKTIME_JPEG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.COMPRESSOR_NAME_QUICKTIME_PNG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.CompressorNameKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_MJPG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_PNG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_QUICKTIME_JPEG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_QUICKTIME_PNG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+/**
+ * Copies the compressed samples of one or more movies into a
+ * {@link MovieWriter}, without decoding and encoding them.
+ * <p>
+ * Each call of {@link #append(MovieReader, Rational, Rational)} copies the
+ * tracks of a movie to the end of the tracks of the writer. The first movie
+ * creates the tracks of the writer, all further movies must have the same
+ * number of tracks with the same formats. The frame rates of the video
+ * tracks may only differ if the writer writes QuickTime files, because an AVI
+ * file has a fixed frame rate per track.
+ * <p>
+ * Trimming is aligned to keyframes: the copy starts at the last keyframe at
+ * or before the start time, and ends with the last sample that starts before
+ * the end time. The time stamps of the copied samples are rebased, so that
+ * each movie starts where the previous movie ended.
+ * <p>
+ * The samples are read with {@link MovieReader#readSlice} and passed to
+ * {@link MovieWriter#write} with the format of the writer track, so that the
+ * writer does not need a codec. Within a container, all formats can be
+ * copied. Between AVI and QuickTime, only formats with the same bitstream
+ * in both containers can be copied: JPEG, PNG and uncompressed PCM audio
+ * that is little endian or 8 bit unsigned. QuickTime audio tracks can not be
+ * copied, because {@code QuickTimeReader} does not read audio in chunks.
+ * <p>
+ * The throughput of the copy is recorded in {@link #getMetrics()}.
+ *
+ * @author Werner Randelshofer
+ */
+public class Remuxer {
+    private final MovieWriter writer;
+    private final StageMetrics metrics;
+    private boolean skipUnsupportedTracks;
+    /**
+     * The formats of the tracks of the writer, as they have been derived
+     * from the first movie. The entry is null if the track has been skipped.
+     */
+    private List<Format> trackFormats;
+    /**
+     * Maps the input tracks to the tracks of the writer. The entry is -1 if
+     * the track has been skipped.
+     */
+    private int[] trackMap;
+    /**
+     * The time at which the next movie starts.
+     */
+    private Rational time = Rational.ZERO;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param writer the movie writer
+     */
+    public Remuxer(MovieWriter writer) {
+        this(writer, new StageMetrics("Remuxer"));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param writer  the movie writer
+     * @param metrics the metrics
+     */
+    public Remuxer(MovieWriter writer, StageMetrics metrics) {
+        this.writer = writer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics. Each copied sample is recorded as one call with
+     * the size of the sample in bytes, and the time needed for reading and
+     * writing it.
+     *
+     * @return the metrics
+     */
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of bytes that have been copied per second.
+     *
+     * @return the throughput in bytes per second
+     */
+    public double getBytesPerSecond() {
+        long nanos = metrics.getTotalNanos();
+        return nanos == 0 ? 0 : metrics.getBytesOut() * 1e9 / nanos;
+    }
+
+    public boolean isSkipUnsupportedTracks() {
+        return skipUnsupportedTracks;
+    }
+
+    /**
+     * If set to true, tracks that can not be copied into the writer are
+     * skipped. Otherwise {@link #append} throws an
+     * {@link UnsupportedOperationException}. The default value is false.
+     *
+     * @param newValue the new value
+     */
+    public void setSkipUnsupportedTracks(boolean newValue) {
+        this.skipUnsupportedTracks = newValue;
+    }
+
+    /**
+     * Returns the time at which the next movie will be appended.
+     *
+     * @return the total duration of the copied movies in seconds
+     */
+    public Rational getTime() {
+        return time;
+    }
+
+    /**
+     * Appends all samples of a movie.
+     *
+     * @param reader the movie reader
+     * @throws IOException if reading or writing fails
+     */
+    public void append(MovieReader reader) throws IOException {
+        append(reader, null, null);
+    }
+
+    /**
+     * Appends the samples of a movie in the specified time range.
+     *
+     * @param reader    the movie reader
+     * @param startTime the start time in seconds, or null to start at the
+     *                  beginning of the movie. The copy starts at the last
+     *                  keyframe at or before the start time.
+     * @param endTime   the end time in seconds, or null to copy until the end
+     *                  of the movie
+     * @throws IOException                   if reading or writing fails
+     * @throws UnsupportedOperationException if a track can not be copied
+     *                                       into the writer
+     * @throws IllegalArgumentException      if the tracks of the movie do not
+     *                                       match the tracks of the writer,
+     *                                       or if the frame rates differ and
+     *                                       the writer writes AVI files
+     */
+    public void append(MovieReader reader, Rational startTime, Rational endTime) throws IOException {
+        boolean isFirst = trackFormats == null;
+        if (isFirst) {
+            selectTracks(reader);
+        } else {
+            checkTracks(reader);
+        }
+
+        int trackCount = reader.getTrackCount();
+        Buffer[] buffers = new Buffer[trackCount];
+        for (int t = 0; t < trackCount; t++) {
+            buffers[t] = new Buffer();
+        }
+        if (startTime != null) {
+            reader.setMovieReadTime(startTime);
+        }
+        readFirst(reader, buffers);
+
+        // Audio tracks start at the chunk that contains the start time, which
+        // can be after the keyframe of the video tracks. Move all tracks
+        // back to the earliest keyframe, so that they stay in sync.
+        Rational base = earliestTimeStamp(buffers);
+        if (startTime != null && base != null && !isAligned(buffers, base)) {
+            reader.setMovieReadTime(base);
+            readFirst(reader, buffers);
+            base = earliestTimeStamp(buffers);
+        }
+        if (isFirst) {
+            createTracks(buffers);
+        } else {
+            checkFrameRates(buffers);
+        }
+        if (base == null) {
+            return;
+        }
+
+        Rational end = base;
+        while (true) {
+            int t = nextTrack(buffers, endTime);
+            if (t == -1) {
+                break;
+            }
+            Buffer buf = buffers[t];
+            long start = System.nanoTime();
+            end = Rational.max(end, buf.timeStamp.add(buf.sampleDuration.multiply(buf.sampleCount)));
+            buf.timeStamp = buf.timeStamp.subtract(base).add(time);
+            buf.track = trackMap[t];
+            buf.format = writer.getFormat(trackMap[t]);
+            writer.write(trackMap[t], buf);
+            long length = buf.length;
+            reader.readSlice(t, buf);
+            metrics.record(System.nanoTime() - start, length, length, false, false);
+        }
+        time = time.add(end.subtract(base));
+    }
+
+    /**
+     * Reads the first sample of each copied track. Marks the buffers of
+     * skipped tracks with {@link BufferFlag#END_OF_MEDIA}.
+     */
+    private void readFirst(MovieReader reader, Buffer[] buffers) throws IOException {
+        for (int t = 0; t < buffers.length; t++) {
+            if (trackFormats.get(t) == null) {
+                buffers[t].setFlagsTo(BufferFlag.END_OF_MEDIA, BufferFlag.DISCARD);
+            } else {
+                reader.readSlice(t, buffers[t]);
+            }
+        }
+    }
+
+    /**
+     * Returns the earliest time stamp of the buffers, or null if all
+     * tracks are at the end of the media.
+     */
+    private static Rational earliestTimeStamp(Buffer[] buffers) {
+        Rational earliest = null;
+        for (Buffer buf : buffers) {
+            if (!buf.isFlag(BufferFlag.END_OF_MEDIA)
+                    && (earliest == null || buf.timeStamp.compareTo(earliest) < 0)) {
+                earliest = buf.timeStamp;
+            }
+        }
+        return earliest;
+    }
+
+    private static boolean isAligned(Buffer[] buffers, Rational base) {
+        for (Buffer buf : buffers) {
+            if (!buf.isFlag(BufferFlag.END_OF_MEDIA) && !buf.timeStamp.equals(base)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the track with the earliest sample before the end time, or -1
+     * if there is no such track.
+     */
+    private static int nextTrack(Buffer[] buffers, Rational endTime) {
+        int next = -1;
+        for (int t = 0; t < buffers.length; t++) {
+            Buffer buf = buffers[t];
+            if (!buf.isFlag(BufferFlag.END_OF_MEDIA)
+                    && (endTime == null || buf.timeStamp.compareTo(endTime) < 0)
+                    && (next == -1 || buf.timeStamp.compareTo(buffers[next].timeStamp) < 0)) {
+                next = t;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Determines the formats of the writer tracks from the first movie.
+     */
+    private void selectTracks(MovieReader reader) throws IOException {
+        String mimeType = writer.getFileFormat().get(MimeTypeKey);
+        List<Format> formats = new ArrayList<>();
+        for (int t = 0, n = reader.getTrackCount(); t < n; t++) {
+            Format format;
+            try {
+                format = toWriterFormat(reader.getFormat(t), mimeType);
+            } catch (UnsupportedOperationException e) {
+                if (!skipUnsupportedTracks) {
+                    throw e;
+                }
+                format = null;
+            }
+            formats.add(format);
+        }
+        trackFormats = formats;
+    }
+
+    /**
+     * Adds the tracks to the writer. The frame rate of a video track is
+     * derived from the duration of its first sample, because
+     * {@code QuickTimeReader} stores the sample duration in
+     * {@code FrameRateKey}.
+     */
+    private void createTracks(Buffer[] buffers) throws IOException {
+        trackMap = new int[buffers.length];
+        for (int t = 0; t < buffers.length; t++) {
+            Format format = trackFormats.get(t);
+            if (format == null) {
+                trackMap[t] = -1;
+                continue;
+            }
+            Rational sampleDuration = buffers[t].sampleDuration;
+            if (format.get(MediaTypeKey) == MediaType.VIDEO && !buffers[t].isFlag(BufferFlag.END_OF_MEDIA)
+                    && sampleDuration != null && !sampleDuration.isZero()) {
+                format = format.append(FrameRateKey, sampleDuration.inverse());
+                trackFormats.set(t, format);
+            }
+            trackMap[t] = writer.addTrack(format);
+        }
+    }
+
+    private void checkTracks(MovieReader reader) throws IOException {
+        if (reader.getTrackCount() != trackFormats.size()) {
+            throw new IllegalArgumentException("Movie has " + reader.getTrackCount() + " tracks, expected " + trackFormats.size());
+        }
+        String mimeType = writer.getFileFormat().get(MimeTypeKey);
+        for (int t = 0; t < trackFormats.size(); t++) {
+            if (trackFormats.get(t) == null) {
+                continue;
+            }
+            Format format = toWriterFormat(reader.getFormat(t), mimeType);
+            if (!format.matchesWithout(trackFormats.get(t), FrameRateKey)) {
+                throw new IllegalArgumentException("Track " + t + " has format " + format + ", expected " + trackFormats.get(t));
+            }
+        }
+    }
+
+    /**
+     * Checks that the video tracks of an appended movie have the frame rates
+     * of the writer tracks, if the writer writes AVI files. AVI tracks have a
+     * fixed frame rate, samples with a different duration would be played at
+     * the wrong speed.
+     */
+    private void checkFrameRates(Buffer[] buffers) throws IOException {
+        if (!MIME_AVI.equals(writer.getFileFormat().get(MimeTypeKey))) {
+            return;
+        }
+        for (int t = 0; t < buffers.length; t++) {
+            Format format = trackFormats.get(t);
+            Rational sampleDuration = buffers[t].sampleDuration;
+            if (format == null || format.get(MediaTypeKey) != MediaType.VIDEO
+                    || buffers[t].isFlag(BufferFlag.END_OF_MEDIA) || sampleDuration == null || sampleDuration.isZero()) {
+                continue;
+            }
+            Rational frameRate = format.get(FrameRateKey);
+            if (frameRate != null && frameRate.compareTo(sampleDuration.inverse()) != 0) {
+                throw new IllegalArgumentException("Track " + t + " has frame rate " + sampleDuration.inverse()
+                        + ", expected " + frameRate);
+            }
+        }
+    }
+
+    /**
+     * Translates the format of an input track into the format of a track of
+     * the writer, without changing the bitstream of the samples.
+     *
+     * @param in       the format of the input track
+     * @param mimeType the mime type of the writer
+     * @return the format of the writer track
+     * @throws UnsupportedOperationException if the samples can not be copied
+     */
+    static Format toWriterFormat(Format in, String mimeType) {
+        String inMimeType = in.get(MimeTypeKey);
+        MediaType mediaType = in.get(MediaTypeKey);
+        // QuickTimeReader stores the media type in EncodingKey and the
+        // data format in SampleFormatKey.
+        String encoding = MIME_QUICKTIME.equals(inMimeType) ? in.get(SampleFormatKey) : in.get(EncodingKey);
+        if (encoding == null || !(MIME_AVI.equals(inMimeType) || MIME_QUICKTIME.equals(inMimeType))
+                || !(MIME_AVI.equals(mimeType) || MIME_QUICKTIME.equals(mimeType))) {
+            throw new UnsupportedOperationException("Can not copy " + in + " into " + mimeType);
+        }
+        switch (mediaType) {
+            case VIDEO: {
+                String compressorName = in.get(CompressorNameKey, encoding);
+                if (!inMimeType.equals(mimeType)) {
+                    switch (encoding) {
+                        case ENCODING_AVI_MJPG, ENCODING_QUICKTIME_JPEG -> {
+                            encoding = MIME_AVI.equals(mimeType) ? ENCODING_AVI_MJPG : ENCODING_QUICKTIME_JPEG;
+                            compressorName = COMPRESSOR_NAME_QUICKTIME_JPEG;
+                        }
+                        case ENCODING_QUICKTIME_PNG -> {
+                            encoding = MIME_AVI.equals(mimeType) ? ENCODING_AVI_PNG : ENCODING_QUICKTIME_PNG;
+                            compressorName = COMPRESSOR_NAME_QUICKTIME_PNG;
+                        }
+                        default ->
+                                throw new UnsupportedOperationException("Can not copy " + in + " into " + mimeType);
+                    }
+                }
+                return new Format(MediaTypeKey, MediaType.VIDEO,
+                        MimeTypeKey, mimeType,
+                        EncodingKey, encoding,
+                        CompressorNameKey, compressorName,
+                        WidthKey, in.get(WidthKey),
+                        HeightKey, in.get(HeightKey),
+                        DepthKey, in.get(DepthKey, 24),
+                        FrameRateKey, in.get(FrameRateKey, new Rational(30, 1)));
+            }
+            case AUDIO: {
+                if (MIME_QUICKTIME.equals(inMimeType) || !ENCODING_AVI_PCM.equals(encoding)
+                        || !in.containsKey(SampleRateKey)) {
+                    throw new UnsupportedOperationException("Can not copy " + in + " into " + mimeType);
+                }
+                int sampleSizeInBits = in.get(SampleSizeInBitsKey, 16);
+                boolean signed = in.get(SignedKey, sampleSizeInBits > 8);
+                ByteOrder byteOrder = in.get(ByteOrderKey, ByteOrder.LITTLE_ENDIAN);
+                if (MIME_QUICKTIME.equals(mimeType)) {
+                    if (!signed) {
+                        encoding = ENCODING_QUICKTIME_RAW_PCM;
+                    } else if (sampleSizeInBits <= 8 || byteOrder == ByteOrder.BIG_ENDIAN) {
+                        encoding = ENCODING_QUICKTIME_TWOS_PCM;
+                    } else {
+                        encoding = ENCODING_QUICKTIME_SOWT_PCM;
+                    }
+                }
+                return new Format(MediaTypeKey, MediaType.AUDIO,
+                        MimeTypeKey, mimeType,
+                        EncodingKey, encoding,
+                        SampleRateKey, in.get(SampleRateKey),
+                        FrameRateKey, in.get(FrameRateKey, in.get(SampleRateKey)),
+                        ChannelsKey, in.get(ChannelsKey, 1),
+                        SampleSizeInBitsKey, sampleSizeInBits,
+                        FrameSizeKey, in.get(FrameSizeKey, (sampleSizeInBits + 7) / 8 * in.get(ChannelsKey, 1)),
+                        SignedKey, signed,
+                        ByteOrderKey, byteOrder);
+            }
+            default:
+                throw new UnsupportedOperationException("Can not copy " + in + " into " + mimeType);
+        }
+    }
+}
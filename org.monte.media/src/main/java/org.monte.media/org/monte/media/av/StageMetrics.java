@@ -0,0 +1,409 @@
+/*
+ * @(#)StageMetrics.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects performance metrics of a processing stage, for example of a
+ * {@link Codec} in a {@link CodecChain}, of {@link MovieWriter#write} or of
+ * {@link MovieReader#read}.
+ * <p>
+ * For each call of the stage, the latency in nanoseconds, the number of bytes
+ * that went in and out, and the outcome of the call are recorded. The
+ * latencies are collected in a histogram with 8 linear sub-buckets per power
+ * of two, so that percentiles have a relative error of at most 12.5 %.
+ * <p>
+ * The metrics can be read with {@link #getSnapshot()}, or via JMX after the
+ * metrics have been registered with {@link #registerMBean()}.
+ * <p>
+ * This class is thread-safe. Recording does not block.
+ *
+ * @author Werner Randelshofer
+ */
+public class StageMetrics implements StageMetricsMXBean {
+    /**
+     * The JMX domain of the metrics.
+     */
+    public final static String JMX_DOMAIN = "org.monte.media";
+    private final static int SUB_BUCKET_BITS = 3;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+    private ObjectName objectName;
+
+    /**
+     * Creates new metrics.
+     *
+     * @param name the name of the stage
+     */
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a call of a codec.
+     *
+     * @param elapsedNanos the elapsed time in nanoseconds
+     * @param in           the input buffer or null
+     * @param out          the output buffer or null
+     * @param status       the status returned by {@link Codec#process}
+     */
+    public void recordProcess(long elapsedNanos, Buffer in, Buffer out, int status) {
+        boolean isFailed = status == Codec.CODEC_FAILED;
+        boolean isDiscarded = !isFailed && ((status & Codec.CODEC_OUTPUT_NOT_FILLED) != 0
+                || out != null && out.isFlag(BufferFlag.DISCARD));
+        record(elapsedNanos,
+                (status & Codec.CODEC_INPUT_NOT_CONSUMED) != 0 ? 0 : sizeOf(in),
+                isDiscarded ? 0 : sizeOf(out), isFailed, isDiscarded);
+    }
+
+    /**
+     * Records a call of the stage.
+     *
+     * @param elapsedNanos the elapsed time in nanoseconds
+     * @param bytesIn      the number of bytes consumed
+     * @param bytesOut     the number of bytes produced
+     * @param isFailed     whether the call failed
+     * @param isDiscarded  whether the call did not produce a frame
+     */
+    public void record(long elapsedNanos, long bytesIn, long bytesOut, boolean isFailed, boolean isDiscarded) {
+        long nanos = Math.max(0, elapsedNanos);
+        calls.increment();
+        if (isFailed) {
+            failed.increment();
+        } else if (isDiscarded) {
+            discarded.increment();
+        } else {
+            frames.increment();
+        }
+        this.bytesIn.add(bytesIn);
+        this.bytesOut.add(bytesOut);
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.incrementAndGet(bucketOf(nanos));
+    }
+
+    /**
+     * Returns the size of the data of a buffer in bytes.
+     *
+     * @param buf a buffer or null
+     * @return the size of the data, 0 if the size is not known
+     */
+    public static long sizeOf(Buffer buf) {
+        if (buf == null || buf.data == null || buf.isFlag(BufferFlag.DISCARD)) {
+            return 0;
+        }
+        Object data = buf.data;
+        if (data instanceof byte[] || data instanceof ByteBuffer) {
+            return buf.length;
+        } else if (data instanceof short[]) {
+            return 2L * buf.length;
+        } else if (data instanceof int[]) {
+            return 4L * buf.length;
+        } else if (data instanceof BufferedImage) {
+            BufferedImage img = (BufferedImage) data;
+            return (long) img.getWidth() * img.getHeight() * ((img.getColorModel().getPixelSize() + 7) / 8);
+        }
+        return 0;
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (octave - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int octave = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (octave - SUB_BUCKET_BITS);
+        return lower + (1L << (octave - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Returns an immutable snapshot of the metrics.
+     *
+     * @return a snapshot
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return new Snapshot(name, calls.sum(), frames.sum(), discarded.sum(), failed.sum(),
+                bytesIn.sum(), bytesOut.sum(), totalNanos.sum(), maxNanos.get(), counts);
+    }
+
+    /**
+     * Clears all metrics.
+     * <p>
+     * Calls which are recorded concurrently may be partially cleared.
+     */
+    @Override
+    public void reset() {
+        calls.reset();
+        frames.reset();
+        discarded.reset();
+        failed.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    @Override
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        return getSnapshot().getMeanNanos();
+    }
+
+    @Override
+    public long getMedianNanos() {
+        return getSnapshot().getPercentileNanos(50);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return getSnapshot().getPercentileNanos(99);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under the name
+     * {@code org.monte.media:type=StageMetrics,name=<name>}. If the name is
+     * already taken, a sequence number is appended to the name.
+     *
+     * @return the object name
+     * @throws JMException if the registration fails
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (objectName != null) {
+            return objectName;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (int i = 1; ; i++) {
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=StageMetrics,name="
+                    + ObjectName.quote(i == 1 ? name : name + " #" + i));
+            try {
+                server.registerMBean(this, on);
+                objectName = on;
+                return on;
+            } catch (InstanceAlreadyExistsException e) {
+                // try the next name
+            }
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     * Does nothing if the metrics are not registered.
+     *
+     * @throws JMException if the unregistration fails
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                // already unregistered
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot().toString();
+    }
+
+    /**
+     * An immutable snapshot of {@link StageMetrics}.
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final long calls;
+        private final long frames;
+        private final long discarded;
+        private final long failed;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        private Snapshot(String name, long calls, long frames, long discarded, long failed,
+                         long bytesIn, long bytesOut, long totalNanos, long maxNanos, long[] histogram) {
+            this.name = name;
+            this.calls = calls;
+            this.frames = frames;
+            this.discarded = discarded;
+            this.failed = failed;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of recorded calls.
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Returns the number of calls that produced a frame.
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * Returns the number of calls that did not produce a frame.
+         */
+        public long getDiscarded() {
+            return discarded;
+        }
+
+        /**
+         * Returns the number of calls that failed.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return calls == 0 ? 0 : totalNanos / calls;
+        }
+
+        /**
+         * Returns the latency below which the specified percentage of the
+         * calls fall.
+         *
+         * @param percentile a value between 0 and 100
+         * @return the latency in nanoseconds, 0 if no calls have been recorded
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long c : histogram) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+            long count = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                count += histogram[i];
+                if (count >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{calls=" + calls + ", frames=" + frames + ", discarded=" + discarded
+                    + ", failed=" + failed + ", bytesIn=" + bytesIn + ", bytesOut=" + bytesOut
+                    + ", mean=" + getMeanNanos() + "ns, p50=" + getPercentileNanos(50)
+                    + "ns, p99=" + getPercentileNanos(99) + "ns, max=" + maxNanos + "ns}";
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * @(#)StageMetricsMXBean.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av;
+
+/**
+ * JMX interface of {@link StageMetrics}.
+ * <p>
+ * All times are in nanoseconds.
+ *
+ * @author Werner Randelshofer
+ */
+public interface StageMetricsMXBean {
+    String getName();
+
+    long getCalls();
+
+    long getFrames();
+
+    long getDiscarded();
+
+    long getFailed();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getTotalNanos();
+
+    long getMeanNanos();
+
+    long getMedianNanos();
+
+    long getP99Nanos();
+
+    long getMaxNanos();
+
+    /**
+     * Clears all metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,326 @@
+/*
+ * @(#)DirtyRegionCodec.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av.codec.video;
+
+import org.monte.media.av.Buffer;
+import org.monte.media.av.Format;
+import org.monte.media.av.FormatKeys.MediaType;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.monte.media.av.BufferFlag.DISCARD;
+import static org.monte.media.av.BufferFlag.SAME_DATA;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+
+/**
+ * {@code DirtyRegionCodec} detects which regions of a video frame have
+ * changed since the previous frame.
+ * <p>
+ * The codec passes the image through unchanged. It divides the image into
+ * tiles, compares each tile with the same tile of the previous frame, and
+ * stores the changed tiles in {@link Buffer#dirtyRegions} of the output
+ * buffer. Adjacent changed tiles in the same row of tiles are merged into a
+ * single rectangle. If no tile has changed, the codec sets the
+ * {@link org.monte.media.av.BufferFlag#SAME_DATA} flag.
+ * <p>
+ * The rows of tiles of large images are compared in parallel.
+ * <p>
+ * Encoders, such as {@link TechSmithCodec}, use the dirty regions to skip
+ * unchanged scanlines without comparing them with the previous frame again.
+ * <p>
+ * The codec supports images with one data element per pixel, for example
+ * {@code TYPE_INT_RGB}, {@code TYPE_USHORT_555_RGB} and
+ * {@code TYPE_BYTE_INDEXED}. For other images, the dirty regions of the
+ * output buffer are null.
+ *
+ * @author Werner Randelshofer
+ */
+public class DirtyRegionCodec extends AbstractVideoCodec {
+    /**
+     * The default width and height of a tile.
+     */
+    public final static int DEFAULT_TILE_SIZE = 64;
+    /**
+     * The minimal number of pixels in a frame that is compared in parallel.
+     */
+    private final static int MIN_PARALLEL_PIXELS = 256 * 256;
+
+    private final static Rectangle[] NO_REGIONS = new Rectangle[0];
+
+    private int tileSize = DEFAULT_TILE_SIZE;
+    /**
+     * A copy of the data elements of the previous frame. The array has the
+     * same layout as the data buffer of the image.
+     */
+    private Object previousData;
+    private int previousWidth, previousHeight;
+
+    public DirtyRegionCodec() {
+        super(new Format[]{
+                        new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+                                EncodingKey, ENCODING_BUFFERED_IMAGE), //
+                },
+                new Format[]{
+                        new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+                                EncodingKey, ENCODING_BUFFERED_IMAGE), //
+                }//
+        );
+        name = "Dirty Region Detector";
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the width and height of a tile.
+     *
+     * @param newValue the tile size, must be greater than 0
+     */
+    public void setTileSize(int newValue) {
+        if (newValue < 1) {
+            throw new IllegalArgumentException("tileSize must be greater 0:" + newValue);
+        }
+        this.tileSize = newValue;
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        previousData = null;
+    }
+
+    @Override
+    public int process(Buffer in, Buffer out) {
+        out.setMetaTo(in);
+        out.format = outputFormat;
+        out.data = in.data;
+        out.header = in.header;
+        out.offset = in.offset;
+        out.length = in.length;
+        out.dirtyRegions = null;
+        if (in.isFlag(DISCARD)) {
+            return CODEC_OK;
+        }
+        if (!(in.data instanceof BufferedImage)) {
+            out.setFlag(DISCARD);
+            return CODEC_FAILED;
+        }
+        BufferedImage image = (BufferedImage) in.data;
+        Raster raster = image.getRaster();
+        int width = raster.getWidth(), height = raster.getHeight();
+        int scanlineStride = getScanlineStride(raster);
+        Object data = getData(raster.getDataBuffer());
+        if (scanlineStride < 0 || data == null) {
+            previousData = null;
+            return CODEC_OK;
+        }
+        int offset = raster.getDataBuffer().getOffset()
+                + (raster.getMinY() - raster.getSampleModelTranslateY()) * scanlineStride
+                + (raster.getMinX() - raster.getSampleModelTranslateX());
+
+        if (previousData == null || previousData.getClass() != data.getClass()
+                || Array.getLength(previousData) != Array.getLength(data)
+                || previousWidth != width || previousHeight != height) {
+            // => first frame, or the layout of the frame has changed
+            previousData = copyOf(data);
+            previousWidth = width;
+            previousHeight = height;
+            out.dirtyRegions = new Rectangle[]{new Rectangle(0, 0, width, height)};
+            return CODEC_OK;
+        }
+
+        if (in.isFlag(SAME_DATA)) {
+            out.dirtyRegions = NO_REGIONS;
+            return CODEC_OK;
+        }
+
+        int tileRows = (height + tileSize - 1) / tileSize;
+        Rectangle[][] rows = new Rectangle[tileRows][];
+        IntStream range = IntStream.range(0, tileRows);
+        if (width * height >= MIN_PARALLEL_PIXELS) {
+            range = range.parallel();
+        }
+        range.forEach(tileRow -> rows[tileRow] = compareTileRow(data, offset, scanlineStride, width, height, tileRow));
+
+        ArrayList<Rectangle> regions = new ArrayList<>();
+        for (Rectangle[] row : rows) {
+            regions.addAll(Arrays.asList(row));
+        }
+        out.dirtyRegions = regions.toArray(NO_REGIONS);
+        out.setFlag(SAME_DATA, regions.isEmpty());
+        return CODEC_OK;
+    }
+
+    /**
+     * Compares a row of tiles with the previous frame, and copies the
+     * changed tiles into the previous frame.
+     *
+     * @return the changed tiles, adjacent tiles are merged
+     */
+    private Rectangle[] compareTileRow(Object data, int offset, int scanlineStride, int width, int height, int tileRow) {
+        int y0 = tileRow * tileSize;
+        int y1 = min(height, y0 + tileSize);
+        ArrayList<Rectangle> regions = new ArrayList<>();
+        Rectangle current = null;
+        for (int x0 = 0; x0 < width; x0 += tileSize) {
+            int x1 = min(width, x0 + tileSize);
+            boolean dirty = false;
+            for (int y = y0; y < y1; y++) {
+                int xy = offset + y * scanlineStride;
+                if (mismatch(data, previousData, xy + x0, xy + x1)) {
+                    dirty = true;
+                    // the first changed scanline, copy the remainder of the tile
+                    for (; y < y1; y++) {
+                        xy = offset + y * scanlineStride;
+                        System.arraycopy(data, xy + x0, previousData, xy + x0, x1 - x0);
+                    }
+                }
+            }
+            if (dirty) {
+                if (current != null && current.x + current.width == x0) {
+                    current.width += x1 - x0;
+                } else {
+                    current = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+                    regions.add(current);
+                }
+            }
+        }
+        return regions.toArray(NO_REGIONS);
+    }
+
+    /**
+     * Converts dirty regions into the horizontal span of changed pixels of
+     * each scanline.
+     * <p>
+     * The span of scanline {@code y} goes from {@code spans[2*y]} inclusive
+     * to {@code spans[2*y+1]} exclusive. The span of an unchanged scanline is
+     * empty.
+     *
+     * @param regions the dirty regions
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param spans   an array that is reused if it is large enough, or null
+     * @return the spans
+     */
+    public static int[] toScanlineSpans(Rectangle[] regions, int width, int height, int[] spans) {
+        if (spans == null || spans.length < 2 * height) {
+            spans = new int[2 * height];
+        }
+        for (int y = 0; y < height; y++) {
+            spans[2 * y] = width;
+            spans[2 * y + 1] = 0;
+        }
+        for (Rectangle r : regions) {
+            int x0 = max(0, r.x), x1 = min(width, r.x + r.width);
+            for (int y = max(0, r.y), ymax = min(height, r.y + r.height); y < ymax; y++) {
+                spans[2 * y] = min(spans[2 * y], x0);
+                spans[2 * y + 1] = max(spans[2 * y + 1], x1);
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Copies the pixels inside the dirty regions from a frame into the
+     * previous frame. Copies all pixels if the regions are null.
+     *
+     * @param pixels         the pixels of the frame
+     * @param previousPixels the pixels of the previous frame, must have the
+     *                       same layout
+     * @param regions        the dirty regions or null
+     * @param offset         the offset of the first pixel
+     * @param scanlineStride the number to add to offset to get to the next
+     *                       scanline
+     */
+    public static void copyRegions(Object pixels, Object previousPixels, Rectangle[] regions, int offset, int scanlineStride) {
+        if (regions == null) {
+            System.arraycopy(pixels, 0, previousPixels, 0, Array.getLength(pixels));
+            return;
+        }
+        for (Rectangle r : regions) {
+            for (int y = r.y, ymax = r.y + r.height; y < ymax; y++) {
+                int xy = offset + y * scanlineStride + r.x;
+                System.arraycopy(pixels, xy, previousPixels, xy, r.width);
+            }
+        }
+    }
+
+    private static boolean mismatch(Object a, Object b, int from, int to) {
+        if (a instanceof int[]) {
+            return Arrays.mismatch((int[]) a, from, to, (int[]) b, from, to) >= 0;
+        } else if (a instanceof short[]) {
+            return Arrays.mismatch((short[]) a, from, to, (short[]) b, from, to) >= 0;
+        } else {
+            return Arrays.mismatch((byte[]) a, from, to, (byte[]) b, from, to) >= 0;
+        }
+    }
+
+    private static Object copyOf(Object data) {
+        if (data instanceof int[]) {
+            return ((int[]) data).clone();
+        } else if (data instanceof short[]) {
+            return ((short[]) data).clone();
+        } else {
+            return ((byte[]) data).clone();
+        }
+    }
+
+    /**
+     * Returns the data array of a data buffer with a single bank, or null.
+     */
+    private static Object getData(DataBuffer db) {
+        if (db.getNumBanks() != 1) {
+            return null;
+        }
+        if (db instanceof DataBufferInt) {
+            return ((DataBufferInt) db).getData();
+        } else if (db instanceof DataBufferUShort) {
+            return ((DataBufferUShort) db).getData();
+        } else if (db instanceof DataBufferShort) {
+            return ((DataBufferShort) db).getData();
+        } else if (db instanceof DataBufferByte) {
+            return ((DataBufferByte) db).getData();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the scanline stride of a raster with one data element per
+     * pixel, or -1.
+     */
+    private static int getScanlineStride(Raster raster) {
+        if (raster.getNumDataElements() != 1) {
+            return -1;
+        }
+        SampleModel sm = raster.getSampleModel();
+        if (sm instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+        } else if (sm instanceof ComponentSampleModel) {
+            return ((ComponentSampleModel) sm).getScanlineStride();
+        }
+        return -1;
+    }
+}
@@ -9,11 +9,11 @@ import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.io.ByteArrayImageInputStream;
 import org.monte.media.io.ByteArrayImageOutputStream;
+import org.monte.media.io.ImageWriterPool;
 import org.monte.media.mjpg.MJPGImageReader;
 import org.monte.media.mjpg.MJPGImageReaderSpi;
 
 import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
@@ -45,6 +45,24 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.*;
  */
 public class JPEGCodec extends AbstractVideoCodec {
 
+    /**
+     * The image writer of this codec. Is only used if no image writer pool
+     * has been set.
+     */
+    private ImageWriter imageWriter;
+    /**
+     * The write parameters. Are reused for every frame.
+     */
+    private ImageWriteParam writeParam;
+    /**
+     * The image reader of this codec.
+     */
+    private ImageReader imageReader;
+    /**
+     * The pool of image writers, or null.
+     */
+    private ImageWriterPool imageWriterPool;
+
     public JPEGCodec() {
         super(new Format[]{
                         new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
@@ -75,6 +93,14 @@ public class JPEGCodec extends AbstractVideoCodec {
         name = "JPEG Codec";
     }
 
+    /**
+     * DCT based compression is one of the more expensive conversions.
+     */
+    @Override
+    public double getCostHint() {
+        return 20;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         if (ENCODING_BUFFERED_IMAGE.equals(outputFormat.get(EncodingKey))) {
@@ -99,6 +125,31 @@ public class JPEGCodec extends AbstractVideoCodec {
         return this.outputFormat;
     }
 
+    /**
+     * Sets a pool of image writers. If a pool is set, the codec acquires a
+     * writer from the pool for every frame instead of keeping a writer of its
+     * own. This reduces the number of writers, if many instances of this
+     * codec are used concurrently.
+     *
+     * @param newValue a pool of "image/jpeg" writers, or null
+     */
+    public void setImageWriterPool(ImageWriterPool newValue) {
+        if (imageWriter != null) {
+            imageWriter.dispose();
+            imageWriter = null;
+        }
+        this.imageWriterPool = newValue;
+    }
+
+    /**
+     * Returns the pool of image writers.
+     *
+     * @return the pool or null
+     */
+    public ImageWriterPool getImageWriterPool() {
+        return imageWriterPool;
+    }
+
     public int encode(Buffer in, Buffer out) {
         out.setMetaTo(in);
         out.format = outputFormat;
@@ -117,16 +168,17 @@ public class JPEGCodec extends AbstractVideoCodec {
             tmp = new ByteArrayImageOutputStream();
         }
 
+        ImageWriter iw = acquireImageWriter();
         try {
-            ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/jpeg").next();
-            ImageWriteParam iwParam = iw.getDefaultWriteParam();
-            iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (writeParam == null) {
+                writeParam = iw.getDefaultWriteParam();
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            }
             float quality = outputFormat.get(QualityKey, 1f);
-            iwParam.setCompressionQuality(quality);
+            writeParam.setCompressionQuality(quality);
             iw.setOutput(tmp);
             IIOImage img = new IIOImage(image, null, null);
-            iw.write(null, img, iwParam);
-            iw.dispose();
+            iw.write(null, img, writeParam);
 
             out.sampleCount = 1;
             out.setFlag(KEYFRAME);
@@ -138,6 +190,8 @@ public class JPEGCodec extends AbstractVideoCodec {
             ex.printStackTrace();
             out.setFlag(DISCARD);
             return CODEC_FAILED;
+        } finally {
+            releaseImageWriter(iw);
         }
     }
 
@@ -155,11 +209,13 @@ public class JPEGCodec extends AbstractVideoCodec {
         ByteArrayImageInputStream tmp = new ByteArrayImageInputStream(data);
 
         try {
-            // ImageReader ir = (ImageReader) ImageIO.getImageReadersByMIMEType("image/jpeg").next();
-            ImageReader ir = new MJPGImageReader(new MJPGImageReaderSpi());
+            if (imageReader == null) {
+                imageReader = new MJPGImageReader(new MJPGImageReaderSpi());
+            }
+            ImageReader ir = imageReader;
             ir.setInput(tmp);
             out.data = ir.read(0);
-            ir.dispose();
+            ir.setInput(null);
 
             out.sampleCount = 1;
             out.offset = 0;
@@ -171,4 +227,30 @@ public class JPEGCodec extends AbstractVideoCodec {
             return CODEC_FAILED;
         }
     }
+
+    /**
+     * Acquires an image writer from the pool, or returns the image writer of
+     * this codec if no pool has been set.
+     */
+    private ImageWriter acquireImageWriter() {
+        if (imageWriterPool != null) {
+            return imageWriterPool.acquire();
+        }
+        if (imageWriter == null) {
+            imageWriter = ImageWriterPool.createImageWriter("image/jpeg");
+        }
+        return imageWriter;
+    }
+
+    /**
+     * Releases an image writer that has been acquired with
+     * {@link #acquireImageWriter}.
+     */
+    private void releaseImageWriter(ImageWriter iw) {
+        if (imageWriterPool != null) {
+            imageWriterPool.release(iw);
+        } else {
+            iw.setOutput(null);
+        }
+    }
 }
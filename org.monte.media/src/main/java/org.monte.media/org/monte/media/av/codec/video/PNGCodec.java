@@ -8,6 +8,7 @@ import org.monte.media.av.Buffer;
 import org.monte.media.av.Format;
 import org.monte.media.io.ByteArrayImageInputStream;
 import org.monte.media.io.ByteArrayImageOutputStream;
+import org.monte.media.io.ImageWriterPool;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -36,6 +37,24 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.*;
  */
 public class PNGCodec extends AbstractVideoCodec {
 
+    /**
+     * The image writer of this codec. Is only used if no image writer pool
+     * has been set.
+     */
+    private ImageWriter imageWriter;
+    /**
+     * The write parameters. Are reused for every frame.
+     */
+    private ImageWriteParam writeParam;
+    /**
+     * The image reader of this codec.
+     */
+    private ImageReader imageReader;
+    /**
+     * The pool of image writers, or null.
+     */
+    private ImageWriterPool imageWriterPool;
+
     public PNGCodec() {
         super(new Format[]{
                         new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
@@ -93,6 +112,14 @@ public class PNGCodec extends AbstractVideoCodec {
         return this.outputFormat;
     }
 
+    /**
+     * Deflate compression with filtering is the most expensive conversion.
+     */
+    @Override
+    public double getCostHint() {
+        return 40;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         if (ENCODING_BUFFERED_IMAGE.equals(outputFormat.get(EncodingKey))) {
@@ -102,6 +129,31 @@ public class PNGCodec extends AbstractVideoCodec {
         }
     }
 
+    /**
+     * Sets a pool of image writers. If a pool is set, the codec acquires a
+     * writer from the pool for every frame instead of keeping a writer of its
+     * own. This reduces the number of writers, if many instances of this
+     * codec are used concurrently.
+     *
+     * @param newValue a pool of "image/png" writers, or null
+     */
+    public void setImageWriterPool(ImageWriterPool newValue) {
+        if (imageWriter != null) {
+            imageWriter.dispose();
+            imageWriter = null;
+        }
+        this.imageWriterPool = newValue;
+    }
+
+    /**
+     * Returns the pool of image writers.
+     *
+     * @return the pool or null
+     */
+    public ImageWriterPool getImageWriterPool() {
+        return imageWriterPool;
+    }
+
     public int encode(Buffer in, Buffer out) {
         out.setMetaTo(in);
         out.format = outputFormat;
@@ -122,13 +174,14 @@ public class PNGCodec extends AbstractVideoCodec {
             tmp = new ByteArrayImageOutputStream();
         }
 
+        ImageWriter iw = acquireImageWriter();
         try {
-            ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/png").next();
-            ImageWriteParam iwParam = iw.getDefaultWriteParam();
+            if (writeParam == null) {
+                writeParam = iw.getDefaultWriteParam();
+            }
             iw.setOutput(tmp);
             IIOImage img = new IIOImage(image, null, null);
-            iw.write(null, img, iwParam);
-            iw.dispose();
+            iw.write(null, img, writeParam);
 
             out.setFlag(KEYFRAME);
             out.header = null;
@@ -140,6 +193,8 @@ public class PNGCodec extends AbstractVideoCodec {
             ex.printStackTrace();
             out.setFlag(DISCARD);
             return CODEC_FAILED;
+        } finally {
+            releaseImageWriter(iw);
         }
     }
 
@@ -157,10 +212,13 @@ public class PNGCodec extends AbstractVideoCodec {
         ByteArrayImageInputStream tmp = new ByteArrayImageInputStream(data);
 
         try {
-            ImageReader ir = (ImageReader) ImageIO.getImageReadersByMIMEType("image/png").next();
+            if (imageReader == null) {
+                imageReader = ImageIO.getImageReadersByMIMEType("image/png").next();
+            }
+            ImageReader ir = imageReader;
             ir.setInput(tmp);
             out.data = ir.read(0);
-            ir.dispose();
+            ir.setInput(null);
 
             out.sampleCount = 1;
             out.offset = 0;
@@ -172,4 +230,30 @@ public class PNGCodec extends AbstractVideoCodec {
             return CODEC_FAILED;
         }
     }
+
+    /**
+     * Acquires an image writer from the pool, or returns the image writer of
+     * this codec if no pool has been set.
+     */
+    private ImageWriter acquireImageWriter() {
+        if (imageWriterPool != null) {
+            return imageWriterPool.acquire();
+        }
+        if (imageWriter == null) {
+            imageWriter = ImageWriterPool.createImageWriter("image/png");
+        }
+        return imageWriter;
+    }
+
+    /**
+     * Releases an image writer that has been acquired with
+     * {@link #acquireImageWriter}.
+     */
+    private void releaseImageWriter(ImageWriter iw) {
+        if (imageWriterPool != null) {
+            imageWriterPool.release(iw);
+        } else {
+            iw.setOutput(null);
+        }
+    }
 }
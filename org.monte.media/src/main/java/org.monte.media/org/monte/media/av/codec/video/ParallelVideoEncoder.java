@@ -0,0 +1,212 @@
+/*
+ * @(#)ParallelVideoEncoder.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.av.codec.video;
+
+import org.monte.media.av.Buffer;
+import org.monte.media.av.Codec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code ParallelVideoEncoder} encodes the frames of a video track with an
+ * intra-frame codec on a pool of worker threads.
+ * <p>
+ * The frames of an intra-frame codec, such as {@link JPEGCodec} and
+ * {@link PNGCodec}, do not depend on each other. Therefore, they can be
+ * encoded concurrently. Each worker thread uses its own instance of the
+ * codec.
+ * <p>
+ * The encoded frames are handed to a {@link SampleWriter} in the same order
+ * in which the frames have been passed to {@link #encode}. The number of
+ * frames that are being encoded at the same time is bounded by the window
+ * size. If the window is full, {@code encode} blocks until the oldest frame
+ * has been encoded and written.
+ * <p>
+ * The input buffer is copied, unless its data is
+ * {@linkplain Buffer#isDataOwned() owned}, so that the caller can reuse its
+ * image after {@code encode} has returned.
+ * <p>
+ * This class is not thread-safe: {@code encode}, {@code flush} and
+ * {@code close} must be called from the same thread.
+ *
+ * @author Werner Randelshofer
+ */
+public class ParallelVideoEncoder implements AutoCloseable {
+    /**
+     * Writes an encoded sample.
+     */
+    @FunctionalInterface
+    public interface SampleWriter {
+        /**
+         * Writes the encoded sample.
+         *
+         * @param buf the encoded sample
+         * @throws IOException if writing failed
+         */
+        void write(Buffer buf) throws IOException;
+    }
+
+    private final static AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ExecutorService executor;
+    /**
+     * The idle codecs.
+     */
+    private final ArrayBlockingQueue<Codec> codecs;
+    /**
+     * The frames that are being encoded, in the order in which they have been
+     * passed to {@link #encode}.
+     */
+    private final ArrayDeque<Future<Buffer>> inFlight = new ArrayDeque<>();
+    private final int window;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param codec   a codec with input and output formats. The codec is
+     *                used by one of the worker threads. The other worker
+     *                threads use new instances of the same codec class with
+     *                the same formats.
+     * @param threads the number of worker threads
+     * @param window  the maximal number of frames that are encoded at the
+     *                same time
+     * @throws IllegalArgumentException if the codec is not supported, or if
+     *                                  threads or window is smaller than 1.
+     */
+    public ParallelVideoEncoder(Codec codec, int threads, int window) {
+        if (!isSupported(codec)) {
+            throw new IllegalArgumentException("Codec is not an intra-frame codec:" + codec);
+        }
+        if (threads < 1 || window < 1) {
+            throw new IllegalArgumentException("threads and window must be greater 0, threads=" + threads + " window=" + window);
+        }
+        this.window = window;
+        this.codecs = new ArrayBlockingQueue<>(threads);
+        codecs.add(codec);
+        for (int i = 1; i < threads; i++) {
+            codecs.add(newCodecInstance(codec));
+        }
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ParallelVideoEncoder-" + threadNumber.incrementAndGet() + "-" + codec.getName());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns true if the specified codec is an intra-frame codec, which can
+     * be used by this encoder.
+     *
+     * @param codec a codec
+     * @return true if supported
+     */
+    public static boolean isSupported(Codec codec) {
+        return codec instanceof JPEGCodec || codec instanceof PNGCodec;
+    }
+
+    private static Codec newCodecInstance(Codec codec) {
+        Codec c;
+        try {
+            c = codec.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Can not create an instance of " + codec.getClass(), e);
+        }
+        c.setInputFormat(codec.getInputFormat());
+        c.setOutputFormat(codec.getOutputFormat());
+        return c;
+    }
+
+    /**
+     * Starts encoding of the specified frame, and writes the frames which
+     * have been encoded so far.
+     *
+     * @param in     the frame
+     * @param writer the writer for the encoded frames
+     * @throws IOException if a frame could not be encoded or written
+     */
+    public void encode(Buffer in, SampleWriter writer) throws IOException {
+        Buffer copy = new Buffer();
+        copy.setMetaTo(in);
+        if (in.isDataOwned()) {
+            copy.setDataRefTo(in);
+        } else {
+            copy.setDataTo(in);
+        }
+        while (inFlight.size() >= window) {
+            writeNext(writer);
+        }
+        inFlight.add(executor.submit(() -> encode(copy)));
+        while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+            writeNext(writer);
+        }
+    }
+
+    /**
+     * Waits until all frames have been encoded and writes them.
+     *
+     * @param writer the writer for the encoded frames
+     * @throws IOException if a frame could not be encoded or written
+     */
+    public void flush(SampleWriter writer) throws IOException {
+        while (!inFlight.isEmpty()) {
+            writeNext(writer);
+        }
+    }
+
+    /**
+     * Returns the number of frames that have been passed to {@link #encode}
+     * but have not been written yet.
+     *
+     * @return the number of frames in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void writeNext(SampleWriter writer) throws IOException {
+        Buffer out;
+        try {
+            out = inFlight.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an encoded frame.");
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding of a frame failed.", e.getCause());
+        }
+        writer.write(out);
+    }
+
+    private Buffer encode(Buffer in) throws IOException, InterruptedException {
+        Codec codec = codecs.take();
+        try {
+            Buffer out = new Buffer();
+            if (codec.process(in, out) != Codec.CODEC_OK) {
+                throw new IOException("Codec failed or could not encode the sample in a single step. codec:" + codec);
+            }
+            return out;
+        } finally {
+            codecs.add(codec);
+            in.release();
+        }
+    }
+
+    /**
+     * Stops the worker threads. Frames that have not been written yet are
+     * discarded.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        inFlight.clear();
+    }
+}
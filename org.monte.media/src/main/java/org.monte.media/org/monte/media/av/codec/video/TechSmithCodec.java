@@ -67,6 +67,14 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.*;
  * Apart from the second compression step and the support for 16- and 24-bit
  * data, this encoder is identical to the {@link org.monte.media.avi.codec.video.RunLengthCodec}.
  * <p>
+ * If the input buffer has {@linkplain Buffer#dirtyRegions dirty regions}, for
+ * example from a {@link DirtyRegionCodec}, the encoder skips unchanged
+ * scanlines of delta frames without comparing them with the previous frame.
+ * <p>
+ * If the output format has {@link VideoFormatKeys#ParallelEncodingKey} set to
+ * true, the encoder splits up 24-bit frames into horizontal bands which are
+ * encoded in parallel, and it compresses large frames with multiple threads.
+ * <p>
  * Each line of a frame is compressed individually. A line consists of two-byte
  * op-codes optionally followed by data. The end of the line is marked with the
  * EOL op-code.
@@ -201,10 +209,21 @@ public class TechSmithCodec extends AbstractVideoCodec {
 
     @Override
     public void reset() {
+        if (state != null) {
+            state.reset();
+        }
         state = null;
         frameCounter = 0;
     }
 
+    /**
+     * Encoding compares each frame with the previous frame.
+     */
+    @Override
+    public double getCostHint() {
+        return 8;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         if (state == null) {
@@ -332,6 +351,8 @@ public class TechSmithCodec extends AbstractVideoCodec {
             return CODEC_OK;
         }
 
+        state.setParallel(outputFormat.get(ParallelEncodingKey, false));
+
         SeekableByteArrayOutputStream tmp;
         if (out.data instanceof byte[]) {
             tmp = new SeekableByteArrayOutputStream((byte[]) out.data);
@@ -364,6 +385,7 @@ public class TechSmithCodec extends AbstractVideoCodec {
             out.header = null;
         }
         int offset = r.x + r.y * scanlineStride;
+        state.setDirtyRegions(in.dirtyRegions);
 
         try {
             switch (outputFormat.get(DepthKey)) {
@@ -393,7 +415,7 @@ public class TechSmithCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, (byte[]) previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, offset, scanlineStride);
                     }
                     break;
                 }
@@ -416,7 +438,7 @@ public class TechSmithCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, (short[]) previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, offset, scanlineStride);
                     }
                     break;
                 }
@@ -441,7 +463,7 @@ public class TechSmithCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, (int[]) previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, offset, scanlineStride);
                     }
                     break;
                 }
@@ -5,19 +5,29 @@
 package org.monte.media.av.codec.video;
 
 import org.monte.media.io.ByteArrayImageInputStream;
+import org.monte.media.io.DeflaterPool;
+import org.monte.media.io.InflaterPool;
+import org.monte.media.io.ParallelDeflater;
 import org.monte.media.io.UncachedImageInputStream;
 
+import java.awt.Rectangle;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipException;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 /**
@@ -161,22 +171,200 @@ import static java.lang.Math.min;
  * @author Werner Randelshofer
  */
 public class TechSmithCodecCore extends AbstractVideoCodecCore {
+    /**
+     * The minimal number of scanlines in a band that is encoded in parallel.
+     */
+    private final static int MIN_BAND_HEIGHT = 16;
+    /**
+     * The minimal number of pixels in a frame that is encoded in parallel.
+     */
+    private final static int MIN_PARALLEL_PIXELS = 256 * 256;
 
     private byte[] temp2;
     private int[] palette;
     private ByteBuffer bbuf;
+    private boolean parallel;
+    private ByteBuffer[] bandBufs;
+    private Rectangle[] dirtyRegions;
+    private int[] dirtySpans;
+    /**
+     * The inflater is acquired from the {@link InflaterPool} when the first
+     * compressed frame is decoded, and released on {@link #reset()}.
+     */
+    private Inflater inflater;
 
     public TechSmithCodecCore() {
         reset();
     }
 
+    /**
+     * Returns true if frames are encoded in parallel.
+     *
+     * @return true if parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets whether frames are encoded in parallel.
+     * <p>
+     * In parallel mode, a 24-bit frame is split up into horizontal bands,
+     * which are run-length encoded concurrently and then stitched together in
+     * order. The stitched data is identical to the data produced in serial
+     * mode. Large frames are then compressed with a {@link ParallelDeflater}.
+     * The resulting ZLIB stream differs from the one produced in serial
+     * mode, but it decodes to the same data.
+     *
+     * @param parallel true if parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets the regions of the next delta frame that differ from the previous
+     * frame. The delta encoders skip scanlines outside of these regions
+     * without comparing them with the previous frame.
+     *
+     * @param dirtyRegions the regions in image coordinates, or null if unknown
+     * @see DirtyRegionCodec
+     */
+    public void setDirtyRegions(Rectangle[] dirtyRegions) {
+        this.dirtyRegions = dirtyRegions;
+    }
+
+    /**
+     * Returns the spans of the dirty regions for each scanline, or null if
+     * the dirty regions are unknown.
+     */
+    private int[] getDirtySpans(int width, int height) {
+        if (dirtyRegions == null) {
+            return null;
+        }
+        dirtySpans = DirtyRegionCodec.toScanlineSpans(dirtyRegions, width, height, dirtySpans);
+        return dirtySpans;
+    }
+
+    /**
+     * Returns the x-coordinate of the first pixel of a scanline that may
+     * have changed, or {@code width} if the scanline is unchanged.
+     *
+     * @param dirtySpans     the spans of the dirty regions or null
+     * @param xy             the offset of the scanline in the data array
+     * @param offset         the offset to the first pixel in the data array
+     * @param scanlineStride the number to add to offset to get to the next
+     *                       scanline
+     * @param width          the width of the image
+     */
+    private static int dirtyFrom(int[] dirtySpans, int xy, int offset, int scanlineStride, int width) {
+        if (dirtySpans == null) {
+            return 0;
+        }
+        int line = (xy - offset) / scanlineStride;
+        int from = dirtySpans[2 * line];
+        return from < dirtySpans[2 * line + 1] ? from : width;
+    }
+
     private void deflateBBuf(OutputStream out) throws IOException {
         if (bbuf.position() == 2) {
             out.write(bbuf.array(), 0, 2);
+        } else if (parallel && bbuf.position() > 2 * ParallelDeflater.DEFAULT_BLOCK_SIZE) {
+            ParallelDeflater.deflate(bbuf.array(), 0, bbuf.position(), out);
+        } else {
+            DeflaterPool pool = DeflaterPool.getDefault();
+            Deflater deflater = pool.acquire();
+            try {
+                DeflaterOutputStream defl = new DeflaterOutputStream(out, deflater);
+                defl.write(bbuf.array(), 0, bbuf.position());
+                defl.finish();
+            } finally {
+                pool.release(deflater);
+            }
+        }
+    }
+
+    /**
+     * Creates an inflater input stream with the inflater of this codec.
+     */
+    private InputStream createInflaterInputStream(InputStream in) {
+        if (inflater == null) {
+            inflater = InflaterPool.getDefault().acquire();
         } else {
-            DeflaterOutputStream defl = new DeflaterOutputStream(out);
-            defl.write(bbuf.array(), 0, bbuf.position());
-            defl.finish();
+            inflater.reset();
+        }
+        return new InflaterInputStream(in, inflater);
+    }
+
+    /**
+     * Returns the number of bands into which a frame is split for
+     * parallel encoding.
+     *
+     * @return the number of bands, 1 means that the frame is encoded serially
+     */
+    private int getBandCount(int width, int height) {
+        if (!parallel || width * height < MIN_PARALLEL_PIXELS) {
+            return 1;
+        }
+        return max(1, min(height / MIN_BAND_HEIGHT, 4 * ForkJoinPool.getCommonPoolParallelism()));
+    }
+
+    /**
+     * Ensures that a band buffer has the capacity for the worst case of the
+     * specified number of lines.
+     */
+    private ByteBuffer ensureBandBufCapacity(int band, int width, int lines, int depth) {
+        // In the worst case, we need:
+        // +depth+1 bytes for every pixel, because pixels are written as
+        //  repetitions of 1.
+        // +2 bytes for each scanline for the end of scanline marker
+        // +4 bytes for each scanline for a skip marker
+        int needed = (depth + 1) * width * lines + 6 * lines;
+        ByteBuffer buf = bandBufs[band];
+        if (buf == null || buf.capacity() < needed) {
+            buf = ByteBuffer.allocate(needed);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            bandBufs[band] = buf;
+        }
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Ensures that there is enough capacity for the band buffers.
+     */
+    private void ensureBandBufs(int bandCount) {
+        if (bandBufs == null || bandBufs.length < bandCount) {
+            bandBufs = bandBufs == null ? new ByteBuffer[bandCount] : Arrays.copyOf(bandBufs, bandCount);
+        }
+    }
+
+    /**
+     * Ensures that {@code bbuf} has at least the specified capacity.
+     */
+    private void ensureBBufCapacity(int needed) {
+        if (bbuf == null || bbuf.capacity() < needed) {
+            bbuf = ByteBuffer.allocate(needed);
+            bbuf.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        bbuf.clear();
+    }
+
+    /**
+     * Writes skip op-codes.
+     *
+     * @param buf the output buffer
+     * @param dx  the horizontal offset
+     * @param dy  the vertical offset
+     */
+    private static void putSkip(ByteBuffer buf, int dx, int dy) {
+        while (dy > 0 || dx > 0) {
+            buf.put((byte) 0x00); // Escape code
+            buf.put((byte) 0x02); // Skip OP-code
+            buf.put((byte) min(255, dx)); // horizontal offset
+            buf.put((byte) min(255, dy)); // vertical offset
+            dx -= min(255, dx);
+            dy -= min(255, dy);
         }
     }
 
@@ -191,20 +379,18 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
 
         } else {
             // In the worst case, we need:
-            // +3 bytes for every 255 bytes of input data, because we can not compress them.
+            // +2 bytes for every 254 pixels of a scanline, because we can not compress them.
             // +2 bytes for each scanline for the end of scanline marker
             // +2 bytes for the end of image marker
-            needed = depth * width * height + 3 * (width / 255 + 1) + 2 * height + 2;
+            needed = depth * width * height + 2 * (width / 254 + 1) * height + 2 * height + 2;
         }
-        if (bbuf == null || bbuf.capacity() < needed) {
-            bbuf = ByteBuffer.allocate(needed);
-            bbuf.order(ByteOrder.LITTLE_ENDIAN);
-        }
-        bbuf.clear();
+        ensureBBufCapacity(needed);
     }
 
     public void reset() {
         palette = null;
+        InflaterPool.getDefault().release(inflater);
+        inflater = null;
     }
 
     public int[] getPalette() {
@@ -259,7 +445,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
     public boolean decode8(byte[] inDat, int off, int length, byte[] outDat, byte[] prevDat, int width, int height, boolean onlyDecodeIfKeyframe) throws IOException {
         InputStream innerStream = new ByteArrayInputStream(inDat, off, length);
         if (isCompressed(inDat, off, length)) {
-            innerStream = new InflaterInputStream(innerStream);
+            innerStream = createInflaterInputStream(innerStream);
         }
         UncachedImageInputStream in = new UncachedImageInputStream(innerStream, ByteOrder.LITTLE_ENDIAN);
 
@@ -347,7 +533,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
         getPalette();
 
         UncachedImageInputStream in = new UncachedImageInputStream(
-                new InflaterInputStream(new ByteArrayInputStream(inDat, off, length)));
+                createInflaterInputStream(new ByteArrayInputStream(inDat, off, length)));
 
         int offset = 0;
         int scanlineStride = width;
@@ -418,7 +604,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
     public boolean decode24(byte[] inDat, int off, int length, int[] outDat, int[] prevDat, int width, int height, boolean onlyDecodeIfKeyframe) throws IOException {
         InputStream innerStream = new ByteArrayInputStream(inDat, off, length);
         if (isCompressed(inDat, off, length)) {
-            innerStream = new InflaterInputStream(innerStream);
+            innerStream = createInflaterInputStream(innerStream);
         }
         UncachedImageInputStream in = new UncachedImageInputStream(innerStream, ByteOrder.LITTLE_ENDIAN);
 
@@ -513,7 +699,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
     public boolean decode16(byte[] inDat, int off, int length, int[] outDat, int[] prevDat, int width, int height, boolean onlyDecodeIfKeyframe) throws IOException {
         InputStream innerStream = new ByteArrayInputStream(inDat, off, length);
         if (isCompressed(inDat, off, length)) {
-            innerStream = new InflaterInputStream(innerStream);
+            innerStream = createInflaterInputStream(innerStream);
         }
         UncachedImageInputStream in = new UncachedImageInputStream(innerStream, ByteOrder.LITTLE_ENDIAN);
 
@@ -586,6 +772,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             throws IOException {
 
         ensureBBufCapacity(width, height, 1);
+        int[] dirtySpans = getDirtySpans(width, height);
 
         int ymax = offset + height * scanlineStride;
         int upsideDown = ymax - scanlineStride + offset;
@@ -597,8 +784,9 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             int xymax = xy + width;
 
             // determine skip count
-            int mismatch = Arrays.mismatch(data, xy, xymax, prev, xy, xymax);
-            int skipCount = mismatch < 0 ? xymax - xy : mismatch;
+            int dirtyFrom = dirtyFrom(dirtySpans, xy, offset, scanlineStride, width);
+            int mismatch = dirtyFrom == width ? -1 : Arrays.mismatch(data, xy + dirtyFrom, xymax, prev, xy + dirtyFrom, xymax);
+            int skipCount = mismatch < 0 ? width : dirtyFrom + mismatch;
             xy += skipCount;
             if (skipCount == width) {
                 // => the entire line can be skipped
@@ -1099,6 +1287,7 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             throws IOException {
 
         ensureBBufCapacity(width, height, 2);
+        int[] dirtySpans = getDirtySpans(width, height);
 
         int ymax = offset + height * scanlineStride;
         int upsideDown = ymax - scanlineStride + offset;
@@ -1110,8 +1299,9 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             int xymax = xy + width;
 
             // determine skip count
-            int mismatch = Arrays.mismatch(data, xy, xymax, prev, xy, xymax);
-            int skipCount = mismatch < 0 ? xymax - xy : mismatch;
+            int dirtyFrom = dirtyFrom(dirtySpans, xy, offset, scanlineStride, width);
+            int mismatch = dirtyFrom == width ? -1 : Arrays.mismatch(data, xy + dirtyFrom, xymax, prev, xy + dirtyFrom, xymax);
+            int skipCount = mismatch < 0 ? width : dirtyFrom + mismatch;
             xy += skipCount;
             if (skipCount == width) {
                 // => the entire line can be skipped
@@ -1219,12 +1409,74 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
      */
     public void encodeKey24(OutputStream out, int[] data, int width, int height, int offset, int scanlineStride)
             throws IOException {
-        ensureBBufCapacity(width, height, 3);
         int ymax = offset + height * scanlineStride;
         int upsideDown = ymax - scanlineStride + offset;
 
+        int bandCount = getBandCount(width, height);
+        if (bandCount == 1) {
+            ensureBBufCapacity(width, height, 3);
+            encodeKey24Lines(bbuf, data, width, offset, ymax, upsideDown, scanlineStride);
+        } else {
+            // Encode the bands in parallel, then stitch them together in order
+            ensureBandBufs(bandCount);
+            for (int i = 0; i < bandCount; i++) {
+                ensureBandBufCapacity(i, width, bandHeight(i, bandCount, height), 3);
+            }
+            IntStream.range(0, bandCount).parallel().forEach(i -> {
+                int fromY = offset + bandStart(i, bandCount, height) * scanlineStride;
+                int toY = offset + bandStart(i + 1, bandCount, height) * scanlineStride;
+                try {
+                    encodeKey24Lines(bandBufs[i], data, width, fromY, toY, upsideDown, scanlineStride);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            int needed = 2;
+            for (int i = 0; i < bandCount; i++) {
+                needed += bandBufs[i].position();
+            }
+            ensureBBufCapacity(needed);
+            for (int i = 0; i < bandCount; i++) {
+                bbuf.put(bandBufs[i].array(), 0, bandBufs[i].position());
+            }
+        }
+        bbuf.put((byte) 0);
+        bbuf.put((byte) 0x0001);// End of bitmap
+
+        deflateBBuf(out);
+    }
+
+    /**
+     * Returns the index of the first scanline of a band.
+     */
+    private static int bandStart(int band, int bandCount, int height) {
+        return (int) ((long) height * band / bandCount);
+    }
+
+    /**
+     * Returns the number of scanlines in a band.
+     */
+    private static int bandHeight(int band, int bandCount, int height) {
+        return bandStart(band + 1, bandCount, height) - bandStart(band, bandCount, height);
+    }
+
+    /**
+     * Encodes the scanlines of a 24-bit key frame from {@code fromY}
+     * inclusive to {@code toY} exclusive.
+     *
+     * @param buf            The output buffer.
+     * @param data           The image data.
+     * @param width          The width of the image in data elements.
+     * @param fromY          The offset of the first scanline.
+     * @param toY            The offset after the last scanline.
+     * @param upsideDown     The offset of the last scanline in the data array.
+     * @param scanlineStride The number to add to offset to get to the next
+     *                       scanline.
+     */
+    private static void encodeKey24Lines(ByteBuffer buf, int[] data, int width, int fromY, int toY, int upsideDown, int scanlineStride)
+            throws IOException {
         // Encode each scanline separately
-        for (int y = offset; y < ymax; y += scanlineStride) {
+        for (int y = fromY; y < toY; y += scanlineStride) {
             int xy = upsideDown - y;
             int xymax = xy + width;
 
@@ -1242,30 +1494,30 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
                 if (repeatCount < 3) {
                     literalCount++;
                     if (literalCount == 254) {
-                        bbuf.put((byte) 0);
-                        bbuf.put((byte) literalCount); // Literal OP-code
-                        writeInts24LE(bbuf, data, xy - literalCount + 1, literalCount);
+                        buf.put((byte) 0);
+                        buf.put((byte) literalCount); // Literal OP-code
+                        writeInts24LE(buf, data, xy - literalCount + 1, literalCount);
                         literalCount = 0;
                     }
                 } else {
                     if (literalCount > 0) {
                         if (literalCount < 3) {
                             for (; literalCount > 0; --literalCount) {
-                                bbuf.put((byte) 1); // Repeat OP-code
-                                writeInt24LE(bbuf, data[xy - literalCount]);
+                                buf.put((byte) 1); // Repeat OP-code
+                                writeInt24LE(buf, data[xy - literalCount]);
                             }
                         } else {
-                            bbuf.put((byte) 0);
-                            bbuf.put((byte) literalCount); // Literal OP-code
-                            writeInts24LE(bbuf, data, xy - literalCount, literalCount);
+                            buf.put((byte) 0);
+                            buf.put((byte) literalCount); // Literal OP-code
+                            writeInts24LE(buf, data, xy - literalCount, literalCount);
                             ///if (literalCount & 1 == 1) {
-                            ///    bbuf.put((byte)0); // pad byte
+                            ///    buf.put((byte)0); // pad byte
                             ///}
                             literalCount = 0;
                         }
                     }
-                    bbuf.put((byte) repeatCount); // Repeat OP-code
-                    writeInt24LE(bbuf, v);
+                    buf.put((byte) repeatCount); // Repeat OP-code
+                    writeInt24LE(buf, v);
                     xy += repeatCount - 1;
                 }
             }
@@ -1274,27 +1526,23 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             if (literalCount > 0) {
                 if (literalCount < 3) {
                     for (; literalCount > 0; --literalCount) {
-                        bbuf.put((byte) 1); // Repeat OP-code
-                        writeInt24LE(bbuf, data[xy - literalCount]);
+                        buf.put((byte) 1); // Repeat OP-code
+                        writeInt24LE(buf, data[xy - literalCount]);
                     }
                 } else {
-                    bbuf.put((byte) 0);
-                    bbuf.put((byte) literalCount);
-                    writeInts24LE(bbuf, data, xy - literalCount, literalCount);
+                    buf.put((byte) 0);
+                    buf.put((byte) literalCount);
+                    writeInts24LE(buf, data, xy - literalCount, literalCount);
                     ///if (literalCount & 1 == 1) {
-                    ///    bbuf.put((byte)0); // pad byte
+                    ///    buf.put((byte)0); // pad byte
                     ///}
                 }
                 literalCount = 0;
             }
 
-            bbuf.put((byte) 0);
-            bbuf.put((byte) 0x0000);// End of line
+            buf.put((byte) 0);
+            buf.put((byte) 0x0000);// End of line
         }
-        bbuf.put((byte) 0);
-        bbuf.put((byte) 0x0001);// End of bitmap
-
-        deflateBBuf(out);
     }
 
     /**
@@ -1310,21 +1558,116 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
      */
     public void encodeDelta24(OutputStream out, int[] data, int[] prev, int width, int height, int offset, int scanlineStride)
             throws IOException {
-        ensureBBufCapacity(width, height, 3);
-
+        int[] dirtySpans = getDirtySpans(width, height);
         int ymax = offset + height * scanlineStride;
         int upsideDown = ymax - scanlineStride + offset;
 
+        int bandCount = getBandCount(width, height);
+        if (bandCount == 1) {
+            ensureBBufCapacity(width, height, 3);
+            encodeDelta24Lines(bbuf, data, prev, width, offset, ymax, upsideDown, offset, scanlineStride, dirtySpans, null);
+        } else {
+            // Encode the bands in parallel, then stitch them together in order
+            ensureBandBufs(bandCount);
+            DeltaBand[] bands = new DeltaBand[bandCount];
+            for (int i = 0; i < bandCount; i++) {
+                ensureBandBufCapacity(i, width, bandHeight(i, bandCount, height), 3);
+                bands[i] = new DeltaBand();
+            }
+            IntStream.range(0, bandCount).parallel().forEach(i -> {
+                int fromY = offset + bandStart(i, bandCount, height) * scanlineStride;
+                int toY = offset + bandStart(i + 1, bandCount, height) * scanlineStride;
+                try {
+                    bands[i].trailingLines = encodeDelta24Lines(bandBufs[i], data, prev, width, fromY, toY, upsideDown, offset, scanlineStride, dirtySpans, bands[i]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            // The vertical offset of skipped scanlines at the end of a band
+            // is carried over into the first skip op-code of the next band
+            // which has changes.
+            int needed = 2;
+            for (int i = 0; i < bandCount; i++) {
+                needed += bandBufs[i].position() + 4 * (height / 255 + width / 255 + 2);
+            }
+            ensureBBufCapacity(needed);
+            int verticalOffset = 0;
+            for (int i = 0; i < bandCount; i++) {
+                DeltaBand band = bands[i];
+                if (!band.encoded) {
+                    verticalOffset += band.trailingLines;
+                    continue;
+                }
+                putSkip(bbuf, band.leadingSkipCount, verticalOffset + band.leadingLines);
+                bbuf.put(bandBufs[i].array(), 0, bandBufs[i].position());
+                verticalOffset = band.trailingLines;
+            }
+        }
+
+        bbuf.put((byte) 0); // Escape code
+        bbuf.put((byte) 0x01);// End of bitmap
+        deflateBBuf(out);
+    }
+
+    /**
+     * Describes the start and the end of a band of a delta frame that has
+     * been encoded in parallel.
+     */
+    private static class DeltaBand {
+        /**
+         * Whether the band contains a changed scanline.
+         */
+        boolean encoded;
+        /**
+         * The number of unchanged scanlines at the start of the band.
+         */
+        int leadingLines;
+        /**
+         * The number of unchanged pixels at the start of the first changed
+         * scanline.
+         */
+        int leadingSkipCount;
+        /**
+         * The number of unchanged scanlines at the end of the band.
+         */
+        int trailingLines;
+    }
+
+    /**
+     * Encodes the scanlines of a 24-bit delta frame from {@code fromY}
+     * inclusive to {@code toY} exclusive.
+     * <p>
+     * If {@code band} is null, the skip op-code of the first changed scanline
+     * is written into the buffer. Otherwise, it is stored in {@code band}.
+     *
+     * @param buf            The output buffer.
+     * @param data           The image data.
+     * @param prev           The image data of the previous frame.
+     * @param width          The width of the image in data elements.
+     * @param fromY          The offset of the first scanline.
+     * @param toY            The offset after the last scanline.
+     * @param upsideDown     The offset of the last scanline in the data array.
+     * @param offset         The offset to the first pixel in the data array.
+     * @param scanlineStride The number to add to offset to get to the next
+     *                       scanline.
+     * @param dirtySpans     The spans of the dirty regions or null.
+     * @param band           The band descriptor or null.
+     * @return the number of unchanged scanlines at the end
+     */
+    private static int encodeDelta24Lines(ByteBuffer buf, int[] data, int[] prev, int width, int fromY, int toY, int upsideDown, int offset, int scanlineStride, int[] dirtySpans, DeltaBand band)
+            throws IOException {
         // Encode each scanline
         int verticalOffset = 0;
-        ScanlineLoop:
-        for (int y = offset; y < ymax; y += scanlineStride) {
+        boolean isFirstChangedLine = true;
+        for (int y = fromY; y < toY; y += scanlineStride) {
             int xy = upsideDown - y;
             int xymax = xy + width;
 
             // determine skip count
-            int mismatch = Arrays.mismatch(data, xy, xymax, prev, xy, xymax);
-            int skipCount = mismatch < 0 ? xymax - xy : mismatch;
+            int dirtyFrom = dirtyFrom(dirtySpans, xy, offset, scanlineStride, width);
+            int mismatch = dirtyFrom == width ? -1 : Arrays.mismatch(data, xy + dirtyFrom, xymax, prev, xy + dirtyFrom, xymax);
+            int skipCount = mismatch < 0 ? width : dirtyFrom + mismatch;
             xy += skipCount;
             if (skipCount == width) {
                 // => the entire line can be skipped
@@ -1332,14 +1675,15 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
                 continue;
             }
 
-            while (verticalOffset > 0 || skipCount > 0) {
-                bbuf.put((byte) 0x00); // Escape code
-                bbuf.put((byte) 0x02); // Skip OP-code
-                bbuf.put((byte) min(255, skipCount)); // horizontal offset
-                bbuf.put((byte) min(255, verticalOffset)); // vertical offset
-                skipCount -= min(255, skipCount);
-                verticalOffset -= min(255, verticalOffset);
+            if (isFirstChangedLine && band != null) {
+                band.encoded = true;
+                band.leadingLines = verticalOffset;
+                band.leadingSkipCount = skipCount;
+            } else {
+                putSkip(buf, skipCount, verticalOffset);
             }
+            isFirstChangedLine = false;
+            verticalOffset = 0;
 
             int literalCount = 0;
             int repeatCount = 0;
@@ -1362,16 +1706,16 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
                 } else {
                     while (literalCount > 0) {
                         if (literalCount < 3) {
-                            bbuf.put((byte) 1); // Repeat OP-code
-                            writeInt24LE(bbuf, data[xy - literalCount]);
+                            buf.put((byte) 1); // Repeat OP-code
+                            writeInt24LE(buf, data[xy - literalCount]);
                             literalCount--;
                         } else {
                             int literalRun = min(254, literalCount);
-                            bbuf.put((byte) 0);
-                            bbuf.put((byte) literalRun); // Literal OP-code
-                            writeInts24LE(bbuf, data, xy - literalCount, literalRun);
+                            buf.put((byte) 0);
+                            buf.put((byte) literalRun); // Literal OP-code
+                            writeInts24LE(buf, data, xy - literalCount, literalRun);
                             ///if (literalRun & 1 == 1) {
-                            ///    bbuf.put((byte)0); // pad byte
+                            ///    buf.put((byte)0); // pad byte
                             ///}
                             literalCount -= literalRun;
                         }
@@ -1382,17 +1726,17 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
                         xy += skipCount - 1;
                     } else if (skipCount >= repeatCount) {
                         while (skipCount > 0) {
-                            bbuf.put((byte) 0);
-                            bbuf.put((byte) 0x0002); // Skip OP-code
-                            bbuf.put((byte) min(255, skipCount));
-                            bbuf.put((byte) 0);
+                            buf.put((byte) 0);
+                            buf.put((byte) 0x0002); // Skip OP-code
+                            buf.put((byte) min(255, skipCount));
+                            buf.put((byte) 0);
                             xy += min(255, skipCount);
                             skipCount -= min(255, skipCount);
                         }
                         xy -= 1;
                     } else {
-                        bbuf.put((byte) repeatCount); // Repeat OP-code
-                        writeInt24LE(bbuf, v);
+                        buf.put((byte) repeatCount); // Repeat OP-code
+                        writeInt24LE(buf, v);
                         xy += repeatCount - 1;
                     }
                 }
@@ -1401,28 +1745,25 @@ public class TechSmithCodecCore extends AbstractVideoCodecCore {
             // flush literal run
             while (literalCount > 0) {
                 if (literalCount < 3) {
-                    bbuf.put((byte) 1); // Repeat OP-code
-                    writeInt24LE(bbuf, data[xy - literalCount]);
+                    buf.put((byte) 1); // Repeat OP-code
+                    writeInt24LE(buf, data[xy - literalCount]);
                     literalCount--;
                 } else {
                     int literalRun = min(254, literalCount);
-                    bbuf.put((byte) 0);
-                    bbuf.put((byte) literalRun); // Literal OP-code
-                    writeInts24LE(bbuf, data, xy - literalCount, literalRun);
+                    buf.put((byte) 0);
+                    buf.put((byte) literalRun); // Literal OP-code
+                    writeInts24LE(buf, data, xy - literalCount, literalRun);
                     ///if (literalRun & 1 == 1) {
-                    ///   bbuf.put((byte)0); // pad byte
+                    ///   buf.put((byte)0); // pad byte
                     ///}
                     literalCount -= literalRun;
                 }
             }
 
-            bbuf.put((byte) 0); // Escape code
-            bbuf.put((byte) 0x00); // End of line OP-code
+            buf.put((byte) 0); // Escape code
+            buf.put((byte) 0x00); // End of line OP-code
         }
-
-        bbuf.put((byte) 0); // Escape code
-        bbuf.put((byte) 0x01);// End of bitmap
-        deflateBBuf(out);
+        return verticalOffset;
     }
 
     /**
@@ -128,4 +128,12 @@ public class VideoFormatKeys extends FormatKeys {
      * Encoding quality. Value between 0 and 1.
      */
     public final static FormatKey<Float> QualityKey = new FormatKey<>("quality", Float.class);
+    /**
+     * Whether the encoder may use multiple threads for encoding. Defaults to
+     * false.
+     * <p>
+     * This is a hint for the encoder. It does not affect the format of the
+     * encoded data.
+     */
+    public final static FormatKey<Boolean> ParallelEncodingKey = new FormatKey<>("parallelEncoding", "parallelEncoding", Boolean.class, true);
 }
@@ -9,12 +9,12 @@ import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.exception.AbortException;
 import org.monte.media.exception.ParseException;
 import org.monte.media.io.ByteArrayImageInputStream;
+import org.monte.media.io.MappedFileImageInputStream;
 import org.monte.media.math.Rational;
 import org.monte.media.riff.RIFFChunk;
 import org.monte.media.riff.RIFFParser;
 import org.monte.media.riff.RIFFVisitor;
 
-import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.EOFException;
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.monte.media.av.FormatKeys.EncodingKey;
 import static org.monte.media.av.FormatKeys.FrameRateKey;
@@ -49,11 +50,23 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
  * This class supports lengths of up to 4 GB, but such files may not work on
  * all players.
  * <p>
- * Support for AVI 2.0 file is incomplete.
- * This class currently ignores the extended index chunks. Instead all chunks
- * in the "movi" list are scanned. With scanning, the reader is not able to
- * distinguish between keyframes and non-keyframes. As a consequence opening an
- * AVI 2.0 file is very slow, and decoding of frames may fail.
+ * If all tracks of an AVI 2.0 file have a super index "indx", this class
+ * reads the samples from the standard indexes "ix##" of all RIFF lists. The
+ * "movi" lists are not scanned.
+ * Otherwise, this class reads the samples from the legacy "idx1" index of the
+ * first RIFF list, and scans all chunks in the "movi" lists of the "AVIX" RIFF
+ * lists. With scanning, the reader is not able to distinguish between
+ * keyframes and non-keyframes, and decoding of frames may fail.
+ * <p>
+ * The "movi" lists are scanned after the headers and indexes have been read.
+ * If the stream has been created from a file, then the lists are scanned on
+ * a background thread, and the first samples can be read while the scan is in
+ * progress. If the legacy index is missing, for example because the file is
+ * truncated, then the "movi" list of the first RIFF list is scanned as well.
+ * If a standard index is missing, then all "movi" lists are scanned.
+ * While the scan is in progress, {@link #getChunkCount} and the durations of
+ * the tracks only cover the samples that have been found so far. Use
+ * {@link #getIndexProgress()} and {@link #awaitIndex()} to track the scan.
  * <p>
  * For detailed information about the AVI 1.0 file format see:<br>
  * <a href="http://msdn.microsoft.com/en-us/library/ms779636.aspx">msdn.microsoft.com AVI RIFF</a><br>
@@ -73,6 +86,11 @@ public class AVIInputStream extends AbstractAVIStream {
      * The image input stream.
      */
     protected final ImageInputStream in;
+    /**
+     * The input file, or null if the stream has not been created from a
+     * file.
+     */
+    private final File file;
     /**
      * This variable is set to true when all meta-data has been read from the
      * file.
@@ -81,6 +99,11 @@ public class AVIInputStream extends AbstractAVIStream {
     protected MainHeader mainHeader;
     protected ArrayList<Sample> idx1 = new ArrayList<Sample>();
     private long moviOffset = 0;
+    /**
+     * Scans the "movi" lists of the file, or null if the file is fully
+     * indexed.
+     */
+    private AVIMoviScanner moviScanner;
 
     /**
      * Creates a new instance.
@@ -88,8 +111,8 @@ public class AVIInputStream extends AbstractAVIStream {
      * @param file the input file
      */
     public AVIInputStream(File file) throws IOException {
-
-        this.in = new FileImageInputStream(file);
+        this.file = file;
+        this.in = MappedFileImageInputStream.open(file);
         in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         this.streamOffset = 0;
     }
@@ -100,13 +123,16 @@ public class AVIInputStream extends AbstractAVIStream {
      * @param in the input stream.
      */
     public AVIInputStream(ImageInputStream in) throws IOException {
+        this.file = null;
         this.in = in;
         this.streamOffset = in.getStreamPosition();
         in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
     }
 
     /**
-     * Ensures that all meta-data has been read from the file.
+     * Ensures that all meta-data has been read from the file, and adds the
+     * samples that have been found by the scan of the "movi" lists since the
+     * last call.
      */
     protected void ensureRealized() throws IOException {
         if (!isRealized) {
@@ -116,6 +142,84 @@ public class AVIInputStream extends AbstractAVIStream {
         if (mainHeader == null) {
             throw new IOException("AVI main header missing.");
         }
+        if (moviScanner != null) {
+            addScannedChunks(moviScanner.poll());
+        }
+    }
+
+    /**
+     * Returns true if the samples of all tracks are known.
+     *
+     * @return true if the scan of the "movi" lists is complete
+     */
+    public boolean isIndexComplete() throws IOException {
+        ensureRealized();
+        return moviScanner == null || moviScanner.isExhausted();
+    }
+
+    /**
+     * Returns the progress of the scan of the "movi" lists.
+     *
+     * @return a value between 0 and 1
+     */
+    public double getIndexProgress() throws IOException {
+        ensureRealized();
+        return moviScanner == null ? 1.0 : moviScanner.getProgress();
+    }
+
+    /**
+     * Waits until the samples of all tracks are known.
+     *
+     * @throws IOException if the scan of the "movi" lists failed
+     */
+    public void awaitIndex() throws IOException {
+        ensureRealized();
+        while (awaitSamples()) {
+            // wait for the next batch
+        }
+    }
+
+    /**
+     * Waits until the scan of the "movi" lists has found more samples.
+     *
+     * @return false if the scan is complete
+     * @throws IOException if the scan failed
+     */
+    protected boolean awaitSamples() throws IOException {
+        if (moviScanner == null || moviScanner.isExhausted()) {
+            return false;
+        }
+        addScannedChunks(moviScanner.await());
+        return true;
+    }
+
+    /**
+     * Ensures that the specified sample of the track is known, waiting for
+     * the scan of the "movi" lists if necessary.
+     *
+     * @param tr    the track
+     * @param index the sample index
+     * @return false if the track has no sample with this index
+     * @throws IOException if the scan failed
+     */
+    protected boolean ensureSampleAvailable(Track tr, long index) throws IOException {
+        while (index >= tr.samples.size()) {
+            if (!awaitSamples()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method is invoked when samples have been added to the tracks by
+     * the scan of the "movi" lists.
+     */
+    protected void samplesAdded() {
+        for (Track tr : tracks) {
+            tr.sampleTimes = null;
+            tr.keyframes = null;
+        }
     }
 
     /**
@@ -227,6 +331,8 @@ public class AVIInputStream extends AbstractAVIStream {
     protected void readAllMetadata() throws IOException {
         in.seek(streamOffset);
         final RIFFParser p = new RIFFParser();
+        final List<long[]> moviRanges = new ArrayList<>();
+        final List<long[]> indexedMoviRanges = new ArrayList<>();
         int numberOfRiffStructs = 0;
         //p.declareStopChunkType(MOVI_ID);
         //p.declareStopChunkType(REC_ID);
@@ -242,13 +348,22 @@ public class AVIInputStream extends AbstractAVIStream {
                     }
 
                     if (group.getType() == MOVI_ID && group.getID() == LIST_ID) {
+                        long[] range = {group.getScan() + 4, group.getScan() + group.getSize()};
+                        if (isOpenDMLIndexed()) {
+                            // => skip all movi lists if a super index is available
+                            indexedMoviRanges.add(range);
+                            return false;
+                        }
                         if (mainHeader != null
                                 && (mainHeader.flags & AVIH_FLAG_HAS_INDEX) != 0
                                 && p.getStreamOffset() == 0) {
                             // => skip movi list if an index is available
-                            //System.out.println("AVIInputStream skipping movi list.");                            
+                            indexedMoviRanges.add(range);
                             return false;
                         }
+                        // => scan the movi list after all headers have been read
+                        moviRanges.add(range);
+                        return false;
                     }
                     return true;
                 }
@@ -306,6 +421,9 @@ public class AVIInputStream extends AbstractAVIStream {
                                     case STRN_ID:
                                         readSTRN(currentTrack, chunk.getData());
                                         break;
+                                    case INDX_ID:
+                                        readINDX(currentTrack, chunk.getData());
+                                        break;
                                     default:
                                         currentTrack.extraHeaders.add(chunk);
                                         break;
@@ -314,7 +432,8 @@ public class AVIInputStream extends AbstractAVIStream {
                             case AVI_ID:
                                 switch (chunk.getID()) {
                                     case IDX1_ID:
-                                        if (isFlagSet(mainHeader.flags, AVIH_FLAG_HAS_INDEX)) {
+                                        if (isFlagSet(mainHeader.flags, AVIH_FLAG_HAS_INDEX)
+                                                && !isOpenDMLIndexed()) {
                                             readIDX1(tracks, idx1, chunk.getData());
                                         }
                                         break;
@@ -322,32 +441,6 @@ public class AVIInputStream extends AbstractAVIStream {
                                         break;
                                 }
                                 break;
-                            case MOVI_ID:
-                                // fall through
-                            case REC_ID: {
-                                int chunkIdInt = chunk.getID();
-                                int id = chunkIdInt;
-                                int track = (((chunkIdInt >> 24) & 0xff) - '0') * 10 + (((chunkIdInt >>> 16) & 0xff) - '0');
-                                if (track >= 0 && track < tracks.size()) {
-                                    Track tr = tracks.get(track);
-                                    Sample s = new Sample(id, (id & 0xffff) == PC_ID ? 0 : 1, chunk.getScan(), chunk.getSize(), false);
-                                    // Audio chunks may contain multiple samples
-                                    if (tr.format.get(MediaTypeKey) == MediaType.AUDIO) {
-                                        s.duration = (int) (s.length / (tr.format.get(FrameSizeKey) * tr.format.get(ChannelsKey)));
-                                    }
-                                    // The first chunk and all uncompressed chunks are keyframes
-                                    s.isKeyframe = tr.samples.isEmpty() || (id & 0xffff) == WB_ID || (id & 0xffff) == DB_ID;
-                                    if (tr.samples.size() > 0) {
-                                        Sample lastSample = tr.samples.get(tr.samples.size() - 1);
-                                        s.timeStamp = lastSample.timeStamp + lastSample.duration;
-                                    }
-                                    tr.length = s.timeStamp + s.duration;
-                                    idx1.add(s);
-                                    tr.samples.add(s);
-
-                                }
-                            }
-                            break;
                             default:
                                 break;
                         }
@@ -375,6 +468,214 @@ public class AVIInputStream extends AbstractAVIStream {
         } catch (AbortException ex) {
             throw new IOException("Parsing aborted", ex);
         }
+
+        if (isOpenDMLIndexed()) {
+            try {
+                readStandardIndexes();
+                return;
+            } catch (EOFException e) {
+                // => a standard index is missing, for example because the file is truncated
+                for (Track tr : tracks) {
+                    tr.samples.clear();
+                    tr.length = 0;
+                }
+                moviRanges.addAll(0, indexedMoviRanges);
+            }
+        } else if (idx1.isEmpty()) {
+            // => the index is missing, for example because the file is truncated
+            moviRanges.addAll(0, indexedMoviRanges);
+        }
+        if (!moviRanges.isEmpty()) {
+            startMoviScanner(moviRanges);
+        }
+    }
+
+    /**
+     * Starts the scan of the "movi" lists. If the stream has been created
+     * from a file, the lists are scanned on a background thread with a second
+     * input stream. Otherwise, they are scanned immediately.
+     */
+    private void startMoviScanner(List<long[]> moviRanges) throws IOException {
+        AVIMoviScanner scanner = new AVIMoviScanner(moviRanges);
+        moviScanner = scanner;
+        if (file == null) {
+            scanner.scan(in);
+            return;
+        }
+        // the second stream is mapped only if the first one is
+        ImageInputStream scanIn = MappedFileImageInputStream.open(file, in instanceof MappedFileImageInputStream);
+        Thread t = new Thread(() -> {
+            try {
+                scanner.scan(scanIn);
+            } finally {
+                try {
+                    scanIn.close();
+                } catch (IOException e) {
+                    // the scanner has already published its result
+                }
+            }
+        }, "AVIInputStream-index");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Adds the chunks that have been found by the scan of the "movi" lists
+     * to the samples of the tracks.
+     */
+    private void addScannedChunks(List<AVIMoviScanner.Chunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        for (AVIMoviScanner.Chunk chunk : chunks) {
+            int id = chunk.id;
+            int track = (((id >> 24) & 0xff) - '0') * 10 + (((id >>> 16) & 0xff) - '0');
+            if (track >= 0 && track < tracks.size()) {
+                Track tr = tracks.get(track);
+                Sample s = new Sample(id, (id & 0xffff) == PC_ID ? 0 : 1, chunk.offset, chunk.size, false);
+                // Audio chunks may contain multiple samples
+                if (tr.format.get(MediaTypeKey) == MediaType.AUDIO) {
+                    s.duration = (int) (s.length / (tr.format.get(FrameSizeKey) * tr.format.get(ChannelsKey)));
+                }
+                // The first chunk and all uncompressed chunks are keyframes
+                s.isKeyframe = tr.samples.isEmpty() || (id & 0xffff) == WB_ID || (id & 0xffff) == DB_ID;
+                if (tr.samples.size() > 0) {
+                    Sample lastSample = tr.samples.get(tr.samples.size() - 1);
+                    s.timeStamp = lastSample.timeStamp + lastSample.duration;
+                } else {
+                    s.timeStamp = 0;
+                }
+                tr.length = s.timeStamp + s.duration;
+                idx1.add(s);
+                tr.samples.add(s);
+            }
+        }
+        samplesAdded();
+    }
+
+    /**
+     * Returns true if all tracks have an OpenDML super index.
+     * <p>
+     * Palette changes are only listed in the legacy index. Therefore, we do
+     * not use the super index if a track has palette changes.
+     */
+    private boolean isOpenDMLIndexed() {
+        if (tracks.isEmpty()) {
+            return false;
+        }
+        for (Track tr : tracks) {
+            if (tr.superIndex.isEmpty() || isFlagSet(tr.flags, STRH_FLAG_VIDEO_PALETTE_CHANGES)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the OpenDML super index of a track.
+     * <pre>
+     * typedef struct _avisuperindex {
+     *     FOURCC fcc;             // "indx"
+     *     DWORD  cb;
+     *     WORD   wLongsPerEntry;  // 4
+     *     BYTE   bIndexSubType;   // 0
+     *     BYTE   bIndexType;      // AVI_INDEX_OF_INDEXES
+     *     DWORD  nEntriesInUse;
+     *     DWORD  dwChunkId;
+     *     DWORD  dwReserved[3];
+     *     struct _avisuperindex_entry {
+     *         QWORD qwOffset;     // offset of the "ix##" chunk
+     *         DWORD dwSize;       // size of the "ix##" chunk
+     *         DWORD dwDuration;   // duration of the "ix##" chunk
+     *     } aIndex[];
+     * } AVISUPERINDEX;
+     * </pre>
+     * Field indexes (bIndexSubType = 1) are not supported. The super index is
+     * ignored in this case.
+     */
+    private void readINDX(Track tr, byte[] data) throws IOException {
+        ByteArrayImageInputStream in = new ByteArrayImageInputStream(data, ByteOrder.LITTLE_ENDIAN);
+        int longsPerEntry = in.readUnsignedShort();
+        int indexSubType = in.readUnsignedByte();
+        int indexType = in.readUnsignedByte();
+        long entriesInUse = in.readUnsignedInt();
+        if (longsPerEntry != 4 || indexSubType != 0 || indexType != AVI_INDEX_OF_INDEXES) {
+            return;
+        }
+        in.skipBytes(16); // dwChunkId, dwReserved[3]
+        for (long i = 0; i < entriesInUse && in.getStreamPosition() + SUPER_INDEX_ENTRY_SIZE <= data.length; i++) {
+            long offset = in.readLong();
+            long size = in.readUnsignedInt();
+            long duration = in.readUnsignedInt();
+            if (offset != 0) {
+                tr.superIndex.add(new SuperIndexEntry(offset, size, duration));
+            }
+        }
+    }
+
+    /**
+     * Reads the samples of all tracks from the OpenDML standard indexes.
+     * <pre>
+     * typedef struct _avistdindex {
+     *     FOURCC fcc;             // "ix##"
+     *     DWORD  cb;
+     *     WORD   wLongsPerEntry;  // 2
+     *     BYTE   bIndexSubType;   // 0
+     *     BYTE   bIndexType;      // AVI_INDEX_OF_CHUNKS
+     *     DWORD  nEntriesInUse;
+     *     DWORD  dwChunkId;
+     *     QWORD  qwBaseOffset;    // all dwOffsets are relative to this
+     *     DWORD  dwReserved3;
+     *     struct _avistdindex_entry {
+     *         DWORD dwOffset;     // offset of the chunk data
+     *         DWORD dwSize;       // bit 31 is set if this is NOT a keyframe
+     *     } aIndex[];
+     * } AVISTDINDEX;
+     * </pre>
+     */
+    private void readStandardIndexes() throws IOException {
+        ByteOrder byteOrder = in.getByteOrder();
+        try {
+            for (Track tr : tracks) {
+                tr.samples.clear();
+                long timeStamp = 0;
+                for (SuperIndexEntry e : tr.superIndex) {
+                    in.seek(streamOffset + e.offset + 8);
+                    in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+                    int longsPerEntry = in.readUnsignedShort();
+                    int indexSubType = in.readUnsignedByte();
+                    int indexType = in.readUnsignedByte();
+                    long entriesInUse = in.readUnsignedInt();
+                    if (longsPerEntry != 2 || indexSubType != 0 || indexType != AVI_INDEX_OF_CHUNKS) {
+                        throw new IOException("Unsupported standard index in track " + tracks.indexOf(tr));
+                    }
+                    in.setByteOrder(ByteOrder.BIG_ENDIAN);
+                    int chunkId = in.readInt();
+                    in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+                    long baseOffset = in.readLong();
+                    in.skipBytes(4); // dwReserved3
+                    for (long i = 0; i < entriesInUse; i++) {
+                        long offset = in.readUnsignedInt();
+                        long size = in.readUnsignedInt();
+                        boolean isKeyframe = (size & 0x80000000L) == 0;
+                        size &= 0x7fffffffL;
+                        int duration = 1;
+                        if (tr.mediaType == AVIMediaType.AUDIO) {
+                            duration = (int) (size / tr.format.get(FrameSizeKey));
+                            isKeyframe = true; // all audio samples are keyframes
+                        }
+                        Sample s = new Sample(chunkId, duration, streamOffset + baseOffset + offset, size, isKeyframe);
+                        s.timeStamp = timeStamp;
+                        timeStamp += duration;
+                        tr.samples.add(s);
+                    }
+                }
+                tr.length = timeStamp;
+                tr.readIndex = 0;
+            }
+        } finally {
+            in.setByteOrder(byteOrder);
+        }
     }
 
     /**
@@ -685,6 +986,9 @@ public class AVIInputStream extends AbstractAVIStream {
     }
 
     public void close() throws IOException {
+        if (moviScanner != null) {
+            moviScanner.cancel();
+        }
         in.close();
         for (Track tr : tracks) {
             tr.samples.clear();
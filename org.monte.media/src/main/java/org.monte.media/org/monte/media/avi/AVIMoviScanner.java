@@ -0,0 +1,226 @@
+/*
+ * @(#)AVIMoviScanner.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.avi;
+
+import org.monte.media.io.ByteArray;
+import org.monte.media.riff.RIFFParser;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.monte.media.avi.AbstractAVIStream.LIST_ID;
+import static org.monte.media.avi.AbstractAVIStream.REC_ID;
+
+/**
+ * Scans the chunks in the "movi" lists of an AVI file, for which the file
+ * has no index.
+ * <p>
+ * The scanner reads from its own input stream, so that it can run on a
+ * background thread while another thread reads samples from the file. The
+ * chunks that have been found are published in batches. The reading thread
+ * takes them with {@link #poll()}, or waits for them with {@link #await()}.
+ * <p>
+ * Like {@link RIFFParser}, the scanner stops at the first invalid chunk
+ * and at the end of the file. A chunk that is cut off by the end of the file
+ * is not published.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+class AVIMoviScanner {
+    /**
+     * The number of chunks that are published at once.
+     */
+    private final static int BATCH_SIZE = 256;
+
+    /**
+     * A chunk in a "movi" list.
+     */
+    static class Chunk {
+        /**
+         * The chunk id, for example "00dc".
+         */
+        final int id;
+        /**
+         * The file position of the chunk data.
+         */
+        final long offset;
+        /**
+         * The size of the chunk data.
+         */
+        final long size;
+
+        Chunk(int id, long offset, long size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The file positions of the first and after the last byte of the chunks
+     * of each "movi" list.
+     */
+    private final List<long[]> ranges;
+    private final long totalBytes;
+    private volatile long scannedBytes;
+    private volatile boolean isCancelled;
+    /**
+     * The chunks that have been found, but have not been taken yet. Guarded
+     * by this.
+     */
+    private ArrayList<Chunk> pending = new ArrayList<>();
+    /**
+     * Guarded by this.
+     */
+    private boolean isDone;
+    /**
+     * Guarded by this.
+     */
+    private IOException failure;
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param ranges the file positions of the first and after the last byte
+     *               of the chunks of each "movi" list
+     */
+    AVIMoviScanner(List<long[]> ranges) {
+        this.ranges = new ArrayList<>(ranges);
+        long total = 0;
+        for (long[] range : ranges) {
+            total += range[1] - range[0];
+        }
+        this.totalBytes = total;
+    }
+
+    /**
+     * Scans all "movi" lists. Publishes the chunks, and marks the scanner
+     * as done when it returns.
+     *
+     * @param in the input stream
+     */
+    void scan(ImageInputStream in) {
+        ArrayList<Chunk> batch = new ArrayList<>(BATCH_SIZE);
+        byte[] header = new byte[12];
+        long scanned = 0;
+        try {
+            long length = in.length();
+            for (long[] range : ranges) {
+                long pos = range[0];
+                long end = length < 0 ? range[1] : Math.min(range[1], length);
+                while (pos + 8 <= end && !isCancelled) {
+                    in.seek(pos);
+                    in.readFully(header, 0, 8);
+                    int id = ByteArray.getIntBE(header, 0);
+                    long size = ByteArray.getIntLE(header, 4) & 0xffffffffL;
+                    if (id == LIST_ID) {
+                        // Enter "rec " lists, skip all other lists
+                        in.readFully(header, 8, 4);
+                        pos = ByteArray.getIntBE(header, 8) == REC_ID ? pos + 12 : pos + 8 + size + (size & 1);
+                        continue;
+                    }
+                    if (!RIFFParser.isLocalChunkID(id) || pos + 8 + size > end) {
+                        break;
+                    }
+                    batch.add(new Chunk(id, pos + 8, size));
+                    pos += 8 + size + (size & 1);
+                    if (batch.size() == BATCH_SIZE) {
+                        scannedBytes = scanned + pos - range[0];
+                        publish(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                scanned += range[1] - range[0];
+            }
+        } catch (EOFException e) {
+            // => the file is truncated, keep the chunks that we have found
+        } catch (IOException e) {
+            if (!isCancelled) {
+                synchronized (this) {
+                    failure = e;
+                }
+            }
+        } finally {
+            scannedBytes = totalBytes;
+            publish(batch);
+            synchronized (this) {
+                isDone = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void publish(List<Chunk> batch) {
+        pending.addAll(batch);
+        notifyAll();
+    }
+
+    /**
+     * Takes the chunks that have been found since the last call. Does not
+     * wait.
+     *
+     * @return the chunks, an empty list if there are none
+     */
+    synchronized List<Chunk> poll() {
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Chunk> chunks = pending;
+        pending = new ArrayList<>();
+        return chunks;
+    }
+
+    /**
+     * Takes the chunks that have been found since the last call. Waits until
+     * at least one chunk has been found or the scanner is done.
+     *
+     * @return the chunks, an empty list if the scanner is done
+     * @throws IOException if the scanner failed
+     */
+    synchronized List<Chunk> await() throws IOException {
+        while (pending.isEmpty() && !isDone) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for the AVI index");
+            }
+        }
+        if (pending.isEmpty() && failure != null) {
+            throw new IOException("Error scanning AVI file", failure);
+        }
+        return poll();
+    }
+
+    /**
+     * Returns true if the scanner is done, and all chunks have been taken.
+     */
+    synchronized boolean isExhausted() {
+        return isDone && pending.isEmpty();
+    }
+
+    /**
+     * Returns the fraction of the bytes of the "movi" lists that have been
+     * scanned.
+     *
+     * @return a value between 0 and 1
+     */
+    double getProgress() {
+        return totalBytes == 0 ? 1.0 : (double) scannedBytes / totalBytes;
+    }
+
+    /**
+     * Stops the scanner.
+     */
+    void cancel() {
+        isCancelled = true;
+    }
+}
@@ -19,7 +19,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 
 import static java.lang.Math.max;
@@ -48,10 +51,17 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
 
 /**
  * Provides low-level support for writing already encoded audio and video
- * samples into an AVI 1.0 file. <p> The length of an AVI 1.0 file is limited to
- * 1 GB. This class supports lengths of up to 4 GB, but such files may not work
- * on all players. <p> For detailed information about the AVI 1.0 file format
- * see:<br> <a
+ * samples into an AVI file. <p> The length of an AVI 1.0 file is limited to
+ * 1 GB. This class writes AVI 2.0 (OpenDML) files, which have no such limit:
+ * the first RIFF list has the type "AVI " and contains a legacy "idx1" index
+ * for AVI 1.0 players. When the RIFF list reaches {@link #getMaxRiffSize()},
+ * the movie continues in "AVIX" RIFF lists. Each RIFF list has a standard
+ * index "ix##" per track, which is referenced from the super index "indx" in
+ * the stream header list of the track. <p> For detailed information about the
+ * AVI 2.0 file format see:<br>
+ * <a href="http://www.the-labs.com/Video/odmlff2-avidef.pdf">OpenDML AVI File
+ * Format Extensions, Version 1.02</a><br> For detailed information about the
+ * AVI 1.0 file format see:<br> <a
  * href="http://msdn.microsoft.com/en-us/library/ms779636.aspx">msdn.microsoft.com
  * AVI RIFF</a><br> <a
  * href="http://www.microsoft.com/whdc/archive/fourcc.mspx">www.microsoft.com
@@ -87,7 +97,38 @@ public class AVIOutputStream extends AbstractAVIStream {
      * This chunk holds the AVI Main Header.
      */
     protected FixedSizeDataChunk avihChunk;
+    /**
+     * This chunk holds the OpenDML extended AVI header.
+     */
+    protected FixedSizeDataChunk dmlhChunk;
+    /**
+     * This chunk holds the current RIFF list. This is {@code aviChunk} or an
+     * "AVIX" chunk.
+     */
+    protected CompositeChunk riffChunk;
+    /**
+     * The number of frames of the first track in the first RIFF list, or -1
+     * if the movie only has one RIFF list.
+     */
+    private long firstRiffFrameCount = -1;
+    /**
+     * The maximal number of entries in the super index of a track. This is
+     * the maximal number of RIFF lists in the file.
+     */
+    protected final static int MAX_SUPER_INDEX_ENTRIES = 256;
+    /**
+     * The maximal size of a RIFF list in bytes.
+     */
+    private long maxRiffSize = 1L << 30;
+    /**
+     * The samples in the first RIFF list.
+     */
     ArrayList<Sample> idx1 = new ArrayList<Sample>();
+    /**
+     * The channel of the output file, or null if the output is not a file.
+     * Is used for writing samples from byte buffers.
+     */
+    private FileChannel outChannel;
 
     /**
      * Creates a new instance.
@@ -98,7 +139,9 @@ public class AVIOutputStream extends AbstractAVIStream {
         if (file.exists()) {
             file.delete();
         }
-        this.out = new FileImageOutputStream(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        this.out = new FileImageOutputStream(raf);
+        this.outChannel = raf.getChannel();
         out.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         this.streamOffset = 0;
     }
@@ -339,6 +382,85 @@ public class AVIOutputStream extends AbstractAVIStream {
         return (max(min(t.quality == -1 ? 9700 : t.quality, 0), 10000) / 10000f);
     }
 
+    /**
+     * Returns the maximal size of a RIFF list.
+     *
+     * @return the maximal size in bytes
+     */
+    public long getMaxRiffSize() {
+        return maxRiffSize;
+    }
+
+    /**
+     * Sets the maximal size of a RIFF list. When adding a sample would make
+     * the current RIFF list larger than this size, a new "AVIX" RIFF list is
+     * started. <p> The default value is 1 GB, so that AVI 1.0 players can play
+     * back the first RIFF list. A RIFF list holds at least one sample, even if
+     * the sample is larger than this size.
+     *
+     * @param newValue the maximal size in bytes, must be between 64 KiB and
+     *                 2 GiB
+     */
+    public void setMaxRiffSize(long newValue) {
+        if (newValue < 64 * 1024 || newValue > 1L << 31) {
+            throw new IllegalArgumentException("maxRiffSize must be between 64 KiB and 2 GiB, maxRiffSize=" + newValue);
+        }
+        maxRiffSize = newValue;
+    }
+
+    /**
+     * Starts a new RIFF list if adding the specified number of bytes would
+     * exceed the maximal size of the current RIFF list.
+     *
+     * @param len the number of bytes that will be added
+     */
+    private void ensureRiffCapacity(long len) throws IOException {
+        long needed = getRelativeStreamPosition() - riffChunk.offset + 8 + len + 1;
+        boolean isEmpty = true;
+        for (Track tr : tracks) {
+            int count = tr.samples.size() - tr.segmentStart;
+            if (count > 0) {
+                isEmpty = false;
+                needed += 32 + 8L * count + 1; // size of the "ix##" chunk
+            }
+        }
+        if (riffChunk == aviChunk) {
+            needed += 8 + 16L * idx1.size();
+        }
+        if (!isEmpty && needed > maxRiffSize) {
+            startNewRiff();
+        }
+    }
+
+    /**
+     * Finishes the current RIFF list and starts a new "AVIX" RIFF list.
+     */
+    private void startNewRiff() throws IOException {
+        if (tracks.get(0).superIndex.size() >= MAX_SUPER_INDEX_ENTRIES - 1) {
+            throw new IOException("AVI file has too many RIFF lists: " + MAX_SUPER_INDEX_ENTRIES);
+        }
+        finishRiff();
+        if (firstRiffFrameCount == -1) {
+            firstRiffFrameCount = tracks.get(0).samples.size();
+        }
+        riffChunk = new CompositeChunk(RIFF_ID, AVIX_ID);
+        moviChunk = new CompositeChunk(LIST_ID, MOVI_ID);
+        riffChunk.add(moviChunk);
+    }
+
+    /**
+     * Writes the standard indexes into the current "movi" list, and finishes
+     * the current RIFF list.
+     */
+    private void finishRiff() throws IOException {
+        writeStandardIndexes();
+        moviChunk.finish();
+        if (riffChunk == aviChunk) {
+            writeIDX1();
+        }
+        riffChunk.finish();
+    }
+
     /**
      * Sets the state of the QuickTimeOutpuStream to started. <p> If the state
      * is changed by this method, the prolog is written.
@@ -380,6 +502,7 @@ public class AVIOutputStream extends AbstractAVIStream {
 
         VideoTrack vt = (VideoTrack) tr;
         tr.flags |= STRH_FLAG_VIDEO_PALETTE_CHANGES;
+        ensureRiffCapacity(len);
 
         DataChunk paletteChangeChunk = new DataChunk(vt.twoCC | PC_ID);
         long offset = getRelativeStreamPosition();
@@ -390,7 +513,7 @@ public class AVIOutputStream extends AbstractAVIStream {
         long length = getRelativeStreamPosition() - offset;
         Sample s = new Sample(paletteChangeChunk.chunkType, 0, offset, length, isKeyframe);
         tr.addSample(s);
-        idx1.add(s);
+        addToIDX1(s);
         //tr.length+=0;  Length is not affected by this chunk!
         offset = getRelativeStreamPosition();
     }
@@ -457,6 +580,7 @@ public class AVIOutputStream extends AbstractAVIStream {
         }
 
 
+        ensureRiffCapacity(0);
         DataChunk dc = new DataChunk(tr.getSampleChunkFourCC(isKeyframe));
         moviChunk.add(dc);
         ImageOutputStream mdatOut = dc.getOutputStream();
@@ -466,11 +590,8 @@ public class AVIOutputStream extends AbstractAVIStream {
         dc.finish();
         Sample s = new Sample(dc.chunkType, 1, offset, length, isKeyframe);
         tr.addSample(s);
-        idx1.add(s);
+        addToIDX1(s);
         tr.length++;
-        if (getRelativeStreamPosition() > 1L << 32) {
-            throw new IOException("AVI file is larger than 4 GB");
-        }
     }
 
     /**
@@ -490,6 +611,23 @@ public class AVIOutputStream extends AbstractAVIStream {
      * @throws IOException              if writing the sample data failed.
      */
     public void writeSample(int track, byte[] data, int off, int len, boolean isKeyframe) throws IOException {
+        writeSample(track, ByteBuffer.wrap(data, off, len), isKeyframe);
+    }
+
+    /**
+     * Writes an already encoded sample from a byte buffer into a track. <p>
+     * Writes the remaining bytes of the buffer. If the buffer is direct, for
+     * example because it maps a sample of another movie file, then the bytes
+     * are written without copying them into the Java heap.
+     *
+     * @param track      The track index.
+     * @param data       The encoded sample data.
+     * @param isKeyframe Whether the sample is a sync sample (keyframe).
+     * @throws IOException if writing the sample data failed.
+     * @see #writeSample(int, byte[], int, int, boolean)
+     */
+    public void writeSample(int track, ByteBuffer data, boolean isKeyframe) throws IOException {
+        int len = data.remaining();
         ensureStarted();
         Track tr = tracks.get(track);
 
@@ -504,19 +642,17 @@ public class AVIOutputStream extends AbstractAVIStream {
             throw new IllegalStateException("Only palette changes can be marked as keyframe.\nTrack=" + track + ", " + tr.format);
         }
 
+        ensureRiffCapacity(len);
         DataChunk dc = new DataChunk(tr.getSampleChunkFourCC(isKeyframe), len);
         moviChunk.add(dc);
         ImageOutputStream mdatOut = dc.getOutputStream();
         long offset = getRelativeStreamPosition();
-        mdatOut.write(data, off, len);
+        IOStreams.write(data, mdatOut, outChannel);
         long length = getRelativeStreamPosition() - offset;
         dc.finish();
         Sample s = new Sample(dc.chunkType, 1, offset, length, isKeyframe);
         tr.addSample(s);
-        idx1.add(s);
-        if (getRelativeStreamPosition() > 1L << 32) {
-            throw new IOException("AVI file is larger than 4 GB");
-        }
+        addToIDX1(s);
     }
 
     /**
@@ -536,31 +672,59 @@ public class AVIOutputStream extends AbstractAVIStream {
      * @throws IOException              if writing the sample data failed.
      */
     public void writeSamples(int track, int sampleCount, byte[] data, int off, int len, boolean isKeyframe) throws IOException {
+        writeSamples(track, sampleCount, ByteBuffer.wrap(data, off, len), isKeyframe);
+    }
+
+    /**
+     * Writes multiple already encoded samples from a byte buffer into a
+     * track. <p> Writes the remaining bytes of the buffer. If the buffer is
+     * direct, for example because it maps samples of another movie file,
+     * then the bytes are written without copying them into the Java heap.
+     *
+     * @param track       The track index.
+     * @param sampleCount The number of samples.
+     * @param data        The encoded sample data. The number of remaining
+     *                    bytes must be dividable by sampleCount.
+     * @param isKeyframe  Whether the samples are sync samples. All samples must
+     *                    either be sync samples or non-sync samples.
+     * @throws IOException if writing the sample data failed.
+     * @see #writeSamples(int, int, byte[], int, int, boolean)
+     */
+    public void writeSamples(int track, int sampleCount, ByteBuffer data, boolean isKeyframe) throws IOException {
+        int len = data.remaining();
         ensureStarted();
         Track tr = tracks.get(track);
         if (tr.mediaType == AVIMediaType.AUDIO) {
+            ensureRiffCapacity(len);
             DataChunk dc = new DataChunk(tr.getSampleChunkFourCC(isKeyframe), len);
             moviChunk.add(dc);
             ImageOutputStream mdatOut = dc.getOutputStream();
             long offset = getRelativeStreamPosition();
-            mdatOut.write(data, off, len);
+            IOStreams.write(data, mdatOut, outChannel);
             long length = getRelativeStreamPosition() - offset;
             dc.finish();
             Sample s = new Sample(dc.chunkType, sampleCount, offset, length, isKeyframe | tr.samples.isEmpty());
             tr.addSample(s);
-            idx1.add(s);
+            addToIDX1(s);
             tr.length += sampleCount;
-            if (getRelativeStreamPosition() > 1L << 32) {
-                throw new IOException("AVI file is larger than 4 GB");
-            }
         } else {
-            for (int i = 0; i < sampleCount; i++) {
-                writeSample(track, data, off, len / sampleCount, isKeyframe);
+            for (int i = 0, off = data.position(); i < sampleCount; i++) {
+                writeSample(track, data.slice(off, len / sampleCount), isKeyframe);
                 off += len / sampleCount;
             }
         }
     }
 
+    /**
+     * Adds a sample to the legacy index, if the sample is in the first RIFF
+     * list.
+     */
+    private void addToIDX1(Sample s) {
+        if (riffChunk == aviChunk) {
+            idx1.add(s);
+        }
+    }
+
     /**
      * Returns the duration of the track in media time scale units.
      *
@@ -605,7 +769,7 @@ public class AVIOutputStream extends AbstractAVIStream {
     public void finish() throws IOException {
         ensureOpen();
         if (state != States.FINISHED) {
-            moviChunk.finish();
+            finishRiff();
             writeEpilog();
             state = States.FINISHED;
         }
@@ -622,16 +786,13 @@ public class AVIOutputStream extends AbstractAVIStream {
 
     /**
      * Returns true if the limit for media samples has been reached. If this
-     * limit is reached, no more samples should be added to the movie. <p> AVI
-     * 1.0 files have a file size limit of 2 GB. This method returns true if a
-     * file size of 1.8 GB has been reached.
+     * limit is reached, no more samples should be added to the movie. <p> The
+     * size of an AVI 2.0 file is limited by the number of RIFF lists that fit
+     * into the super index. This method returns true if only one more RIFF
+     * list can be added.
      */
     public boolean isDataLimitReached() {
-        try {
-            return getRelativeStreamPosition() > (long) (1.8 * 1024 * 1024 * 1024);
-        } catch (IOException ex) {
-            return true;
-        }
+        return !tracks.isEmpty() && tracks.get(0).superIndex.size() >= MAX_SUPER_INDEX_ENTRIES - 2;
     }
 
     private void writeProlog() throws IOException {
@@ -644,12 +805,21 @@ public class AVIOutputStream extends AbstractAVIStream {
         // ...strf (Stream Format Chunk)
         // ...**** (Extra Stream Header Chunks)
         // ...strn (Stream Name Chunk)
+        // ...indx (OpenDML Super Index Chunk)
+        // ..LIST odml
+        // ...dmlh (OpenDML Extended AVI Header)
         // ..LIST movi
         // ...00dc (Compressed video data chunk in Track 00, repeated for each frame)
+        // ...ix00 (OpenDML Standard Index Chunk of Track 00)
         // ..idx1 (List of video data chunks and their location in the file)
+        // .RIFF AVIX (optional, repeated)
+        // ..LIST movi
+        // ...00dc
+        // ...ix00
 
-        // The RIFF AVI Chunk holds the complete movie
+        // The RIFF AVI Chunk holds the header and the first part of the movie
         aviChunk = new CompositeChunk(RIFF_ID, AVI_ID);
+        riffChunk = aviChunk;
         CompositeChunk hdrlChunk = new CompositeChunk(LIST_ID, HDRL_ID);
 
         // Write empty AVI Main Header Chunk - we fill the data in later
@@ -690,15 +860,94 @@ public class AVIOutputStream extends AbstractAVIStream {
                 d.finish();
                 strlChunk.add(d);
             }
+
+            tr.indxChunk = new FixedSizeDataChunk(INDX_ID,
+                    SUPER_INDEX_HEADER_SIZE + SUPER_INDEX_ENTRY_SIZE * MAX_SUPER_INDEX_ENTRIES);
+            tr.indxChunk.seekToEndOfChunk();
+            strlChunk.add(tr.indxChunk);
         }
 
+        // Write empty OpenDML Extended AVI Header - we fill the data in later
+        CompositeChunk odmlChunk = new CompositeChunk(LIST_ID, ODML_ID);
+        hdrlChunk.add(odmlChunk);
+        dmlhChunk = new FixedSizeDataChunk(DMLH_ID, 248);
+        dmlhChunk.seekToEndOfChunk();
+        odmlChunk.add(dmlhChunk);
+
         moviChunk = new CompositeChunk(LIST_ID, MOVI_ID);
         aviChunk.add(moviChunk);
 
 
     }
 
-    private void writeEpilog() throws IOException {
+    /**
+     * Writes a standard index "ix##" for each track into the current "movi"
+     * list, and adds an entry for it to the super index of the track.
+     * <pre>
+     * typedef struct _avistdindex {
+     *     FOURCC fcc;             // "ix##"
+     *     DWORD  cb;
+     *     WORD   wLongsPerEntry;  // 2
+     *     BYTE   bIndexSubType;   // 0
+     *     BYTE   bIndexType;      // AVI_INDEX_OF_CHUNKS
+     *     DWORD  nEntriesInUse;
+     *     DWORD  dwChunkId;       // "##dc", "##db" or "##wb"
+     *     QWORD  qwBaseOffset;    // all dwOffsets are relative to this
+     *     DWORD  dwReserved3;
+     *     struct _avistdindex_entry {
+     *         DWORD dwOffset;     // offset of the chunk data
+     *         DWORD dwSize;       // bit 31 is set if this is NOT a keyframe
+     *     } aIndex[];
+     * } AVISTDINDEX;
+     * </pre>
+     * Palette changes are not included in the standard index.
+     */
+    private void writeStandardIndexes() throws IOException {
+        long baseOffset = moviChunk.offset;
+        for (Track tr : tracks) {
+            int count = 0;
+            int chunkId = 0;
+            long duration = 0;
+            for (int i = tr.segmentStart, n = tr.samples.size(); i < n; i++) {
+                Sample s = tr.samples.get(i);
+                if ((s.chunkType & CHUNK_SUBTYPE_MASK) != PC_ID) {
+                    if (count == 0) {
+                        chunkId = s.chunkType;
+                    }
+                    count++;
+                    duration += s.duration;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            DataChunk ixChunk = new DataChunk(IX_ID | (tr.twoCC >>> 16), 24 + 8L * count);
+            moviChunk.add(ixChunk);
+            ImageOutputStream d = ixChunk.getOutputStream();
+            d.writeShort(2); // wLongsPerEntry
+            d.writeByte(0); // bIndexSubType
+            d.writeByte(AVI_INDEX_OF_CHUNKS); // bIndexType
+            d.writeInt(count); // nEntriesInUse
+            d.setByteOrder(ByteOrder.BIG_ENDIAN);
+            d.writeInt(chunkId); // dwChunkId
+            d.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            d.writeLong(baseOffset); // qwBaseOffset
+            d.writeInt(0); // dwReserved3
+            for (int i = tr.segmentStart, n = tr.samples.size(); i < n; i++) {
+                Sample s = tr.samples.get(i);
+                if ((s.chunkType & CHUNK_SUBTYPE_MASK) != PC_ID) {
+                    d.writeInt((int) (s.offset - baseOffset)); // dwOffset
+                    d.writeInt((int) (s.length | (s.isKeyframe ? 0 : 0x80000000L))); // dwSize
+                }
+            }
+            ixChunk.finish();
+            tr.superIndex.add(new SuperIndexEntry(ixChunk.getOffset(), ixChunk.size(), duration));
+            tr.segmentStart = tr.samples.size();
+        }
+    }
+
+    private void writeIDX1() throws IOException {
 
         ImageOutputStream d;
 
@@ -766,6 +1015,12 @@ public class AVIOutputStream extends AbstractAVIStream {
 
             idx1Chunk.finish();
         }
+    }
+
+    private void writeEpilog() throws IOException {
+
+        ImageOutputStream d;
+        long endOfFile = getRelativeStreamPosition();
 
         /* Write Data into AVI Main Header Chunk
          * -------------
@@ -852,8 +1107,10 @@ public class AVIOutputStream extends AbstractAVIStream {
              for (Track t : tracks) {
              dwTotalFrames += t.samples.size();
              }*/
-            d.writeInt(tt.samples.size()); // dwTotalFrames
-            // Specifies the total number of frames of data in the file.
+            d.writeInt((int) (firstRiffFrameCount == -1 ? tt.samples.size() : firstRiffFrameCount)); // dwTotalFrames
+            // Specifies the total number of frames of data in the first
+            // RIFF list. The total number of frames in the file is
+            // specified in the dmlh chunk.
 
             d.writeInt(0); // initialFrames
             // Specifies the initial frame for interleaved files. Noninterleaved
@@ -1128,9 +1385,55 @@ public class AVIOutputStream extends AbstractAVIStream {
                 // WAVEFORMATEXTENSIBLE structure, of which WAVEFORMATEX is the
                 // first member.
             }
+
+            /* Write Data into OpenDML Super Index Chunk
+             * -------------
+             typedef struct _avisuperindex {
+             FOURCC fcc;             // "indx"
+             DWORD  cb;
+             WORD   wLongsPerEntry;  // 4
+             BYTE   bIndexSubType;   // 0
+             BYTE   bIndexType;      // AVI_INDEX_OF_INDEXES
+             DWORD  nEntriesInUse;
+             DWORD  dwChunkId;       // "##dc", "##db" or "##wb"
+             DWORD  dwReserved[3];
+             struct _avisuperindex_entry {
+             QWORD qwOffset;
+             DWORD dwSize;
+             DWORD dwDuration;
+             } aIndex[];
+             } AVISUPERINDEX;
+             */
+            tr.indxChunk.seekToStartOfData();
+            d = tr.indxChunk.getOutputStream();
+            d.writeShort(4); // wLongsPerEntry
+            d.writeByte(0); // bIndexSubType
+            d.writeByte(AVI_INDEX_OF_INDEXES); // bIndexType
+            d.writeInt(tr.superIndex.size()); // nEntriesInUse
+            d.setByteOrder(ByteOrder.BIG_ENDIAN);
+            d.writeInt(tr.getSampleChunkFourCC(false)); // dwChunkId
+            d.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            d.writeInt(0); // dwReserved[0]
+            d.writeInt(0); // dwReserved[1]
+            d.writeInt(0); // dwReserved[2]
+            for (SuperIndexEntry e : tr.superIndex) {
+                d.writeLong(e.offset); // qwOffset
+                d.writeInt((int) e.size); // dwSize
+                d.writeInt((int) e.duration); // dwDuration
+            }
         }
 
-        // -----------------
-        aviChunk.finish();
+        /* Write Data into OpenDML Extended AVI Header
+         * -------------
+         typedef struct _avidmlheader {
+         DWORD dwTotalFrames;
+         DWORD dwFuture[61];
+         } ODMLExtendedAVIHeader;
+         */
+        dmlhChunk.seekToStartOfData();
+        d = dmlhChunk.getOutputStream();
+        d.writeInt(tracks.get(0).samples.size()); // dwTotalFrames
+
+        seekRelative(endOfFile);
     }
 }
@@ -11,12 +11,14 @@ import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.av.MovieReader;
 import org.monte.media.av.Registry;
+import org.monte.media.io.MappedFileImageInputStream;
 import org.monte.media.math.Rational;
 
 import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.EnumSet;
 
 import static java.lang.Math.max;
@@ -52,6 +54,12 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         super(file);
     }
 
+    @Override
+    protected void samplesAdded() {
+        super.samplesAdded();
+        movieDuration = null;
+    }
+
     @Override
     public Format getFileFormat() throws IOException {
         return AVI;
@@ -74,9 +82,31 @@ public class AVIReader extends AVIInputStream implements MovieReader {
      */
     @Override
     public void read(int track, Buffer buffer) throws IOException {
+        read(track, buffer, false);
+    }
+
+    /**
+     * Reads a chunk of media data from the specified track without copying
+     * it. If the file has been mapped into memory, then the buffer holds a
+     * read-only view of the chunk in the mapped file.
+     *
+     * @param track  The track number.
+     * @param buffer The buffer for the media data.
+     * @throws IOException
+     */
+    @Override
+    public void readSlice(int track, Buffer buffer) throws IOException {
+        if (in instanceof MappedFileImageInputStream) {
+            read(track, buffer, true);
+        } else {
+            MovieReader.super.readSlice(track, buffer);
+        }
+    }
+
+    private void read(int track, Buffer buffer, boolean slice) throws IOException {
         ensureRealized();
         Track tr = tracks.get(track);
-        if (tr.readIndex >= tr.samples.size()) {
+        if (!ensureSampleAvailable(tr, tr.readIndex)) {
             buffer.setFlagsTo(END_OF_MEDIA, DISCARD);
             buffer.length = 0;
             return;
@@ -86,7 +116,7 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         Sample s = tr.samples.get((int) tr.readIndex);
 
         // FIXME - This should be done using AVIInputStream.readPalette()
-        if (s.header != null) {
+        if (s.header != null && !slice) {
             byte[] b;
             if (buffer.data instanceof byte[]) {
                 b = (byte[]) buffer.data;
@@ -103,8 +133,10 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         }
 
         // FIXME - This should be done using AVIInputStream.readSample()
-        in.seek(s.offset);
-        {
+        if (slice) {
+            buffer.data = ((MappedFileImageInputStream) in).slice(s.offset, (int) s.length);
+        } else {
+            in.seek(s.offset);
             byte[] b;
             if (buffer.data instanceof byte[]) {
                 b = (byte[]) buffer.data;
@@ -213,22 +245,21 @@ public class AVIReader extends AVIInputStream implements MovieReader {
     private void createCodec(Track tr) throws IOException {
         Format fmt = tr.format;
         Codec codec = createCodec(fmt);
-        String enc = fmt.get(EncodingKey);
-        if (codec == null) {
-            throw new IOException("Track " + tr + " no codec found for format " + fmt);
-        } else {
-            if (fmt.get(MediaTypeKey) == MediaType.VIDEO) {
-                if (null == codec.setInputFormat(fmt)) {
-                    throw new IOException("Track " + tr + " codec " + codec + " does not support input format " + fmt + ". codec=" + codec);
-                }
-                Format outFormat = fmt.prepend(MediaTypeKey, MediaType.VIDEO,//
-                        MimeTypeKey, MIME_JAVA,
-                        EncodingKey, ENCODING_BUFFERED_IMAGE, DataClassKey, BufferedImage.class);
-                if (null == codec.setOutputFormat(outFormat)) {
-                    throw new IOException("Track " + tr + " codec " + codec + " does not support output format " + outFormat + ". codec=" + codec);
+        if (fmt.get(MediaTypeKey) == MediaType.VIDEO) {
+            Format outFormat = fmt.prepend(MediaTypeKey, MediaType.VIDEO,//
+                    MimeTypeKey, MIME_JAVA,
+                    EncodingKey, ENCODING_BUFFERED_IMAGE, DataClassKey, BufferedImage.class);
+            if (codec == null || null == codec.setInputFormat(fmt) || null == codec.setOutputFormat(outFormat)) {
+                // => no single codec can decode the track, try a chain of codecs
+                if (codec != null) {
+                    Registry.getInstance().releaseCodec(codec);
                 }
+                codec = Registry.getInstance().getCodecChain(fmt.prepend(MimeTypeKey, MIME_AVI), outFormat);
             }
         }
+        if (codec == null) {
+            throw new IOException("Track " + tr + " no codec found for format " + fmt);
+        }
 
         tr.codec = codec;
     }
@@ -254,6 +285,7 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         int nextTrack = -1;
         for (int i = 0, n = tracks.size(); i < n; i++) {
             Track tr = tracks.get(i);
+            ensureSampleAvailable(tr, tr.readIndex);
 
             if (tr.samples.isEmpty()) {
                 continue;
@@ -308,30 +340,66 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         return tracks.get(track).rate;
     }
 
+    /**
+     * Returns the index of the sample at the specified time.
+     * <p>
+     * Audio chunks may contain multiple samples. The index of the chunk which
+     * contains the specified time is returned.
+     * <p>
+     * This method performs a binary search in the sample index of the track.
+     *
+     * @param track The track number.
+     * @param time  The time.
+     * @return the sample index, or the number of samples if the time is at
+     * or after the end of the track
+     */
     @Override
     public long timeToSample(int track, Rational time) {
         Track tr = tracks.get(track);
-        // This only works, if all samples contain only one sample!
-        // FIXME - We foolishly assume that only audio tracks have more than one
-        // sample in a frame.
-        // FIXME - We foolishly assume that all samples have a sampleDuration != 0.
-        long index = time.getNumerator() * tr.rate / time.getDenominator() / tr.scale - tr.startTime;
-        if (tr.mediaType == AVIMediaType.AUDIO) {
-            int count = 0;
-            // FIXME This is very inefficient, perform binary search with sample.timestamp
-            // this will work for all media types!
-            for (int i = 0, n = tr.samples.size(); i < n; i++) {
-                long d = tr.samples.get(i).duration * tr.scale; // foolishly assume that sampleDuration = sample count
-                if (count + d > index) {
-                    index = i;
-                    break;
-                }
-                count += d;
-
+        ensureSampleIndex(tr);
+        long mediaTime = time.getNumerator() * tr.rate / time.getDenominator() / tr.scale - tr.startTime;
+        long[] times = tr.sampleTimes;
+        int n = times.length - 1;
+        if (mediaTime >= times[n]) {
+            return n;
+        }
+        int index = Arrays.binarySearch(times, 0, n, mediaTime);
+        if (index < 0) {
+            // => the time is inside the sample before the insertion point
+            index = -index - 2;
+        } else {
+            // => skip back over samples with a duration of zero
+            while (index > 0 && times[index - 1] == mediaTime) {
+                index--;
             }
         }
+        return max(0, index);
+    }
 
-        return max(0, min(index, tr.samples.size()));
+    /**
+     * Builds the sample times and the keyframe index of the track, if they
+     * have not been built yet.
+     */
+    private void ensureSampleIndex(Track tr) {
+        if (tr.sampleTimes != null) {
+            return;
+        }
+        int n = tr.samples.size();
+        long[] times = new long[n + 1];
+        int[] keys = new int[n];
+        int keyCount = 0;
+        long endTime = 0;
+        for (int i = 0; i < n; i++) {
+            Sample s = tr.samples.get(i);
+            times[i] = s.timeStamp;
+            endTime = s.timeStamp + s.duration;
+            if (s.isKeyframe) {
+                keys[keyCount++] = i;
+            }
+        }
+        times[n] = endTime;
+        tr.keyframes = Arrays.copyOf(keys, keyCount);
+        tr.sampleTimes = times;
     }
 
     @Override
@@ -351,12 +419,26 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         ensureRealized();
         for (int t = 0, n = tracks.size(); t < n; t++) {
             Track tr = tracks.get(t);
+            while (getDuration(t).compareTo(newValue) <= 0 && awaitSamples()) {
+                // wait until the index covers the new read time
+            }
+            if (tr.samples.isEmpty()) {
+                tr.readIndex = 0;
+                continue;
+            }
             int sample = (int) min(timeToSample(t, newValue), tr.samples.size() - 1);
             if (tr.readIndex > sample) {
                 tr.readIndex = 0;
             }
-            for (; sample >= 0 && sample > tr.readIndex && !tr.samples.get(sample).isKeyframe; sample--) ;
-            tr.readIndex = sample;
+
+            // Go back to the keyframe at or before the sample, unless the
+            // current read index is between that keyframe and the sample.
+            int keyIndex = Arrays.binarySearch(tr.keyframes, sample);
+            if (keyIndex < 0) {
+                keyIndex = -keyIndex - 2;
+            }
+            int keyframe = keyIndex < 0 ? 0 : tr.keyframes[keyIndex];
+            tr.readIndex = max(keyframe, tr.readIndex);
         }
     }
 
@@ -369,4 +451,15 @@ public class AVIReader extends AVIInputStream implements MovieReader {
         }
         return -1;
     }
+
+    @Override
+    public void close() throws IOException {
+        for (Track tr : tracks) {
+            if (tr.codec != null) {
+                Registry.getInstance().releaseCodec(tr.codec);
+                tr.codec = null;
+            }
+        }
+        super.close();
+    }
 }
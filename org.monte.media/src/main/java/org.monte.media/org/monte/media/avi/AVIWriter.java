@@ -10,6 +10,7 @@ import org.monte.media.av.Codec;
 import org.monte.media.av.Format;
 import org.monte.media.av.MovieWriter;
 import org.monte.media.av.Registry;
+import org.monte.media.av.codec.video.ParallelVideoEncoder;
 import org.monte.media.io.ByteArrayImageOutputStream;
 import org.monte.media.math.Rational;
 import org.monte.media.riff.RIFFParser;
@@ -19,6 +20,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.EnumSet;
@@ -65,6 +67,10 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
 public class AVIWriter extends AVIOutputStream implements MovieWriter {
 
     public final static Format AVI = new Format(MediaTypeKey, MediaType.FILE, MimeTypeKey, MIME_AVI);
+    /**
+     * The format of the buffers of {@link #write(int, BufferedImage, long)}.
+     */
+    private final static Format IMAGE_FORMAT = new Format(EncodingKey, ENCODING_BUFFERED_IMAGE);
     public final static Format VIDEO_RAW = new Format(
             MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
             EncodingKey, ENCODING_AVI_DIB, CompressorNameKey, COMPRESSOR_NAME_QUICKTIME_RAW);
@@ -81,6 +87,11 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
             MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
             EncodingKey, ENCODING_AVI_TECHSMITH_SCREEN_CAPTURE, CompressorNameKey, COMPRESSOR_NAME_QUICKTIME_RAW);
 
+    /**
+     * The number of threads that are used for encoding video frames.
+     */
+    private int encodingThreads = 1;
+
     /**
      * Creates a new AVI writer.
      *
@@ -99,6 +110,36 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
         super(out);
     }
 
+    /**
+     * Sets the number of threads that are used for encoding video frames.
+     * <p>
+     * If the value is greater than 1, the frames of video tracks with an
+     * intra-frame codec (JPEG, PNG) are encoded concurrently, and are written
+     * in the order in which they have been passed to {@code write}. Up to
+     * twice as many frames as threads are held in memory while they are
+     * being encoded.
+     * <p>
+     * The default value is 1.
+     *
+     * @param newValue the number of threads
+     */
+    public void setEncodingThreads(int newValue) {
+        if (newValue < 1) {
+            throw new IllegalArgumentException("encodingThreads must be greater 0:" + newValue);
+        }
+        this.encodingThreads = newValue;
+    }
+
+    /**
+     * Returns the number of threads that are used for encoding video frames.
+     *
+     * @return the number of threads
+     * @see #setEncodingThreads(int)
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
     @Override
     public Format getFileFormat() throws IOException {
         return AVI;
@@ -261,7 +302,7 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
         inputBuffer.flags = (isKeyframe) ? EnumSet.of(KEYFRAME) : EnumSet.noneOf(BufferFlag.class);
         inputBuffer.data = image;
         inputBuffer.header = image.getColorModel();
-        inputBuffer.format = new Format(EncodingKey, ENCODING_BUFFERED_IMAGE);
+        inputBuffer.format = IMAGE_FORMAT;
         inputBuffer.sampleDuration = new Rational(vt.scale, vt.rate);
         write(track, inputBuffer);
     }
@@ -284,6 +325,11 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
         }
 
         Track tr = tracks.get(track);
+        boolean isParallel = buf.data instanceof BufferedImage && !(buf.header instanceof IndexColorModel);
+        if (tr.parallelEncoder != null && !isParallel) {
+            // The samples must be written in order
+            flushParallelEncoder(track);
+        }
 
         boolean isKeyframe = buf.flags.contains(KEYFRAME);
         if (buf.data instanceof BufferedImage) {
@@ -308,6 +354,11 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
                         buf.isFlag(KEYFRAME) && !paletteChange);
                 return;
             }
+            if (buf.format.matchesWithout(tr.format, FrameRateKey) && buf.data instanceof ByteBuffer) {
+                writeSamples(track, buf.sampleCount, ((ByteBuffer) buf.data).slice(buf.offset, buf.length),
+                        buf.isFlag(KEYFRAME) && !paletteChange);
+                return;
+            }
 
             // We got here, because the buffer format does not match the track 
             // format. Lets see if we can create a codec which can perform the
@@ -318,6 +369,15 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
                     throw new UnsupportedOperationException("No codec for this format " + tr.format);
                 }
             }
+            if (isParallel && tr.parallelEncoder == null && encodingThreads > 1
+                    && ParallelVideoEncoder.isSupported(tr.codec)) {
+                tr.parallelEncoder = new ParallelVideoEncoder(tr.codec, encodingThreads, 2 * encodingThreads);
+            }
+            if (isParallel && tr.parallelEncoder != null) {
+                tr.parallelEncoder.encode(buf, b -> writeSamples(track, b.sampleCount, (byte[]) b.data, b.offset, b.length,
+                        b.isFlag(KEYFRAME)));
+                return;
+            }
 
             if (tr.outputBuffer == null) {
                 tr.outputBuffer = new Buffer();
@@ -334,6 +394,50 @@ public class AVIWriter extends AVIOutputStream implements MovieWriter {
         }
     }
 
+    /**
+     * Writes the frames which are being encoded by the parallel encoder of
+     * the specified track.
+     */
+    private void flushParallelEncoder(int track) throws IOException {
+        Track tr = tracks.get(track);
+        tr.parallelEncoder.flush(b -> writeSamples(track, b.sampleCount, (byte[]) b.data, b.offset, b.length,
+                b.isFlag(KEYFRAME)));
+    }
+
+    /**
+     * Writes the frames which are still being encoded, and then finishes
+     * writing the contents of the AVI output stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (state == States.STARTED) {
+            for (int i = 0, n = tracks.size(); i < n; i++) {
+                if (tracks.get(i).parallelEncoder != null) {
+                    flushParallelEncoder(i);
+                }
+            }
+        }
+        super.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            for (Track tr : tracks) {
+                if (tr.parallelEncoder != null) {
+                    tr.parallelEncoder.close();
+                    tr.parallelEncoder = null;
+                }
+                if (tr.codec != null) {
+                    Registry.getInstance().releaseCodec(tr.codec);
+                    tr.codec = null;
+                }
+            }
+        }
+    }
+
     private boolean writePalette(int track, BufferedImage image, boolean isKeyframe) throws IOException {
         if ((image.getColorModel() instanceof IndexColorModel)) {
             return writePalette(track, (IndexColorModel) image.getColorModel(), isKeyframe);
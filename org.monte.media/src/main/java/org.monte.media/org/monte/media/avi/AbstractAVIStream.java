@@ -7,6 +7,7 @@ package org.monte.media.avi;
 import org.monte.media.av.Buffer;
 import org.monte.media.av.Codec;
 import org.monte.media.av.Format;
+import org.monte.media.av.codec.video.ParallelVideoEncoder;
 import org.monte.media.riff.RIFFChunk;
 
 import javax.imageio.stream.ImageOutputStream;
@@ -68,6 +69,27 @@ public abstract class AbstractAVIStream {
     protected final static int DB_ID = 0x00006462;// "??db"
     protected final static int DC_ID = 0x00006463;// "??dc"
     protected final static int WB_ID = 0x00007762;// "??wb"
+    protected final static int ODML_ID = 0x6f646d6c;// "odml"
+    protected final static int DMLH_ID = 0x646d6c68;// "dmlh"
+    protected final static int INDX_ID = 0x696e6478;// "indx"
+    protected final static int IX_ID = 0x69780000;// "ix??"
+    /**
+     * OpenDML index type of a super index: each entry points to an index.
+     */
+    protected final static int AVI_INDEX_OF_INDEXES = 0x00;
+    /**
+     * OpenDML index type of a standard index: each entry points to a chunk.
+     */
+    protected final static int AVI_INDEX_OF_CHUNKS = 0x01;
+    /**
+     * The size of an OpenDML super index header in bytes, excluding the chunk
+     * header.
+     */
+    protected final static int SUPER_INDEX_HEADER_SIZE = 24;
+    /**
+     * The size of an OpenDML super index entry in bytes.
+     */
+    protected final static int SUPER_INDEX_ENTRY_SIZE = 16;
 
     /**
      * Indicates the AVI file has an index.
@@ -218,6 +240,30 @@ public abstract class AbstractAVIStream {
         }
     }
 
+    /**
+     * An entry of an OpenDML super index ("indx" chunk). The entry points
+     * to a standard index ("ix##" chunk), which indexes the chunks of a track
+     * in one RIFF list of the file.
+     * <pre>
+     * struct _avisuperindex_entry {
+     *     QWORD qwOffset;   // absolute file offset of the "ix##" chunk
+     *     DWORD dwSize;     // size of the "ix##" chunk
+     *     DWORD dwDuration; // time span in stream ticks
+     * } aIndex[];
+     * </pre>
+     */
+    protected static class SuperIndexEntry {
+        public final long offset;
+        public final long size;
+        public final long duration;
+
+        public SuperIndexEntry(long offset, long size, long duration) {
+            this.offset = offset;
+            this.size = size;
+            this.duration = duration;
+        }
+    }
+
     /**
      * Represents a track (or "stream") in an AVI file. <p> A track is defined
      * by an "strh" chunk, which contains an {@code AVISTREAMHEADER} struct.
@@ -501,6 +547,11 @@ public abstract class AbstractAVIStream {
          * The output buffer is used to store the output of the codec.
          */
         public Buffer outputBuffer;
+        /**
+         * The parallel encoder, or null if the samples are encoded on the
+         * writer thread.
+         */
+        public ParallelVideoEncoder parallelEncoder;
         /**
          * The input buffer is used when one of the convenience methods without
          * a Buffer parameter is used.
@@ -514,6 +565,30 @@ public abstract class AbstractAVIStream {
          * List of additional header chunks.
          */
         protected ArrayList<RIFFChunk> extraHeaders;
+        /**
+         * The entries of the OpenDML super index of the track.
+         */
+        protected ArrayList<SuperIndexEntry> superIndex = new ArrayList<>();
+        /**
+         * This chunk holds the OpenDML super index.
+         */
+        protected FixedSizeDataChunk indxChunk;
+        /**
+         * The index of the first sample in the current RIFF list. This is
+         * used when writing.
+         */
+        protected int segmentStart;
+        /**
+         * The time stamps of the samples, followed by the end time of the
+         * last sample. This is used by the reader for seeking, and is null
+         * until it has been built.
+         */
+        protected long[] sampleTimes;
+        /**
+         * The indices of the keyframe samples in ascending order. This is used
+         * by the reader for seeking, and is null until it has been built.
+         */
+        protected int[] keyframes;
 
         public Track(int trackIndex, AVIMediaType mediaType, int fourCC) {
             this.mediaType = mediaType;
@@ -151,6 +151,11 @@ public class RunLengthCodec extends AbstractVideoCodec {
         frameCounter = 0;
     }
 
+    @Override
+    public double getCostHint() {
+        return 4;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         if (outputFormat == null) return CODEC_FAILED;
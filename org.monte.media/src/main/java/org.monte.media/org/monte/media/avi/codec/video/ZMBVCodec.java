@@ -79,11 +79,27 @@ public class ZMBVCodec extends AbstractVideoCodec {
     }
 
 
+    /**
+     * Decoding inflates each frame, and applies its motion compensated
+     * blocks to the previous frame.
+     */
+    @Override
+    public double getCostHint() {
+        return 8;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         return decode(in, out);
     }
 
+    @Override
+    public void reset() {
+        if (state != null) {
+            state.reset();
+        }
+    }
+
     public int decode(Buffer in, Buffer out) {
         out.setMetaTo(in);
         if (in.isFlag(DISCARD)) {
@@ -6,11 +6,13 @@ package org.monte.media.avi.codec.video;
 
 import org.monte.media.io.AppendableByteArrayInputStream;
 import org.monte.media.io.ByteArrayImageInputStream;
+import org.monte.media.io.InflaterPool;
 import org.monte.media.io.UncachedImageInputStream;
 
 import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import static java.lang.Math.max;
@@ -150,11 +152,39 @@ public class ZMBVCodecCore {
     private int videoFormat;
     private int blockWidth, blockHeight;
     private InflaterInputStream inflaterInputStream;
+    /**
+     * The inflater is acquired from the {@link InflaterPool} on the first
+     * key frame, and reused for all subsequent key frames until
+     * {@link #reset()} is called.
+     */
+    private Inflater inflater;
     private AppendableByteArrayInputStream byteArrayInputStream;
     private int[] palette;
     private byte[] blockDataBuf;
     private byte[] blockHeaderBuf;
 
+    /**
+     * Resets the state of the codec, and releases the inflater.
+     */
+    public void reset() {
+        inflaterInputStream = null;
+        InflaterPool.getDefault().release(inflater);
+        inflater = null;
+    }
+
+    /**
+     * Creates a new inflater input stream for a key frame. The inflater is
+     * reset, because zlib must be reset for key frames.
+     */
+    private InflaterInputStream createInflaterInputStream(AppendableByteArrayInputStream in) {
+        if (inflater == null) {
+            inflater = InflaterPool.getDefault().acquire();
+        } else {
+            inflater.reset();
+        }
+        return new InflaterInputStream(in, inflater);
+    }
+
     /**
      * Decodes to 32-bit RGB.
      * Returns true if a key-frame was decoded.
@@ -204,10 +234,7 @@ public class ZMBVCodecCore {
                         } else {
                             byteArrayInputStream = new AppendableByteArrayInputStream(inDat.clone(), (int) in.getStreamPosition() + off, (int) (length - in.getStreamPosition()));
                         }
-                        if (inflaterInputStream != null) {
-                            inflaterInputStream.close();
-                        }
-                        inflaterInputStream = new InflaterInputStream(byteArrayInputStream);
+                        inflaterInputStream = createInflaterInputStream(byteArrayInputStream);
                     }
                     in = new UncachedImageInputStream(inflaterInputStream, ByteOrder.LITTLE_ENDIAN);
                     break;
@@ -295,10 +322,7 @@ public class ZMBVCodecCore {
                         } else {
                             byteArrayInputStream = new AppendableByteArrayInputStream(inDat.clone(), (int) in.getStreamPosition() + off, (int) (length - in.getStreamPosition()));
                         }
-                        if (inflaterInputStream != null) {
-                            inflaterInputStream.close();
-                        }
-                        inflaterInputStream = new InflaterInputStream(byteArrayInputStream);
+                        inflaterInputStream = createInflaterInputStream(byteArrayInputStream);
                     }
                     in = new UncachedImageInputStream(inflaterInputStream, ByteOrder.LITTLE_ENDIAN);
                     break;
@@ -389,10 +413,7 @@ public class ZMBVCodecCore {
                         } else {
                             byteArrayInputStream = new AppendableByteArrayInputStream(inDat.clone(), (int) in.getStreamPosition() + off, (int) (length - in.getStreamPosition()));
                         }
-                        if (inflaterInputStream != null) {
-                            inflaterInputStream.close();
-                        }
-                        inflaterInputStream = new InflaterInputStream(byteArrayInputStream);
+                        inflaterInputStream = createInflaterInputStream(byteArrayInputStream);
                     }
                     in = new UncachedImageInputStream(inflaterInputStream, ByteOrder.LITTLE_ENDIAN);
                     break;
@@ -8,6 +8,7 @@ import org.monte.media.exception.AbortException;
 import org.monte.media.exception.ParseException;
 import org.monte.media.io.ByteArrayImageInputStream;
 import org.monte.media.io.ImageInputStreamAdapter;
+import org.monte.media.io.MappedFileImageInputStream;
 import org.monte.media.jfif.JFIFInputStream;
 import org.monte.media.jfif.JFIFInputStream.Segment;
 import org.monte.media.math.Rational;
@@ -29,7 +30,6 @@ import org.monte.media.tiff.TagSet;
 import javax.imageio.ImageIO;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
@@ -112,7 +112,7 @@ public class EXIFReader {
      */
     public void read() throws IOException {
         if (file != null) {
-            iin = new FileImageInputStream(file);
+            iin = MappedFileImageInputStream.open(file);
         }
         try {
             iin.seek(0);
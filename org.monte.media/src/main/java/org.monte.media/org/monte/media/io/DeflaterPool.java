@@ -0,0 +1,169 @@
+/*
+ * @(#)DeflaterPool.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of {@link Deflater} instances.
+ * <p>
+ * A {@code Deflater} holds native zlib state, which is only freed when
+ * {@link Deflater#end()} is called or when the {@code Deflater} is garbage
+ * collected. Reusing deflaters avoids allocating and freeing native state
+ * for every frame.
+ * <p>
+ * All deflaters of a pool have the same compression level, strategy and
+ * wrapping.
+ * <p>
+ * Usage:
+ * <pre>
+ * Deflater deflater = pool.acquire();
+ * try {
+ *     DeflaterOutputStream out = new DeflaterOutputStream(stream, deflater);
+ *     ...
+ *     out.finish();
+ * } finally {
+ *     pool.release(deflater);
+ * }
+ * </pre>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class DeflaterPool implements AutoCloseable {
+    /**
+     * The default capacity of a pool.
+     */
+    public final static int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final static DeflaterPool defaultPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_STRATEGY, false, DEFAULT_CAPACITY);
+
+    private final int level;
+    private final int strategy;
+    private final boolean nowrap;
+    private final ArrayBlockingQueue<Deflater> pool;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param level    the compression level (0-9), or
+     *                 {@link Deflater#DEFAULT_COMPRESSION}
+     * @param strategy the compression strategy
+     * @param nowrap   if true then the deflaters produce raw deflate data
+     *                 without ZLIB header and checksum
+     * @param capacity the maximal number of idle deflaters in the pool
+     */
+    public DeflaterPool(int level, int strategy, boolean nowrap, int capacity) {
+        this.level = level;
+        this.strategy = strategy;
+        this.nowrap = nowrap;
+        this.pool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Returns the shared pool with the default compression level, the
+     * default strategy and ZLIB wrapping.
+     *
+     * @return the shared pool
+     */
+    public static DeflaterPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Acquires a deflater from the pool. Creates a new deflater if the pool
+     * is empty.
+     *
+     * @return a deflater
+     */
+    public Deflater acquire() {
+        Deflater deflater = pool.poll();
+        if (deflater != null) {
+            hits.incrementAndGet();
+            return deflater;
+        }
+        misses.incrementAndGet();
+        deflater = new Deflater(level, nowrap);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    /**
+     * Releases a deflater that has been acquired from this pool.
+     * <p>
+     * The deflater is reset and returned to the pool. If the pool is full or
+     * closed, the deflater is ended.
+     *
+     * @param deflater a deflater, null is ignored
+     */
+    public void release(Deflater deflater) {
+        if (deflater == null) {
+            return;
+        }
+        deflater.reset();
+        if (closed || !pool.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Ends all idle deflaters in the pool. Deflaters which are released after
+     * the pool has been closed are ended immediately.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Deflater deflater = pool.poll(); deflater != null; deflater = pool.poll()) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} could reuse a
+     * deflater from the pool.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} had to create a new
+     * deflater.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of idle deflaters in the pool.
+     *
+     * @return number of idle deflaters
+     */
+    public int getIdleCount() {
+        return pool.size();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getStrategy() {
+        return strategy;
+    }
+
+    public boolean isNowrap() {
+        return nowrap;
+    }
+}
@@ -9,6 +9,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 
@@ -87,4 +89,40 @@ public class IOStreams {
         return count;
     }
 
+
+    /**
+     * Writes the remaining bytes of the source buffer into the target stream
+     * at its current stream position. The position of the source buffer is
+     * not changed.
+     * <p>
+     * If a file channel is provided, then the bytes are written with the
+     * channel. If the source buffer is direct, for example because it maps
+     * a region of a file, then the bytes are not copied into the Java heap.
+     *
+     * @param source  the source buffer
+     * @param target  the target stream
+     * @param channel the channel of the file that is written by the target
+     *                stream, or null
+     * @throws IOException if writing fails
+     */
+    public static void write(ByteBuffer source, ImageOutputStream target, FileChannel channel) throws IOException {
+        ByteBuffer b = source.duplicate();
+        if (b.hasArray()) {
+            target.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        } else if (channel != null) {
+            long pos = target.getStreamPosition();
+            long end = pos + b.remaining();
+            while (b.hasRemaining()) {
+                pos += channel.write(b, pos);
+            }
+            target.seek(end);
+        } else {
+            byte[] buf = new byte[Math.min(8192, b.remaining())];
+            while (b.hasRemaining()) {
+                int n = Math.min(buf.length, b.remaining());
+                b.get(buf, 0, n);
+                target.write(buf, 0, n);
+            }
+        }
+    }
 }
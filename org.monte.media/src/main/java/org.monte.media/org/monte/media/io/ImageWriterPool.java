@@ -0,0 +1,153 @@
+/*
+ * @(#)ImageWriterPool.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.io;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of {@link ImageWriter} instances for a MIME type.
+ * <p>
+ * Looking up an {@code ImageWriter} in the {@link ImageIO} service registry
+ * and setting it up costs more than encoding a small image. Reusing writers
+ * avoids this cost for every frame. A pool allows multiple threads to share
+ * a small number of writers.
+ * <p>
+ * Usage:
+ * <pre>
+ * ImageWriter writer = pool.acquire();
+ * try {
+ *     writer.setOutput(stream);
+ *     writer.write(null, image, param);
+ * } finally {
+ *     pool.release(writer);
+ * }
+ * </pre>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class ImageWriterPool implements AutoCloseable {
+    /**
+     * The default capacity of a pool.
+     */
+    public final static int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final String mimeType;
+    private final ArrayBlockingQueue<ImageWriter> pool;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param mimeType the MIME type of the images, for example "image/jpeg"
+     * @param capacity the maximal number of idle writers in the pool
+     */
+    public ImageWriterPool(String mimeType, int capacity) {
+        this.mimeType = mimeType;
+        this.pool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Acquires a writer from the pool. Creates a new writer if the pool is
+     * empty.
+     *
+     * @return a writer
+     * @throws IllegalStateException if ImageIO has no writer for the MIME
+     *                               type of this pool
+     */
+    public ImageWriter acquire() {
+        ImageWriter writer = pool.poll();
+        if (writer != null) {
+            hits.incrementAndGet();
+            return writer;
+        }
+        misses.incrementAndGet();
+        return createImageWriter(mimeType);
+    }
+
+    /**
+     * Releases a writer that has been acquired from this pool.
+     * <p>
+     * The writer is reset and returned to the pool. If the pool is full or
+     * closed, the writer is disposed.
+     *
+     * @param writer a writer, null is ignored
+     */
+    public void release(ImageWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        writer.reset();
+        if (closed || !pool.offer(writer)) {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Disposes all idle writers in the pool. Writers which are released after
+     * the pool has been closed are disposed immediately.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (ImageWriter writer = pool.poll(); writer != null; writer = pool.poll()) {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Creates a new writer for the specified MIME type.
+     *
+     * @param mimeType the MIME type of the images
+     * @return a new writer
+     * @throws IllegalStateException if ImageIO has no writer for the MIME type
+     */
+    public static ImageWriter createImageWriter(String mimeType) {
+        Iterator<ImageWriter> i = ImageIO.getImageWritersByMIMEType(mimeType);
+        if (!i.hasNext()) {
+            throw new IllegalStateException("No ImageWriter for " + mimeType);
+        }
+        return i.next();
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} could reuse a writer
+     * from the pool.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} had to create a new
+     * writer.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of idle writers in the pool.
+     *
+     * @return number of idle writers
+     */
+    public int getIdleCount() {
+        return pool.size();
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * @(#)InflaterPool.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * A bounded pool of {@link Inflater} instances.
+ * <p>
+ * An {@code Inflater} holds native zlib state, which is only freed when
+ * {@link Inflater#end()} is called or when the {@code Inflater} is garbage
+ * collected. Reusing inflaters avoids allocating and freeing native state
+ * for every frame.
+ * <p>
+ * Usage:
+ * <pre>
+ * Inflater inflater = pool.acquire();
+ * try {
+ *     InflaterInputStream in = new InflaterInputStream(stream, inflater);
+ *     ...
+ * } finally {
+ *     pool.release(inflater);
+ * }
+ * </pre>
+ * This class is thread-safe.
+ *
+ * @author Werner Randelshofer
+ */
+public class InflaterPool implements AutoCloseable {
+    /**
+     * The default capacity of a pool.
+     */
+    public final static int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final static InflaterPool defaultPool = new InflaterPool(false, DEFAULT_CAPACITY);
+
+    private final boolean nowrap;
+    private final ArrayBlockingQueue<Inflater> pool;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param nowrap   if true then the inflaters expect raw deflate data
+     *                 without ZLIB header and checksum
+     * @param capacity the maximal number of idle inflaters in the pool
+     */
+    public InflaterPool(boolean nowrap, int capacity) {
+        this.nowrap = nowrap;
+        this.pool = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Returns the shared pool for ZLIB wrapped data.
+     *
+     * @return the shared pool
+     */
+    public static InflaterPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Acquires an inflater from the pool. Creates a new inflater if the pool
+     * is empty.
+     *
+     * @return an inflater
+     */
+    public Inflater acquire() {
+        Inflater inflater = pool.poll();
+        if (inflater != null) {
+            hits.incrementAndGet();
+            return inflater;
+        }
+        misses.incrementAndGet();
+        return new Inflater(nowrap);
+    }
+
+    /**
+     * Releases an inflater that has been acquired from this pool.
+     * <p>
+     * The inflater is reset and returned to the pool. If the pool is full or
+     * closed, the inflater is ended.
+     *
+     * @param inflater an inflater, null is ignored
+     */
+    public void release(Inflater inflater) {
+        if (inflater == null) {
+            return;
+        }
+        inflater.reset();
+        if (closed || !pool.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Ends all idle inflaters in the pool. Inflaters which are released after
+     * the pool has been closed are ended immediately.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Inflater inflater = pool.poll(); inflater != null; inflater = pool.poll()) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} could reuse an
+     * inflater from the pool.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times that {@link #acquire} had to create a new
+     * inflater.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of idle inflaters in the pool.
+     *
+     * @return number of idle inflaters
+     */
+    public int getIdleCount() {
+        return pool.size();
+    }
+
+    public boolean isNowrap() {
+        return nowrap;
+    }
+}
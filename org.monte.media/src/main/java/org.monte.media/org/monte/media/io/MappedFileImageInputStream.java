@@ -0,0 +1,367 @@
+/*
+ * @(#)MappedFileImageInputStream.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.io;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@code MappedFileImageInputStream} reads from a file that is mapped into
+ * memory.
+ * <p>
+ * Unlike {@link FileImageInputStream}, seeking and reading do not perform a
+ * system call. Reading bytes copies them directly from the page cache.
+ * <p>
+ * A mapped byte buffer can hold at most 2 GB. Therefore the file is mapped in
+ * windows of {@link #DEFAULT_WINDOW_SIZE} bytes. Only the window that contains
+ * the current stream position is mapped. Reads that cross the end of a window
+ * map the next window.
+ * <p>
+ * The byte order of the stream is honoured in the same way as in
+ * {@link ByteArrayImageInputStream}.
+ * <p>
+ * <b>Restriction:</b> {@link #close()} closes the file, but the mapped window
+ * is only unmapped when it is garbage collected. On Windows, a file can not
+ * be deleted, renamed or overwritten while it is mapped. Therefore the file
+ * readers of this library do not map files by default, see
+ * {@link #open(File)} and {@link #setMappingEnabled(boolean)}. Readers that
+ * are created with an {@code ImageInputStream} can use a mapped stream
+ * explicitly.
+ *
+ * @author Werner Randelshofer
+ */
+public class MappedFileImageInputStream extends ImageInputStreamImpl2 {
+    /**
+     * The default size of a window in bytes.
+     */
+    public final static int DEFAULT_WINDOW_SIZE = 1 << 30;
+    /**
+     * Whether {@link #open(File)} maps files.
+     */
+    private static volatile boolean mappingEnabled;
+
+    private final FileChannel channel;
+    private final long length;
+    private final int windowSize;
+    /**
+     * The currently mapped window.
+     */
+    private MappedByteBuffer window;
+    /**
+     * The file position of the first byte of the window.
+     */
+    private long windowStart;
+
+    /**
+     * Creates a new instance with big endian byte order.
+     *
+     * @param file the file
+     * @throws IOException if the file can not be opened
+     */
+    public MappedFileImageInputStream(File file) throws IOException {
+        this(file.toPath(), ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file      the file
+     * @param byteOrder the byte order
+     * @throws IOException if the file can not be opened
+     */
+    public MappedFileImageInputStream(File file, ByteOrder byteOrder) throws IOException {
+        this(file.toPath(), byteOrder);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param path      the file
+     * @param byteOrder the byte order
+     * @throws IOException if the file can not be opened
+     */
+    public MappedFileImageInputStream(Path path, ByteOrder byteOrder) throws IOException {
+        this(path, byteOrder, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param path       the file
+     * @param byteOrder  the byte order
+     * @param windowSize the size of a window in bytes
+     * @throws IOException if the file can not be opened
+     */
+    public MappedFileImageInputStream(Path path, ByteOrder byteOrder, int windowSize) throws IOException {
+        if (windowSize < 8) {
+            throw new IllegalArgumentException("windowSize must be at least 8:" + windowSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.length = channel.size();
+            this.windowSize = windowSize;
+            this.byteOrder = byteOrder;
+            map(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an input stream for the specified file. This method is used by
+     * the file readers of this library, for example by
+     * {@code AVIInputStream}, {@code QuickTimeInputStream} and
+     * {@code EXIFReader}.
+     * <p>
+     * If mapping is enabled, see {@link #setMappingEnabled(boolean)}, maps
+     * the file into memory if possible. Otherwise, or if the file can not be
+     * mapped, opens a {@link FileImageInputStream}.
+     *
+     * @param file the file
+     * @return an input stream with big endian byte order
+     * @throws IOException if the file can not be opened
+     */
+    public static ImageInputStream open(File file) throws IOException {
+        return open(file, mappingEnabled);
+    }
+
+    /**
+     * Opens an input stream for the specified file.
+     *
+     * @param file the file
+     * @param map  whether the file shall be mapped into memory. If the file
+     *             can not be mapped, opens a {@link FileImageInputStream}.
+     * @return an input stream with big endian byte order
+     * @throws IOException if the file can not be opened
+     */
+    public static ImageInputStream open(File file, boolean map) throws IOException {
+        if (map) {
+            try {
+                return new MappedFileImageInputStream(file);
+            } catch (IOException | UnsupportedOperationException e) {
+                // fall back to a file stream
+            }
+        }
+        return new FileImageInputStream(file);
+    }
+
+    /**
+     * Returns whether {@link #open(File)} maps files into memory.
+     *
+     * @return true if mapping is enabled
+     */
+    public static boolean isMappingEnabled() {
+        return mappingEnabled;
+    }
+
+    /**
+     * Sets whether {@link #open(File)} maps files into memory.
+     * <p>
+     * Mapping speeds up readers that seek a lot, but a mapped file stays
+     * locked on Windows until the mapping has been garbage collected, even
+     * after the stream has been closed. The default value is false.
+     *
+     * @param newValue true to enable mapping
+     */
+    public static void setMappingEnabled(boolean newValue) {
+        mappingEnabled = newValue;
+    }
+
+    /**
+     * Maps the window that contains the specified file position.
+     */
+    private void map(long pos) throws IOException {
+        long start = pos - pos % windowSize;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, length - start));
+        window.order(byteOrder);
+        windowStart = start;
+    }
+
+    /**
+     * Returns the window index of the current stream position, mapping the
+     * window if necessary. Returns -1 if the position is at the end of the
+     * file.
+     */
+    private int index() throws IOException {
+        if (streamPos >= length) {
+            return -1;
+        }
+        long index = streamPos - windowStart;
+        if (index < 0 || index >= window.limit()) {
+            map(streamPos);
+            index = streamPos - windowStart;
+        }
+        return (int) index;
+    }
+
+    @Override
+    public void setByteOrder(ByteOrder byteOrder) {
+        super.setByteOrder(byteOrder);
+        window.order(byteOrder);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        int index = index();
+        if (index < 0) {
+            return -1;
+        }
+        streamPos++;
+        return window.get(index) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int index = index();
+        if (index < 0) {
+            return -1;
+        }
+        int n = Math.min(len, window.limit() - index);
+        window.get(index, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        while (len > 0) {
+            int index = index();
+            if (index < 0) {
+                throw new EOFException();
+            }
+            int n = Math.min(len, window.limit() - index);
+            window.get(index, b, off, n);
+            streamPos += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        int index = fastIndex(2);
+        if (index < 0) {
+            return super.readShort();
+        }
+        streamPos += 2;
+        return window.getShort(index);
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        int index = fastIndex(4);
+        if (index < 0) {
+            return super.readInt();
+        }
+        streamPos += 4;
+        return window.getInt(index);
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        int index = fastIndex(8);
+        if (index < 0) {
+            return super.readLong();
+        }
+        streamPos += 8;
+        return window.getLong(index);
+    }
+
+    /**
+     * Returns the window index of the current stream position, if the
+     * specified number of bytes can be read from the current window.
+     * Returns -1 otherwise.
+     */
+    private int fastIndex(int n) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        int index = index();
+        return index >= 0 && index + n <= window.limit() ? index : -1;
+    }
+
+    /**
+     * Returns a read-only view of the specified region of the file. The
+     * stream position is not changed.
+     * <p>
+     * The view is backed by the mapped file, no bytes are copied. It remains
+     * valid after this stream has been closed.
+     *
+     * @param pos    the file position of the region
+     * @param length the length of the region
+     * @return a read-only byte buffer with position 0 and limit
+     * {@code length}
+     * @throws IOException if the region can not be mapped
+     */
+    public ByteBuffer slice(long pos, int length) throws IOException {
+        checkClosed();
+        if (pos < 0 || length < 0 || pos > this.length - length) {
+            throw new IndexOutOfBoundsException("pos=" + pos + " length=" + length + " file length=" + this.length);
+        }
+        if (length == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        long index = pos - windowStart;
+        if (index < 0 || index + length > window.limit()) {
+            if (pos / windowSize != (pos + length - 1) / windowSize) {
+                // The region crosses a window boundary
+                return channel.map(FileChannel.MapMode.READ_ONLY, pos, length).asReadOnlyBuffer();
+            }
+            map(pos);
+            index = pos - windowStart;
+        }
+        return window.slice((int) index, length).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        checkClosed();
+        if (pos < flushedPos) {
+            throw new IndexOutOfBoundsException("pos < flushedPos!");
+        }
+        bitOffset = 0;
+        streamPos = pos;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Closes the file. The memory of the mapped window is released when it
+     * is garbage collected. Until then, the file can not be deleted, renamed
+     * or overwritten on Windows.
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * @(#)ParallelDeflater.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+package org.monte.media.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Compresses a byte array into a ZLIB stream using multiple threads.
+ * <p>
+ * The input is split up into blocks which are compressed independently of
+ * each other into raw deflate blocks. All blocks but the last one are
+ * terminated with a sync-flush, so that they end on a byte boundary and can
+ * be concatenated. Each block is primed with the last 32 KiB of the
+ * preceding block as a preset dictionary, so that the compression ratio
+ * is close to that of a single deflate stream.
+ * <p>
+ * The result is a regular ZLIB stream (RFC 1950) which can be decompressed
+ * with an {@link java.util.zip.InflaterInputStream}.
+ * <p>
+ * References:
+ * <dl>
+ *     <dt>RFC 1950, ZLIB Compressed Data Format Specification version 3.3</dt>
+ *     <dd><a href="https://www.rfc-editor.org/rfc/rfc1950">rfc-editor.org</a></dd>
+ *     <dt>pigz, A parallel implementation of gzip</dt>
+ *     <dd><a href="https://zlib.net/pigz/">zlib.net</a></dd>
+ * </dl>
+ *
+ * @author Werner Randelshofer
+ */
+public class ParallelDeflater {
+    /**
+     * The default size of a block in bytes.
+     */
+    public final static int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    /**
+     * The size of the deflate sliding window.
+     */
+    private final static int DICTIONARY_SIZE = 32 * 1024;
+    /**
+     * The largest prime smaller than 65536.
+     */
+    private final static int ADLER_BASE = 65521;
+    /**
+     * The pool of raw deflaters with default compression level.
+     */
+    private final static DeflaterPool defaultPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_STRATEGY, true, DeflaterPool.DEFAULT_CAPACITY);
+
+    /**
+     * Don't let anyone instantiate this class.
+     */
+    private ParallelDeflater() {
+    }
+
+    /**
+     * Compresses the specified data with the default compression level and
+     * the default block size.
+     *
+     * @param b   the data
+     * @param off the offset of the data
+     * @param len the length of the data
+     * @param out the output stream
+     * @throws IOException if writing to the output stream fails
+     */
+    public static void deflate(byte[] b, int off, int len, OutputStream out) throws IOException {
+        deflate(b, off, len, defaultPool, DEFAULT_BLOCK_SIZE, out);
+    }
+
+    /**
+     * Compresses the specified data.
+     * <p>
+     * If the data fits into a single block, the data is compressed on the
+     * current thread.
+     *
+     * @param b         the data
+     * @param off       the offset of the data
+     * @param len       the length of the data
+     * @param pool      the pool from which deflaters are acquired, the pool
+     *                  must produce raw deflate data
+     * @param blockSize the size of a block
+     * @param out       the output stream
+     * @throws IOException if writing to the output stream fails
+     */
+    public static void deflate(byte[] b, int off, int len, DeflaterPool pool, int blockSize, OutputStream out) throws IOException {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("blockSize must be >= " + DICTIONARY_SIZE + ", blockSize=" + blockSize);
+        }
+        if (!pool.isNowrap()) {
+            throw new IllegalArgumentException("pool must produce raw deflate data");
+        }
+        int n = max(1, (len + blockSize - 1) / blockSize);
+        byte[][] blocks = new byte[n][];
+        int[] blockLengths = new int[n];
+        long[] checksums = new long[n];
+
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int from = off + i * blockSize;
+            int to = min(off + len, from + blockSize);
+            SeekableByteArrayOutputStream buf = new SeekableByteArrayOutputStream(to - from + 64);
+            byte[] tmp = new byte[8192];
+            Deflater deflater = pool.acquire();
+            try {
+                if (i > 0) {
+                    int dictFrom = max(off, from - DICTIONARY_SIZE);
+                    deflater.setDictionary(b, dictFrom, from - dictFrom);
+                }
+                deflater.setInput(b, from, to - from);
+                if (i == n - 1) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(tmp);
+                        buf.write(tmp, 0, count);
+                    }
+                } else {
+                    int count;
+                    do {
+                        count = deflater.deflate(tmp, 0, tmp.length, Deflater.SYNC_FLUSH);
+                        buf.write(tmp, 0, count);
+                    } while (count == tmp.length);
+                }
+            } finally {
+                pool.release(deflater);
+            }
+            Adler32 adler = new Adler32();
+            adler.update(b, from, to - from);
+            blocks[i] = buf.getBuffer();
+            blockLengths[i] = buf.size();
+            checksums[i] = adler.getValue();
+        });
+
+        // ZLIB header: 32 KiB window, deflate method
+        int cmf = 0x78;
+        int level = pool.getLevel();
+        int flg;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+            flg = 2 << 6;
+        } else if (level < 2) {
+            flg = 0;
+        } else if (level < 6) {
+            flg = 1 << 6;
+        } else {
+            flg = 3 << 6;
+        }
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        out.write(cmf);
+        out.write(flg);
+
+        long checksum = checksums[0];
+        out.write(blocks[0], 0, blockLengths[0]);
+        for (int i = 1; i < n; i++) {
+            out.write(blocks[i], 0, blockLengths[i]);
+            int blockLen = min(blockSize, len - i * blockSize);
+            checksum = combineAdler32(checksum, checksums[i], blockLen);
+        }
+
+        // ZLIB trailer: Adler-32 checksum of the uncompressed data
+        out.write((int) (checksum >>> 24) & 0xff);
+        out.write((int) (checksum >>> 16) & 0xff);
+        out.write((int) (checksum >>> 8) & 0xff);
+        out.write((int) checksum & 0xff);
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive sequences of data.
+     * <p>
+     * This is the same algorithm as {@code adler32_combine} in zlib.
+     *
+     * @param adler1 the checksum of the first sequence
+     * @param adler2 the checksum of the second sequence
+     * @param len2   the length of the second sequence
+     * @return the checksum of the concatenated sequences
+     */
+    static long combineAdler32(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= ((long) ADLER_BASE << 1)) {
+            sum2 -= ((long) ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
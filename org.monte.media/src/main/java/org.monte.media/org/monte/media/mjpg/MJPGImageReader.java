@@ -45,10 +45,28 @@ public class MJPGImageReader extends ImageReader {
      */
     private boolean didReturnImage;
 
+    /**
+     * The JPEG image reader that decodes the image.
+     */
+    private ImageReader jpegReader;
+
     public MJPGImageReader(ImageReaderSpi originatingProvider) {
         super(originatingProvider);
     }
 
+    /**
+     * Sets the input and discards the image that has been read from the
+     * previous input. This allows to reuse the reader for multiple images.
+     */
+    @Override
+    public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+        super.setInput(input, seekForwardOnly, ignoreMetadata);
+        if (image != null && !didReturnImage) {
+            image.flush();
+        }
+        image = null;
+    }
+
     @Override
     public int getNumImages(boolean allowSearch) throws IOException {
         return 1;
@@ -90,7 +108,7 @@ public class MJPGImageReader extends ImageReader {
             throw new IndexOutOfBoundsException();
         }
         readHeader();
-
+        didReturnImage = true;
         return image;
     }
 
@@ -101,7 +119,10 @@ public class MJPGImageReader extends ImageReader {
     private void readHeader() throws IOException {
         if (image == null) {
 
-            ImageReader r = getBasicJPEGImageReader();
+            if (jpegReader == null) {
+                jpegReader = getBasicJPEGImageReader();
+            }
+            ImageReader r = jpegReader;
             Object in = getInput();
             /*if (in instanceof Buffer) {
              Buffer buffer = (Buffer) in;
@@ -116,6 +137,7 @@ public class MJPGImageReader extends ImageReader {
             }
             didReturnImage = false;
             image = r.read(0);
+            r.setInput(null);
         }
     }
 
@@ -147,6 +169,10 @@ public class MJPGImageReader extends ImageReader {
             // image anymore
         } finally {
             image = null;
+            if (jpegReader != null) {
+                jpegReader.dispose();
+                jpegReader = null;
+            }
         }
     }
 }
@@ -8,6 +8,7 @@ import org.monte.media.av.Buffer;
 import org.monte.media.av.Codec;
 import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.av.codec.video.ParallelVideoEncoder;
 import org.monte.media.io.ImageOutputStreamAdapter;
 import org.monte.media.math.Rational;
 
@@ -747,6 +748,11 @@ public class AbstractQuickTimeStream {
         protected Codec codec;
         protected Buffer outputBuffer;
         protected Buffer inputBuffer;
+        /**
+         * The parallel encoder, or null if the samples are encoded on the
+         * writer thread.
+         */
+        protected ParallelVideoEncoder parallelEncoder;
         /**
          * Start time of the first buffer that was added to the track.
          */
@@ -859,16 +865,17 @@ public class AbstractQuickTimeStream {
 
             // Keep track of sync samples. If all samples in a track are sync
             // samples, we do not need to create a syncSample list.
+            // Sample numbers are 1-based.
             if (isSyncSample) {
                 if (syncSamples != null) {
-                    for (long i = sampleCount - chunk.sampleCount; i < sampleCount; i++) {
+                    for (long i = sampleCount - chunk.sampleCount + 1; i <= sampleCount; i++) {
                         syncSamples.add(i);
                     }
                 }
             } else {
                 if (syncSamples == null) {
                     syncSamples = new ArrayList<Long>();
-                    for (long i = 1; i < sampleCount; i++) {
+                    for (long i = 1; i <= sampleCount - chunk.sampleCount; i++) {
                         syncSamples.add(i);
                     }
                 }
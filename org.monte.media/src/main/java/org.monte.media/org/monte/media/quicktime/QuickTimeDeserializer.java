@@ -5,18 +5,20 @@
 package org.monte.media.quicktime;
 
 import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.io.InflaterPool;
+import org.monte.media.io.MappedFileImageInputStream;
 import org.monte.media.io.UncachedImageInputStream;
 
-import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
-import java.util.TreeSet;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import static org.monte.media.math.MathUtils.clamp;
@@ -77,7 +79,7 @@ public class QuickTimeDeserializer {
 
     public QuickTimeMeta read(URI uri) throws IOException {
         QuickTimeMeta m = new QuickTimeMeta();
-        QTFFImageInputStream in = new QTFFImageInputStream(new FileImageInputStream(new File(uri)));
+        QTFFImageInputStream in = new QTFFImageInputStream(MappedFileImageInputStream.open(new File(uri)));
         parse(in, m);
         return m;
     }
@@ -306,8 +308,14 @@ public class QuickTimeDeserializer {
             // decompress the header into a byte array and then parse it
             byte[] compressed = new byte[(int) remainingSize - 4];
             in.readFully(compressed);
-            QTFFImageInputStream decompressed = new QTFFImageInputStream(new UncachedImageInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed))));
-            parseRecursively(decompressed, sizeOfDecompressedData, m);
+            InflaterPool pool = InflaterPool.getDefault();
+            Inflater inflater = pool.acquire();
+            try {
+                QTFFImageInputStream decompressed = new QTFFImageInputStream(new UncachedImageInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed), inflater)));
+                parseRecursively(decompressed, sizeOfDecompressedData, m);
+            } finally {
+                pool.release(inflater);
+            }
         }
     }
 
@@ -1139,9 +1147,9 @@ public class QuickTimeDeserializer {
         if (version != 0) return;
         in.skipBytes(3);
         int numberOfEntries = in.readInt();
-        m.chunkOffsets.clear();
+        m.chunkOffsets = new long[numberOfEntries];
         for (int i = 0; i < numberOfEntries; i++) {
-            m.chunkOffsets.add(in.readUnsignedInt());
+            m.chunkOffsets[i] = in.readUnsignedInt();
         }
     }
 
@@ -1166,9 +1174,9 @@ public class QuickTimeDeserializer {
         if (version != 0) return;
         in.skipBytes(3);
         int numberOfEntries = in.readInt();
-        m.chunkOffsets.clear();
+        m.chunkOffsets = new long[numberOfEntries];
         for (int i = 0; i < numberOfEntries; i++) {
-            m.chunkOffsets.add(in.readLong());
+            m.chunkOffsets[i] = in.readLong();
         }
     }
 
@@ -1201,10 +1209,13 @@ public class QuickTimeDeserializer {
         if (numberOfEntries == 0) {
             m.syncSamples = null;
         } else {
-            m.syncSamples = new TreeSet<Long>();
+            m.syncSamples = new BitSet();
             for (int i = 0; i < numberOfEntries; i++) {
                 // the sample ids are one-based, but we want zero-based indices
-                m.syncSamples.add(in.readUnsignedInt() - 1);
+                long index = in.readUnsignedInt() - 1;
+                if (index >= 0 && index < Integer.MAX_VALUE) {
+                    m.syncSamples.set((int) index);
+                }
             }
         }
     }
@@ -1238,22 +1249,14 @@ public class QuickTimeDeserializer {
         in.skipBytes(3);
         int sampleSize = in.readInt();
         int numberOfEntries = in.readInt();
-        m.sampleSizes.clear();
+        m.sampleSize = sampleSize;
         if (sampleSize != 0) {
             // all samples have the same size
-            QuickTimeMeta.MediaSample firstSample = new QuickTimeMeta.MediaSample(-1, -1, sampleSize);
-            QuickTimeMeta.MediaSample lastSample = new QuickTimeMeta.MediaSample(-1, -1, sampleSize);
-            QuickTimeMeta.SampleSizeGroup ssg = new QuickTimeMeta.SampleSizeGroup(firstSample, lastSample, numberOfEntries);
-            m.sampleSizes.add(ssg);
+            m.sampleSizeTable = null;
         } else {
-            QuickTimeMeta.SampleSizeGroup ssg = null;
+            m.sampleSizeTable = new int[numberOfEntries];
             for (int i = 0; i < numberOfEntries; i++) {
-                int size = in.readInt();
-                QuickTimeMeta.MediaSample s = new QuickTimeMeta.MediaSample(-1, -1, size);
-                if (ssg == null || !ssg.maybeAddSample(s)) {
-                    ssg = new QuickTimeMeta.SampleSizeGroup(s);
-                    m.sampleSizes.add(ssg);
-                }
+                m.sampleSizeTable[i] = in.readInt();
             }
         }
     }
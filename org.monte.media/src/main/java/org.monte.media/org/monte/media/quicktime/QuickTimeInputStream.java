@@ -4,7 +4,8 @@
  */
 package org.monte.media.quicktime;
 
-import javax.imageio.stream.FileImageInputStream;
+import org.monte.media.io.MappedFileImageInputStream;
+
 import javax.imageio.stream.ImageInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -39,7 +40,7 @@ public class QuickTimeInputStream {
      */
     public QuickTimeInputStream(File file) throws IOException {
 
-        this.in = new FileImageInputStream(file);
+        this.in = MappedFileImageInputStream.open(file);
         in.setByteOrder(ByteOrder.BIG_ENDIAN);
         this.streamOffset = 0;
     }
@@ -355,14 +355,30 @@ public class QuickTimeMeta extends AbstractMovie {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * Returns the index of the track sample at the specified time.
+     *
+     * @param track   the track index
+     * @param seconds the time
+     * @return the index of the track sample
+     */
     @Override
     public long timeToSample(int track, Rational seconds) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return tracks.get(track).timeToTrackSample(seconds.floorNumerator(timeScale));
     }
 
+    /**
+     * Returns the time of the specified track sample. If the index is after
+     * the last sample, the end time of the track is returned.
+     *
+     * @param track  the track index
+     * @param sample the index of the track sample
+     * @return the time
+     */
     @Override
     public Rational sampleToTime(int track, long sample) {
-        throw new UnsupportedOperationException("Not supported yet.");
+        long[] times = tracks.get(track).trackSampleTimes;
+        return new Rational(times[(int) Math.max(0, Math.min(times.length - 1, sample))], timeScale);
     }
 
     @Override
@@ -560,31 +576,13 @@ public class QuickTimeMeta extends AbstractMovie {
          */
         long duration;
 
-        /**
-         * The edited start time in the media time sample in media timescale.
-         * <p>
-         * The value is 0 the track sample starts at the beginning of the
-         * media sample.
-         */
-        long startTimeInMediaSample;
-        /**
-         * The edited end time in the media time sample in media timescale.
-         * <p>
-         * The value is mediaSample.duration if the track sample ends at the
-         * end of the media sample.
-         */
-        long endTimeInMediaSample;
-
         /**
          * Creates a new sample.
          */
-        public TrackSample(MediaSample mediaSample, long timeStamp, long duration,
-                           long startTimeInMediaSample, long endTimeInMediaSample) {
+        public TrackSample(MediaSample mediaSample, long timeStamp, long duration) {
             this.mediaSample = mediaSample;
             this.timeStamp = timeStamp;
             this.duration = duration;
-            this.startTimeInMediaSample = startTimeInMediaSample;
-            this.endTimeInMediaSample = endTimeInMediaSample;
         }
     }
 
@@ -648,55 +646,6 @@ public class QuickTimeMeta extends AbstractMovie {
 
     }
 
-    /**
-     * Groups consecutive samples of the same size.
-     */
-    protected static class SampleSizeGroup extends Group {
-
-        public SampleSizeGroup(MediaSample firstSample) {
-            super(firstSample);
-        }
-
-        public SampleSizeGroup(Group group) {
-            super(group);
-        }
-
-        public SampleSizeGroup(MediaSample firstSample, MediaSample lastSample, long sampleCount) {
-            super(firstSample, lastSample, sampleCount);
-        }
-
-        /**
-         * Returns true, if the sample was added to the group. If false is
-         * returned, the sample must be added to a new group.
-         * <p>
-         * A sample can only be added to a SampleSizeGroup, if it has the same
-         * size as previously added samples, and if the capacity of the group is
-         * not exceeded.
-         */
-        @Override
-        public boolean maybeAddSample(MediaSample sample) {
-            if (firstSample.length == sample.length) {
-                return super.maybeAddSample(sample);
-            }
-            return false;
-        }
-
-        @Override
-        public boolean maybeAddChunk(Chunk chunk) {
-            if (firstSample.length == chunk.firstSample.length) {
-                return super.maybeAddChunk(chunk);
-            }
-            return false;
-        }
-
-        /**
-         * Returns the length that all samples in this group share.
-         */
-        public long getSampleLength() {
-            return firstSample.length;
-        }
-    }
-
     /**
      * Groups consecutive samples with the same sample description Id and with
      * adjacent offsets in the movie file.
@@ -766,19 +715,31 @@ public class QuickTimeMeta extends AbstractMovie {
      */
     protected static class Track {
         /**
-         * Table of samples in this track.
+         * Table of samples in this track: the index of the media sample of
+         * each track sample.
          * <p>
          * This value is derived from the media data in this track,
          * and from the edit list of this track.
          * <p>
          * This value is set to null to indicate that it must be recomputed.
-         * <dl>
-         *     <dt>Map.key</dt><dd>absolute movie time of a track sample</dd>
-         *     <dt>Map.value</dt><dd>track sample</dd>
-         * </dl>
          */
-        public NavigableMap<Long, ArrayList<TrackSample>> trackSampleMap = null;
-        public ArrayList<TrackSample> trackSamplesList = null;
+        protected int[] trackSampleMediaIndices = null;
+        /**
+         * Table of samples in this track: the time stamps of the track samples
+         * in movie timescale units, followed by the end time of the track.
+         * Track samples which are hidden by a following sample with the same
+         * time stamp have a duration of 0.
+         * <p>
+         * This value is derived together with {@link #trackSampleMediaIndices}.
+         */
+        protected long[] trackSampleTimes = null;
+        /**
+         * The indices of the track samples which are sync samples, in
+         * ascending order.
+         * <p>
+         * This value is derived together with {@link #trackSampleMediaIndices}.
+         */
+        protected int[] trackSyncSamples = null;
         public int readIndex;
         /**
          * The media type of the track.
@@ -929,17 +890,20 @@ public class QuickTimeMeta extends AbstractMovie {
         }
 
         public void buildTrackSamplesTable(long movieTimeScale) throws IOException {
-            trackSampleMap = new TreeMap<>();
-            trackSamplesList = new ArrayList<>();
-            NavigableMap<Long, ArrayList<MediaSample>> mediaSamplesMap = media == null ? null : media.mediaSamples;
-            if (mediaSamplesMap == null) {
+            Media m = media;
+            if (m == null || m.sampleTimes == null) {
                 throw new IOException("track " + trackId + ": 'mdia' atom does not exist or is incomplete");
             }
 
-            long mediaTimeScale = media.mediaTimeScale;
+            long mediaTimeScale = m.mediaTimeScale;
             if (editList.isEmpty()) {
                 editList.add(new Edit(duration, 0, 1.0));
             }
+            long[] mediaTimes = m.sampleTimes;
+            int mediaSampleCount = mediaTimes.length - 1;
+            int[] indices = new int[mediaSampleCount];
+            long[] times = new long[mediaSampleCount + 1];
+            int count = 0;
             long editTrackTime = 0;
             for (final Edit edit : editList) {
                 if (edit.mediaTime == -1) {
@@ -947,58 +911,134 @@ public class QuickTimeMeta extends AbstractMovie {
                     continue;
                 }
                 double mediaRate = edit.mediaRate;
-                long editMediaEndTime = (long) (edit.mediaTime + edit.trackDuration * mediaRate * mediaTimeScale / movieTimeScale);
-                long sampleTrackTime = editTrackTime;
-                double invMediaRate = 1.0 / edit.mediaRate;
                 long mediaDuration = (long) (edit.trackDuration * mediaRate * mediaTimeScale / movieTimeScale);
-                Long floorKey = mediaSamplesMap.floorKey(edit.mediaTime);
-                floorKey = media.syncSamples == null ? floorKey : media.syncSamples.floor(floorKey);
-                if (floorKey == null) {
-                    // We do not have a key frame. Skip this edit.
-                    editTrackTime += edit.trackDuration;
-                    continue;
-                }
-
-                for (var entry : mediaSamplesMap.subMap(floorKey, edit.mediaTime + mediaDuration).entrySet()) {
-                    ArrayList<MediaSample> mediaSamples = entry.getValue();
-                    if (mediaSamples.isEmpty()) {
-                        continue;
-                    }
-                    long mediaSampleTime = entry.getKey();
+                long editMediaEndTime = edit.mediaTime + mediaDuration;
+                double invMediaRate = 1.0 / edit.mediaRate;
+                long sampleTrackTime = editTrackTime;
 
-                    // if multiple samples have the same timestamp, then only the last one has a duration >=0
-                    MediaSample lastMediaSample = mediaSamples.get(mediaSamples.size() - 1);
-                    long mediaSampleDuration = lastMediaSample.duration;
-                    // cut duration if the media sample ends after the end time of the edit
-                    long cutStart = Math.max(0, mediaSampleTime + mediaSampleDuration - editMediaEndTime);
+                // start at the sync sample at or before the start of the edit
+                int first = m.findSyncSample(m.timeToMediaSample(edit.mediaTime));
+                for (int i = first; i < mediaSampleCount && mediaTimes[i] < editMediaEndTime; i++) {
+                    long mediaSampleTime = mediaTimes[i];
+                    long mediaSampleDuration = mediaTimes[i + 1] - mediaSampleTime;
                     // cut duration if the media sample starts before the start time of the edit
-                    long cutEnd = Math.max(0, edit.mediaTime - mediaSampleTime);
-                    mediaSampleDuration = Math.max(0, mediaSampleDuration - cutStart + cutEnd);
-
+                    long cutStart = Math.max(0, edit.mediaTime - mediaSampleTime);
+                    // cut duration if the media sample ends after the end time of the edit
+                    long cutEnd = Math.max(0, mediaSampleTime + mediaSampleDuration - editMediaEndTime);
+                    mediaSampleDuration = Math.max(0, mediaSampleDuration - cutStart - cutEnd);
                     long trackSampleDuration = Math.max(0, (long) (mediaSampleDuration * invMediaRate * movieTimeScale / mediaTimeScale));
 
-                    for (int i = 0, n = mediaSamples.size(); i < n - 1; i++) {
-                        TrackSample trackSample = new TrackSample(mediaSamples.get(i), sampleTrackTime, 0, 0, 0);
-                        trackSampleMap.computeIfAbsent(sampleTrackTime, k -> new ArrayList<>()).add(trackSample);
-                        trackSamplesList.add(trackSample);
+                    if (count == indices.length) {
+                        indices = Arrays.copyOf(indices, count * 2 + 16);
+                        times = Arrays.copyOf(times, count * 2 + 17);
                     }
-                    TrackSample trackSample = new TrackSample(lastMediaSample, sampleTrackTime, duration, cutStart, mediaSampleDuration);
-                    trackSampleMap.computeIfAbsent(sampleTrackTime, k -> new ArrayList<>()).add(trackSample);
-                    trackSamplesList.add(trackSample);
-
+                    indices[count] = i;
+                    times[count] = sampleTrackTime;
+                    count++;
                     sampleTrackTime += trackSampleDuration;
                 }
                 editTrackTime += edit.trackDuration;
             }
+            times[count] = Math.max(editTrackTime, count == 0 ? 0 : times[count - 1]);
+
+            int[] syncSamples = new int[count];
+            int syncCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (m.isSyncSample(indices[i])) {
+                    syncSamples[syncCount++] = i;
+                }
+            }
+            trackSampleMediaIndices = indices.length == count ? indices : Arrays.copyOf(indices, count);
+            trackSampleTimes = times.length == count + 1 ? times : Arrays.copyOf(times, count + 1);
+            trackSyncSamples = Arrays.copyOf(syncSamples, syncCount);
         }
 
-        public void buildMediaSamplesTable(long movieTimeScale) throws IOException {
-            // XXX For PCM audio media, we must create one sample per chunk
+        /**
+         * Returns the number of track samples.
+         */
+        public int getTrackSampleCount() {
+            return trackSampleMediaIndices.length;
+        }
 
+        /**
+         * Returns the index of the media sample of the specified track sample.
+         */
+        public int getMediaSampleIndex(int trackSample) {
+            return trackSampleMediaIndices[trackSample];
+        }
 
+        /**
+         * Returns the time stamp of the specified track sample in movie
+         * timescale units.
+         */
+        public long getTrackSampleTime(int trackSample) {
+            return trackSampleTimes[trackSample];
+        }
+
+        /**
+         * Returns the duration of the specified track sample in movie
+         * timescale units.
+         */
+        public long getTrackSampleDuration(int trackSample) {
+            return trackSampleTimes[trackSample + 1] - trackSampleTimes[trackSample];
+        }
+
+        /**
+         * Returns the specified track sample. The track sample is created on
+         * demand.
+         */
+        public TrackSample getTrackSample(int trackSample) {
+            return new TrackSample(media.getMediaSample(trackSampleMediaIndices[trackSample]),
+                    getTrackSampleTime(trackSample), getTrackSampleDuration(trackSample));
+        }
+
+        /**
+         * Returns the index of the track sample at the specified time.
+         * <p>
+         * If multiple track samples have the same time stamp, the index of the
+         * first one is returned.
+         *
+         * @param trackTime a time in movie timescale units
+         * @return the index of the track sample, or the number of track samples
+         * if the time is at or after the end of the track
+         */
+        public int timeToTrackSample(long trackTime) {
+            long[] times = trackSampleTimes;
+            int n = times.length - 1;
+            if (trackTime >= times[n]) {
+                return n;
+            }
+            int index = Arrays.binarySearch(times, 0, n, trackTime);
+            if (index < 0) {
+                // => the time is inside the sample before the insertion point
+                index = -index - 2;
+            } else {
+                // => skip back over samples with the same time stamp
+                while (index > 0 && times[index - 1] == trackTime) {
+                    index--;
+                }
+            }
+            return Math.max(0, index);
+        }
+
+        /**
+         * Returns the index of the sync sample at or before the specified
+         * track sample.
+         *
+         * @param trackSample the index of a track sample
+         * @return the index of the sync sample, or 0 if there is none
+         */
+        public int findSyncSample(int trackSample) {
+            int index = Arrays.binarySearch(trackSyncSamples, trackSample);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index < 0 ? 0 : trackSyncSamples[index];
+        }
+
+        public void buildMediaSamplesTable(long movieTimeScale) throws IOException {
             Media m = media;
-            m.mediaSamples = new TreeMap<>();
-            if (m.sampleSizes.isEmpty()) {
+            if (m.sampleSize == 0 && m.sampleSizeTable == null) {
                 throw new IOException("track " + trackId + ": 'mdia' atom does not contain an 'stsz' atom.");
             }
             if (m.samplesToChunks.isEmpty()) {
@@ -1007,72 +1047,58 @@ public class QuickTimeMeta extends AbstractMovie {
             if (m.timeToSamples.isEmpty()) {
                 throw new IOException("track " + trackId + ": 'mdia' atom does not contain an 'stts' atom.");
             }
-            if (m.chunkOffsets.isEmpty()) {
+            if (m.chunkOffsets.length == 0) {
                 throw new IOException("track " + trackId + ": 'mdia' atom does neither contain an 'stco' nor an 'co64' atom.");
             }
-
-            TreeMap<Integer, SampleSizeGroup> sampleSizeMap = new TreeMap<>();
-            int sampleIndex = 0;
-            for (SampleSizeGroup ssg : m.sampleSizes) {
-                sampleSizeMap.put(sampleIndex, ssg);
-                sampleIndex += ssg.sampleCount;
-            }
-            TreeMap<Integer, SampleToChunk> sampleChunkMap = new TreeMap<>();
-            sampleIndex = 0;
-            int prevFirstChunk = 1;
-            int prevSamplesPerChunk = 0;
-            for (SampleToChunk stc : m.samplesToChunks) {
-                sampleIndex += (stc.firstChunk - prevFirstChunk) * prevSamplesPerChunk;
-                sampleChunkMap.put(sampleIndex, stc);
-                prevFirstChunk = stc.firstChunk;
-                prevSamplesPerChunk = stc.samplesPerChunk;
+            if (m.sampleCount > Integer.MAX_VALUE - 1) {
+                throw new IOException("track " + trackId + ": too many samples " + m.sampleCount);
             }
 
+            int n = (int) m.sampleCount;
+            long[] times = new long[n + 1];
+            int[] lengths = new int[n];
+            long[] offsets = new long[n];
 
-            sampleIndex = 0;
+            // We can have samples with zero duration.
+            int sampleIndex = 0;
             long time = 0;
-            int firstChunkId = -1;
-            int chunkId = -1;
-            int remainingSamplesInChunk = 0;
-            long offset = -1;
             for (TimeToSampleGroup tsg : m.timeToSamples) {
                 long duration = tsg.getSampleDuration();
-                for (int i = 0; i < tsg.sampleCount; i++) {
-                    var sizeEntry = sampleSizeMap.floorEntry(sampleIndex);
-                    long length = sizeEntry == null ? -1 : sizeEntry.getValue().getSampleLength();
-
-                    if (remainingSamplesInChunk == 0) {
-                        Map.Entry<Integer, SampleToChunk> chunkEntry = sampleChunkMap.floorEntry(sampleIndex);
-                        if (chunkEntry == null) {
-                            throw new IOException("track " + trackId + ": 'stsc' atom does not contain required chunk entry");
-                        }
-                        SampleToChunk stsc = chunkEntry.getValue();
-                        if (stsc.firstChunk != firstChunkId) {
-                            firstChunkId = stsc.firstChunk;
-                            chunkId = stsc.firstChunk;
-                        } else {
-                            chunkId++;
-                        }
-                        remainingSamplesInChunk = stsc.samplesPerChunk;
-                        if (chunkId < 0 || chunkId > m.chunkOffsets.size()) {
-                            throw new IOException("track " + trackId + ": 'stco' or 'co64' atom does not contain an entry for chunkId=" + chunkId);
-                        }
-                        offset = m.chunkOffsets.get(chunkId - 1);
-                    }
+                for (long i = 0; i < tsg.sampleCount && sampleIndex < n; i++) {
+                    times[sampleIndex++] = time;
+                    time += duration;
+                }
+            }
+            times[n] = time;
 
-                    // We can have samples with zero duration.
-                    MediaSample sample = new MediaSample(duration, offset, length);
-                    sample.timeStamp = time;
-                    sample.isKeyframe = m.syncSamples == null || m.syncSamples.contains((long) (sampleIndex + 1));
-                    m.mediaSamples.computeIfAbsent(time, k -> new ArrayList<>(1)).add(sample);
+            for (int i = 0; i < n; i++) {
+                lengths[i] = m.sampleSizeTable == null ? m.sampleSize
+                        : i < m.sampleSizeTable.length ? m.sampleSizeTable[i] : -1;
+            }
 
-                    time += duration;
-                    remainingSamplesInChunk--;
-                    offset += length;
-                    sampleIndex++;
+            sampleIndex = 0;
+            for (int k = 0, stscCount = m.samplesToChunks.size(); k < stscCount && sampleIndex < n; k++) {
+                SampleToChunk stsc = m.samplesToChunks.get(k);
+                int lastChunk = k + 1 < stscCount ? m.samplesToChunks.get(k + 1).firstChunk - 1 : m.chunkOffsets.length;
+                for (int chunkId = stsc.firstChunk; chunkId <= lastChunk && sampleIndex < n; chunkId++) {
+                    if (chunkId < 1 || chunkId > m.chunkOffsets.length) {
+                        throw new IOException("track " + trackId + ": 'stco' or 'co64' atom does not contain an entry for chunkId=" + chunkId);
+                    }
+                    long offset = m.chunkOffsets[chunkId - 1];
+                    for (int j = 0; j < stsc.samplesPerChunk && sampleIndex < n; j++) {
+                        offsets[sampleIndex] = offset;
+                        offset += lengths[sampleIndex];
+                        sampleIndex++;
+                    }
                 }
-                time += duration;
             }
+            if (sampleIndex < n) {
+                throw new IOException("track " + trackId + ": 'stsc' atom does not contain required chunk entry");
+            }
+
+            m.sampleTimes = times;
+            m.sampleLengths = lengths;
+            m.sampleOffsets = offsets;
         }
 
 
@@ -1133,9 +1159,9 @@ public class QuickTimeMeta extends AbstractMovie {
         protected ArrayList<DataReference> dataReferenceList = new ArrayList<DataReference>();
         // END Data Reference List
         /**
-         * List of chunk offsets.
+         * Table of chunk offsets.
          */
-        protected ArrayList<Long> chunkOffsets = new ArrayList<Long>();
+        protected long[] chunkOffsets = new long[0];
         /**
          * List of TimeToSample entries.
          */
@@ -1145,13 +1171,19 @@ public class QuickTimeMeta extends AbstractMovie {
          */
         protected ArrayList<SampleToChunk> samplesToChunks = new ArrayList<SampleToChunk>();
         /**
-         * List of SampleSize entries.
+         * The size of all samples, or 0 if the samples have different sizes.
+         */
+        protected int sampleSize;
+        /**
+         * Table of sample sizes. This table is null if all samples have the
+         * same size.
          */
-        protected ArrayList<SampleSizeGroup> sampleSizes = new ArrayList<SampleSizeGroup>();
+        protected int[] sampleSizeTable = null;
         /**
-         * List of sync samples. This list is null if all samples are sync samples.
+         * Set of zero-based sync sample indices. This set is null if all
+         * samples are sync samples.
          */
-        protected NavigableSet<Long> syncSamples = null;
+        protected BitSet syncSamples = null;
         /**
          * The number of samples in this track.
          */
@@ -1180,19 +1212,90 @@ public class QuickTimeMeta extends AbstractMovie {
 
         private ArrayList<SampleDescription> sampleDescriptions = new ArrayList<>();
         /**
-         * Table of samples in the media of this track.
+         * Table of samples in the media of this track: the time stamps of the
+         * samples in media timescale units, followed by the end time of the
+         * last sample.
          * <p>
          * This value is derived from the media data in this track.
          * <p>
          * This value is set to null to indicate that it must be recomputed.
-         * <dl>
-         *     <dt>Map.key</dt><dd>absolute media time of a media sample</dd>
-         *     <dt>Map.value</dt><dd>media samples, may contain multiple
-         *     entries, if there are samples with duration=0. In this
-         *     case, only the last sample has a duration &gt;= 0.</dd>
-         * </dl>
          */
-        public NavigableMap<Long, ArrayList<MediaSample>> mediaSamples = null;
+        protected long[] sampleTimes = null;
+        /**
+         * Table of samples in the media of this track: the byte offsets of the
+         * samples relative to the start of the QuickTime file.
+         * <p>
+         * This value is derived together with {@link #sampleTimes}.
+         */
+        protected long[] sampleOffsets = null;
+        /**
+         * Table of samples in the media of this track: the data lengths of the
+         * samples in bytes.
+         * <p>
+         * This value is derived together with {@link #sampleTimes}.
+         */
+        protected int[] sampleLengths = null;
+
+        /**
+         * Returns the index of the first media sample at or before the
+         * specified media time.
+         * <p>
+         * If multiple samples have the same time stamp, the index of the first
+         * one is returned.
+         *
+         * @param mediaTime a time in media timescale units
+         * @return the sample index, or the number of samples if the time is
+         * at or after the end of the media
+         */
+        public int timeToMediaSample(long mediaTime) {
+            long[] times = sampleTimes;
+            int n = times.length - 1;
+            if (mediaTime >= times[n]) {
+                return n;
+            }
+            int index = Arrays.binarySearch(times, 0, n, mediaTime);
+            if (index < 0) {
+                index = -index - 2;
+            } else {
+                while (index > 0 && times[index - 1] == mediaTime) {
+                    index--;
+                }
+            }
+            return Math.max(0, index);
+        }
+
+        /**
+         * Returns true if the specified media sample is a sync sample.
+         */
+        public boolean isSyncSample(int sampleIndex) {
+            return syncSamples == null || syncSamples.get(sampleIndex);
+        }
+
+        /**
+         * Returns the index of the sync sample at or before the specified
+         * media sample.
+         *
+         * @param sampleIndex the index of a media sample
+         * @return the index of the sync sample, or 0 if there is none
+         */
+        public int findSyncSample(int sampleIndex) {
+            if (syncSamples == null) {
+                return sampleIndex;
+            }
+            return Math.max(0, syncSamples.previousSetBit(sampleIndex));
+        }
+
+        /**
+         * Returns the specified media sample. The media sample is created on
+         * demand.
+         */
+        public MediaSample getMediaSample(int sampleIndex) {
+            MediaSample sample = new MediaSample(sampleTimes[sampleIndex + 1] - sampleTimes[sampleIndex],
+                    sampleOffsets[sampleIndex], sampleLengths[sampleIndex]);
+            sample.timeStamp = sampleTimes[sampleIndex];
+            sample.isKeyframe = isSyncSample(sampleIndex);
+            return sample;
+        }
 
         public void addSampleDescription(SampleDescription d) {
             sampleDescriptions.add(d);
@@ -1289,9 +1392,9 @@ public class QuickTimeMeta extends AbstractMovie {
                     + ", videoColorTable=" + videoColorTable//
                     + ", soundBalance=" + soundBalance//
                     + ", dataReferenceList=" + dataReferenceList //
-                    + ", chunks=" + chunkOffsets//
+                    + ", chunks=" + chunkOffsets.length//
                     + ", timeToSamples=" + timeToSamples //
-                    + ", sampleSizes=" + sampleSizes
+                    + ", sampleSize=" + sampleSize
                     + ", syncSamples=" + syncSamples
                     + ", sampleCount=" + sampleCount
                     + ", syncInterval=" + syncInterval
@@ -6,6 +6,7 @@ package org.monte.media.quicktime;
 
 import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.io.DeflaterPool;
 import org.monte.media.io.IOStreams;
 import org.monte.media.io.ImageOutputStreamAdapter;
 import org.monte.media.math.Rational;
@@ -21,8 +22,14 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 import static java.lang.Math.max;
@@ -50,6 +57,39 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
  * @author Werner Randelshofer
  */
 public class QuickTimeOutputStream extends AbstractQuickTimeStream {
+    /**
+     * Sample flags of a sync sample in a movie fragment: the sample does not
+     * depend on other samples.
+     */
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+    /**
+     * Sample flags of a non-sync sample in a movie fragment: the sample
+     * depends on other samples, and it is a non-sync sample.
+     */
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+    /**
+     * The duration of a movie fragment in seconds, or null if the movie is not
+     * fragmented.
+     */
+    private Rational fragmentDuration;
+    /**
+     * The samples of the current movie fragment, one entry per track.
+     */
+    private ArrayList<TrackFragment> trackFragments;
+    /**
+     * The sequence number of the next movie fragment.
+     */
+    private int fragmentSequenceNumber = 1;
+    /**
+     * The offset of the movie extends header atom.
+     */
+    private long mehdOffset;
+    /**
+     * The channel of the output file, or null if the output is not a file.
+     * Is used for writing samples from byte buffers.
+     */
+    private FileChannel outChannel;
 
     /**
      * Creates a new instance.
@@ -60,7 +100,9 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         if (file.exists()) {
             file.delete();
         }
-        this.out = new FileImageOutputStream(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        this.out = new FileImageOutputStream(raf);
+        this.outChannel = raf.getChannel();
         this.streamOffset = 0;
         init();
     }
@@ -81,6 +123,56 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         modificationTime = new Date();
     }
 
+    /**
+     * Sets the duration of a movie fragment. <p> If a fragment duration is
+     * set, the movie is written as a fragmented movie: the movie atom is
+     * written in front of the first sample, and the samples are written in
+     * movie fragments ('moof' atom followed by an 'mdat' atom) of roughly the
+     * specified duration. A new fragment is started at the first sync sample
+     * after the duration of the current fragment has been reached. <p> A
+     * fragmented movie can be played up to the last fragment that has been
+     * written, even if the movie has not been finished. The sample tables of
+     * a fragmented movie do not grow with the duration of the movie, because
+     * only the samples of the current fragment are held in memory. <p> The
+     * tracks of a fragmented movie can not be changed after the first sample
+     * has been written. <p> The default value is null, which means that the
+     * movie is not fragmented.
+     *
+     * @param newValue the duration of a fragment in seconds, or null
+     * @throws IllegalStateException if tracks have already been added to the
+     *                               movie.
+     */
+    public void setFragmentDuration(Rational newValue) {
+        if (state != States.REALIZED) {
+            throw new IllegalStateException("The fragment duration must be set before tracks are added.");
+        }
+        if (newValue != null && newValue.compareTo(new Rational(0, 1)) <= 0) {
+            throw new IllegalArgumentException("fragmentDuration must be greater 0:" + newValue);
+        }
+        this.fragmentDuration = newValue;
+    }
+
+    /**
+     * Returns the duration of a movie fragment.
+     *
+     * @return the duration of a fragment in seconds, or null if the movie is
+     * not fragmented
+     * @see #setFragmentDuration(Rational)
+     */
+    public Rational getFragmentDuration() {
+        return fragmentDuration;
+    }
+
+    /**
+     * Returns true if the movie is written as a fragmented movie.
+     *
+     * @return true if fragmented
+     * @see #setFragmentDuration(Rational)
+     */
+    public boolean isFragmented() {
+        return fragmentDuration != null;
+    }
+
     /**
      * Sets the time scale for this movie, that is, the number of time units
      * that pass per second in its time coordinate system. <p> The default value
@@ -231,6 +323,7 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
      */
     public int addVideoTrack(String compressionType, String compressorName, long timeScale, int width, int height, int depth, int syncInterval) throws IOException {
         ensureStarted();
+        ensureTracksNotFrozen();
         if (compressionType == null || compressionType.length() != 4) {
             throw new IllegalArgumentException("compressionType must be 4 characters long:" + compressionType);
         }
@@ -293,6 +386,7 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
                              boolean isCompressed, //
                              int frameDuration, int frameSize, boolean signed, ByteOrder byteOrder) throws IOException {
         ensureStarted();
+        ensureTracksNotFrozen();
         if (compressionType == null || compressionType.length() != 4) {
             throw new IllegalArgumentException("audioFormat must be 4 characters long:" + compressionType);
         }
@@ -601,11 +695,25 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         }
         if (state != States.STARTED) {
             writeProlog();
-            mdatAtom = new WideDataAtom("mdat");
+            if (!isFragmented()) {
+                mdatAtom = new WideDataAtom("mdat");
+            }
             state = States.STARTED;
         }
     }
 
+    /**
+     * Makes sure that the tracks of the movie can still be changed.
+     *
+     * @throws IllegalStateException if the movie atom of a fragmented movie
+     *                               has already been written.
+     */
+    private void ensureTracksNotFrozen() {
+        if (isFragmented() && moovAtom != null) {
+            throw new IllegalStateException("Tracks can not be added after the first sample of a fragmented movie has been written.");
+        }
+    }
+
     /**
      * Writes an already encoded sample from a file into a track. <p> This
      * method does not inspect the contents of the samples. The contents has to
@@ -651,6 +759,11 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         Track t = tracks.get(track); // throws index out of bounds exception if illegal track index
         ensureOpen();
         ensureStarted();
+        if (isFragmented()) {
+            byte[] data = in.readAllBytes();
+            writeFragmentSamples(track, 1, data, 0, data.length, duration, isSync);
+            return;
+        }
         long offset = getRelativeStreamPosition();
         OutputStream mdatOut = mdatAtom.getOutputStream();
         IOStreams.copy(in, mdatOut);
@@ -696,6 +809,10 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         Track t = tracks.get(track); // throws index out of bounds exception if illegal track index
         ensureOpen();
         ensureStarted();
+        if (isFragmented()) {
+            writeFragmentSamples(track, 1, data, off, len, duration, isSync);
+            return;
+        }
         long offset = getRelativeStreamPosition();
         OutputStream mdatOut = mdatAtom.getOutputStream();
         mdatOut.write(data, off, len);
@@ -773,6 +890,10 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         Track t = tracks.get(track); // throws index out of bounds exception if illegal track index
         ensureOpen();
         ensureStarted();
+        if (isFragmented()) {
+            writeFragmentSamples(track, sampleCount, data, off, len, sampleDuration, isSync);
+            return;
+        }
         long offset = getRelativeStreamPosition();
         OutputStream mdatOut = mdatAtom.getOutputStream();
         mdatOut.write(data, off, len);
@@ -784,6 +905,292 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         t.addChunk(new Chunk(first, last, sampleCount, 1), isSync);
     }
 
+    /**
+     * Writes multiple samples from a byte buffer into a track. <p> Writes the
+     * remaining bytes of the buffer. If the buffer is direct, for example
+     * because it maps samples of another movie file, then the bytes are
+     * written without copying them into the Java heap.
+     *
+     * @param track          The track index.
+     * @param sampleCount    The number of samples.
+     * @param data           The encoded sample data. The number of remaining
+     *                       bytes must be dividable by sampleCount.
+     * @param sampleDuration The duration of a sample. All samples must have the
+     *                       same duration.
+     * @param isSync         Whether the samples are sync samples. All samples must
+     *                       either be sync samples or non-sync samples.
+     * @throws IllegalArgumentException if the duration is less than 1.
+     * @throws IOException              if writing the sample data failed.
+     * @see #writeSamples(int, int, byte[], int, int, long, boolean)
+     */
+    public void writeSamples(int track, int sampleCount, ByteBuffer data, long sampleDuration, boolean isSync) throws IOException {
+        if (data.hasArray() || isFragmented()) {
+            byte[] b;
+            int off;
+            if (data.hasArray()) {
+                b = data.array();
+                off = data.arrayOffset() + data.position();
+            } else {
+                b = new byte[data.remaining()];
+                data.duplicate().get(b);
+                off = 0;
+            }
+            writeSamples(track, sampleCount, b, off, data.remaining(), sampleDuration, isSync);
+            return;
+        }
+        int len = data.remaining();
+        ensureStarted();
+        if (sampleDuration <= 0) {
+            throw new IllegalArgumentException("sampleDuration must be greater 0, sampleDuration=" + sampleDuration + " track=" + track);
+        }
+        if (sampleCount <= 0) {
+            throw new IllegalArgumentException("sampleCount must be greater 0, sampleCount=" + sampleCount + " track=" + track);
+        }
+        if (len % sampleCount != 0) {
+            throw new IllegalArgumentException("len must be divisable by sampleCount len=" + len + " sampleCount=" + sampleCount + " track=" + track);
+        }
+        Track t = tracks.get(track); // throws index out of bounds exception if illegal track index
+        ensureOpen();
+        long offset = getRelativeStreamPosition();
+        DataAtomOutputStream mdatOut = mdatAtom.getOutputStream();
+        IOStreams.write(data, out, outChannel);
+        mdatOut.incCount(len);
+
+        int sampleLength = len / sampleCount;
+        Sample first = new Sample(sampleDuration, offset, sampleLength);
+        Sample last = new Sample(sampleDuration, offset + sampleLength * (sampleCount - 1), sampleLength);
+        t.addChunk(new Chunk(first, last, sampleCount, 1), isSync);
+    }
+
+    /**
+     * Adds samples to the current fragment of a fragmented movie. <p> Writes
+     * the movie atom before the first sample, and writes the current fragment
+     * before a sync sample of the reference track if the fragment has reached
+     * the fragment duration.
+     */
+    private void writeFragmentSamples(int track, int sampleCount, byte[] data, int off, int len, long sampleDuration, boolean isSync) throws IOException {
+        if (moovAtom == null) {
+            writeEpilog();
+        }
+        if (isSync && isFragmentReferenceTrack(track) && isFragmentComplete()) {
+            writeFragment();
+        }
+        Track t = tracks.get(track);
+        TrackFragment f = trackFragments.get(track);
+        if (f.sampleCount == 0) {
+            f.baseMediaDecodeTime = t.mediaDuration;
+        }
+        f.data.write(data, off, len);
+        f.addSamples(sampleCount, sampleDuration, len / sampleCount, isSync);
+        t.mediaDuration += sampleDuration * sampleCount;
+        t.sampleCount += sampleCount;
+    }
+
+    /**
+     * Returns true if a fragment may start with a sync sample of the specified
+     * track. <p> The first video track is the reference track, because the
+     * samples of other tracks are usually all sync samples. A fragment that
+     * starts on such a sample would start the video track with a non-sync
+     * sample, and could not be decoded on its own. If there is no video
+     * track, all tracks are reference tracks.
+     */
+    private boolean isFragmentReferenceTrack(int track) {
+        for (int i = 0, n = tracks.size(); i < n; i++) {
+            if (tracks.get(i).mediaType == MediaType.VIDEO) {
+                return i == track;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a track in the current fragment has reached the fragment
+     * duration.
+     */
+    private boolean isFragmentComplete() {
+        for (int i = 0, n = tracks.size(); i < n; i++) {
+            TrackFragment f = trackFragments.get(i);
+            if (f.sampleCount > 0
+                    && new Rational(f.duration, tracks.get(i).mediaTimeScale).compareTo(fragmentDuration) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the current fragment of a fragmented movie, and starts a new
+     * fragment. <p> Does nothing if the current fragment is empty.
+     */
+    private void writeFragment() throws IOException {
+        boolean isEmpty = true;
+        for (TrackFragment f : trackFragments) {
+            isEmpty &= f.sampleCount == 0;
+        }
+        if (isEmpty) {
+            return;
+        }
+
+        /* Movie Fragment Atom ========= */
+        CompositeAtom moofAtom = new CompositeAtom("moof");
+        long moofOffset = moofAtom.getOffset();
+
+        /* Movie Fragment Header Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         int sequenceNumber;
+         } movieFragmentHeaderAtom;
+         */
+        DataAtom leaf = new DataAtom("mfhd");
+        moofAtom.add(leaf);
+        DataAtomOutputStream d = leaf.getOutputStream();
+        d.writeInt(0); // version + flags
+        d.writeUInt(fragmentSequenceNumber++); // sequenceNumber
+
+        long[] dataOffsetPositions = new long[tracks.size()];
+        for (int i = 0, n = tracks.size(); i < n; i++) {
+            TrackFragment f = trackFragments.get(i);
+            if (f.sampleCount > 0) {
+                dataOffsetPositions[i] = writeTrackFragmentAtoms(i, f, moofAtom);
+            }
+        }
+        moofAtom.finish();
+
+        /* Media Data Atom ========= */
+        WideDataAtom fragmentMdatAtom = new WideDataAtom("mdat");
+        long dataOffset = fragmentMdatAtom.getOffset() + 16 - moofOffset;
+        DataAtomOutputStream mdatOut = fragmentMdatAtom.getOutputStream();
+        for (int i = 0, n = tracks.size(); i < n; i++) {
+            TrackFragment f = trackFragments.get(i);
+            if (f.sampleCount > 0) {
+                // The data offset of the track run is relative to the start of
+                // the movie fragment atom.
+                long pointer = getRelativeStreamPosition();
+                seekRelative(dataOffsetPositions[i]);
+                new DataAtomOutputStream(new ImageOutputStreamAdapter(out)).writeInt((int) dataOffset);
+                seekRelative(pointer);
+
+                f.data.writeTo(mdatOut);
+                dataOffset += f.data.size();
+                f.clear();
+            }
+        }
+        fragmentMdatAtom.finish();
+    }
+
+    /**
+     * Writes the track fragment atom of a track into the movie fragment atom.
+     *
+     * @return the position of the data offset field of the track run atom.
+     */
+    private long writeTrackFragmentAtoms(int trackIndex, TrackFragment f, CompositeAtom moofAtom) throws IOException {
+        boolean uniformDuration = true, uniformSize = true, uniformSync = true;
+        for (int j = 1; j < f.runCount; j++) {
+            uniformDuration &= f.runDurations[j] == f.runDurations[0];
+            uniformSize &= f.runSizes[j] == f.runSizes[0];
+            uniformSync &= f.runSyncs[j] == f.runSyncs[0];
+        }
+
+        /* Track Fragment Atom ========= */
+        CompositeAtom trafAtom = new CompositeAtom("traf");
+        moofAtom.add(trafAtom);
+
+        /* Track Fragment Header Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         int trackId;
+         int defaultSampleDuration; // if flags & 0x8
+         int defaultSampleSize; // if flags & 0x10
+         int defaultSampleFlags; // if flags & 0x20
+         } trackFragmentHeaderAtom;
+         */
+        DataAtom leaf = new DataAtom("tfhd");
+        trafAtom.add(leaf);
+        DataAtomOutputStream d = leaf.getOutputStream();
+        d.writeInt(0x020000 // default-base-is-moof
+                | (uniformDuration ? 0x08 : 0)
+                | (uniformSize ? 0x10 : 0)
+                | (uniformSync ? 0x20 : 0)); // version + flags
+        d.writeInt(trackIndex + 1); // trackId
+        if (uniformDuration) {
+            d.writeUInt(f.runDurations[0]); // defaultSampleDuration
+        }
+        if (uniformSize) {
+            d.writeUInt(f.runSizes[0]); // defaultSampleSize
+        }
+        if (uniformSync) {
+            d.writeInt(f.runSyncs[0] ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS); // defaultSampleFlags
+        }
+
+        /* Track Fragment Decode Time Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         long baseMediaDecodeTime;
+         } trackFragmentDecodeTimeAtom;
+         */
+        leaf = new DataAtom("tfdt");
+        trafAtom.add(leaf);
+        d = leaf.getOutputStream();
+        d.writeInt(0x01000000); // version 1 + flags
+        d.writeLong(f.baseMediaDecodeTime); // baseMediaDecodeTime
+
+        /* Track Run Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         int sampleCount;
+         int dataOffset; // if flags & 0x1
+         trackRunTable trackRunTable[sampleCount];
+         } trackRunAtom;
+
+         typedef struct {
+         int sampleDuration; // if flags & 0x100
+         int sampleSize; // if flags & 0x200
+         int sampleFlags; // if flags & 0x400
+         } trackRunTable;
+         */
+        leaf = new DataAtom("trun");
+        trafAtom.add(leaf);
+        d = leaf.getOutputStream();
+        d.writeInt(0x01 // data-offset-present
+                | (uniformDuration ? 0 : 0x100)
+                | (uniformSize ? 0 : 0x200)
+                | (uniformSync ? 0 : 0x400)); // version + flags
+        d.writeUInt(f.sampleCount); // sampleCount
+        long dataOffsetPosition = getRelativeStreamPosition();
+        d.writeInt(0); // dataOffset, is written when the media data atom is written
+        if (!uniformDuration || !uniformSize || !uniformSync) {
+            for (int j = 0; j < f.runCount; j++) {
+                for (int k = 0; k < f.runCounts[j]; k++) {
+                    if (!uniformDuration) {
+                        d.writeUInt(f.runDurations[j]); // sampleDuration
+                    }
+                    if (!uniformSize) {
+                        d.writeUInt(f.runSizes[j]); // sampleSize
+                    }
+                    if (!uniformSync) {
+                        d.writeInt(f.runSyncs[j] ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS); // sampleFlags
+                    }
+                }
+            }
+        }
+        return dataOffsetPosition;
+    }
+
+    /**
+     * Writes the duration of a fragmented movie into the movie extends header
+     * atom.
+     */
+    private void writeFragmentedMovieDuration() throws IOException {
+        long pointer = getRelativeStreamPosition();
+        seekRelative(mehdOffset + 12);
+        new DataAtomOutputStream(new ImageOutputStreamAdapter(out)).writeLong(getMovieDuration());
+        seekRelative(pointer);
+    }
+
     /**
      * Returns true if the limit for media samples has been reached. If this
      * limit is reached, no more samples should be added to the movie. <p>
@@ -836,10 +1243,16 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
     public void finish() throws IOException {
         ensureOpen();
         if (state != States.FINISHED) {
-            for (int i = 0, n = tracks.size(); i < n; i++) {
+            if (isFragmented()) {
+                if (moovAtom == null) {
+                    writeEpilog();
+                }
+                writeFragment();
+                writeFragmentedMovieDuration();
+            } else {
+                mdatAtom.finish();
+                writeEpilog();
             }
-            mdatAtom.finish();
-            writeEpilog();
             state = States.FINISHED;
             /*
              for (int i = 0, n = tracks.size(); i < n; i++) {
@@ -881,7 +1294,11 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         d.writeBCD2(3); // versionMonth
         d.writeBCD2(0); // versionMinor
         d.writeType("qt  "); // compatibleBrands
-        d.writeInt(0); // compatibleBrands (0 is used to denote no value)
+        if (isFragmented()) {
+            d.writeType("iso5"); // compatibleBrands (movie fragments with 'tfdt' atoms)
+        } else {
+            d.writeInt(0); // compatibleBrands (0 is used to denote no value)
+        }
         d.writeInt(0); // compatibleBrands (0 is used to denote no value)
         d.writeInt(0); // compatibleBrands (0 is used to denote no value)
         ftypAtom.finish();
@@ -1029,11 +1446,115 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
             }
         }
 
+        if (isFragmented()) {
+            writeMovieExtendsAtoms(moovAtom);
+        }
 
         //
         moovAtom.finish();
     }
 
+    /**
+     * Writes the movie extends atom of a fragmented movie, and prepares the
+     * fragments of the tracks.
+     */
+    private void writeMovieExtendsAtoms(CompositeAtom moovAtom) throws IOException {
+        /* Movie Extends Atom ========= */
+        CompositeAtom mvexAtom = new CompositeAtom("mvex");
+        moovAtom.add(mvexAtom);
+
+        /* Movie Extends Header Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         long fragmentDuration;
+         } movieExtendsHeaderAtom;
+         */
+        DataAtom leaf = new DataAtom("mehd");
+        mvexAtom.add(leaf);
+        mehdOffset = leaf.getOffset();
+        DataAtomOutputStream d = leaf.getOutputStream();
+        d.writeInt(0x01000000); // version 1 + flags
+        d.writeLong(0); // fragmentDuration, is written when the movie is finished
+
+        /* Track Extends Atom -------------
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         int trackId;
+         int defaultSampleDescriptionIndex;
+         int defaultSampleDuration;
+         int defaultSampleSize;
+         int defaultSampleFlags;
+         } trackExtendsAtom;
+         */
+        trackFragments = new ArrayList<>();
+        for (int i = 0, n = tracks.size(); i < n; i++) {
+            leaf = new DataAtom("trex");
+            mvexAtom.add(leaf);
+            d = leaf.getOutputStream();
+            d.writeInt(0); // version + flags
+            d.writeInt(i + 1); // trackId
+            d.writeInt(1); // defaultSampleDescriptionIndex
+            d.writeInt(0); // defaultSampleDuration
+            d.writeInt(0); // defaultSampleSize
+            d.writeInt(0); // defaultSampleFlags
+            trackFragments.add(new TrackFragment());
+        }
+    }
+
+    /**
+     * Writes the edit atom of a track. <p> The edit atom is omitted in
+     * fragmented movies, because the duration of the track is not known when
+     * the movie atom is written.
+     */
+    protected void writeEditAtoms(Track t, CompositeAtom trakAtom) throws IOException {
+        /* Edit Atom ========= */
+        CompositeAtom edtsAtom = new CompositeAtom("edts");
+        trakAtom.add(edtsAtom);
+
+        /* Edit List atom ------- */
+        /*
+         typedef struct {
+         byte version;
+         byte[3] flags;
+         int numberOfEntries;
+         editListTable editListTable[numberOfEntries];
+         } editListAtom;
+            
+         typedef struct {
+         int trackDuration;
+         int mediaTime;
+         fixed16d16 mediaRate;
+         } editListTable;
+         */
+        DataAtom leaf = new DataAtom("elst");
+        edtsAtom.add(leaf);
+        DataAtomOutputStream d = leaf.getOutputStream();
+
+        d.write(0); // version
+        // One byte that specifies the version of this header atom.
+
+        d.write(0); // flag[0]
+        d.write(0); // flag[1]
+        d.write(0); // flag[2]
+
+        Edit[] elist = t.editList;
+        if (elist == null || elist.length == 0) {
+            d.writeUInt(1); // numberOfEntries
+            d.writeUInt(t.getTrackDuration(movieTimeScale)); // trackDuration
+            d.writeUInt(t.getFirstSampleTime(movieTimeScale)); // mediaTime
+            d.writeFixed16D16(1); // mediaRate
+        } else {
+            d.writeUInt(elist.length); // numberOfEntries
+            for (int i = 0; i < elist.length; ++i) {
+                d.writeUInt(elist[i].trackDuration); // trackDuration
+                d.writeUInt(elist[i].mediaTime); // mediaTime
+                d.writeUInt(elist[i].mediaRate); // mediaRate
+            }
+        }
+    }
+
     protected void writeTrackAtoms(int trackIndex, CompositeAtom moovAtom, Date modificationTime) throws IOException {
         Track t = tracks.get(trackIndex);
 
@@ -1164,52 +1685,10 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
         d.writeFixed16D16(t.mediaType == MediaType.VIDEO ? ((VideoTrack) t).height : 0); // height
         // A 32-bit fixed-point number that indicates the height of this track in pixels.
 
-        /* Edit Atom ========= */
-        CompositeAtom edtsAtom = new CompositeAtom("edts");
-        trakAtom.add(edtsAtom);
-
-        /* Edit List atom ------- */
-        /*
-         typedef struct {
-         byte version;
-         byte[3] flags;
-         int numberOfEntries;
-         editListTable editListTable[numberOfEntries];
-         } editListAtom;
-            
-         typedef struct {
-         int trackDuration;
-         int mediaTime;
-         fixed16d16 mediaRate;
-         } editListTable;
-         */
-        leaf = new DataAtom("elst");
-        edtsAtom.add(leaf);
-        d = leaf.getOutputStream();
-
-        d.write(0); // version
-        // One byte that specifies the version of this header atom.
-
-        d.write(0); // flag[0]
-        d.write(0); // flag[1]
-        d.write(0); // flag[2]
-
-        Edit[] elist = t.editList;
-        if (elist == null || elist.length == 0) {
-            d.writeUInt(1); // numberOfEntries
-            d.writeUInt(t.getTrackDuration(movieTimeScale)); // trackDuration
-            d.writeUInt(t.getFirstSampleTime(movieTimeScale)); // mediaTime
-            d.writeFixed16D16(1); // mediaRate
-        } else {
-            d.writeUInt(elist.length); // numberOfEntries
-            for (int i = 0; i < elist.length; ++i) {
-                d.writeUInt(elist[i].trackDuration); // trackDuration
-                d.writeUInt(elist[i].mediaTime); // mediaTime
-                d.writeUInt(elist[i].mediaRate); // mediaRate
-            }
+        if (!isFragmented()) {
+            writeEditAtoms(t, trakAtom);
         }
 
-
         /* Media Atom ========= */
         CompositeAtom mdiaAtom = new CompositeAtom("mdia");
         trakAtom.add(mdiaAtom);
@@ -1882,8 +2361,12 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
      *
      * @param outputFile     The output file
      * @param compressHeader Whether the movie header shall be compressed.
+     * @throws IllegalStateException if the movie is fragmented.
      */
     public void toWebOptimizedMovie(File outputFile, boolean compressHeader) throws IOException {
+        if (isFragmented()) {
+            throw new IllegalStateException("A fragmented movie already starts with the movie header.");
+        }
         finish();
         long originalMdatOffset = mdatAtom.getOffset();
         CompositeAtom originalMoovAtom = moovAtom;
@@ -1899,25 +2382,32 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
                 long compressionHeadersSize = 40 + 8;
                 long headerSize = 0;
                 long freeSize = 0;
-                while (true) {
-                    mdatOffset = compressionHeadersSize + headerSize + freeSize;
-                    buf.reset();
-                    DeflaterOutputStream deflater = new DeflaterOutputStream(buf);
-                    out = new MemoryCacheImageOutputStream(deflater);
-                    writeEpilog();
-                    out.close();
-                    deflater.close();
-
-                    if (buf.size() > headerSize + freeSize && --maxIteration > 0) {
-                        if (headerSize != 0) {
-                            freeSize = Math.max(freeSize, buf.size() - headerSize - freeSize);
+                DeflaterPool pool = DeflaterPool.getDefault();
+                Deflater deflater = pool.acquire();
+                try {
+                    while (true) {
+                        mdatOffset = compressionHeadersSize + headerSize + freeSize;
+                        buf.reset();
+                        deflater.reset();
+                        DeflaterOutputStream deflaterOut = new DeflaterOutputStream(buf, deflater);
+                        out = new MemoryCacheImageOutputStream(deflaterOut);
+                        writeEpilog();
+                        out.close();
+                        deflaterOut.close();
+
+                        if (buf.size() > headerSize + freeSize && --maxIteration > 0) {
+                            if (headerSize != 0) {
+                                freeSize = Math.max(freeSize, buf.size() - headerSize - freeSize);
+                            }
+                            headerSize = buf.size();
+                        } else {
+                            freeSize = headerSize + freeSize - buf.size();
+                            headerSize = buf.size();
+                            break;
                         }
-                        headerSize = buf.size();
-                    } else {
-                        freeSize = headerSize + freeSize - buf.size();
-                        headerSize = buf.size();
-                        break;
                     }
+                } finally {
+                    pool.release(deflater);
                 }
 
                 if (maxIteration < 0 || buf.size() == 0) {
@@ -1976,4 +2466,62 @@ public class QuickTimeOutputStream extends AbstractQuickTimeStream {
             out = originalOut;
         }
     }
+
+    /**
+     * Holds the samples of a track in the current movie fragment. Consecutive
+     * samples with the same duration, size and sync flag are stored in a run.
+     */
+    private static class TrackFragment {
+        /**
+         * The sample data.
+         */
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        /**
+         * The decode time of the first sample in media time scale units.
+         */
+        long baseMediaDecodeTime;
+        /**
+         * The number of samples.
+         */
+        int sampleCount;
+        /**
+         * The duration of the samples in media time scale units.
+         */
+        long duration;
+        int runCount;
+        int[] runCounts = new int[16];
+        long[] runDurations = new long[16];
+        int[] runSizes = new int[16];
+        boolean[] runSyncs = new boolean[16];
+
+        void addSamples(int count, long sampleDuration, int sampleSize, boolean isSync) {
+            int last = runCount - 1;
+            if (last >= 0 && runDurations[last] == sampleDuration
+                    && runSizes[last] == sampleSize && runSyncs[last] == isSync) {
+                runCounts[last] += count;
+            } else {
+                if (runCount == runCounts.length) {
+                    int newLength = runCount * 2;
+                    runCounts = Arrays.copyOf(runCounts, newLength);
+                    runDurations = Arrays.copyOf(runDurations, newLength);
+                    runSizes = Arrays.copyOf(runSizes, newLength);
+                    runSyncs = Arrays.copyOf(runSyncs, newLength);
+                }
+                runCounts[runCount] = count;
+                runDurations[runCount] = sampleDuration;
+                runSizes[runCount] = sampleSize;
+                runSyncs[runCount] = isSync;
+                runCount++;
+            }
+            sampleCount += count;
+            duration += sampleDuration * count;
+        }
+
+        void clear() {
+            data.reset();
+            sampleCount = 0;
+            duration = 0;
+            runCount = 0;
+        }
+    }
 }
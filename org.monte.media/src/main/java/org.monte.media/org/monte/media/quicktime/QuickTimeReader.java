@@ -11,6 +11,7 @@ import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.av.MovieReader;
 import org.monte.media.av.Registry;
+import org.monte.media.io.MappedFileImageInputStream;
 import org.monte.media.math.Rational;
 
 import javax.imageio.stream.ImageInputStream;
@@ -63,13 +64,13 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
     @Override
     public long timeToSample(int track, Rational seconds) throws IOException {
         ensureRealized();
-        throw new UnsupportedOperationException("Not supported yet.");
+        return meta.timeToSample(track, seconds);
     }
 
     @Override
     public Rational sampleToTime(int track, long sample) throws IOException {
         ensureRealized();
-        throw new UnsupportedOperationException("Not supported yet.");
+        return meta.sampleToTime(track, sample);
     }
 
     @Override
@@ -131,33 +132,58 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
 
     @Override
     public void read(int track, Buffer buffer) throws IOException {
+        read(track, buffer, false);
+    }
+
+    /**
+     * Reads a sample from the specified track without copying it. If the
+     * file has been mapped into memory, then the buffer holds a read-only
+     * view of the sample in the mapped file.
+     *
+     * @param track  The track number.
+     * @param buffer The buffer for the sample data.
+     * @throws IOException if reading the sample failed.
+     */
+    @Override
+    public void readSlice(int track, Buffer buffer) throws IOException {
+        if (in instanceof MappedFileImageInputStream) {
+            read(track, buffer, true);
+        } else {
+            MovieReader.super.readSlice(track, buffer);
+        }
+    }
+
+    private void read(int track, Buffer buffer, boolean slice) throws IOException {
         ensureRealized();
         QuickTimeMeta.Track tr = meta.tracks.get(track);
-        if (tr.readIndex >= tr.trackSamplesList.size()) {
+        if (tr.readIndex >= tr.getTrackSampleCount()) {
             buffer.setFlagsTo(END_OF_MEDIA, DISCARD);
             buffer.length = 0;
             return;
         }
         buffer.sequenceNumber = tr.readIndex;
-        var ts = tr.trackSamplesList.get((int) tr.readIndex);
-        var ms = ts.mediaSample;
+        QuickTimeMeta.Media m = tr.media;
+        int mediaIndex = tr.getMediaSampleIndex(tr.readIndex);
+        int length = m.sampleLengths[mediaIndex];
 
         // FIXME - This should be done using AVIInputStream.readSample()
-        in.seek(ms.offset);
-        {
+        if (slice) {
+            buffer.data = ((MappedFileImageInputStream) in).slice(m.sampleOffsets[mediaIndex], length);
+        } else {
+            in.seek(m.sampleOffsets[mediaIndex]);
             byte[] b;
             if (buffer.data instanceof byte[]) {
                 b = (byte[]) buffer.data;
-                if (b.length < ms.length) {
-                    buffer.data = b = new byte[(((int) ms.length + 1023) / 1024) * 1024];
+                if (b.length < length) {
+                    buffer.data = b = new byte[((length + 1023) / 1024) * 1024];
                 }
             } else {
-                buffer.data = b = new byte[(((int) ms.length + 1023) / 1024) * 1024];
+                buffer.data = b = new byte[((length + 1023) / 1024) * 1024];
             }
-            in.readFully(b, 0, (int) ms.length);
+            in.readFully(b, 0, length);
         }
         buffer.offset = 0;
-        buffer.length = (int) ms.length;
+        buffer.length = length;
 
 
         switch (tr.mediaType) {
@@ -169,9 +195,9 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
         }
         buffer.format = tr.format;
         buffer.track = track;
-        buffer.sampleDuration = new Rational(ts.duration, meta.timeScale);
-        buffer.timeStamp = new Rational(ts.timeStamp, meta.timeScale);
-        buffer.flags = ms.isKeyframe ? EnumSet.of(KEYFRAME) : EnumSet.noneOf(BufferFlag.class);
+        buffer.sampleDuration = new Rational(tr.getTrackSampleDuration(tr.readIndex), meta.timeScale);
+        buffer.timeStamp = new Rational(tr.getTrackSampleTime(tr.readIndex), meta.timeScale);
+        buffer.flags = m.isSyncSample(mediaIndex) ? EnumSet.of(KEYFRAME) : EnumSet.noneOf(BufferFlag.class);
         tr.readIndex++;
     }
 
@@ -181,15 +207,34 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
         throw new UnsupportedOperationException("nextTrack() not supported yet.");
     }
 
+    /**
+     * Sets the read time of all tracks. The read index of each track is set
+     * to the sync sample at or before the specified time, unless the current
+     * read index is already between that sync sample and the specified time.
+     *
+     * @param newValue the new read time
+     */
     @Override
     public void setMovieReadTime(Rational newValue) throws IOException {
         ensureRealized();
-        throw new UnsupportedOperationException("setMovieReadTime() not supported yet.");
+        for (int t = 0, n = meta.getTrackCount(); t < n; t++) {
+            QuickTimeMeta.Track tr = meta.tracks.get(t);
+            if (tr.getTrackSampleCount() == 0) {
+                tr.readIndex = 0;
+                continue;
+            }
+            int sample = (int) Math.min(meta.timeToSample(t, newValue), tr.getTrackSampleCount() - 1);
+            if (tr.readIndex > sample) {
+                tr.readIndex = 0;
+            }
+            tr.readIndex = Math.max(tr.findSyncSample(sample), tr.readIndex);
+        }
     }
 
     @Override
     public Rational getReadTime(int track) throws IOException {
-        throw new UnsupportedOperationException("getReadTime() not supported yet.");
+        ensureRealized();
+        return meta.sampleToTime(track, meta.tracks.get(track).readIndex);
     }
 
     @Override
@@ -219,22 +264,21 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
         QuickTimeMeta.Track tr = meta.tracks.get(track);
         Format fmt = meta.getFormat(track);
         Codec codec = createCodec(fmt);
-        String enc = fmt.get(EncodingKey);
-        if (codec == null) {
-            throw new IOException("Track " + tr + " no codec found for format " + fmt);
-        } else {
-            if (fmt.get(MediaTypeKey) == MediaType.VIDEO) {
-                if (null == codec.setInputFormat(fmt)) {
-                    throw new IOException("Track " + tr + " codec " + codec + " does not support input format " + fmt + ". codec=" + codec);
-                }
-                Format outFormat = fmt.prepend(MediaTypeKey, MediaType.VIDEO,//
-                        MimeTypeKey, MIME_JAVA,
-                        EncodingKey, ENCODING_BUFFERED_IMAGE, DataClassKey, BufferedImage.class);
-                if (null == codec.setOutputFormat(outFormat)) {
-                    throw new IOException("Track " + tr + " codec does not support output format " + outFormat + ". codec=" + codec);
+        if (fmt.get(MediaTypeKey) == MediaType.VIDEO) {
+            Format outFormat = fmt.prepend(MediaTypeKey, MediaType.VIDEO,//
+                    MimeTypeKey, MIME_JAVA,
+                    EncodingKey, ENCODING_BUFFERED_IMAGE, DataClassKey, BufferedImage.class);
+            if (codec == null || null == codec.setInputFormat(fmt) || null == codec.setOutputFormat(outFormat)) {
+                // => no single codec can decode the track, try a chain of codecs
+                if (codec != null) {
+                    Registry.getInstance().releaseCodec(codec);
                 }
+                codec = Registry.getInstance().getCodecChain(fmt.prepend(MimeTypeKey, MIME_QUICKTIME), outFormat);
             }
         }
+        if (codec == null) {
+            throw new IOException("Track " + tr + " no codec found for format " + fmt);
+        }
 
         codecs[track] = codec;
     }
@@ -242,4 +286,17 @@ public class QuickTimeReader extends QuickTimeInputStream implements MovieReader
     private Codec createCodec(Format fmt) {
         return Registry.getInstance().getDecoder(fmt.prepend(MimeTypeKey, MIME_QUICKTIME));
     }
+
+    @Override
+    public void close() throws IOException {
+        if (codecs != null) {
+            for (int i = 0; i < codecs.length; i++) {
+                if (codecs[i] != null) {
+                    Registry.getInstance().releaseCodec(codecs[i]);
+                    codecs[i] = null;
+                }
+            }
+        }
+        super.close();
+    }
 }
@@ -10,6 +10,7 @@ import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.av.MovieWriter;
 import org.monte.media.av.Registry;
+import org.monte.media.av.codec.video.ParallelVideoEncoder;
 import org.monte.media.math.Rational;
 
 import javax.imageio.stream.ImageOutputStream;
@@ -17,6 +18,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import static org.monte.media.av.BufferFlag.DISCARD;
@@ -171,6 +173,11 @@ public class QuickTimeWriter extends QuickTimeOutputStream implements MovieWrite
             EncodingKey, ENCODING_QUICKTIME_PNG, //
             CompressorNameKey, COMPRESSOR_NAME_QUICKTIME_PNG);
 
+    /**
+     * The number of threads that are used for encoding video frames.
+     */
+    private int encodingThreads = 1;
+
     /**
      * Creates a new QuickTime writer.
      *
@@ -189,6 +196,36 @@ public class QuickTimeWriter extends QuickTimeOutputStream implements MovieWrite
         super(out);
     }
 
+    /**
+     * Sets the number of threads that are used for encoding video frames.
+     * <p>
+     * If the value is greater than 1, the frames of video tracks with an
+     * intra-frame codec (JPEG, PNG) are encoded concurrently, and are written
+     * in the order in which they have been passed to {@code write}. Up to
+     * twice as many frames as threads are held in memory while they are
+     * being encoded.
+     * <p>
+     * The default value is 1.
+     *
+     * @param newValue the number of threads
+     */
+    public void setEncodingThreads(int newValue) {
+        if (newValue < 1) {
+            throw new IllegalArgumentException("encodingThreads must be greater 0:" + newValue);
+        }
+        this.encodingThreads = newValue;
+    }
+
+    /**
+     * Returns the number of threads that are used for encoding video frames.
+     *
+     * @return the number of threads
+     * @see #setEncodingThreads(int)
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
     @Override
     public Format getFileFormat() throws IOException {
         return QUICKTIME;
@@ -453,6 +490,10 @@ public class QuickTimeWriter extends QuickTimeOutputStream implements MovieWrite
             }
             Buffer outBuf;
             if (tr.format.matchesWithout(buf.format, FrameRateKey)) {
+                if (tr.parallelEncoder != null) {
+                    // The samples must be written in order
+                    flushParallelEncoder(track);
+                }
                 outBuf = buf;
             } else {
                 outBuf = tr.outputBuffer;
@@ -464,32 +505,101 @@ public class QuickTimeWriter extends QuickTimeOutputStream implements MovieWrite
                         throw new UnsupportedOperationException("No codec for this format " + tr.format);
                     }
                 }
+                if (buf.data instanceof BufferedImage) {
+                    if (tr.parallelEncoder == null && encodingThreads > 1
+                            && ParallelVideoEncoder.isSupported(tr.codec)) {
+                        tr.parallelEncoder = new ParallelVideoEncoder(tr.codec, encodingThreads, 2 * encodingThreads);
+                    }
+                    if (tr.parallelEncoder != null) {
+                        tr.parallelEncoder.encode(buf, b -> writeEncodedSample(track, b, b));
+                        return;
+                    }
+                }
 
                 tr.codec.process(buf, outBuf);
             }
-            if (outBuf.isFlag(DISCARD) || outBuf.sampleCount == 0) {
-                return;
-            }
+            writeEncodedSample(track, buf, outBuf);
+        }
+    }
 
-            // Compute sample sampleDuration in media time scale
-            Rational sampleDuration;
-            if (tr.inputTime == null) {
-                tr.inputTime = buf.timeStamp;
-                tr.writeTime = buf.timeStamp;
-            }
-            Rational exactSampleDuration = outBuf.sampleDuration.multiply(outBuf.sampleCount);
-            sampleDuration = exactSampleDuration.floor(tr.mediaTimeScale);
-            if (sampleDuration.compareTo(new Rational(0, 1)) <= 0) {
-                sampleDuration = new Rational(1, tr.mediaTimeScale);
-            }
-            tr.writeTime = tr.writeTime.add(sampleDuration);
-            long sampleDurationInMediaTS = sampleDuration.getNumerator() * (tr.mediaTimeScale / sampleDuration.getDenominator());
+    /**
+     * Writes an encoded sample.
+     *
+     * @param track  The track number.
+     * @param buf    The buffer that has been passed to {@link #write(int, Buffer)}.
+     * @param outBuf The buffer with the encoded sample data.
+     */
+    private void writeEncodedSample(int track, Buffer buf, Buffer outBuf) throws IOException {
+        Track tr = tracks.get(track);
+        if (outBuf.isFlag(DISCARD) || outBuf.sampleCount == 0) {
+            return;
+        }
 
+        // Compute sample sampleDuration in media time scale
+        Rational sampleDuration;
+        if (tr.inputTime == null) {
+            tr.inputTime = buf.timeStamp;
+            tr.writeTime = buf.timeStamp;
+        }
+        Rational exactSampleDuration = outBuf.sampleDuration.multiply(outBuf.sampleCount);
+        sampleDuration = exactSampleDuration.floor(tr.mediaTimeScale);
+        if (sampleDuration.compareTo(new Rational(0, 1)) <= 0) {
+            sampleDuration = new Rational(1, tr.mediaTimeScale);
+        }
+        tr.writeTime = tr.writeTime.add(sampleDuration);
+        long sampleDurationInMediaTS = sampleDuration.getNumerator() * (tr.mediaTimeScale / sampleDuration.getDenominator());
+
+        if (outBuf.data instanceof ByteBuffer) {
+            writeSamples(track, buf.sampleCount, ((ByteBuffer) outBuf.data).slice(outBuf.offset, outBuf.length),
+                    sampleDurationInMediaTS / buf.sampleCount, outBuf.isFlag(KEYFRAME));
+        } else {
             writeSamples(track, buf.sampleCount, (byte[]) outBuf.data, outBuf.offset, outBuf.length,
                     sampleDurationInMediaTS / buf.sampleCount, outBuf.isFlag(KEYFRAME));
         }
     }
 
+    /**
+     * Writes the frames which are being encoded by the parallel encoder of
+     * the specified track.
+     */
+    private void flushParallelEncoder(int track) throws IOException {
+        tracks.get(track).parallelEncoder.flush(b -> writeEncodedSample(track, b, b));
+    }
+
+    /**
+     * Writes the frames which are still being encoded, and then finishes
+     * writing the contents of the QuickTime output stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (state == States.STARTED) {
+            for (int i = 0, n = tracks.size(); i < n; i++) {
+                if (tracks.get(i).parallelEncoder != null) {
+                    flushParallelEncoder(i);
+                }
+            }
+        }
+        super.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            for (Track tr : tracks) {
+                if (tr.parallelEncoder != null) {
+                    tr.parallelEncoder.close();
+                    tr.parallelEncoder = null;
+                }
+                if (tr.codec != null) {
+                    Registry.getInstance().releaseCodec(tr.codec);
+                    tr.codec = null;
+                }
+            }
+        }
+    }
+
     /**
      * Encodes an image as a video frame and writes it into a video track.
      *
@@ -514,6 +624,10 @@ public class QuickTimeWriter extends QuickTimeOutputStream implements MovieWrite
             throw new UnsupportedOperationException("No codec for this format: " + vt.format);
         }
         ensureStarted();
+        if (vt.parallelEncoder != null) {
+            // The samples must be written in order
+            flushParallelEncoder(track);
+        }
 
         // Get the dimensions of the first image
         if (vt.width == -1) {
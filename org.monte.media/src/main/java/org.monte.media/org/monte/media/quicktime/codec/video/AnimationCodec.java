@@ -8,6 +8,7 @@ import org.monte.media.av.Buffer;
 import org.monte.media.av.Format;
 import org.monte.media.av.FormatKeys.MediaType;
 import org.monte.media.av.codec.video.AbstractVideoCodec;
+import org.monte.media.av.codec.video.DirtyRegionCodec;
 import org.monte.media.io.ByteArrayImageOutputStream;
 
 import javax.imageio.stream.ImageInputStream;
@@ -45,6 +46,10 @@ import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
  * The QuickTime player requires that a keyframe is written once per second.
  * This codec enforces this.
  * <p>
+ * If the input buffer has {@linkplain Buffer#dirtyRegions dirty regions}, for
+ * example from a {@link DirtyRegionCodec}, the encoder skips unchanged
+ * scanlines of delta frames without comparing them with the previous frame.
+ * <p>
  * An encoded frame has the following format:
  * <pre>
  * Header:
@@ -152,6 +157,12 @@ public class AnimationCodec extends AbstractVideoCodec {
 
     private Object previousPixels;
     private int frameCounter;
+    /**
+     * The spans of the dirty regions of the frame that is being encoded, or
+     * null if the dirty regions are unknown.
+     */
+    private int[] dirtySpans;
+    private int[] dirtySpansBuffer;
 
     public AnimationCodec() {
         super(new Format[]{
@@ -191,6 +202,11 @@ public class AnimationCodec extends AbstractVideoCodec {
         frameCounter = 0;
     }
 
+    @Override
+    public double getCostHint() {
+        return 4;
+    }
+
     @Override
     public int process(Buffer in, Buffer out) {
         out.setMetaTo(in);
@@ -225,6 +241,14 @@ public class AnimationCodec extends AbstractVideoCodec {
                 || frameCounter % outputFormat.get(KeyFrameIntervalKey, outputFormat.get(FrameRateKey).intValue()) == 0;
         frameCounter++;
 
+        // 8-bit frames are encoded as 32-bit frames with a quarter of the
+        // width, the dirty regions do not apply to them.
+        if (in.dirtyRegions != null && vf.get(DepthKey) != 8) {
+            dirtySpans = dirtySpansBuffer = DirtyRegionCodec.toScanlineSpans(in.dirtyRegions, r.width, r.height, dirtySpansBuffer);
+        } else {
+            dirtySpans = null;
+        }
+
         try {
             switch (vf.get(DepthKey)) {
                 case 8: {
@@ -247,7 +271,7 @@ public class AnimationCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, r.x + r.y * scanlineStride, scanlineStride);
                     }
                     break;
                 }
@@ -280,7 +304,7 @@ public class AnimationCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, r.x + r.y * scanlineStride, scanlineStride);
                     }
                     break;
                 }
@@ -303,7 +327,7 @@ public class AnimationCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, r.x + r.y * scanlineStride, scanlineStride);
                     }
                     break;
                 }
@@ -327,7 +351,7 @@ public class AnimationCodec extends AbstractVideoCodec {
                     if (previousPixels == null) {
                         previousPixels = pixels.clone();
                     } else {
-                        System.arraycopy(pixels, 0, previousPixels, 0, pixels.length);
+                        DirtyRegionCodec.copyRegions(pixels, previousPixels, in.dirtyRegions, r.x + r.y * scanlineStride, scanlineStride);
                     }
                     break;
                 }
@@ -348,9 +372,30 @@ public class AnimationCodec extends AbstractVideoCodec {
             ex.printStackTrace();
             out.setFlag(DISCARD);
             return CODEC_FAILED;
+        } finally {
+            dirtySpans = null;
         }
     }
 
+    /**
+     * Returns the x-coordinate of the first pixel of a scanline that may
+     * have changed, or {@code width} if the scanline is unchanged.
+     *
+     * @param y              the offset of the scanline in the data array
+     * @param offset         the offset to the first pixel in the data array
+     * @param scanlineStride the number to append to offset to get to the next
+     *                       scanline
+     * @param width          the width of the image
+     */
+    private int dirtyFrom(int y, int offset, int scanlineStride, int width) {
+        if (dirtySpans == null) {
+            return 0;
+        }
+        int line = (y - offset) / scanlineStride;
+        int from = dirtySpans[2 * line];
+        return from < dirtySpans[2 * line + 1] ? from : width;
+    }
+
     /**
      * Encodes an 8-bit key frame.
      *
@@ -505,7 +550,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         int ymax = offset + height * scanlineStride;
         scanline:
         for (ymin = offset; ymin < ymax; ymin += scanlineStride) {
-            int xy = ymin;
+            int xy = ymin + dirtyFrom(ymin, offset, scanlineStride, width);
             int xymax = ymin + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -523,7 +568,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         // Determine whether we can skip lines at the end
         scanline:
         for (; ymax > ymin; ymax -= scanlineStride) {
-            int xy = ymax - scanlineStride;
+            int xy = ymax - scanlineStride + dirtyFrom(ymax - scanlineStride, offset, scanlineStride, width);
             int xymax = ymax - scanlineStride + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -551,11 +596,11 @@ public class AnimationCodec extends AbstractVideoCodec {
 
         // Encode each scanline
         for (int y = ymin; y < ymax; y += scanlineStride) {
-            int xy = y;
+            int skipCount = dirtyFrom(y, offset, scanlineStride, width);
+            int xy = y + skipCount;
             int xymax = y + width;
 
             // determine skip count
-            int skipCount = 0;
             for (; xy < xymax; ++xy, ++skipCount) {
                 if (data[xy] != prev[xy]) {
                     break;
@@ -741,7 +786,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         int ymax = offset + height * scanlineStride;
         scanline:
         for (ymin = offset; ymin < ymax; ymin += scanlineStride) {
-            int xy = ymin;
+            int xy = ymin + dirtyFrom(ymin, offset, scanlineStride, width);
             int xymax = ymin + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -759,7 +804,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         // Determine whether we can skip lines at the end
         scanline:
         for (; ymax > ymin; ymax -= scanlineStride) {
-            int xy = ymax - scanlineStride;
+            int xy = ymax - scanlineStride + dirtyFrom(ymax - scanlineStride, offset, scanlineStride, width);
             int xymax = ymax - scanlineStride + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -787,11 +832,11 @@ public class AnimationCodec extends AbstractVideoCodec {
 
         // Encode each scanline
         for (int y = ymin; y < ymax; y += scanlineStride) {
-            int xy = y;
+            int skipCount = dirtyFrom(y, offset, scanlineStride, width);
+            int xy = y + skipCount;
             int xymax = y + width;
 
             // determine skip count
-            int skipCount = 0;
             for (; xy < xymax; ++xy, ++skipCount) {
                 if (data[xy] != prev[xy]) {
                     break;
@@ -977,7 +1022,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         int ymax = offset + height * scanlineStride;
         scanline:
         for (ymin = offset; ymin < ymax; ymin += scanlineStride) {
-            int xy = ymin;
+            int xy = ymin + dirtyFrom(ymin, offset, scanlineStride, width);
             int xymax = ymin + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -995,7 +1040,7 @@ public class AnimationCodec extends AbstractVideoCodec {
         // Determine whether we can skip lines at the end
         scanline:
         for (; ymax > ymin; ymax -= scanlineStride) {
-            int xy = ymax - scanlineStride;
+            int xy = ymax - scanlineStride + dirtyFrom(ymax - scanlineStride, offset, scanlineStride, width);
             int xymax = ymax - scanlineStride + width;
             for (; xy < xymax; ++xy) {
                 if (data[xy] != prev[xy]) {
@@ -1023,11 +1068,11 @@ public class AnimationCodec extends AbstractVideoCodec {
 
         // Encode each scanline
         for (int y = ymin; y < ymax; y += scanlineStride) {
-            int xy = y;
+            int skipCount = dirtyFrom(y, offset, scanlineStride, width);
+            int xy = y + skipCount;
             int xymax = y + width;
 
             // determine skip count
-            int skipCount = 0;
             for (; xy < xymax; ++xy, ++skipCount) {
                 if (data[xy] != prev[xy]) {
                     break;
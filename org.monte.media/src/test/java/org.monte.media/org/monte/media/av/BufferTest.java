@@ -0,0 +1,133 @@
+/*
+ * @(#)BufferTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferTest {
+    /**
+     * Records the data that is returned to the pool.
+     */
+    private static class RecordingPool extends DefaultBufferPool {
+        final List<Object> released = new ArrayList<>();
+
+        @Override
+        public synchronized void release(Object data) {
+            released.add(data);
+            super.release(data);
+        }
+    }
+
+    private static Buffer createPooledBuffer(BufferPool pool, int length) {
+        Buffer buf = new Buffer();
+        byte[] data = pool.acquireBytes(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        buf.setPooledData(data, pool);
+        buf.length = length;
+        return buf;
+    }
+
+    @Test
+    public void shouldReturnDataToPoolOnLastRelease() {
+        RecordingPool pool = new RecordingPool();
+        Buffer a = createPooledBuffer(pool, 16);
+        byte[] data = (byte[]) a.data;
+        assertTrue(a.isDataOwned());
+        assertSame(pool, a.getDataPool());
+
+        Buffer b = new Buffer();
+        b.setDataRefTo(a);
+        assertSame(data, b.data);
+        assertTrue(b.isDataOwned());
+
+        a.retain();
+        a.release();
+        assertSame(data, a.data, "a still holds the retained reference");
+        b.release();
+        assertNull(b.data);
+        assertFalse(b.isDataOwned());
+        assertTrue(pool.released.isEmpty(), "data must not be released while it is referenced");
+        assertNotSame(data, pool.acquireBytes(16), "data must not be reused while it is referenced");
+
+        a.release();
+        assertNull(a.data);
+        assertFalse(a.isDataOwned());
+        assertEquals(List.of(data), pool.released);
+        assertSame(data, pool.acquireBytes(16));
+
+        a.release();
+        assertEquals(1, pool.released.size(), "releasing borrowed data does nothing");
+    }
+
+    @Test
+    public void shouldReleasePreviousData() {
+        RecordingPool pool = new RecordingPool();
+        Buffer a = createPooledBuffer(pool, 16);
+        byte[] first = (byte[]) a.data;
+        a.setPooledData(pool.acquireBytes(32), pool);
+        assertEquals(List.of(first), pool.released);
+
+        Buffer b = createPooledBuffer(pool, 8);
+        byte[] second = (byte[]) b.data;
+        b.setDataRefTo(a);
+        assertEquals(List.of(first, second), pool.released);
+        a.release();
+        b.release();
+        assertEquals(3, pool.released.size());
+    }
+
+    @Test
+    public void shouldCopyPooledDataInSetDataTo() {
+        RecordingPool pool = new RecordingPool();
+        Buffer a = createPooledBuffer(pool, 16);
+        byte[] data = (byte[]) a.data;
+
+        Buffer b = new Buffer();
+        b.setDataTo(a);
+        assertNotSame(data, b.data);
+        assertArrayEquals(data, (byte[]) b.data);
+        assertFalse(b.isDataOwned());
+
+        a.release();
+        assertEquals(List.of(data), pool.released);
+        // the copy stays valid after the pooled data has been reused
+        byte[] reused = pool.acquireBytes(16);
+        assertSame(data, reused);
+        reused[0] = 42;
+        assertEquals(0, ((byte[]) b.data)[0]);
+        b.release();
+        assertEquals(1, pool.released.size());
+    }
+
+    @Test
+    public void shouldCopyIntoPreviousImage() {
+        BufferedImage img = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(1, 1, 0xff0000);
+        Buffer a = new Buffer();
+        a.data = img;
+
+        BufferedImage into = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        Buffer b = new Buffer();
+        b.data = into;
+        b.setDataTo(a);
+        assertSame(into, b.data);
+        assertEquals(0xff0000, into.getRGB(1, 1) & 0xffffff);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * @(#)CodecPlannerTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.av.codec.video.JPEGCodec;
+import org.monte.media.av.codec.video.PNGCodec;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DataClassKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_MJPG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_PNG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class CodecPlannerTest {
+    private static final int WIDTH = 32, HEIGHT = 24;
+    private static final Format IMAGE_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+            EncodingKey, ENCODING_BUFFERED_IMAGE, DataClassKey, BufferedImage.class,
+            WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+    private static final Format MJPG_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
+            EncodingKey, ENCODING_AVI_MJPG, DataClassKey, byte[].class, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+    private static final Format PNG_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
+            EncodingKey, ENCODING_AVI_PNG, DataClassKey, byte[].class, DepthKey, 24);
+
+    @Test
+    public void shouldPlanChainOfCodecs() throws IOException {
+        CodecPlanner planner = new CodecPlanner(new DefaultRegistry());
+        Codec codec = planner.createCodec(MJPG_FORMAT, PNG_FORMAT);
+        assertInstanceOf(CodecChain.class, codec);
+        assertEquals(new JPEGCodec().getCostHint() + new PNGCodec().getCostHint(), codec.getCostHint());
+
+        Buffer in = new Buffer();
+        in.format = MJPG_FORMAT;
+        in.data = encodeJpeg(Color.BLUE);
+        in.length = ((byte[]) in.data).length;
+        Buffer out = new Buffer();
+        assertEquals(Codec.CODEC_OK, codec.process(in, out));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream((byte[]) out.data, out.offset, out.length));
+        assertNotNull(image);
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(Color.BLUE.getRGB() & 0xf0f0f0, image.getRGB(WIDTH / 2, HEIGHT / 2) & 0xf0f0f0);
+    }
+
+    @Test
+    public void shouldReuseCachedPlan() {
+        CodecPlanner planner = new CodecPlanner(new DefaultRegistry());
+        Codec first = planner.createCodec(MJPG_FORMAT, PNG_FORMAT);
+        Codec second = planner.createCodec(MJPG_FORMAT, PNG_FORMAT);
+        assertNotSame(first, second);
+        assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    public void shouldPreferSingleCodec() {
+        Codec codec = new CodecPlanner(new DefaultRegistry()).createCodec(IMAGE_FORMAT, MJPG_FORMAT);
+        assertInstanceOf(JPEGCodec.class, codec);
+    }
+
+    @Test
+    public void shouldReturnNullIfNoChainExists() {
+        CodecPlanner planner = new CodecPlanner(new DefaultRegistry(), 2);
+        assertNull(planner.createCodec(MJPG_FORMAT, new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, "none")));
+        assertNull(planner.createCodec(MJPG_FORMAT, new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, "none")));
+    }
+
+    private static byte[] encodeJpeg(Color color) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+
+        JPEGCodec encoder = new JPEGCodec();
+        encoder.setInputFormat(IMAGE_FORMAT);
+        encoder.setOutputFormat(MJPG_FORMAT);
+        Buffer in = new Buffer();
+        in.format = IMAGE_FORMAT;
+        in.data = image;
+        Buffer out = new Buffer();
+        encoder.process(in, out);
+        byte[] data = new byte[out.length];
+        System.arraycopy((byte[]) out.data, out.offset, data, 0, out.length);
+        return data;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * @(#)DefaultBufferPoolTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DefaultBufferPoolTest {
+    @Test
+    public void shouldReuseReleasedArrays() {
+        DefaultBufferPool pool = new DefaultBufferPool();
+        byte[] bytes = pool.acquireBytes(100);
+        assertEquals(100, bytes.length);
+        pool.release(bytes);
+        assertSame(bytes, pool.acquireBytes(100));
+        assertNotSame(bytes, pool.acquireBytes(100), "an array must only be handed out once");
+
+        int[] ints = pool.acquireInts(100);
+        pool.release(ints);
+        assertSame(ints, pool.acquireInts(60));
+        assertEquals(2, pool.getHits());
+        assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    public void shouldNotHandOutArraysThatAreTooSmallOrTooLarge() {
+        DefaultBufferPool pool = new DefaultBufferPool();
+        byte[] bytes = pool.acquireBytes(1000);
+        pool.release(bytes);
+        assertEquals(1001, pool.acquireBytes(1001).length);
+        assertNotSame(bytes, pool.acquireBytes(400));
+        assertSame(bytes, pool.acquireBytes(500));
+    }
+
+    @Test
+    public void shouldKeepAtMostMaxIdleObjects() {
+        DefaultBufferPool pool = new DefaultBufferPool(2);
+        byte[] a = new byte[10], b = new byte[10], c = new byte[10];
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertSame(a, pool.acquireBytes(10));
+        assertSame(b, pool.acquireBytes(10));
+        assertNotSame(c, pool.acquireBytes(10));
+
+        pool.release(a);
+        pool.clear();
+        assertNotSame(a, pool.acquireBytes(10));
+    }
+
+    @Test
+    public void shouldNotCountHitsWhenNothingIsIdle() {
+        DefaultBufferPool pool = new DefaultBufferPool(0);
+        byte[] bytes = pool.acquireBytes(100);
+        pool.release(bytes);
+        assertNotSame(bytes, pool.acquireBytes(100));
+        int[] ints = pool.acquireInts(100);
+        pool.release(ints);
+        assertNotSame(ints, pool.acquireInts(100));
+        BufferedImage img = pool.acquireImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        pool.release(img);
+        assertNotSame(img, pool.acquireImage(8, 4, BufferedImage.TYPE_INT_RGB));
+        assertEquals(0, pool.getHits());
+        assertEquals(6, pool.getMisses());
+    }
+
+    @Test
+    public void shouldPoolImagesBySizeAndType() {
+        DefaultBufferPool pool = new DefaultBufferPool();
+        BufferedImage img = pool.acquireImage(8, 4, BufferedImage.TYPE_INT_RGB);
+        pool.release(img);
+        assertNotSame(img, pool.acquireImage(4, 8, BufferedImage.TYPE_INT_RGB));
+        assertNotSame(img, pool.acquireImage(8, 4, BufferedImage.TYPE_INT_ARGB));
+        assertSame(img, pool.acquireImage(8, 4, BufferedImage.TYPE_INT_RGB));
+
+        // indexed images have a color model which is not implied by the type
+        IndexColorModel icm = new IndexColorModel(8, 2, new byte[]{0, -1}, new byte[]{0, -1}, new byte[]{0, -1});
+        BufferedImage indexed = new BufferedImage(8, 4, BufferedImage.TYPE_BYTE_INDEXED, icm);
+        pool.release(indexed);
+        BufferedImage acquired = pool.acquireImage(8, 4, BufferedImage.TYPE_BYTE_INDEXED);
+        assertNotSame(indexed, acquired);
+        ColorModel cm = acquired.getColorModel();
+        assertNotSame(icm, cm);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * @(#)DefaultRegistryTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MIME_QUICKTIME;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DataClassKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_MJPG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_RLE8;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_QUICKTIME_ANIMATION;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_QUICKTIME_JPEG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class DefaultRegistryTest {
+    private static final Format[] FORMATS = {
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_AVI, EncodingKey, ENCODING_AVI_MJPG,
+                    WidthKey, 16, HeightKey, 16, DepthKey, 24),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_AVI, EncodingKey, ENCODING_AVI_RLE8,
+                    WidthKey, 16, HeightKey, 16, DepthKey, 8),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_QUICKTIME, EncodingKey, ENCODING_QUICKTIME_JPEG,
+                    WidthKey, 16, HeightKey, 16, DepthKey, 24),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_QUICKTIME, EncodingKey, ENCODING_QUICKTIME_ANIMATION,
+                    WidthKey, 16, HeightKey, 16, DepthKey, 24),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, MimeTypeKey, MIME_JAVA, EncodingKey, ENCODING_BUFFERED_IMAGE,
+                    DataClassKey, BufferedImage.class, WidthKey, 16, HeightKey, 16, DepthKey, 24),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO, EncodingKey, "none"),
+            new Format(MediaTypeKey, FormatKeys.MediaType.VIDEO),
+    };
+
+    @Test
+    public void shouldFindSameCodecsAsFullSweep() {
+        DefaultRegistry registry = new DefaultRegistry();
+        for (Format in : FORMATS) {
+            assertEquals(sweep(in, null), classesOf(registry.getCodecs(in, null)), "decoders for " + in);
+            assertEquals(sweep(null, in), classesOf(registry.getCodecs(null, in)), "encoders for " + in);
+            for (Format out : FORMATS) {
+                assertEquals(sweep(in, out), classesOf(registry.getCodecs(in, out)), "codecs for " + in + " -> " + out);
+            }
+        }
+    }
+
+    @Test
+    public void shouldReuseReleasedCodecs() {
+        DefaultRegistry registry = new DefaultRegistry();
+        Format fmt = FORMATS[0];
+
+        Codec codec = registry.getDecoder(fmt);
+        assertNotNull(codec);
+        registry.releaseCodec(codec);
+        assertNotSame(codec, registry.getDecoder(fmt), "pooling is disabled by default");
+
+        registry.setCodecPoolCapacity(1);
+        codec = registry.getDecoder(fmt);
+        registry.releaseCodec(codec);
+        assertSame(codec, registry.getDecoder(fmt));
+        assertNotSame(codec, registry.getDecoder(fmt));
+
+        // a pooled codec is configured with the requested formats
+        registry.releaseCodec(codec);
+        Codec encoder = registry.getEncoder(fmt);
+        assertSame(codec, encoder);
+        assertEquals(ENCODING_AVI_MJPG, encoder.getOutputFormat().get(EncodingKey));
+
+        // codecs that have not been obtained from the registry are ignored
+        Codec foreign = ServiceLoader.load(CodecSpi.class).iterator().next().create();
+        registry.releaseCodec(foreign);
+        assertNotSame(foreign, registry.getDecoder(fmt));
+        assertFalse(registry.getDecoders(fmt).isEmpty());
+    }
+
+    private static List<Class<?>> sweep(Format in, Format out) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (CodecSpi spi : ServiceLoader.load(CodecSpi.class)) {
+            Codec codec = spi.create();
+            if (in != null && codec.setInputFormat(in) == null
+                    || out != null && codec.setOutputFormat(out) == null) {
+                continue;
+            }
+            classes.add(codec.getClass());
+        }
+        return classes;
+    }
+
+    private static List<Class<?>> classesOf(List<Codec> codecs) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (Codec codec : codecs) {
+            classes.add(codec.getClass());
+        }
+        return classes;
+    }
+}
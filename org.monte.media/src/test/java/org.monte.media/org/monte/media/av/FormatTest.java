@@ -0,0 +1,101 @@
+/*
+ * @(#)FormatTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.math.Rational;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.FrameRateKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_QUICKTIME;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class FormatTest {
+    @Test
+    public void shouldBeEqualRegardlessOfKeyOrder() {
+        Format a = new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, "MJPG", WidthKey, 16);
+        Format b = new Format(WidthKey, 16, EncodingKey, "MJPG", MediaTypeKey, MediaType.VIDEO);
+        Map<FormatKey<?>, Object> m = new HashMap<>();
+        m.put(EncodingKey, "MJPG");
+        m.put(WidthKey, 16);
+        m.put(MediaTypeKey, MediaType.VIDEO);
+        Format c = new Format(m);
+
+        assertEquals(a, b);
+        assertEquals(a, c);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.hashCode(), c.hashCode());
+        assertEquals(a.toString(), b.toString());
+        assertEquals(a.getProperties(), m);
+        assertNotEquals(a, b.prepend(WidthKey, 32));
+    }
+
+    @Test
+    public void shouldMatchCommonKeys() {
+        Format a = new Format(MediaTypeKey, MediaType.VIDEO, EncodingKey, "MJPG", WidthKey, 16);
+        Format b = new Format(EncodingKey, "MJPG", DepthKey, 24);
+        assertTrue(a.matches(b));
+        assertTrue(b.matches(a));
+        assertTrue(a.matches(new Format()));
+        assertFalse(a.matches(b.prepend(EncodingKey, "png ")));
+
+        Format c = a.append(FrameRateKey, new Rational(30, 1));
+        Format d = a.append(FrameRateKey, new Rational(25, 1));
+        assertFalse(c.matches(d));
+        assertTrue(c.matchesWithout(d, FrameRateKey));
+    }
+
+    @Test
+    public void shouldReturnSameFormatIfUnchanged() {
+        Format a = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI, EncodingKey, "MJPG");
+        assertSame(a, a.prepend(MimeTypeKey, MIME_AVI));
+        assertSame(a, a.append(MimeTypeKey, MIME_QUICKTIME));
+        assertSame(a, a.append(new Format(EncodingKey, "png ")));
+        assertSame(a, a.removeKeys(WidthKey));
+        assertSame(a, a.intersectKeys(MediaTypeKey, MimeTypeKey, EncodingKey));
+
+        Format b = a.prepend(MimeTypeKey, MIME_QUICKTIME);
+        assertNotSame(a, b);
+        assertEquals(MIME_QUICKTIME, b.get(MimeTypeKey));
+        assertEquals(MIME_AVI, a.get(MimeTypeKey));
+        assertEquals(new Format(MediaTypeKey, MediaType.VIDEO), a.intersectKeys(MediaTypeKey, WidthKey));
+        assertNull(a.removeKeys(EncodingKey).get(EncodingKey));
+    }
+
+    @Test
+    public void shouldResolveDuplicateKeys() {
+        Format a = new Format(EncodingKey, "MJPG", EncodingKey, "png ");
+        assertEquals("png ", a.get(EncodingKey));
+        assertEquals(1, a.getKeys().size());
+        assertEquals("MJPG", new Format().append(EncodingKey, "MJPG", EncodingKey, "png ").get(EncodingKey));
+        assertEquals("png ", new Format().prepend(EncodingKey, "MJPG", EncodingKey, "png ").get(EncodingKey));
+        assertThrows(ClassCastException.class, () -> new Format(WidthKey, "16"));
+    }
+
+    @Test
+    public void shouldInternEqualFormats() {
+        Format a = new Format(MediaTypeKey, MediaType.AUDIO, EncodingKey, "twos").intern();
+        Format b = new Format(EncodingKey, "twos", MediaTypeKey, MediaType.AUDIO);
+        assertNotSame(a, b);
+        assertSame(a, b.intern());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * @(#)PipelinedCodecChainTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PipelinedCodecChainTest {
+    @Test
+    public void shouldProduceSameOutputAsCodecChainInSameOrder() {
+        List<Integer> expected = run(CodecChain.createCodecChain(new AddCodec(1), new AddCodec(10), new AddCodec(100)), 50);
+        List<Integer> actual;
+        try (PipelinedCodecChain pipeline = new PipelinedCodecChain(new AddCodec(1), new AddCodec(10), new AddCodec(100))) {
+            actual = run(pipeline, 50);
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldProduceOutputAfterReset() {
+        try (PipelinedCodecChain pipeline = new PipelinedCodecChain(new AddCodec(1), new AddCodec(10))) {
+            run(pipeline, 10);
+            pipeline.reset();
+            assertEquals(List.of(11, 12, 13), run(pipeline, 3));
+        }
+    }
+
+    /**
+     * Feeds buffers with values 0 to count-1 followed by an end-of-media
+     * buffer into the codec and returns the values of the output buffers.
+     */
+    private static List<Integer> run(Codec codec, int count) {
+        List<Integer> values = new ArrayList<>();
+        Buffer in = new Buffer();
+        Buffer out = new Buffer();
+        for (int i = 0; i <= count; i++) {
+            in.clearFlags();
+            in.sequenceNumber = i;
+            in.data = new byte[]{(byte) i};
+            in.offset = 0;
+            in.length = 1;
+            if (i == count) {
+                in.setFlag(BufferFlag.END_OF_MEDIA);
+            }
+            int status;
+            do {
+                status = codec.process(in, out);
+                if ((status & Codec.CODEC_OUTPUT_NOT_FILLED) == 0 && !out.isFlag(BufferFlag.END_OF_MEDIA)) {
+                    assertEquals(Codec.CODEC_OK, status & Codec.CODEC_FAILED);
+                    values.add((int) ((byte[]) out.data)[0]);
+                }
+            } while ((status & Codec.CODEC_INPUT_NOT_CONSUMED) != 0);
+        }
+        return values;
+    }
+
+    /**
+     * Adds a constant to the first byte of the buffer.
+     */
+    private static class AddCodec extends AbstractCodec {
+        private final int addend;
+
+        AddCodec(int addend) {
+            super(new Format[]{new Format()});
+            this.addend = addend;
+        }
+
+        @Override
+        public int process(Buffer in, Buffer out) {
+            out.setMetaTo(in);
+            byte[] data = out.data instanceof byte[] ? (byte[]) out.data : new byte[1];
+            data[0] = (byte) (((byte[]) in.data)[in.offset] + addend);
+            out.data = data;
+            out.offset = 0;
+            out.length = 1;
+            return CODEC_OK;
+        }
+    }
+}
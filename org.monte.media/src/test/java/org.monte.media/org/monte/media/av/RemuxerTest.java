@@ -0,0 +1,265 @@
+/*
+ * @(#)RemuxerTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.avi.AVIOutputStream;
+import org.monte.media.avi.AVIReader;
+import org.monte.media.avi.AVIWriter;
+import org.monte.media.math.Rational;
+import org.monte.media.quicktime.QuickTimeOutputStream;
+import org.monte.media.quicktime.QuickTimeReader;
+import org.monte.media.quicktime.QuickTimeWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.monte.media.av.FormatKeys.SampleFormatKey;
+
+public class RemuxerTest {
+    @Test
+    public void shouldTrimAtKeyframes() throws IOException {
+        File file = createQuickTimeFile(false);
+        File copy = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        try {
+            try (QuickTimeReader in = new QuickTimeReader(file);
+                 QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                remuxer.append(in, new Rational(13, 10), new Rational(17, 10));
+                assertEquals(new Rational(7, 10), remuxer.getTime());
+                assertEquals(7, remuxer.getMetrics().getFrames());
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(copy)) {
+                assertEquals(new Rational(7, 10), in.getDuration());
+                assertSamples(in, 10, 17);
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldConcatenateMovies() throws IOException {
+        File file = createQuickTimeFile(false);
+        File copy = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        try {
+            try (QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                try (QuickTimeReader in = new QuickTimeReader(file)) {
+                    remuxer.append(in, new Rational(5, 10), null);
+                }
+                try (QuickTimeReader in = new QuickTimeReader(file)) {
+                    remuxer.append(in, null, new Rational(5, 10));
+                }
+                assertEquals(new Rational(2, 1), remuxer.getTime());
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(copy)) {
+                assertEquals(new Rational(2, 1), in.getDuration());
+                assertSamples(in, 5, 20);
+                in.setMovieReadTime(new Rational(15, 10));
+                assertSamples(in, 0, 5);
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldCopyAviIntoQuickTime() throws IOException {
+        File file = Files.createTempFile("RemuxerTest", ".avi").toFile();
+        File copy = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        try {
+            AVIOutputStream out = new AVIOutputStream(file);
+            try {
+                out.addVideoTrack("MJPG", 1, 10, 16, 16, 24, 5);
+                out.addAudioTrack(1, 1, 8000, 1, 8, false, 1, 1);
+                byte[] audio = new byte[800];
+                for (int i = 0; i < 20; i++) {
+                    out.writeSample(0, createSample(i), 0, 100 + i, true);
+                    out.writeSamples(1, audio.length, audio, 0, audio.length, true);
+                }
+            } finally {
+                out.close();
+            }
+
+            try (AVIReader in = new AVIReader(file);
+                 QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                remuxer.append(in);
+                assertEquals(20 * 100 + 190 + 20 * 800, remuxer.getMetrics().getBytesOut());
+                assertTrue(remuxer.getBytesPerSecond() > 0);
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(copy)) {
+                assertEquals(2, in.getTrackCount());
+                assertEquals("jpeg", in.getFormat(0).get(SampleFormatKey));
+                assertEquals("raw ", in.getFormat(1).get(SampleFormatKey));
+                assertEquals(20 * 800, in.getChunkCount(1));
+                assertEquals(new Rational(2, 1), in.getDuration());
+                for (int i = 0; i < 20; i++) {
+                    Buffer buf = new Buffer();
+                    in.read(0, buf);
+                    assertArrayEquals(createSample(i), Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+                }
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldConcatenateAviMoviesWithSameFrameRate() throws IOException {
+        File file = createAviFile(10);
+        File fast = createAviFile(20);
+        File copy = Files.createTempFile("RemuxerTest", ".avi").toFile();
+        File mov = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        try {
+            try (AVIWriter w = new AVIWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                try (AVIReader in = new AVIReader(file)) {
+                    remuxer.append(in);
+                }
+                try (AVIReader in = new AVIReader(file)) {
+                    remuxer.append(in, null, new Rational(1, 1));
+                }
+                assertEquals(new Rational(3, 1), remuxer.getTime());
+                // an AVI track has a fixed frame rate
+                try (AVIReader in = new AVIReader(fast)) {
+                    assertThrows(IllegalArgumentException.class, () -> remuxer.append(in));
+                }
+                assertEquals(new Rational(3, 1), remuxer.getTime());
+            }
+
+            try (AVIReader in = new AVIReader(copy)) {
+                assertEquals(new Rational(3, 1), in.getDuration());
+                Buffer buf = new Buffer();
+                for (int i = 0; i < 30; i++) {
+                    in.read(0, buf);
+                    assertArrayEquals(createSample(i % 20), Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+                }
+            }
+
+            // a QuickTime track has a duration per sample
+            try (QuickTimeWriter w = new QuickTimeWriter(mov)) {
+                Remuxer remuxer = new Remuxer(w);
+                try (AVIReader in = new AVIReader(file)) {
+                    remuxer.append(in);
+                }
+                try (AVIReader in = new AVIReader(fast)) {
+                    remuxer.append(in);
+                }
+                assertEquals(new Rational(3, 1), remuxer.getTime());
+            }
+        } finally {
+            file.delete();
+            fast.delete();
+            copy.delete();
+            mov.delete();
+        }
+    }
+
+    @Test
+    public void shouldSkipUnsupportedTracks() throws IOException {
+        File file = createQuickTimeFile(true);
+        File copy = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        try {
+            try (QuickTimeReader in = new QuickTimeReader(file);
+                 QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                assertThrows(UnsupportedOperationException.class, () -> remuxer.append(in));
+            }
+            try (QuickTimeReader in = new QuickTimeReader(file);
+                 QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                Remuxer remuxer = new Remuxer(w);
+                remuxer.setSkipUnsupportedTracks(true);
+                remuxer.append(in);
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(copy)) {
+                assertEquals(1, in.getTrackCount());
+                assertSamples(in, 0, 20);
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    /**
+     * Creates a movie with 20 frames at 10 frames per second, and a sync
+     * sample every 5 frames.
+     */
+    private static File createQuickTimeFile(boolean withAudio) throws IOException {
+        File file = Files.createTempFile("RemuxerTest", ".mov").toFile();
+        QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+        try {
+            out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+            if (withAudio) {
+                out.addAudioTrack("twos", 8000, 8000, 1, 16, false, 1, 2, true, ByteOrder.BIG_ENDIAN);
+            }
+            byte[] audio = new byte[1600];
+            for (int i = 0; i < 20; i++) {
+                out.writeSample(0, createSample(i), 60, i % 5 == 0);
+                if (withAudio) {
+                    out.writeSamples(1, 800, audio, 0, audio.length, 1, true);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Creates an AVI movie with 20 frames at the specified frame rate, and a
+     * sync sample every 5 frames.
+     */
+    private static File createAviFile(int frameRate) throws IOException {
+        File file = Files.createTempFile("RemuxerTest", ".avi").toFile();
+        AVIOutputStream out = new AVIOutputStream(file);
+        try {
+            out.addVideoTrack("MJPG", 1, frameRate, 16, 16, 24, 5);
+            for (int i = 0; i < 20; i++) {
+                out.writeSample(0, createSample(i), 0, 100 + i, i % 5 == 0);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] createSample(int i) {
+        byte[] data = new byte[100 + i];
+        Arrays.fill(data, (byte) i);
+        return data;
+    }
+
+    /**
+     * Reads the samples of track 0 and compares them with the samples
+     * {@code from} to {@code to} of the file that has been created by
+     * {@link #createQuickTimeFile}.
+     */
+    private static void assertSamples(QuickTimeReader in, int from, int to) throws IOException {
+        Buffer buf = new Buffer();
+        for (int i = from; i < to; i++) {
+            in.read(0, buf);
+            assertArrayEquals(createSample(i), Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+            assertEquals(i % 5 == 0, buf.isFlag(BufferFlag.KEYFRAME), "sample " + i);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * @(#)StageMetricsTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StageMetricsTest {
+    @Test
+    public void shouldComputeBucketBoundaries() {
+        // values below 8 have a bucket of their own
+        assertEquals(0, StageMetrics.bucketOf(0));
+        assertEquals(0, StageMetrics.upperBoundOf(0));
+        assertEquals(7, StageMetrics.bucketOf(7));
+        assertEquals(7, StageMetrics.upperBoundOf(7));
+        // 8 sub-buckets per power of two
+        assertEquals(8, StageMetrics.bucketOf(8));
+        assertEquals(8, StageMetrics.upperBoundOf(8));
+        assertEquals(15, StageMetrics.bucketOf(15));
+        assertEquals(15, StageMetrics.upperBoundOf(15));
+        assertEquals(16, StageMetrics.bucketOf(16));
+        assertEquals(16, StageMetrics.bucketOf(17));
+        assertEquals(17, StageMetrics.upperBoundOf(16));
+        assertEquals(17, StageMetrics.bucketOf(18));
+        // the last bucket
+        int last = StageMetrics.bucketOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, StageMetrics.upperBoundOf(last));
+        assertEquals(last, StageMetrics.bucketOf(Long.MAX_VALUE - (1L << 59) + 1));
+        assertEquals(last - 1, StageMetrics.bucketOf(Long.MAX_VALUE - (1L << 59)));
+    }
+
+    @Test
+    public void shouldBoundRelativeErrorOfBuckets() {
+        for (int shift = 0; shift < 63; shift++) {
+            for (long n : new long[]{1L << shift, (1L << shift) + 1, (1L << shift) + (1L << shift >> 1), (1L << shift) + ((1L << shift) - 1)}) {
+                int bucket = StageMetrics.bucketOf(n);
+                long upper = StageMetrics.upperBoundOf(bucket);
+                assertTrue(upper >= n, "upper bound of " + n);
+                assertTrue(bucket == 0 || StageMetrics.upperBoundOf(bucket - 1) < n, "lower bound of " + n);
+                assertTrue(upper - n <= n / 8, "relative error of " + n);
+            }
+        }
+    }
+
+    @Test
+    public void shouldComputePercentiles() {
+        StageMetrics metrics = new StageMetrics("test");
+        assertEquals(0, metrics.getSnapshot().getPercentileNanos(50));
+        for (long n = 1; n <= 100; n++) {
+            metrics.record(n, 10, 20, false, false);
+        }
+        StageMetrics.Snapshot s = metrics.getSnapshot();
+        assertEquals(100, s.getCalls());
+        assertEquals(100, s.getFrames());
+        assertEquals(1000, s.getBytesIn());
+        assertEquals(2000, s.getBytesOut());
+        assertEquals(5050, s.getTotalNanos());
+        assertEquals(50, s.getMeanNanos());
+        assertEquals(100, s.getMaxNanos());
+        assertEquals(1, s.getPercentileNanos(0));
+        assertEquals(1, s.getPercentileNanos(1));
+        assertEquals(7, s.getPercentileNanos(7));
+        // 50 is in the bucket 48..51
+        assertEquals(51, s.getPercentileNanos(50));
+        assertEquals(51, metrics.getMedianNanos());
+        // 90 is in the bucket 88..95
+        assertEquals(95, s.getPercentileNanos(90));
+        // 99 is in the bucket 96..103, which is clamped to the maximum
+        assertEquals(100, s.getPercentileNanos(99));
+        assertEquals(100, metrics.getP99Nanos());
+        assertEquals(100, s.getPercentileNanos(100));
+    }
+
+    @Test
+    public void shouldCountOutcomes() {
+        StageMetrics metrics = new StageMetrics("test");
+        metrics.record(-5, 1, 0, true, false);
+        metrics.record(5, 1, 0, false, true);
+        metrics.record(5, 1, 1, false, false);
+        assertEquals(3, metrics.getCalls());
+        assertEquals(1, metrics.getFailed());
+        assertEquals(1, metrics.getDiscarded());
+        assertEquals(1, metrics.getFrames());
+        // negative latencies are recorded as 0
+        assertEquals(10, metrics.getTotalNanos());
+        assertEquals(0, metrics.getSnapshot().getPercentileNanos(30));
+    }
+
+    @Test
+    public void shouldReset() {
+        StageMetrics metrics = new StageMetrics("test");
+        for (long n = 1; n <= 100; n++) {
+            metrics.record(n * 1000, 10, 20, n % 10 == 0, false);
+        }
+        StageMetrics.Snapshot before = metrics.getSnapshot();
+        metrics.reset();
+
+        StageMetrics.Snapshot s = metrics.getSnapshot();
+        assertEquals(0, s.getCalls());
+        assertEquals(0, s.getFrames());
+        assertEquals(0, s.getFailed());
+        assertEquals(0, s.getBytesIn());
+        assertEquals(0, s.getBytesOut());
+        assertEquals(0, s.getTotalNanos());
+        assertEquals(0, s.getMaxNanos());
+        assertEquals(0, s.getPercentileNanos(99));
+        // snapshots are immutable
+        assertEquals(100, before.getCalls());
+
+        metrics.record(3, 0, 0, false, false);
+        assertEquals(3, metrics.getSnapshot().getPercentileNanos(50));
+        assertEquals(3, metrics.getMaxNanos());
+    }
+
+    @Test
+    public void shouldReportElapsedTimeOfCodecChain() {
+        CodecChain chain = (CodecChain) CodecChain.createCodecChain(
+                new SleepCodec("a", 20), new SleepCodec("b", 10), new SleepCodec("c", 30));
+        assertEquals(0, chain.getElapsedTime());
+        assertEquals("{a 0, b 0, c 0}", chain.reportElapsedTime());
+
+        Buffer in = new Buffer();
+        in.data = new byte[4];
+        in.length = 4;
+        Buffer out = new Buffer();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Codec.CODEC_OK, chain.process(in, out));
+        }
+
+        // the elapsed times are in milliseconds, the nested chain of b and c
+        // is reported flat
+        List<StageMetrics> stages = chain.getStageMetrics();
+        assertEquals(3, stages.size());
+        long total = 0;
+        String[] report = chain.reportElapsedTime().replaceAll("[{}]", "").split(", ");
+        assertEquals(3, report.length);
+        long[] sleep = {20, 10, 30};
+        for (int i = 0; i < 3; i++) {
+            long millis = stages.get(i).getTotalNanos() / 1_000_000;
+            assertTrue(millis >= 2 * sleep[i], stages.get(i).toString());
+            assertEquals(stages.get(i).getName() + " " + millis, report[i]);
+            assertEquals(2, stages.get(i).getFrames());
+            assertEquals(8, stages.get(i).getBytesIn());
+            total += stages.get(i).getTotalNanos();
+        }
+        assertEquals(total / 1_000_000, chain.getElapsedTime());
+        assertTrue(chain.getElapsedTime() >= 120);
+    }
+
+    /**
+     * Copies the input buffer after sleeping for a fixed time.
+     */
+    private static class SleepCodec extends AbstractCodec {
+        private final long millis;
+
+        SleepCodec(String name, long millis) {
+            super(new Format[]{new Format()});
+            this.name = name;
+            this.millis = millis;
+        }
+
+        @Override
+        public int process(Buffer in, Buffer out) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CODEC_FAILED;
+            }
+            out.setDataTo(in);
+            return CODEC_OK;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * @(#)DirtyRegionCodecTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av.codec.video;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.av.Buffer;
+import org.monte.media.av.Codec;
+import org.monte.media.av.CodecChain;
+import org.monte.media.av.Format;
+import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.math.Rational;
+import org.monte.media.quicktime.codec.video.AnimationCodec;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.monte.media.av.BufferFlag.SAME_DATA;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.FrameRateKey;
+import static org.monte.media.av.FormatKeys.KeyFrameIntervalKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MIME_QUICKTIME;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DataClassKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_TECHSMITH_SCREEN_CAPTURE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_QUICKTIME_ANIMATION;
+import static org.monte.media.av.codec.video.VideoFormatKeys.FixedFrameRateKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class DirtyRegionCodecTest {
+    private static final int WIDTH = 256, HEIGHT = 128;
+    private static final Format IMAGE_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+            EncodingKey, ENCODING_BUFFERED_IMAGE, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+
+    @Test
+    public void shouldDetectChangedTiles() {
+        DirtyRegionCodec codec = new DirtyRegionCodec();
+        codec.setInputFormat(IMAGE_FORMAT);
+        codec.setOutputFormat(IMAGE_FORMAT);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Buffer in = new Buffer();
+        in.data = image;
+        Buffer out = new Buffer();
+
+        assertEquals(Codec.CODEC_OK, codec.process(in, out));
+        assertArrayEquals(new Rectangle[]{new Rectangle(0, 0, WIDTH, HEIGHT)}, out.dirtyRegions);
+        assertFalse(out.isFlag(SAME_DATA));
+
+        image.setRGB(70, 10, 0xff0000);
+        image.setRGB(130, 10, 0x00ff00);
+        image.setRGB(255, 127, 0x0000ff);
+        assertEquals(Codec.CODEC_OK, codec.process(in, out));
+        assertArrayEquals(new Rectangle[]{new Rectangle(64, 0, 128, 64), new Rectangle(192, 64, 64, 64)}, out.dirtyRegions);
+        assertFalse(out.isFlag(SAME_DATA));
+        assertEquals(image, out.data);
+
+        assertEquals(Codec.CODEC_OK, codec.process(in, out));
+        assertEquals(0, out.dirtyRegions.length);
+        assertTrue(out.isFlag(SAME_DATA));
+    }
+
+    @Test
+    public void shouldEncodeTechSmithFramesIdenticallyWithDirtyRegions() {
+        Format outputFormat = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
+                EncodingKey, ENCODING_AVI_TECHSMITH_SCREEN_CAPTURE, DataClassKey, byte[].class,
+                FixedFrameRateKey, true, FrameRateKey, new Rational(30), KeyFrameIntervalKey, 100,
+                WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+        assertEncodesIdentically(TechSmithCodec::new, IMAGE_FORMAT.append(FixedFrameRateKey, true), outputFormat);
+    }
+
+    @Test
+    public void shouldEncodeAnimationFramesIdenticallyWithDirtyRegions() {
+        Format outputFormat = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_QUICKTIME,
+                EncodingKey, ENCODING_QUICKTIME_ANIMATION, DataClassKey, byte[].class,
+                FrameRateKey, new Rational(30), KeyFrameIntervalKey, 100,
+                WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+        assertEncodesIdentically(AnimationCodec::new, IMAGE_FORMAT, outputFormat);
+    }
+
+    private static void assertEncodesIdentically(Supplier<Codec> encoderFactory, Format inputFormat, Format outputFormat) {
+        Codec plain = encoderFactory.get();
+        plain.setInputFormat(inputFormat);
+        plain.setOutputFormat(outputFormat);
+        DirtyRegionCodec drc = new DirtyRegionCodec();
+        drc.setInputFormat(inputFormat);
+        drc.setOutputFormat(inputFormat);
+        Codec encoder = encoderFactory.get();
+        encoder.setInputFormat(inputFormat);
+        encoder.setOutputFormat(outputFormat);
+        Codec chain = new CodecChain(drc, encoder);
+
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int frame = 0; frame < 5; frame++) {
+            if (frame != 3) {
+                Graphics2D g = image.createGraphics();
+                g.setColor(new Color(Color.HSBtoRGB(frame / 5f, 1f, 1f)));
+                g.fillRect(20 + frame * 30, 10 + frame * 20, 40, 30);
+                g.dispose();
+            }
+            Buffer in = new Buffer();
+            in.format = inputFormat;
+            in.data = image;
+            Buffer expected = new Buffer();
+            Buffer actual = new Buffer();
+            assertEquals(Codec.CODEC_OK, plain.process(in, expected));
+            assertEquals(Codec.CODEC_OK, chain.process(in, actual));
+            assertArrayEquals(
+                    Arrays.copyOfRange((byte[]) expected.data, expected.offset, expected.offset + expected.length),
+                    Arrays.copyOfRange((byte[]) actual.data, actual.offset, actual.offset + actual.length),
+                    "frame " + frame);
+        }
+    }
+}
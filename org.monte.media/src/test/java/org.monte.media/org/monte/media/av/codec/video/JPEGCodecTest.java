@@ -0,0 +1,92 @@
+/*
+ * @(#)JPEGCodecTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av.codec.video;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.av.Buffer;
+import org.monte.media.av.Format;
+import org.monte.media.av.FormatKeys.MediaType;
+import org.monte.media.io.ImageWriterPool;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DataClassKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_MJPG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class JPEGCodecTest {
+    private static final int WIDTH = 32, HEIGHT = 24;
+    private static final Format IMAGE_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+            EncodingKey, ENCODING_BUFFERED_IMAGE, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+    private static final Format MJPG_FORMAT = new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
+            EncodingKey, ENCODING_AVI_MJPG, DataClassKey, byte[].class, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24);
+
+    @Test
+    public void shouldReuseWriterAndReaderForConsecutiveFrames() {
+        JPEGCodec encoder = new JPEGCodec();
+        encoder.setInputFormat(IMAGE_FORMAT);
+        encoder.setOutputFormat(MJPG_FORMAT);
+        JPEGCodec decoder = new JPEGCodec();
+        decoder.setInputFormat(MJPG_FORMAT);
+        decoder.setOutputFormat(IMAGE_FORMAT);
+
+        for (Color color : new Color[]{Color.RED, Color.BLUE, Color.GREEN}) {
+            assertEquals(color.getRGB() & 0xf0f0f0, roundTrip(encoder, decoder, color) & 0xf0f0f0);
+        }
+    }
+
+    @Test
+    public void shouldEncodeWithImageWriterPool() {
+        try (ImageWriterPool pool = new ImageWriterPool("image/jpeg", 1)) {
+            JPEGCodec encoder = new JPEGCodec();
+            encoder.setImageWriterPool(pool);
+            encoder.setInputFormat(IMAGE_FORMAT);
+            encoder.setOutputFormat(MJPG_FORMAT);
+            JPEGCodec decoder = new JPEGCodec();
+            decoder.setInputFormat(MJPG_FORMAT);
+            decoder.setOutputFormat(IMAGE_FORMAT);
+
+            for (Color color : new Color[]{Color.RED, Color.BLUE}) {
+                assertEquals(color.getRGB() & 0xf0f0f0, roundTrip(encoder, decoder, color) & 0xf0f0f0);
+            }
+            assertEquals(1, pool.getMisses());
+            assertEquals(1, pool.getHits());
+        }
+    }
+
+    private static int roundTrip(JPEGCodec encoder, JPEGCodec decoder, Color color) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+
+        Buffer in = new Buffer();
+        in.format = IMAGE_FORMAT;
+        in.data = image;
+        Buffer encoded = new Buffer();
+        assertEquals(JPEGCodec.CODEC_OK, encoder.process(in, encoded));
+        byte[] data = new byte[encoded.length];
+        System.arraycopy((byte[]) encoded.data, encoded.offset, data, 0, encoded.length);
+        encoded.data = data;
+        encoded.offset = 0;
+
+        Buffer decoded = new Buffer();
+        assertEquals(JPEGCodec.CODEC_OK, decoder.process(encoded, decoded));
+        return ((BufferedImage) decoded.data).getRGB(WIDTH / 2, HEIGHT / 2) & 0xffffff;
+    }
+}
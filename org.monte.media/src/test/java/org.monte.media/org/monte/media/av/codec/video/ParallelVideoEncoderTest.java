@@ -0,0 +1,92 @@
+/*
+ * @(#)ParallelVideoEncoderTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.av.codec.video;
+
+import org.junit.jupiter.api.Test;
+import org.monte.media.av.Buffer;
+import org.monte.media.av.Format;
+import org.monte.media.av.FormatKeys.MediaType;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.monte.media.av.FormatKeys.EncodingKey;
+import static org.monte.media.av.FormatKeys.MIME_AVI;
+import static org.monte.media.av.FormatKeys.MIME_JAVA;
+import static org.monte.media.av.FormatKeys.MediaTypeKey;
+import static org.monte.media.av.FormatKeys.MimeTypeKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DataClassKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.DepthKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_AVI_MJPG;
+import static org.monte.media.av.codec.video.VideoFormatKeys.ENCODING_BUFFERED_IMAGE;
+import static org.monte.media.av.codec.video.VideoFormatKeys.HeightKey;
+import static org.monte.media.av.codec.video.VideoFormatKeys.WidthKey;
+
+public class ParallelVideoEncoderTest {
+    private static final int WIDTH = 64, HEIGHT = 48, FRAME_COUNT = 40;
+
+    @Test
+    public void shouldWriteEncodedFramesInOrder() throws IOException {
+        List<byte[]> expected = new ArrayList<>();
+        JPEGCodec serial = createCodec();
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            Buffer out = new Buffer();
+            serial.process(createFrame(image, i), out);
+            expected.add(Arrays.copyOfRange((byte[]) out.data, out.offset, out.offset + out.length));
+        }
+
+        List<byte[]> actual = new ArrayList<>();
+        List<Long> sequenceNumbers = new ArrayList<>();
+        ParallelVideoEncoder.SampleWriter writer = b -> {
+            actual.add(Arrays.copyOfRange((byte[]) b.data, b.offset, b.offset + b.length));
+            sequenceNumbers.add(b.sequenceNumber);
+        };
+        try (ParallelVideoEncoder encoder = new ParallelVideoEncoder(createCodec(), 4, 6)) {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                // the image is reused for every frame
+                encoder.encode(createFrame(image, i), writer);
+                assertEquals(i + 1, actual.size() + encoder.getInFlightCount());
+            }
+            encoder.flush(writer);
+        }
+
+        assertEquals(FRAME_COUNT, actual.size());
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            assertEquals(i, sequenceNumbers.get(i));
+            assertArrayEquals(expected.get(i), actual.get(i), "frame " + i);
+        }
+    }
+
+    private static JPEGCodec createCodec() {
+        JPEGCodec codec = new JPEGCodec();
+        codec.setInputFormat(new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_JAVA,
+                EncodingKey, ENCODING_BUFFERED_IMAGE, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24));
+        codec.setOutputFormat(new Format(MediaTypeKey, MediaType.VIDEO, MimeTypeKey, MIME_AVI,
+                EncodingKey, ENCODING_AVI_MJPG, DataClassKey, byte[].class, WidthKey, WIDTH, HeightKey, HEIGHT, DepthKey, 24));
+        return codec;
+    }
+
+    private static Buffer createFrame(BufferedImage image, int frame) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(Color.HSBtoRGB(frame / (float) FRAME_COUNT, 1f, 1f)));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setColor(Color.WHITE);
+        g.drawString(Integer.toString(frame), 4, 20);
+        g.dispose();
+        Buffer buf = new Buffer();
+        buf.data = image;
+        buf.sequenceNumber = frame;
+        return buf;
+    }
+}
@@ -12,8 +12,11 @@ import org.monte.media.av.Format;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Random;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 
@@ -67,6 +70,57 @@ public class TechSmithCodecTest {
         assertArrayEquals(rgb24, actualPixels);
     }
 
+    @Test
+    public void shouldEncodeDecode24BitFramesInParallel() throws IOException {
+        int width = 640, height = 480;
+        int[] key = createNoise(width, height, 0);
+        int[] delta = key.clone();
+        // change a few scanlines at band boundaries and in the middle
+        int[] changed = createNoise(width, height, 1);
+        for (int y : new int[]{0, 1, 15, 16, 17, 200, 201, 479}) {
+            System.arraycopy(changed, y * width + 10, delta, y * width + 10, width / 3);
+        }
+
+        TechSmithCodecCore serial = new TechSmithCodecCore();
+        TechSmithCodecCore parallel = new TechSmithCodecCore();
+        parallel.setParallel(true);
+
+        ByteArrayOutputStream serialKey = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallelKey = new ByteArrayOutputStream();
+        serial.encodeKey24(serialKey, key, width, height, 0, width);
+        parallel.encodeKey24(parallelKey, key, width, height, 0, width);
+        assertArrayEquals(inflate(serialKey.toByteArray()), inflate(parallelKey.toByteArray()));
+
+        ByteArrayOutputStream serialDelta = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallelDelta = new ByteArrayOutputStream();
+        serial.encodeDelta24(serialDelta, delta, key, width, height, 0, width);
+        parallel.encodeDelta24(parallelDelta, delta, key, width, height, 0, width);
+        assertArrayEquals(inflate(serialDelta.toByteArray()), inflate(parallelDelta.toByteArray()));
+
+        int[] actualPixels = new int[width * height];
+        byte[] encodedBytes = parallelKey.toByteArray();
+        parallel.decode24(encodedBytes, 0, encodedBytes.length, actualPixels, actualPixels, width, height, false);
+        assertArrayEquals(key, actualPixels);
+        encodedBytes = parallelDelta.toByteArray();
+        parallel.decode24(encodedBytes, 0, encodedBytes.length, actualPixels, actualPixels, width, height, false);
+        assertArrayEquals(delta, actualPixels);
+    }
+
+    private static int[] createNoise(int width, int height, long seed) {
+        Random r = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = r.nextInt() & 0xffffff;
+        }
+        return pixels;
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
     /**
      * Creates a video frame at the specified time.
      *
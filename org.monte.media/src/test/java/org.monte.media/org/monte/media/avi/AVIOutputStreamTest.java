@@ -0,0 +1,88 @@
+/*
+ * @(#)AVIOutputStreamTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.avi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AVIOutputStreamTest {
+    private static final int FRAME_COUNT = 300;
+    private static final int FRAME_SIZE = 1000;
+    private static final int AUDIO_SIZE = 200;
+
+    @Test
+    public void shouldReadBackSamplesFromOpenDMLIndexes() throws IOException {
+        File file = Files.createTempFile("AVIOutputStreamTest", ".avi").toFile();
+        try {
+            AVIOutputStream out = new AVIOutputStream(file);
+            try {
+                out.setMaxRiffSize(64 * 1024);
+                out.addVideoTrack("MJPG", 1, 30, 16, 16, 24, 10);
+                out.addAudioTrack(1, 1, 8000, 1, 8, false, 1, 1);
+                for (int i = 0; i < FRAME_COUNT; i++) {
+                    out.writeSample(0, frameData(i, FRAME_SIZE), 0, FRAME_SIZE, i % 10 == 0);
+                    out.writeSamples(1, AUDIO_SIZE, frameData(i, AUDIO_SIZE), 0, AUDIO_SIZE, true);
+                }
+            } finally {
+                out.close();
+            }
+
+            AVIInputStream in = new AVIInputStream(file);
+            try {
+                assertEquals(2, in.getTrackCount());
+                AbstractAVIStream.Track video = in.tracks.get(0);
+                AbstractAVIStream.Track audio = in.tracks.get(1);
+                assertTrue(video.superIndex.size() > 2, "superIndex.size=" + video.superIndex.size());
+                assertEquals(FRAME_COUNT, video.samples.size());
+                assertEquals(FRAME_COUNT, audio.samples.size());
+
+                ImageInputStream iis = new FileImageInputStream(file);
+                try {
+                    for (int i = 0; i < FRAME_COUNT; i++) {
+                        AbstractAVIStream.Sample v = video.samples.get(i);
+                        assertEquals(i % 10 == 0, v.isKeyframe, "keyframe " + i);
+                        assertEquals(i, v.timeStamp);
+                        assertArrayEquals(frameData(i, FRAME_SIZE), readSample(iis, v), "video sample " + i);
+
+                        AbstractAVIStream.Sample a = audio.samples.get(i);
+                        assertEquals(AUDIO_SIZE, a.duration);
+                        assertArrayEquals(frameData(i, AUDIO_SIZE), readSample(iis, a), "audio sample " + i);
+                    }
+                } finally {
+                    iis.close();
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] frameData(int frame, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (frame * 31 + i);
+        }
+        return data;
+    }
+
+    private static byte[] readSample(ImageInputStream iis, AbstractAVIStream.Sample s) throws IOException {
+        byte[] data = new byte[(int) s.length];
+        iis.seek(s.offset);
+        iis.readFully(data);
+        return data;
+    }
+}
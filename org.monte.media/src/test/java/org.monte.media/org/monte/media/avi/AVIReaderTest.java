@@ -0,0 +1,181 @@
+/*
+ * @(#)AVIReaderTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.avi;
+
+import org.monte.media.av.Buffer;
+import org.monte.media.av.BufferFlag;
+import org.monte.media.io.MappedFileImageInputStream;
+import org.monte.media.math.Rational;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.stream.FileImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AVIReaderTest {
+    @Test
+    public void shouldSeekToSamplesAndKeyframes() throws IOException {
+        File file = Files.createTempFile("AVIReaderTest", ".avi").toFile();
+        try {
+            AVIOutputStream out = new AVIOutputStream(file);
+            try {
+                // video: 10 frames per second, a keyframe every 5 frames
+                out.addVideoTrack("MJPG", 1, 10, 16, 16, 24, 5);
+                // audio: 8000 samples per second, chunks with 800 and 1600 samples
+                out.addAudioTrack(1, 1, 8000, 1, 8, false, 1, 1);
+                byte[] data = new byte[1600];
+                for (int i = 0; i < 20; i++) {
+                    out.writeSample(0, data, 0, 100, i % 5 == 0);
+                    int count = i % 2 == 0 ? 800 : 1600;
+                    out.writeSamples(1, count, data, 0, count, true);
+                }
+            } finally {
+                out.close();
+            }
+
+            AVIReader in = new AVIReader(file);
+            try {
+                assertEquals(2, in.getTrackCount());
+
+                assertEquals(0, in.timeToSample(0, new Rational(0, 1)));
+                assertEquals(7, in.timeToSample(0, new Rational(75, 100)));
+                assertEquals(20, in.timeToSample(0, new Rational(5, 1)));
+
+                // audio chunk i starts at sample 1200 * i - (i % 2 == 0 ? 0 : 400)
+                assertEquals(0, in.timeToSample(1, new Rational(0, 1)));
+                assertEquals(0, in.timeToSample(1, new Rational(799, 8000)));
+                assertEquals(1, in.timeToSample(1, new Rational(800, 8000)));
+                assertEquals(1, in.timeToSample(1, new Rational(2399, 8000)));
+                assertEquals(2, in.timeToSample(1, new Rational(2400, 8000)));
+                assertEquals(19, in.timeToSample(1, new Rational(23999, 8000)));
+                assertEquals(20, in.timeToSample(1, new Rational(24000, 8000)));
+
+                in.setMovieReadTime(new Rational(13, 10));
+                assertEquals(10, in.tracks.get(0).readIndex);
+                in.setMovieReadTime(new Rational(4, 10));
+                assertEquals(0, in.tracks.get(0).readIndex);
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldCopySamplesWithSlices() throws IOException {
+        File file = Files.createTempFile("AVIReaderTest", ".avi").toFile();
+        File copy = Files.createTempFile("AVIReaderTest", ".avi").toFile();
+        try {
+            AVIOutputStream out = new AVIOutputStream(file);
+            try {
+                out.addVideoTrack("MJPG", 1, 10, 16, 16, 24, 5);
+                for (int i = 0; i < 20; i++) {
+                    byte[] data = new byte[100 + i];
+                    Arrays.fill(data, (byte) i);
+                    out.writeSample(0, data, 0, data.length, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            AVIReader in = new AVIReader(new MappedFileImageInputStream(file));
+            AVIWriter w = new AVIWriter(copy);
+            try {
+                w.addTrack(in.getFormat(0));
+                Buffer buf = new Buffer();
+                for (in.readSlice(0, buf); !buf.isFlag(BufferFlag.END_OF_MEDIA); in.readSlice(0, buf)) {
+                    assertTrue(buf.data instanceof ByteBuffer);
+                    assertTrue(((ByteBuffer) buf.data).isDirect());
+                    w.write(0, buf);
+                }
+            } finally {
+                w.close();
+                in.close();
+            }
+
+            in = new AVIReader(copy);
+            try {
+                Buffer buf = new Buffer();
+                for (int i = 0; i < 20; i++) {
+                    in.read(0, buf);
+                    byte[] expected = new byte[100 + i];
+                    Arrays.fill(expected, (byte) i);
+                    assertArrayEquals(expected, Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+                    assertEquals(i % 5 == 0, buf.isFlag(BufferFlag.KEYFRAME));
+                }
+                in.read(0, buf);
+                assertTrue(buf.isFlag(BufferFlag.END_OF_MEDIA));
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void shouldScanMoviListOfTruncatedFile() throws IOException {
+        File file = Files.createTempFile("AVIReaderTest", ".avi").toFile();
+        try {
+            AVIOutputStream out = new AVIOutputStream(file);
+            try {
+                out.addVideoTrack("MJPG", 1, 10, 16, 16, 24, 5);
+                for (int i = 0; i < 20; i++) {
+                    byte[] data = new byte[100 + i];
+                    Arrays.fill(data, (byte) i);
+                    out.writeSample(0, data, 0, data.length, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            // Cut off the indexes and half of the last sample
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int index = new String(bytes, StandardCharsets.ISO_8859_1).lastIndexOf("ix00");
+            assertTrue(index > 0);
+            Files.write(file.toPath(), Arrays.copyOf(bytes, index - 60));
+
+            try (AVIReader in = new AVIReader(file)) {
+                Buffer buf = new Buffer();
+                for (int i = 0; i < 19; i++) {
+                    in.read(0, buf);
+                    assertFalse(buf.isFlag(BufferFlag.END_OF_MEDIA), "sample " + i);
+                    byte[] expected = new byte[100 + i];
+                    Arrays.fill(expected, (byte) i);
+                    assertArrayEquals(expected, Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+                }
+                in.read(0, buf);
+                assertTrue(buf.isFlag(BufferFlag.END_OF_MEDIA));
+                assertTrue(in.isIndexComplete());
+                assertEquals(1.0, in.getIndexProgress());
+                assertEquals(19, in.getChunkCount(0));
+            }
+
+            try (AVIReader in = new AVIReader(new FileImageInputStream(file))) {
+                in.awaitIndex();
+                assertEquals(19, in.getChunkCount(0));
+                assertEquals(new Rational(19, 10), in.getDuration());
+                in.setMovieReadTime(new Rational(15, 10));
+                Buffer buf = new Buffer();
+                in.read(0, buf);
+                assertEquals(0, buf.sequenceNumber);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * @(#)MappedFileImageInputStreamTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.io;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedFileImageInputStreamTest {
+    private static final int WINDOW_SIZE = 16;
+
+    @Test
+    public void shouldReadAcrossWindows() throws IOException {
+        byte[] data = createData(100);
+        File file = createFile(data);
+        try (MappedFileImageInputStream in = new MappedFileImageInputStream(file.toPath(), ByteOrder.BIG_ENDIAN, WINDOW_SIZE)) {
+            assertEquals(data.length, in.length());
+            byte[] actual = new byte[data.length];
+            in.readFully(actual);
+            assertArrayEquals(data, actual);
+            assertEquals(-1, in.read());
+
+            in.seek(14);
+            assertEquals(ByteArray.getIntBE(data, 14), in.readInt());
+            in.seek(60);
+            assertEquals(ByteArray.getLongBE(data, 60), in.readLong());
+            in.seek(3);
+            assertEquals(data[3] & 0xff, in.read());
+            byte[] part = new byte[40];
+            assertEquals(WINDOW_SIZE - 4, in.read(part, 0, part.length));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldHonourByteOrder() throws IOException {
+        byte[] data = createData(40);
+        File file = createFile(data);
+        try (MappedFileImageInputStream in = new MappedFileImageInputStream(file.toPath(), ByteOrder.BIG_ENDIAN, WINDOW_SIZE)) {
+            ByteArrayImageInputStream expected = new ByteArrayImageInputStream(data, ByteOrder.LITTLE_ENDIAN);
+            in.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            for (int pos = 0; pos < 24; pos += 5) {
+                in.seek(pos);
+                expected.seek(pos);
+                assertEquals(expected.readShort(), in.readShort(), "pos " + pos);
+                assertEquals(expected.readInt(), in.readInt(), "pos " + pos);
+                assertEquals(expected.readLong(), in.readLong(), "pos " + pos);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldThrowEOFException() throws IOException {
+        File file = createFile(createData(20));
+        try (MappedFileImageInputStream in = new MappedFileImageInputStream(file.toPath(), ByteOrder.BIG_ENDIAN, WINDOW_SIZE)) {
+            in.seek(14);
+            assertThrows(EOFException.class, () -> in.readFully(new byte[8]));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldNotMapByDefault() throws IOException {
+        byte[] data = createData(100);
+        File file = createFile(data);
+        assertFalse(MappedFileImageInputStream.isMappingEnabled());
+        try (ImageInputStream in = MappedFileImageInputStream.open(file)) {
+            assertInstanceOf(FileImageInputStream.class, in);
+            assertEquals(ByteArray.getIntBE(data, 0), in.readInt());
+        }
+        try (ImageInputStream in = MappedFileImageInputStream.open(file, true)) {
+            assertInstanceOf(MappedFileImageInputStream.class, in);
+            assertEquals(ByteArray.getIntBE(data, 0), in.readInt());
+        }
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 37 + 11);
+        }
+        return data;
+    }
+
+    private static File createFile(byte[] data) throws IOException {
+        File file = File.createTempFile("MappedFileImageInputStreamTest", ".bin");
+        Files.write(file.toPath(), data);
+        return file;
+    }
+}
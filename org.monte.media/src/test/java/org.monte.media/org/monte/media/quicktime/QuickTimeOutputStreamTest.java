@@ -0,0 +1,191 @@
+/*
+ * @(#)QuickTimeOutputStreamTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.quicktime;
+
+import org.monte.media.math.Rational;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QuickTimeOutputStreamTest {
+    /**
+     * Sample flags of a sync sample in a movie fragment.
+     */
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+
+    @Test
+    public void shouldWriteMovieFragments() throws IOException {
+        File file = Files.createTempFile("QuickTimeOutputStreamTest", ".mov").toFile();
+        try {
+            QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+            try {
+                out.setFragmentDuration(new Rational(1, 2));
+                // 10 frames per second, a sync sample every 5 frames
+                out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+                for (int i = 0; i < 20; i++) {
+                    out.writeSample(0, frameData(i), 60, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            List<String> types = new ArrayList<>();
+            List<Integer> moofOffsets = new ArrayList<>();
+            for (int offset = 0; offset < buf.limit(); offset += buf.getInt(offset)) {
+                String type = typeAt(buf, offset + 4);
+                if (type.equals("wide")) {
+                    continue;
+                }
+                types.add(type);
+                if (type.equals("moof")) {
+                    moofOffsets.add(offset);
+                }
+            }
+            assertEquals(Arrays.asList("ftyp", "moov", "moof", "mdat", "moof", "mdat", "moof", "mdat", "moof", "mdat"), types);
+
+            int mehd = findAtom(buf, findAtom(buf, buf.getInt(0), "mvex"), "mehd");
+            assertEquals(20 * 60, buf.getLong(mehd + 12));
+
+            for (int f = 0; f < moofOffsets.size(); f++) {
+                int moof = moofOffsets.get(f);
+                int traf = findAtom(buf, moof, "traf");
+                assertEquals(f * 5 * 60, buf.getLong(findAtom(buf, traf, "tfdt") + 12));
+                int trun = findAtom(buf, traf, "trun");
+                assertEquals(5, buf.getInt(trun + 12));
+                int dataOffset = moof + buf.getInt(trun + 16);
+                for (int i = f * 5; i < f * 5 + 5; i++) {
+                    byte[] expected = frameData(i);
+                    byte[] actual = new byte[expected.length];
+                    buf.get(dataOffset, actual);
+                    assertArrayEquals(expected, actual, "sample " + i);
+                    dataOffset += expected.length;
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldStartVideoFragmentsWithSyncSamples() throws IOException {
+        File file = Files.createTempFile("QuickTimeOutputStreamTest", ".mov").toFile();
+        try {
+            QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+            try {
+                out.setFragmentDuration(new Rational(1, 2));
+                // 10 frames per second, a sync sample every 5 frames
+                out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+                out.addAudioTrack("twos", 8000, 8000, 1, 16, false, 1, 2, true, ByteOrder.BIG_ENDIAN);
+                // the audio track is one frame ahead of the video track, so
+                // that it reaches the fragment duration first
+                byte[] audio = new byte[800 * 2];
+                out.writeSamples(1, 800, audio, 1, true);
+                for (int i = 0; i < 20; i++) {
+                    out.writeSamples(1, 800, audio, 1, true);
+                    out.writeSample(0, frameData(i), 60, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            int videoFragments = 0;
+            for (int offset = 0; offset < buf.limit(); offset += buf.getInt(offset)) {
+                if (!typeAt(buf, offset + 4).equals("moof")) {
+                    continue;
+                }
+                int traf = findAtom(buf, offset, "traf");
+                int tfhd = findAtom(buf, traf, "tfhd");
+                if (buf.getInt(tfhd + 12) != 1) {
+                    continue;
+                }
+                videoFragments++;
+                long decodeTime = buf.getLong(findAtom(buf, traf, "tfdt") + 12);
+                assertEquals(0, decodeTime % (5 * 60), "fragment must start at a sync sample");
+                assertEquals(SYNC_SAMPLE_FLAGS, firstSampleFlags(buf, traf), "flags of first sample");
+            }
+            assertEquals(4, videoFragments);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldRejectFragmentDurationAfterTracksAreAdded() throws IOException {
+        File file = Files.createTempFile("QuickTimeOutputStreamTest", ".mov").toFile();
+        try {
+            QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+            try {
+                out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+                assertThrows(IllegalStateException.class, () -> out.setFragmentDuration(new Rational(1, 2)));
+            } finally {
+                out.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] frameData(int frame) {
+        byte[] data = new byte[100 + frame];
+        Arrays.fill(data, (byte) frame);
+        return data;
+    }
+
+    /**
+     * Returns the sample flags of the first sample of a track fragment.
+     */
+    private static int firstSampleFlags(ByteBuffer buf, int traf) {
+        int tfhd = findAtom(buf, traf, "tfhd");
+        int tfhdFlags = buf.getInt(tfhd + 8) & 0xffffff;
+        int trun = findAtom(buf, traf, "trun");
+        int trunFlags = buf.getInt(trun + 8) & 0xffffff;
+        if ((trunFlags & 0x400) != 0) {
+            // sample table after sampleCount and dataOffset
+            int entry = trun + 20;
+            entry += (trunFlags & 0x100) != 0 ? 4 : 0;
+            entry += (trunFlags & 0x200) != 0 ? 4 : 0;
+            return buf.getInt(entry);
+        }
+        assertEquals(0x20, tfhdFlags & 0x20, "default sample flags");
+        int field = tfhd + 16;
+        field += (tfhdFlags & 0x08) != 0 ? 4 : 0;
+        field += (tfhdFlags & 0x10) != 0 ? 4 : 0;
+        return buf.getInt(field);
+    }
+
+    private static String typeAt(ByteBuffer buf, int offset) {
+        byte[] b = new byte[4];
+        buf.get(offset, b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the offset of the first child atom with the specified type.
+     */
+    private static int findAtom(ByteBuffer buf, int parent, String type) {
+        int end = parent + buf.getInt(parent);
+        for (int offset = parent + 8; offset < end; offset += buf.getInt(offset)) {
+            if (typeAt(buf, offset + 4).equals(type)) {
+                return offset;
+            }
+        }
+        throw new AssertionError("atom not found: " + type);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * @(#)QuickTimeReaderTest.java
+ * Copyright © 2023 Werner Randelshofer, Switzerland. MIT License.
+ */
+
+package org.monte.media.quicktime;
+
+import org.monte.media.av.Buffer;
+import org.monte.media.av.BufferFlag;
+import org.monte.media.io.MappedFileImageInputStream;
+import org.monte.media.math.Rational;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuickTimeReaderTest {
+    @Test
+    public void shouldSeekToSamplesAndSyncSamples() throws IOException {
+        File file = Files.createTempFile("QuickTimeReaderTest", ".mov").toFile();
+        try {
+            QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+            try {
+                // 10 frames per second, a sync sample every 5 frames
+                out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+                byte[] data = new byte[100];
+                for (int i = 0; i < 20; i++) {
+                    out.writeSample(0, data, 60, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            QuickTimeReader in = new QuickTimeReader(file);
+            try {
+                assertEquals(0, in.timeToSample(0, new Rational(0, 1)));
+                assertEquals(7, in.timeToSample(0, new Rational(75, 100)));
+                assertEquals(20, in.timeToSample(0, new Rational(2, 1)));
+                assertEquals(new Rational(7, 10), in.sampleToTime(0, 7));
+                assertEquals(new Rational(2, 1), in.sampleToTime(0, 20));
+
+                in.setMovieReadTime(new Rational(13, 10));
+                assertEquals(new Rational(1, 1), in.getReadTime(0));
+                Buffer buf = new Buffer();
+                in.read(0, buf);
+                assertTrue(buf.isFlag(BufferFlag.KEYFRAME));
+                assertEquals(100, buf.length);
+                assertEquals(new Rational(1, 10), buf.sampleDuration);
+                in.read(0, buf);
+                assertFalse(buf.isFlag(BufferFlag.KEYFRAME));
+                in.setMovieReadTime(new Rational(4, 10));
+                assertEquals(new Rational(0, 1), in.getReadTime(0));
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldCopySamplesWithSlices() throws IOException {
+        File file = Files.createTempFile("QuickTimeReaderTest", ".mov").toFile();
+        File copy = Files.createTempFile("QuickTimeReaderTest", ".mov").toFile();
+        try {
+            QuickTimeOutputStream out = new QuickTimeOutputStream(file);
+            try {
+                out.addVideoTrack("jpeg", "Photo - JPEG", 600, 16, 16, 24, 5);
+                for (int i = 0; i < 20; i++) {
+                    byte[] data = new byte[100 + i];
+                    Arrays.fill(data, (byte) i);
+                    out.writeSample(0, data, 60, i % 5 == 0);
+                }
+            } finally {
+                out.close();
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(new MappedFileImageInputStream(file));
+                 QuickTimeWriter w = new QuickTimeWriter(copy)) {
+                w.addTrack(in.getFormat(0));
+                Buffer buf = new Buffer();
+                for (in.readSlice(0, buf); !buf.isFlag(BufferFlag.END_OF_MEDIA); in.readSlice(0, buf)) {
+                    assertTrue(buf.data instanceof ByteBuffer);
+                    assertTrue(((ByteBuffer) buf.data).isDirect());
+                    w.write(0, buf);
+                }
+            }
+
+            try (QuickTimeReader in = new QuickTimeReader(copy)) {
+                Buffer buf = new Buffer();
+                for (int i = 0; i < 20; i++) {
+                    in.read(0, buf);
+                    byte[] expected = new byte[100 + i];
+                    Arrays.fill(expected, (byte) i);
+                    assertArrayEquals(expected, Arrays.copyOfRange((byte[]) buf.data, buf.offset, buf.offset + buf.length));
+                    assertEquals(i % 5 == 0, buf.isFlag(BufferFlag.KEYFRAME));
+                }
+                in.read(0, buf);
+                assertTrue(buf.isFlag(BufferFlag.END_OF_MEDIA));
+            }
+        } finally {
+            file.delete();
+            copy.delete();
+        }
+    }
+}